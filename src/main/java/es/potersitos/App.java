@@ -1,5 +1,6 @@
 package es.potersitos;
 
+import es.potersitos.util.PersonajeCSVManager;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
@@ -85,12 +86,13 @@ public class App extends Application {
 
     /**
      * Metodo que se ejecuta cuando cierra la aplicación.
-     * Registra un mensaje de cierre en el archivo de Log.
+     * Vuelca en el CSV los cambios pendientes y registra un mensaje de cierre en el archivo de Log.
      *
      * @author Erlantz
      */
     @Override
     public void stop() {
+        PersonajeCSVManager.cerrar();
         logger.info("Aplicación finalizada correctamente");
     }
 
@@ -124,7 +124,7 @@ public class ControladorDatos {
     }
 
     /**
-     * Carga los datos de un personaje desde el CSV a partir de su slug.
+     * Carga los datos de un personaje desde el repositorio en memoria a partir de su slug.
      *
      * @param slug identificador único del personaje
      * @author Nizam
@@ -135,10 +135,7 @@ public class ControladorDatos {
             return;
         }
 
-        List<Map<String, String>> todosPersonajes = PersonajeCSVManager.leerTodosLosPersonajes();
-        Optional<Map<String, String>> personajeEncontrado = todosPersonajes.stream()
-                .filter(p -> slug.equalsIgnoreCase(p.getOrDefault("slug", "")))
-                .findFirst();
+        Optional<Map<String, String>> personajeEncontrado = PersonajeCSVManager.findBySlug(slug);
 
         if (personajeEncontrado.isPresent()) {
             rellenarInterfaz(personajeEncontrado.get());
@@ -344,9 +341,7 @@ public class ControladorDatos {
         }
 
         try {
-            Optional<Map<String, String>> personaje = PersonajeCSVManager.leerTodosLosPersonajes().stream()
-                    .filter(p -> personajeSlug.equalsIgnoreCase(p.getOrDefault("slug", "")))
-                    .findFirst();
+            Optional<Map<String, String>> personaje = PersonajeCSVManager.findBySlug(personajeSlug);
 
             if (personaje.isEmpty()) {
                 mostrarAlerta(Alert.AlertType.ERROR, getStringSafe("error"), "", getStringSafe("no.datos.editar"));
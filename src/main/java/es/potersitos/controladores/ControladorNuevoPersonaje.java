@@ -1,25 +1,16 @@
 package es.potersitos.controladores;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.TextField;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.stage.Stage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import javax.imageio.ImageIO;
 import javafx.embed.swing.SwingFXUtils;
 import java.awt.image.BufferedImage;
@@ -29,7 +20,6 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 import es.potersitos.util.PersonajeCSVManager;
@@ -62,13 +52,16 @@ public class ControladorNuevoPersonaje {
     /** Indica si el formulario está en modo edición. */
     private boolean editMode = false;
 
+    /** Versión del personaje cuando se abrió para editar, para no pisar cambios hechos desde otra ventana o proceso. */
+    private String versionCargada = "";
+
     /** Logger para esta clase */
     private static final Logger logger = LoggerFactory.getLogger(ControladorNuevoPersonaje.class);
 
     /** Campo para el callback */
     private Runnable onPersonajeGuardado;
 
-    /** Slug del personaje después de ser guardado (útil si cambió) */
+    /** Slug del personaje después de ser guardado (útil si cambió o si se generó otro al dar de alta) */
     private String slugActualizado;
 
     @FXML
@@ -230,8 +223,7 @@ public class ControladorNuevoPersonaje {
                     mandarAlertas(Alert.AlertType.WARNING, resources.getString("advertencia"), resources.getString("alerta.titulo"), resources.getString("alerta.mensaje"));
                     return;
                 } else {
-                    List<String> slugsExistentes = cargarSlugsExistentes();
-                    String slug = generarSlugUnico(nameField.getText().trim(), slugsExistentes);
+                    String slug = generarSlugUnico(nameField.getText().trim());
                     slugField.setText(slug);
                 }
             }
@@ -256,30 +248,13 @@ public class ControladorNuevoPersonaje {
             Files.createDirectories(baseDir);
 
             if (editMode) {
-                boolean exito = PersonajeCSVManager.actualizarPersonaje(mapaDatos);
-                if (exito) {
-                    slugActualizado = mapaDatos.get("slug");
-                    mandarAlertas(Alert.AlertType.INFORMATION, resources.getString("exito"), resources.getString("menu.archivo.guardar"), resources.getString("personajeActualizado"));
-                } else {
-                    logger.warn("No se pudo actualizar el personaje en el CSV");
-                    mandarAlertas(Alert.AlertType.ERROR, resources.getString("error"), resources.getString("falloAlGuardarPersonaje"), "No se pudo encontrar el personaje para actualizar.");
-                    return;
-                }
+                // La ventana sigue abierta (por si hay un conflicto) pero sin bloquearse mientras se guarda
+                guardarCambios(mapaDatos);
             } else {
-                String[] datos = construirArrayLegacy(mapaDatos);
-                guardarCSV(baseDir, datos);
-                guardarXML(baseDir, datos);
-                guardarBinario(baseDir, datos);
-
-                mandarAlertas(Alert.AlertType.INFORMATION, resources.getString("exito"), resources.getString("personajeGuardado"), resources.getString("personajeGuardadoMensaje"));
-            }
-
-            cancelarButton.getScene().getWindow().hide();
-
-            if (onPersonajeGuardado != null) {
-                onPersonajeGuardado.run();
+                // La ventana se cierra ya; el resultado se avisa cuando terminen de escribirse los archivos
+                cancelarButton.getScene().getWindow().hide();
+                guardarNuevoPersonaje(mapaDatos, true);
             }
-
         } catch (Exception e) {
             logger.error("Error al guardar el personaje", e);
             mandarAlertas(Alert.AlertType.ERROR, resources.getString("error"), resources.getString("falloAlGuardarPersonaje"), e.getMessage());
@@ -288,48 +263,23 @@ public class ControladorNuevoPersonaje {
 
     /**
      * Genera un slug único a partir del nombre del personaje.
+     * Comprueba cada candidato contra el índice de slugs del repositorio.
      *
      * @param nombre Nombre del personaje
-     * @param slugsExistentes Lista de slugs ya existentes
      * @return Slug único generado
      * @author Erlantz
      */
-    private String generarSlugUnico(String nombre, List<String> slugsExistentes) {
+    private String generarSlugUnico(String nombre) {
         String baseSlug = nombre.toLowerCase().replaceAll("[^a-z0-9]+", "-").replaceAll("^-|-$", "");
         String slug = baseSlug;
         int contador = 1;
-        while (slugsExistentes.contains(slug)) {
+        while (PersonajeCSVManager.findBySlug(slug).isPresent()) {
             slug = baseSlug + "-" + contador;
             contador++;
         }
         return slug;
     }
 
-    /**
-     * Carga los slugs de los personajes ya existentes desde el archivo CSV.
-     *
-     * @return Lista de slugs existentes
-     * @author Erlantz
-     */
-    private List<String> cargarSlugsExistentes() {
-        List<String> slugs = new ArrayList<>();
-        Path csvPath = Paths.get(System.getProperty("user.home"), "Reto3_Hogwarts_Anuario", "todosPersonajes.csv");
-        if (Files.exists(csvPath)) {
-            try {
-                List<String> lineas = Files.readAllLines(csvPath);
-                for (String linea : lineas) {
-                    String[] campos = linea.split(",");
-                    if (campos.length > 2) {
-                        slugs.add(campos[2]);
-                    }
-                }
-            } catch (IOException e) {
-                logger.warn("No se pudieron cargar los slugs existentes", e);
-            }
-        }
-        return slugs;
-    }
-
     /**
      * Descarga una imagen desde una URL y la guarda localmente asociada a un
      * personaje.
@@ -371,6 +321,7 @@ public class ControladorNuevoPersonaje {
             agregarButton.setText(resources.getString("menu.archivo.guardar"));
         }
 
+        versionCargada = datos.getOrDefault("version", "");
         idField.setText(datos.getOrDefault("id", ""));
         typeField.setText(datos.getOrDefault("type", ""));
         slugField.setText(datos.getOrDefault("slug", ""));
@@ -439,146 +390,87 @@ public class ControladorNuevoPersonaje {
         m.put("romances", romancesField.getText().trim());
         m.put("titles", titulosField.getText().trim());
         m.put("weight", pesoField.getText().trim());
-        return m;
-    }
-
-    /**
-     * Construye el array de datos en el orden legacy requerido.
-     *
-     * @param mapaDatos mapa con los datos del personaje
-     * @return array de datos ordenado
-     * @author Erlantz
-     */
-    private String[] construirArrayLegacy(Map<String, String> mapaDatos) {
-        return new String[] {
-                mapaDatos.get("id"),
-                mapaDatos.get("type"),
-                mapaDatos.get("slug"),
-                mapaDatos.get("alias_names"),
-                mapaDatos.get("animagus"),
-                mapaDatos.get("blood_status"),
-                mapaDatos.get("boggart"),
-                mapaDatos.get("born"),
-                mapaDatos.get("died"),
-                mapaDatos.get("eye_color"),
-                mapaDatos.get("family_members"),
-                mapaDatos.get("gender"),
-                mapaDatos.get("hair_color"),
-                mapaDatos.get("height"),
-                mapaDatos.get("house"),
-                mapaDatos.get("image"),
-                mapaDatos.get("jobs"),
-                mapaDatos.get("marital_status"),
-                mapaDatos.get("name"),
-                mapaDatos.get("nationality"),
-                mapaDatos.get("patronus"),
-                mapaDatos.get("romances"),
-                mapaDatos.get("skin_color"),
-                mapaDatos.get("species"),
-                mapaDatos.get("titles"),
-                mapaDatos.get("wands"),
-                mapaDatos.get("weight"),
-                mapaDatos.get("wiki")
-        };
-    }
-
-    /**
-     * Guardar personaje en formato CSV (append).
-     *
-     * @param baseDir Directorio base
-     * @param datos   Array de datos del personaje
-     * @author Erlantz
-     */
-    private void guardarCSV(Path baseDir, String[] datos) {
-        try {
-            Path csvPath = baseDir.resolve("todosPersonajes.csv");
-            Files.write(csvPath, (String.join(",", datos) + "\n").getBytes(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-        } catch (IOException e) {
-            logger.error("Error al guardar CSV", e);
+        if (editMode) {
+            m.put("version", versionCargada);
         }
+        return m;
     }
 
     /**
-     * Guarda personaje en formato XML (DOM Parser).
+     * Guarda los cambios del personaje en segundo plano con los botones desactivados y, al terminar, avisa
+     * del resultado en el hilo de JavaFX. Si se guardaron, cierra la ventana y ejecuta el callback; si no,
+     * la deja abierta para que el usuario decida.
      *
-     * @param baseDir Directorio base
-     * @param datos   Array de datos del personaje
-     * @author Erlantz
+     * @param mapaDatos Mapa con los datos del personaje
+     * @author Telmo
      */
-    private void guardarXML(Path baseDir, String[] datos) {
-        try {
-            Path xmlPath = baseDir.resolve("todosPersonajes.xml");
-            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            Document doc;
-
-            if (Files.exists(xmlPath)) {
-                doc = builder.parse(xmlPath.toFile());
-                doc.getDocumentElement().normalize();
-            } else {
-                doc = builder.newDocument();
-                Element root = doc.createElement("characters");
-                doc.appendChild(root);
-            }
-
-            Element root = doc.getDocumentElement();
-            Element character = doc.createElement("character");
-
-            for (int i = 0; i < datos.length; i++) {
-                Element field = doc.createElement("field" + i);
-                field.setTextContent(datos[i]);
-                character.appendChild(field);
-            }
-            root.appendChild(character);
-
-            Transformer transformer = TransformerFactory.newInstance().newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.transform(new DOMSource(doc), new StreamResult(xmlPath.toFile()));
-
-        } catch (Exception e) {
-            logger.error("Error al guardar XML", e);
-        }
+    private void guardarCambios(Map<String, String> mapaDatos) {
+        agregarButton.setDisable(true);
+        cancelarButton.setDisable(true);
+        PersonajeCSVManager.actualizarPersonajeEnSegundoPlano(mapaDatos)
+                .exceptionally(e -> {
+                    logger.error("Error al actualizar el personaje", e);
+                    return PersonajeCSVManager.ResultadoActualizacion.ERROR;
+                })
+                .thenAccept(resultado -> Platform.runLater(() -> {
+                    agregarButton.setDisable(false);
+                    cancelarButton.setDisable(false);
+                    if (resultado == PersonajeCSVManager.ResultadoActualizacion.ACTUALIZADO) {
+                        slugActualizado = mapaDatos.get("slug");
+                        mandarAlertas(Alert.AlertType.INFORMATION, resources.getString("exito"), resources.getString("menu.archivo.guardar"), resources.getString("personajeActualizado"));
+                        cancelarButton.getScene().getWindow().hide();
+                        if (onPersonajeGuardado != null) {
+                            onPersonajeGuardado.run();
+                        }
+                    } else if (resultado == PersonajeCSVManager.ResultadoActualizacion.CONFLICTO) {
+                        logger.warn("El personaje se modificó en otra ventana o proceso mientras se editaba");
+                        mandarAlertas(Alert.AlertType.WARNING, resources.getString("advertencia"), resources.getString("falloAlGuardarPersonaje"), resources.getString("conflictoAlGuardar"));
+                    } else if (resultado == PersonajeCSVManager.ResultadoActualizacion.SLUG_DUPLICADO) {
+                        logger.warn("El slug {} ya es de otro personaje", mapaDatos.get("slug"));
+                        mandarAlertas(Alert.AlertType.WARNING, resources.getString("advertencia"), resources.getString("falloAlGuardarPersonaje"), resources.getString("slugDuplicado"));
+                    } else {
+                        logger.warn("No se pudo actualizar el personaje en el CSV");
+                        mandarAlertas(Alert.AlertType.ERROR, resources.getString("error"), resources.getString("falloAlGuardarPersonaje"), "No se pudo encontrar el personaje para actualizar.");
+                    }
+                }));
     }
 
     /**
-     * Guarda personaje en formato binario.
+     * Guarda el personaje en CSV, XML y binario en segundo plano (en los tres o en ninguno) y, al terminar,
+     * avisa del resultado y ejecuta el callback en el hilo de JavaFX. Si entretanto otra ventana o proceso
+     * ha guardado un personaje con el mismo slug, se genera otro y se vuelve a intentar una vez, ya que el
+     * slug lo pone el formulario y no el usuario.
      *
-     * @param baseDir Directorio base
-     * @param datos   Array de datos del personaje
+     * @param mapaDatos Mapa con los datos del personaje
+     * @param reintentar si se vuelve a intentar con otro slug en caso de conflicto
      * @author Erlantz
      */
-    private void guardarBinario(Path baseDir, String[] datos) {
-        try {
-            Path binPath = baseDir.resolve("todosPersonajes.bin");
-            List<String[]> personajes = new ArrayList<>();
-
-            if (Files.exists(binPath)) {
-                try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(binPath))) {
-                    Object obj = ois.readObject();
-
-                    if (obj instanceof List<?> lista) {
-                        for (Object elemento : lista) {
-                            if (elemento instanceof String[] arr) {
-                                personajes.add(arr);
-                            }
+    private void guardarNuevoPersonaje(Map<String, String> mapaDatos, boolean reintentar) {
+        PersonajeCSVManager.agregarPersonajeEnSegundoPlano(mapaDatos)
+                .exceptionally(e -> {
+                    logger.error("Error al guardar el personaje", e);
+                    return PersonajeCSVManager.ResultadoAlta.ERROR;
+                })
+                .thenAccept(resultado -> Platform.runLater(() -> {
+                    if (resultado == PersonajeCSVManager.ResultadoAlta.GUARDADO) {
+                        slugActualizado = mapaDatos.get("slug");
+                        if (onPersonajeGuardado != null) {
+                            onPersonajeGuardado.run();
                         }
+                        mandarAlertas(Alert.AlertType.INFORMATION, resources.getString("exito"), resources.getString("personajeGuardado"), resources.getString("personajeGuardadoMensaje"));
+                    } else if (resultado == PersonajeCSVManager.ResultadoAlta.CONFLICTO && reintentar) {
+                        String slug = generarSlugUnico(mapaDatos.get("name"));
+                        logger.info("El slug {} ya estaba guardado; se guarda como {}", mapaDatos.get("slug"), slug);
+                        mapaDatos.put("slug", slug);
+                        guardarNuevoPersonaje(mapaDatos, false);
+                    } else if (resultado == PersonajeCSVManager.ResultadoAlta.CONFLICTO) {
+                        logger.warn("Ya existe un personaje con el slug {}", mapaDatos.get("slug"));
+                        mandarAlertas(Alert.AlertType.WARNING, resources.getString("advertencia"), resources.getString("falloAlGuardarPersonaje"), resources.getString("conflictoAlAgregar"));
                     } else {
-                        logger.warn("El archivo binario no contiene una lista válida");
+                        logger.error("No se pudo guardar el personaje en CSV, XML y binario");
+                        mandarAlertas(Alert.AlertType.ERROR, resources.getString("error"), resources.getString("falloAlGuardarPersonaje"), resources.getString("falloAlGuardarPersonajeMensaje"));
                     }
-
-                } catch (Exception e) {
-                    logger.warn("Error al leer binario, se reinicia el archivo", e);
-                }
-            }
-
-            personajes.add(datos);
-
-            try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(binPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
-                oos.writeObject(personajes);
-            }
-
-        } catch (Exception e) {
-            logger.error("Error al guardar binario", e);
-        }
+                }));
     }
 
     /**
@@ -605,9 +497,9 @@ public class ControladorNuevoPersonaje {
     }
 
     /**
-     * Devuelve el slug actualizado tras edición (útil para refrescar listas).
+     * Devuelve el slug con el que se guardó el personaje (útil para refrescar listas o ir hasta él).
      *
-     * @return slug del personaje editado o null si no se editó
+     * @return slug del personaje editado o añadido, o null si no se guardó
      * @author Telmo
      */
     public String getSlugActualizado() {
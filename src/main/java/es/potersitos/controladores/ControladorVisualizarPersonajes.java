@@ -1,6 +1,16 @@
 package es.potersitos.controladores;
 
+import es.potersitos.util.CambiosPersonajes;
+import es.potersitos.util.ConsultaFiltro;
+import es.potersitos.util.ConsultaTexto;
+import es.potersitos.util.CriterioOrden;
+import es.potersitos.util.EjecutorFiltros;
+import es.potersitos.util.FacetasPersonajes;
+import es.potersitos.util.FiltrosGuardados;
+import es.potersitos.util.IndiceNombres;
 import es.potersitos.util.PersonajeCSVManager;
+import es.potersitos.util.RepositorioPersonajes;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
@@ -23,6 +33,8 @@ import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
+import javafx.util.Duration;
+import javafx.util.StringConverter;
 import net.sf.jasperreports.engine.*;
 import net.sf.jasperreports.view.JasperViewer;
 import org.slf4j.Logger;
@@ -33,9 +45,11 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.text.NumberFormat;
 import java.util.*;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Controlador encargado de gestionar la vista de personajes.
@@ -80,6 +94,26 @@ public class ControladorVisualizarPersonajes {
     @FXML
     private TextField searchField;
 
+    /** Columna por la que se ordena la vista (cadena vacía para el orden de la lista o de relevancia). */
+    @FXML
+    private ComboBox<String> comboOrden;
+
+    /** Botón que alterna el sentido del orden. */
+    @FXML
+    private Button btnSentidoOrden;
+
+    /** Selector de las consultas guardadas del panel de filtros. */
+    @FXML
+    private ComboBox<String> comboFiltrosGuardados;
+
+    /** Título de las consultas guardadas. */
+    @FXML
+    private Label lblFiltrosGuardados;
+
+    /** Botones para guardar el filtro actual como consulta y borrar la consulta elegida. */
+    @FXML
+    private Button btnGuardarFiltro, btnEliminarFiltroGuardado;
+
     /** Contenedor de botones de paginación. */
     @FXML
     private HBox paginationContainer;
@@ -90,6 +124,75 @@ public class ControladorVisualizarPersonajes {
     /** Lista mapeada de todos los personajes leídos desde CSV/XML. */
     private List<Map<String, String>> listaPersonajesMapeados;
 
+    /**
+     * Personajes que cumplen el filtro actual, en el orden de {@link #listaPersonajesMapeados}, de más a menos
+     * relevante si se busca texto, o en el de {@link #ordenActual} si se ha elegido uno. Puede ser de solo
+     * lectura (la propia lista completa o una vista del repositorio); se copia antes de modificarla.
+     */
+    private List<Map<String, String>> listaFiltrada = new ArrayList<>();
+
+    /** Filtro aplicado a {@link #listaFiltrada}, o {@code null} si no hay ninguno. */
+    private Predicate<Map<String, String>> filtroActual;
+
+    /** Espera tras la última pulsación o casilla marcada antes de filtrar. */
+    private static final Duration RETARDO_FILTRO = Duration.millis(150);
+
+    /** Claves de las casillas de cada panel de filtros, en el orden de {@link FacetasPersonajes}. */
+    private static final String[][] CLAVES_FILTROS = {
+            {"filtro.valor.gryffindor", "filtro.valor.slytherin", "filtro.valor.hufflepuff", "filtro.valor.ravenclaw"},
+            {"filtro.valor.britanico", "filtro.valor.irlandes", "filtro.valor.frances", "filtro.valor.bulgaro"},
+            {"filtro.valor.humano", "filtro.valor.mestizo", "filtro.valor.elfo", "filtro.valor.gigante"},
+            {"filtro.valor.masculino", "filtro.valor.femenino"}
+    };
+
+    /** Consulta del buscador en el filtro aplicado. */
+    private ConsultaFiltro consultaActual = ConsultaFiltro.interpretar("");
+
+    /** Consultas guardadas por nombre, como las muestra {@link #comboFiltrosGuardados}. */
+    private Map<String, String> filtrosGuardados = new TreeMap<>();
+
+    /** Columnas por las que se puede ordenar y la clave de su nombre en los mensajes. */
+    private static final String[][] COLUMNAS_ORDEN = {
+            {"name", "nombre.label"}, {"house", "casa.label"}, {"species", "especie.label"},
+            {"born", "nacido.label"}, {"died", "fallecido.label"}, {"gender", "genero.label"},
+            {"nationality", "nacionalidad.label"}, {"blood_status", "bloodStatus.label"},
+            {"alias_names", "alias.label"}, {"animagus", "animagus.label"}, {"boggart", "boggart.label"},
+            {"eye_color", "colorOjos.label"}, {"hair_color", "colorPelo.label"}, {"skin_color", "colorPiel.label"},
+            {"height", "altura.label"}, {"weight", "peso.label"}, {"jobs", "trabajos.label"},
+            {"marital_status", "estadoCivil.label"}, {"patronus", "patronus.label"}, {"titles", "titulos.label"},
+            {"wands", "varitas.label"}, {"family_members", "familiares.label"}, {"romances", "romances.label"}
+    };
+
+    /** Orden del resultado aplicado, o {@code null} si es el de la lista (o el de relevancia). */
+    private CriterioOrden ordenActual;
+
+    /** Sentido del orden elegido. */
+    private boolean ordenAscendente = true;
+
+    /** Idioma de la interfaz, que decide cómo se ordenan alfabéticamente los textos. */
+    private Locale idioma = Locale.getDefault();
+
+    /** Opciones marcadas de cada faceta en el filtro aplicado. */
+    private int[] seleccionActual = new int[FacetasPersonajes.FACETAS];
+
+    /** Resultados que daría cada casilla de los filtros, o {@code null} si aún no se conocen. */
+    private int[][] recuentos;
+
+    /** Recuento de las casillas en curso en segundo plano, o {@code null} si no hay ninguno. */
+    private Task<int[][]> tareaRecuentos;
+
+    /** Indica que se espera a los índices de búsqueda para contar las casillas o buscar por texto. */
+    private boolean esperandoIndices;
+
+    /** Temporizador que agrupa los cambios seguidos de los filtros en un único filtrado. */
+    private PauseTransition pausaFiltro;
+
+    /** Filtrado en curso en segundo plano, o {@code null} si no hay ninguno. */
+    private Task<List<Map<String, String>>> tareaFiltrado;
+
+    /** Receptor de los cambios publicados por el repositorio, que los aplica en el hilo de JavaFX. */
+    private final Consumer<CambiosPersonajes> suscripcionCambios = cambios -> Platform.runLater(() -> aplicarCambios(cambios));
+
     /** Recurso de internacionalización (idioma actual). */
     private ResourceBundle resources;
 
@@ -127,24 +230,31 @@ public class ControladorVisualizarPersonajes {
      */
     @FXML
     public void initialize() {
+        long inicio = System.nanoTime();
         resources = ResourceBundle.getBundle("es.potersitos.mensaje", Locale.getDefault());
         botonImportar = new Button("");
         mensaje = new Label("");
         configurarAtajosMenu();
         configurarBusqueda();
         configurarListenersFiltros();
+        configurarOrden();
+        configurarFiltrosGuardados();
 
         listaPersonajesMapeados = PersonajeCSVManager.leerTodosLosPersonajes();
+        listaFiltrada = listaPersonajesMapeados;
         calcularTotalPaginas();
         actualizarTextosUI();
+        RepositorioPersonajes.getInstancia().suscribir(suscripcionCambios);
+        actualizarRecuentos();
 
         if (listaPersonajesMapeados.isEmpty()) {
             mostrarMensajeImportar();
         } else {
-            cargarPersonajes(listaPersonajesMapeados);
+            cargarPersonajes(listaFiltrada);
         }
 
-        logger.info("Vista de personajes inicializada correctamente con {} registros.", listaPersonajesMapeados.size());
+        logger.info("Vista de personajes inicializada correctamente con {} registros en {} ms.",
+                listaPersonajesMapeados.size(), (System.nanoTime() - inicio) / 1_000_000);
     }
 
     /**
@@ -168,8 +278,145 @@ public class ControladorVisualizarPersonajes {
      */
     private void configurarBusqueda() {
         if (searchField != null) {
-            searchField.textProperty().addListener((o, ov, nv) -> filtrarPersonajes());
+            searchField.textProperty().addListener((o, ov, nv) -> programarFiltrado());
+        }
+    }
+
+    /**
+     * Rellena el selector de orden con las columnas y vuelve a filtrar al elegir otra. Los nombres de las
+     * columnas se traducen al mostrarlos, con los mensajes del idioma activo.
+     *
+     * @author Nizam
+     */
+    private void configurarOrden() {
+        if (comboOrden == null) return;
+        comboOrden.getItems().add("");
+        for (String[] columna : COLUMNAS_ORDEN) comboOrden.getItems().add(columna[0]);
+        comboOrden.setValue("");
+        comboOrden.setConverter(crearConversorOrden());
+        comboOrden.valueProperty().addListener((o, ov, nv) -> programarFiltrado());
+    }
+
+    /**
+     * Crea el conversor que muestra cada columna del selector de orden con su nombre en el idioma activo.
+     *
+     * @return conversor de columna a texto
+     * @author Nizam
+     */
+    private StringConverter<String> crearConversorOrden() {
+        return new StringConverter<>() {
+            @Override
+            public String toString(String columna) {
+                if (columna == null || columna.isEmpty()) return resources.getString("orden.original");
+                for (String[] c : COLUMNAS_ORDEN) {
+                    if (c[0].equals(columna)) return resources.getString(c[1]).replace(":", "").trim();
+                }
+                return columna;
+            }
+
+            @Override
+            public String fromString(String texto) {
+                return texto;
+            }
+        };
+    }
+
+    /**
+     * Alterna el orden entre ascendente y descendente y vuelve a filtrar si se está ordenando.
+     *
+     * @author Nizam
+     */
+    @FXML
+    private void cambiarSentidoOrden() {
+        ordenAscendente = !ordenAscendente;
+        btnSentidoOrden.setText(ordenAscendente ? "▲" : "▼");
+        if (comboOrden != null && comboOrden.getValue() != null && !comboOrden.getValue().isEmpty()) {
+            programarFiltrado();
+        }
+    }
+
+    /**
+     * Rellena el selector de consultas guardadas y aplica la elegida.
+     *
+     * @author Nizam
+     */
+    private void configurarFiltrosGuardados() {
+        if (comboFiltrosGuardados == null) return;
+        recargarFiltrosGuardados();
+        comboFiltrosGuardados.setOnAction(e -> aplicarFiltroGuardado());
+    }
+
+    /**
+     * Vuelve a leer las consultas guardadas y las pone en el selector.
+     *
+     * @author Nizam
+     */
+    private void recargarFiltrosGuardados() {
+        filtrosGuardados = FiltrosGuardados.cargar();
+        comboFiltrosGuardados.getItems().setAll(filtrosGuardados.keySet());
+    }
+
+    /**
+     * Aplica la consulta guardada elegida: la escribe en el buscador y desmarca las casillas, porque la
+     * consulta ya lleva las que estaban marcadas al guardarla. Después se pueden marcar otras para combinarlas.
+     *
+     * @author Nizam
+     */
+    private void aplicarFiltroGuardado() {
+        String consulta = filtrosGuardados.get(comboFiltrosGuardados.getValue());
+        if (consulta == null) return;
+        desmarcarCasillas();
+        searchField.setText(consulta);
+        logger.info("Aplicada la consulta guardada '{}': {}", comboFiltrosGuardados.getValue(), consulta);
+    }
+
+    /**
+     * Guarda el texto del buscador y las casillas marcadas como una consulta con el nombre que se pida.
+     *
+     * @author Nizam
+     */
+    @FXML
+    private void guardarFiltro() {
+        String consulta = ConsultaFiltro.escribir(searchField.getText(), leerSeleccion());
+        if (consulta.isEmpty()) {
+            mandarAlertas(Alert.AlertType.WARNING, resources.getString("advertencia"), null, resources.getString("filtro.guardar.vacio"));
+            return;
+        }
+        TextInputDialog dialogo = new TextInputDialog(comboFiltrosGuardados.getValue());
+        dialogo.setTitle(resources.getString("filtro.guardar.titulo"));
+        dialogo.setHeaderText(null);
+        dialogo.setContentText(resources.getString("filtro.guardar.nombre"));
+        Optional<String> nombre = dialogo.showAndWait().map(String::trim).filter(n -> !n.isEmpty());
+        if (nombre.isEmpty()) return;
+        try {
+            FiltrosGuardados.guardar(nombre.get(), consulta);
+        } catch (IOException e) {
+            logger.error("Error al guardar la consulta '{}'", nombre.get(), e);
+            mandarAlertas(Alert.AlertType.ERROR, resources.getString("error"), null, resources.getString("filtro.guardar.error") + " " + e.getMessage());
+            return;
+        }
+        recargarFiltrosGuardados();
+        comboFiltrosGuardados.setValue(nombre.get());
+    }
+
+    /**
+     * Borra la consulta guardada elegida en el selector.
+     *
+     * @author Nizam
+     */
+    @FXML
+    private void eliminarFiltroGuardado() {
+        String nombre = comboFiltrosGuardados.getValue();
+        if (nombre == null || !filtrosGuardados.containsKey(nombre)) return;
+        try {
+            FiltrosGuardados.eliminar(nombre);
+        } catch (IOException e) {
+            logger.error("Error al borrar la consulta '{}'", nombre, e);
+            mandarAlertas(Alert.AlertType.ERROR, resources.getString("error"), null, resources.getString("filtro.guardado.eliminar.error") + " " + e.getMessage());
+            return;
         }
+        comboFiltrosGuardados.setValue(null);
+        recargarFiltrosGuardados();
     }
 
     /**
@@ -184,7 +431,7 @@ public class ControladorVisualizarPersonajes {
                 if (content instanceof VBox) {
                     for (Node node : ((VBox) content).getChildren()) {
                         if (node instanceof CheckBox cb) {
-                            cb.selectedProperty().addListener((o, ov, nv) -> filtrarPersonajes());
+                            cb.selectedProperty().addListener((o, ov, nv) -> programarFiltrado());
                         }
                     }
                 }
@@ -242,6 +489,7 @@ public class ControladorVisualizarPersonajes {
     private void cambiarIdioma(Locale nuevoLocale) {
         try {
             resources = ResourceBundle.getBundle("es.potersitos.mensaje", nuevoLocale);
+            idioma = nuevoLocale;
             actualizarTextosUI();
             if (listaPersonajesMapeados.isEmpty()) {
                 mostrarMensajeImportar();
@@ -284,6 +532,13 @@ public class ControladorVisualizarPersonajes {
         btnExportar.setText(resources.getString("visualizar.btn.exportar"));
         btnEliminarSeleccionados.setText(resources.getString("eliminar.button").toUpperCase());
         btnLimpiarFiltro.setText(resources.getString("visualizar.filtro.limpiar"));
+        if (comboFiltrosGuardados != null) {
+            lblFiltrosGuardados.setText(resources.getString("filtro.guardados.titulo"));
+            comboFiltrosGuardados.setPromptText(resources.getString("filtro.guardados.prompt"));
+            btnGuardarFiltro.setText(resources.getString("filtro.guardar"));
+            btnEliminarFiltroGuardado.setText(resources.getString("filtro.guardado.eliminar"));
+        }
+        if (comboOrden != null) comboOrden.setConverter(crearConversorOrden());
 
         if (selectionModeActive) {
             btnSeleccionar.setText(resources.getString("cancelar.button").toUpperCase());
@@ -301,27 +556,7 @@ public class ControladorVisualizarPersonajes {
             if (panes.size() > 3)
                 panes.get(3).setText(resources.getString("filtro.titulo.genero"));
 
-            actualizarCheckBoxesDelPanel(panes.get(0), new String[] {
-                    "filtro.valor.gryffindor", "filtro.valor.slytherin",
-                    "filtro.valor.hufflepuff", "filtro.valor.ravenclaw"
-            });
-            if (panes.size() > 1) {
-                actualizarCheckBoxesDelPanel(panes.get(1), new String[] {
-                        "filtro.valor.britanico", "filtro.valor.irlandes",
-                        "filtro.valor.frances", "filtro.valor.bulgaro"
-                });
-            }
-            if (panes.size() > 2) {
-                actualizarCheckBoxesDelPanel(panes.get(2), new String[] {
-                        "filtro.valor.humano", "filtro.valor.mestizo",
-                        "filtro.valor.elfo", "filtro.valor.gigante"
-                });
-            }
-            if (panes.size() > 3) {
-                actualizarCheckBoxesDelPanel(panes.get(3), new String[] {
-                        "filtro.valor.masculino", "filtro.valor.femenino"
-                });
-            }
+            pintarRecuentos();
         }
         actualizarControlesPaginacion();
     }
@@ -359,24 +594,94 @@ public class ControladorVisualizarPersonajes {
     /**
      * Actualiza los textos de los {@link CheckBox} dentro de un {@link TitledPane}.
      *
-     * @param pane Contenedor que aloja los CheckBoxes.
-     * @param keys Claves del {@link ResourceBundle} correspondientes a los textos.
+     * @param pane      Contenedor que aloja los CheckBoxes.
+     * @param keys      Claves del {@link ResourceBundle} correspondientes a los textos.
+     * @param recuentos Resultados que daría cada casilla, o {@code null} para no mostrarlos.
      *
      * @author Marco
      */
-    private void actualizarCheckBoxesDelPanel(TitledPane pane, String[] keys) {
+    private void actualizarCheckBoxesDelPanel(TitledPane pane, String[] keys, int[] recuentos) {
         Node content = pane.getContent();
         if (content instanceof VBox) {
+            NumberFormat formato = NumberFormat.getIntegerInstance(resources.getLocale());
             int index = 0;
             for (Node node : ((VBox) content).getChildren()) {
                 if (node instanceof CheckBox && index < keys.length) {
-                    ((CheckBox) node).setText(resources.getString(keys[index]));
+                    String texto = resources.getString(keys[index]);
+                    if (recuentos != null) texto += " (" + formato.format(recuentos[index]) + ")";
+                    ((CheckBox) node).setText(texto);
                     index++;
                 }
             }
         }
     }
 
+    /**
+     * Pone en cada casilla de los filtros su texto y, si se conoce, cuántos resultados daría.
+     *
+     * @author Nizam
+     */
+    private void pintarRecuentos() {
+        if (accordionFiltros == null) return;
+        List<TitledPane> panes = accordionFiltros.getPanes();
+        for (int i = 0; i < panes.size() && i < CLAVES_FILTROS.length; i++) {
+            actualizarCheckBoxesDelPanel(panes.get(i), CLAVES_FILTROS[i], recuentos == null ? null : recuentos[i]);
+        }
+    }
+
+    /**
+     * Vuelve a contar en segundo plano cuántos resultados daría cada casilla con el filtro aplicado
+     * (el texto y las demás facetas), a partir de los índices de búsqueda del repositorio. Mientras no
+     * estén todos listos, se vuelve a contar (o a buscar, si hay texto) cada vez que termina uno.
+     *
+     * @author Nizam
+     */
+    private void actualizarRecuentos() {
+        if (tareaRecuentos != null) {
+            tareaRecuentos.cancel();
+            tareaRecuentos = null;
+        }
+        List<Map<String, String>> base = listaPersonajesMapeados;
+        if (base == null || base.isEmpty()) {
+            recuentos = null;
+            pintarRecuentos();
+            return;
+        }
+        ConsultaFiltro consulta = consultaActual;
+        int[] seleccion = seleccionActual;
+        Task<int[][]> tarea = new Task<>() {
+            @Override
+            protected int[][] call() {
+                return RepositorioPersonajes.getInstancia().contarFacetas(consulta, seleccion, base, this::isCancelled);
+            }
+        };
+        tarea.setOnSucceeded(e -> {
+            if (tarea != tareaRecuentos) return;
+            tareaRecuentos = null;
+            // Si la lista ha cambiado, quien la cambió vuelve a contar
+            if (base != listaPersonajesMapeados) return;
+            recuentos = tarea.getValue();
+            if (!esperandoIndices) {
+                esperandoIndices = !RepositorioPersonajes.getInstancia().avisarAlPrepararBusqueda(() -> Platform.runLater(() -> {
+                    esperandoIndices = false;
+                    // Con el índice de textos una búsqueda encuentra más y ordena por relevancia
+                    if (consultaActual.vacia()) actualizarRecuentos();
+                    else filtrarPersonajes(paginaActual);
+                }));
+            }
+            pintarRecuentos();
+        });
+        tarea.setOnFailed(e -> {
+            if (tarea == tareaRecuentos) tareaRecuentos = null;
+            logger.error("Error al contar los resultados de los filtros", tarea.getException());
+        });
+
+        tareaRecuentos = tarea;
+        Thread hilo = new Thread(tarea, "recuentos-filtros");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
     /**
      * Carga y muestra los personajes de una página específica en el TilePane.
      * Crea dinámicamente las fichas FXML para cada personaje y las posiciona.
@@ -408,45 +713,65 @@ public class ControladorVisualizarPersonajes {
         logger.info("Cargando Página {}: Personajes de índice {} a {}. (Total: {})", paginaActual, indiceInicio, indiceFin, personajesPagina.size());
 
         for (Map<String, String> p : personajesPagina) {
-            try {
-                FXMLLoader loader = new FXMLLoader(getClass().getResource("/es/potersitos/fxml/fichaPersonaje.fxml"));
-                loader.setResources(resources);
-                VBox card = loader.load();
-
-                ControladorFichaPersonaje controller = loader.getController();
+            crearFicha(p, listaControladores, tilePanePersonajes.getChildren());
+        }
 
-                String slug = p.getOrDefault("slug", "");
-                controller.setPersonajeSlug(slug);
+        if (selectionModeActive) {
+            actualizarEstadoBotonExportar();
+        }
+        actualizarControlesPaginacion();
+    }
 
-                String nombre = p.getOrDefault("name", "N/A");
-                String casa = p.getOrDefault("house", "Desconocida");
+    /**
+     * Crea la ficha FXML de un personaje y la añade, junto con su controlador, a las listas indicadas.
+     * Si la ficha no se puede cargar no se añade nada, de modo que ambas listas siguen emparejadas.
+     *
+     * @param p             personaje a mostrar
+     * @param controladores lista donde se añade el controlador de la ficha
+     * @param fichas        lista donde se añade la ficha
+     * @author Nizam
+     */
+    private void crearFicha(Map<String, String> p, List<ControladorFichaPersonaje> controladores, List<Node> fichas) {
+        try {
+            FXMLLoader loader = new FXMLLoader(getClass().getResource("/es/potersitos/fxml/fichaPersonaje.fxml"));
+            loader.setResources(resources);
+            VBox card = loader.load();
 
-                String imagenArchivo = p.getOrDefault("image", "");
+            ControladorFichaPersonaje controller = loader.getController();
 
-                controller.setData(nombre, casa, imagenArchivo);
+            String slug = p.getOrDefault("slug", "");
+            controller.setPersonajeSlug(slug);
+            pintarFicha(controller, p);
 
-                controller.setOnRefreshListener(this::recargarListaCompleta);
-                controller.setOnSelectionChanged(() -> handleSelectionChange(controller));
+            controller.setOnSelectionChanged(() -> handleSelectionChange(controller));
 
-                if (selectionModeActive) {
-                    controller.setSelectionMode(true);
-                    if (selectedSlugs.contains(slug)) {
-                        controller.setSelected(true);
-                    }
+            if (selectionModeActive) {
+                controller.setSelectionMode(true);
+                if (selectedSlugs.contains(slug)) {
+                    controller.setSelected(true);
                 }
+            }
 
-                listaControladores.add(controller);
-                tilePanePersonajes.getChildren().add(card);
+            controladores.add(controller);
+            fichas.add(card);
 
-            } catch (IOException e) {
-                logger.error("Error al cargar la ficha del personaje", e);
-            }
+        } catch (IOException e) {
+            logger.error("Error al cargar la ficha del personaje", e);
         }
+    }
 
-        if (selectionModeActive) {
-            actualizarEstadoBotonExportar();
-        }
-        actualizarControlesPaginacion();
+    /**
+     * Muestra en una ficha el nombre, la casa y la imagen de un personaje.
+     *
+     * @param controller controlador de la ficha
+     * @param p          personaje a mostrar
+     * @author Nizam
+     */
+    private void pintarFicha(ControladorFichaPersonaje controller, Map<String, String> p) {
+        String nombre = p.getOrDefault("name", "N/A");
+        String casa = p.getOrDefault("house", "Desconocida");
+        String imagenArchivo = p.getOrDefault("image", "");
+        controller.setData(nombre, casa, imagenArchivo);
     }
 
     /**
@@ -541,33 +866,29 @@ public class ControladorVisualizarPersonajes {
         List<JasperPrint> jasperPrints = new ArrayList<>();
         int exportados = 0;
 
-        for (String slug : selectedSlugs) {
-            Optional<Map<String, String>> datosOpt = listaPersonajesMapeados.stream().filter(map -> slug.equals(map.get("slug"))).findFirst();
-
-            if (datosOpt.isPresent()) {
-                Map<String, String> p = datosOpt.get();
-                try {
-                    Map<String, Object> parameters = new HashMap<>();
-                    parameters.put("Nombre", p.getOrDefault("name", ""));
-                    parameters.put("Alias", p.getOrDefault("alias_names", ""));
-                    parameters.put("Casa", p.getOrDefault("house", ""));
-                    parameters.put("Genero", p.getOrDefault("gender", ""));
-                    parameters.put("Especie", p.getOrDefault("species", ""));
-                    parameters.put("Ojos", p.getOrDefault("eye_color", ""));
-                    parameters.put("Pelo", p.getOrDefault("hair_color", ""));
-                    parameters.put("Piel", p.getOrDefault("skin_color", ""));
-                    parameters.put("Patronus", p.getOrDefault("patronus", ""));
+        for (Map<String, String> p : PersonajeCSVManager.findAllBySlugs(selectedSlugs)) {
+            String slug = p.getOrDefault("slug", "");
+            try {
+                Map<String, Object> parameters = new HashMap<>();
+                parameters.put("Nombre", p.getOrDefault("name", ""));
+                parameters.put("Alias", p.getOrDefault("alias_names", ""));
+                parameters.put("Casa", p.getOrDefault("house", ""));
+                parameters.put("Genero", p.getOrDefault("gender", ""));
+                parameters.put("Especie", p.getOrDefault("species", ""));
+                parameters.put("Ojos", p.getOrDefault("eye_color", ""));
+                parameters.put("Pelo", p.getOrDefault("hair_color", ""));
+                parameters.put("Piel", p.getOrDefault("skin_color", ""));
+                parameters.put("Patronus", p.getOrDefault("patronus", ""));
 
-                    parameters.put("Imagen", obtenerStreamImagen(p));
+                parameters.put("Imagen", obtenerStreamImagen(p));
 
-                    JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, new JREmptyDataSource(1));
+                JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, new JREmptyDataSource(1));
 
-                    jasperPrints.add(jasperPrint);
-                    exportados++;
+                jasperPrints.add(jasperPrint);
+                exportados++;
 
-                } catch (Exception e) {
-                    logger.error("Error generando reporte para {}", slug, e);
-                }
+            } catch (Exception e) {
+                logger.error("Error generando reporte para {}", slug, e);
             }
         }
 
@@ -599,7 +920,7 @@ public class ControladorVisualizarPersonajes {
     }
 
     /**
-     * Elimina los personajes seleccionados de la lista y del CSV.
+     * Elimina los personajes seleccionados de la lista y del CSV con una única reescritura.
      * Muestra alerta de confirmación antes de proceder.
      *
      * @author Telmo
@@ -618,10 +939,10 @@ public class ControladorVisualizarPersonajes {
             boolean algunError = false;
             int eliminados = 0;
 
-            Set<String> slugsParaBorrar = new HashSet<>(selectedSlugs);
+            Map<String, Boolean> resultados = PersonajeCSVManager.eliminarPersonajesPorSlugs(new ArrayList<>(selectedSlugs));
 
-            for (String slug : slugsParaBorrar) {
-                if (PersonajeCSVManager.eliminarPersonajePorSlug(slug)) {
+            for (boolean eliminado : resultados.values()) {
+                if (eliminado) {
                     eliminados++;
                 } else {
                     algunError = true;
@@ -629,11 +950,11 @@ public class ControladorVisualizarPersonajes {
             }
 
             if (eliminados > 0) {
+                // Las fichas eliminadas desaparecen al aplicar los cambios que publica el repositorio
                 selectedSlugs.clear();
                 if (selectionModeActive) {
                     actualizarEstadoBotonExportar();
                 }
-                recargarListaCompleta();
 
                 String msg = resources.getString("se.han.eliminado") + " " + eliminados + " " + resources.getString("personaje.correctamente");
                 if (algunError)
@@ -654,13 +975,30 @@ public class ControladorVisualizarPersonajes {
     public void setPaginaActual(int nuevaPagina) {
         if (nuevaPagina >= 1 && nuevaPagina <= totalPaginas) {
             paginaActual = nuevaPagina;
-            cargarPersonajes(listaPersonajesMapeados);
+            cargarPersonajes(listaFiltrada);
             logger.debug("Página cambiada a {}", nuevaPagina);
         } else {
             logger.warn("Número de página {} fuera de rango (1 - {}).", nuevaPagina, totalPaginas);
         }
     }
 
+    /**
+     * Cambia a la página en la que aparece el personaje dentro de la lista mostrada. Se busca desde el
+     * final porque sin orden los personajes nuevos están al final; si no aparece, se va a la última página.
+     *
+     * @param slug slug del personaje
+     * @author Nizam
+     */
+    private void mostrarPaginaDe(String slug) {
+        for (int i = listaFiltrada.size() - 1; i >= 0; i--) {
+            if (Objects.equals(slug, listaFiltrada.get(i).get("slug"))) {
+                setPaginaActual(i / personajesPorPagina + 1);
+                return;
+            }
+        }
+        setPaginaActual(totalPaginas);
+    }
+
     /**
      * Actualiza el estado visual de los controles de paginación.
      *
@@ -771,6 +1109,44 @@ public class ControladorVisualizarPersonajes {
      */
     @FXML
     private void limpiarFiltros() {
+        limpiarFiltros(null);
+    }
+
+    /**
+     * Limpia todos los filtros y, cuando la vista completa ya se muestra, ejecuta la continuación.
+     * Con un orden elegido la lista se vuelve a filtrar en segundo plano, así que la continuación espera a ese resultado.
+     *
+     * @param alTerminar acción que se ejecuta en el hilo de JavaFX con la vista ya restaurada, o {@code null}
+     * @author Telmo
+     */
+    private void limpiarFiltros(Runnable alTerminar) {
+        desmarcarCasillas();
+        if (searchField != null) {
+            searchField.setText("");
+        }
+        cancelarFiltrado();
+        filtroActual = null;
+        consultaActual = ConsultaFiltro.interpretar("");
+        seleccionActual = new int[FacetasPersonajes.FACETAS];
+        if (ordenActual != null) {
+            // El orden elegido se conserva: sin filtros es la lista completa ordenada
+            filtrarPersonajes(1, alTerminar);
+            return;
+        }
+        listaFiltrada = listaPersonajesMapeados;
+        calcularTotalPaginas();
+        paginaActual = 1;
+        cargarPersonajes(listaFiltrada);
+        actualizarRecuentos();
+        if (alTerminar != null) alTerminar.run();
+    }
+
+    /**
+     * Desmarca todas las casillas del panel de filtros.
+     *
+     * @author Telmo
+     */
+    private void desmarcarCasillas() {
         if (accordionFiltros != null) {
             for (TitledPane pane : accordionFiltros.getPanes()) {
                 Node content = pane.getContent();
@@ -783,147 +1159,369 @@ public class ControladorVisualizarPersonajes {
                 }
             }
         }
-        if (searchField != null) {
-            searchField.setText("");
+    }
+
+    /**
+     * Programa un filtrado tras {@link #RETARDO_FILTRO}. Cada llamada reinicia la espera, de modo que al
+     * escribir o marcar varias casillas seguidas solo se filtra una vez, al terminar.
+     *
+     * @author Nizam
+     */
+    private void programarFiltrado() {
+        if (pausaFiltro == null) {
+            pausaFiltro = new PauseTransition(RETARDO_FILTRO);
+            pausaFiltro.setOnFinished(e -> filtrarPersonajes());
         }
-        paginaActual = 1;
-        cargarPersonajes(listaPersonajesMapeados);
+        pausaFiltro.playFromStart();
     }
 
     /**
-     * Ejecuta el algoritmo de filtrado combinado de texto (Nombre) + CheckBox de múltiples categorías.
+     * Descarta el filtrado programado y cancela el que esté en curso, sin publicar su resultado.
+     *
+     * @author Nizam
+     */
+    private void cancelarFiltrado() {
+        if (pausaFiltro != null) pausaFiltro.stop();
+        if (tareaFiltrado != null) {
+            tareaFiltrado.cancel();
+            tareaFiltrado = null;
+        }
+    }
+
+    /**
+     * Ejecuta el algoritmo de filtrado combinado de texto (Nombre) + CheckBox de múltiples categorías
+     * y muestra la primera página del resultado.
      *
      * @author Telmo
      */
     private void filtrarPersonajes() {
+        filtrarPersonajes(1);
+    }
+
+    /**
+     * Ejecuta el filtrado en segundo plano y muestra la página indicada del resultado.
+     * El estado de los filtros se lee aquí, en el hilo de JavaFX; la búsqueda y el recorrido de la lista
+     * se hacen en otro hilo y solo el resultado final vuelve al hilo de JavaFX. Un filtrado nuevo cancela
+     * el anterior, y si la lista cambia mientras se filtra el resultado se descarta y se vuelve a filtrar.
+     *
+     * @param pagina página que se muestra al terminar (se ajusta si el resultado tiene menos)
+     * @author Telmo
+     */
+    private void filtrarPersonajes(int pagina) {
+        filtrarPersonajes(pagina, null);
+    }
+
+    /**
+     * Ejecuta el filtrado en segundo plano como {@link #filtrarPersonajes(int)} y, cuando el resultado ya se
+     * muestra, ejecuta la continuación. Si otro filtrado cancela este, la continuación no se ejecuta.
+     *
+     * @param pagina     página que se muestra al terminar (se ajusta si el resultado tiene menos)
+     * @param alTerminar acción que se ejecuta en el hilo de JavaFX tras publicar el resultado, o {@code null}
+     * @author Telmo
+     */
+    private void filtrarPersonajes(int pagina, Runnable alTerminar) {
+        cancelarFiltrado();
         if (listaPersonajesMapeados == null || listaPersonajesMapeados.isEmpty()) {
             mandarAlertas(Alert.AlertType.WARNING, resources.getString("advertencia"), null, resources.getString("no.importado.alerta.mensaje"));
             return;
         }
 
         String rawText = (searchField != null) ? searchField.getText() : "";
-        String searchText = rawText.toLowerCase().trim();
+        // El texto se interpreta y se compila una sola vez; si solo es texto se busca como hasta ahora
+        ConsultaFiltro filtro = ConsultaFiltro.interpretar(rawText);
+        ConsultaTexto consulta = filtro.texto();
+        int[] seleccion = leerSeleccion();
+
+        // Sin índices, una búsqueda sin campos recorre solo los nombres, que están en memoria; las columnas
+        // de texto se leen de disco y se buscan cuando esté su índice
+        Predicate<Map<String, String>> recorrido = consulta == null || consulta.vacia() || consulta.conCampos() || consulta.aproximada()
+                ? crearFiltro(filtro, seleccion)
+                : p -> IndiceNombres.normalizar(p.get("name")).contains(consulta.nombre()) && FacetasPersonajes.cumple(seleccion, p);
+        boolean hayFiltro = !filtro.vacia() || FacetasPersonajes.filtra(seleccion);
+        String columnaOrden = comboOrden != null ? comboOrden.getValue() : null;
+        CriterioOrden criterio = columnaOrden == null || columnaOrden.isEmpty() ? null
+                : new CriterioOrden(columnaOrden, ordenAscendente, idioma);
+
+        List<Map<String, String>> base = listaPersonajesMapeados;
+        ConsultaFiltro[] usada = {filtro};
+        Task<List<Map<String, String>>> tarea = new Task<>() {
+            @Override
+            protected List<Map<String, String>> call() {
+                // Con los índices de búsqueda el resultado es una vista sobre la lista que se pagina sin
+                // copiarla, los encontrados por relevancia o los que da la permutación del orden elegido;
+                // si aún no están listos se recorre la lista
+                RepositorioPersonajes repo = RepositorioPersonajes.getInstancia();
+                List<Map<String, String>> indexados = repo.filtrar(filtro, seleccion, base, criterio, this::isCancelled);
+                if (indexados != null && indexados.isEmpty() && consulta != null) {
+                    // Nada con el texto exacto: se prueba con los nombres parecidos (letras de más, de menos o cambiadas)
+                    ConsultaTexto aproximada = consulta.versionAproximada();
+                    List<Map<String, String>> parecidos = aproximada == null ? null : repo.filtrar(aproximada, seleccion, base, criterio);
+                    if (parecidos != null && !parecidos.isEmpty()) {
+                        usada[0] = ConsultaFiltro.de(aproximada);
+                        return parecidos;
+                    }
+                }
+                if (indexados != null || isCancelled()) return indexados;
+                // Recorrido en varios hilos si el filtro es caro para la lista, sin copiar el resultado
+                List<Map<String, String>> filtrados = EjecutorFiltros.filtrar(base, recorrido, this::isCancelled);
+                if (filtrados == null || criterio == null || isCancelled()) return filtrados;
+                return criterio.ordenar(filtrados);
+            }
+        };
 
-        Set<Integer> selectedHousesIndices = new HashSet<>();
-        Set<Integer> selectedNationalityIndices = new HashSet<>();
-        Set<Integer> selectedSpeciesIndices = new HashSet<>();
-        Set<Integer> selectedGenderIndices = new HashSet<>();
+        tarea.setOnSucceeded(e -> {
+            if (tarea != tareaFiltrado) return;
+            tareaFiltrado = null;
+            if (base != listaPersonajesMapeados) {
+                filtrarPersonajes(pagina, alTerminar);
+                return;
+            }
+            List<Map<String, String>> filtrados = tarea.getValue();
+            logger.debug("Filtro aplicado. Coincidencias encontradas: {}", filtrados.size());
+
+            if (usada[0] != filtro) logger.debug("Sin coincidencias exactas; se muestran nombres parecidos.");
+            // Con un orden elegido el resultado deja de ser la lista completa aunque no filtre nada
+            filtroActual = hayFiltro || criterio != null ? crearFiltro(usada[0], seleccion) : null;
+            consultaActual = usada[0];
+            ordenActual = criterio;
+            seleccionActual = seleccion;
+            listaFiltrada = filtrados;
+            int totalFiltrados = filtrados.size();
+            totalPaginas = (int) Math.ceil((double) totalFiltrados / personajesPorPagina);
+            paginaActual = Math.max(1, Math.min(pagina, totalPaginas));
+
+            cargarPersonajes(filtrados);
+            actualizarRecuentos();
+            if (alTerminar != null) alTerminar.run();
+        });
+        tarea.setOnFailed(e -> {
+            if (tarea == tareaFiltrado) tareaFiltrado = null;
+            logger.error("Error al filtrar los personajes", tarea.getException());
+        });
+
+        tareaFiltrado = tarea;
+        Thread hilo = new Thread(tarea, "filtro-personajes");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
 
+    /**
+     * Lee las opciones marcadas de cada faceta, un bit por casilla en el orden del panel.
+     *
+     * @return opciones marcadas de cada faceta de {@link FacetasPersonajes}
+     * @author Telmo
+     */
+    private int[] leerSeleccion() {
+        int[] seleccion = new int[FacetasPersonajes.FACETAS];
         if (accordionFiltros != null) {
             List<TitledPane> panes = accordionFiltros.getPanes();
-            for (int i = 0; i < panes.size(); i++) {
+            for (int i = 0; i < panes.size() && i < FacetasPersonajes.FACETAS; i++) {
                 TitledPane pane = panes.get(i);
                 Node content = pane.getContent();
                 if (content instanceof VBox) {
                     int checkBoxIndex = 0;
                     for (Node node : ((VBox) content).getChildren()) {
-                        if (node instanceof CheckBox cb && cb.isSelected()) {
-                            switch (i) {
-                                case 0 -> selectedHousesIndices.add(checkBoxIndex);
-                                case 1 -> selectedNationalityIndices.add(checkBoxIndex);
-                                case 2 -> selectedSpeciesIndices.add(checkBoxIndex);
-                                case 3 -> selectedGenderIndices.add(checkBoxIndex);
-                            }
+                        if (node instanceof CheckBox cb) {
+                            if (cb.isSelected()) seleccion[i] |= 1 << checkBoxIndex;
+                            checkBoxIndex++;
                         }
-                        if (node instanceof CheckBox) checkBoxIndex++;
                     }
                 }
             }
         }
+        return seleccion;
+    }
 
-        List<Map<String, String>> filtrados = listaPersonajesMapeados.stream()
-                .filter(p -> {
-                    String nombrePersonaje = p.getOrDefault("name", "").toLowerCase();
-
-                    if (!searchText.isEmpty() && !nombrePersonaje.contains(searchText)) return false;
-
-                    if (!selectedHousesIndices.isEmpty()) {
-                        String house = p.getOrDefault("house", "").toLowerCase();
-                        boolean match = isMatch(selectedHousesIndices, house.contains("gryffindor"), house.contains("slytherin"), house.contains("hufflepuff"), house.contains("ravenclaw"));
-                        if (!match) return false;
-                    }
-
-                    if (!selectedNationalityIndices.isEmpty()) {
-                        String nac = p.getOrDefault("nationality", "").toLowerCase();
-                        boolean match = isMatch(selectedNationalityIndices,
-                                (nac.contains("brit") || nac.contains("kingdom") || nac.contains("uk")
-                                        || nac.contains("scot") || nac.contains("eng")),
-                                (nac.contains("irish") || nac.contains("ireland")),
-                                (nac.contains("french") || nac.contains("france")),
-                                (nac.contains("bulgar") || nac.contains("bulgaria")));
-                        if (!match) return false;
-                    }
-
-                    if (!selectedSpeciesIndices.isEmpty()) {
-                        String species = p.getOrDefault("species", "").toLowerCase();
-                        boolean match = isMatch(selectedSpeciesIndices, species.equals("human"),
-                                (species.contains("half") || species.contains("mixed")), (species.contains("elf")),
-                                (species.contains("giant")));
-                        if (!match) return false;
-                    }
-
-                    if (!selectedGenderIndices.isEmpty()) {
-                        String gender = p.getOrDefault("gender", "").toLowerCase();
-                        boolean match = selectedGenderIndices.contains(0) && gender.equals("male");
-                        if (selectedGenderIndices.contains(1) && gender.equals("female")) match = true;
-                        return match;
-                    }
+    /**
+     * Crea el filtro de un personaje por la consulta y por categorías, para los recorridos y los cambios.
+     * Las casillas se comprueban primero porque son lo más barato.
+     *
+     * @param consulta  consulta del buscador
+     * @param seleccion opciones marcadas de cada faceta
+     * @return condición que cumple un personaje si está en el resultado
+     * @author Nizam
+     */
+    private static Predicate<Map<String, String>> crearFiltro(ConsultaFiltro consulta, int[] seleccion) {
+        if (consulta.vacia()) return p -> FacetasPersonajes.cumple(seleccion, p);
+        return p -> FacetasPersonajes.cumple(seleccion, p) && consulta.cumple(p);
+    }
 
-                    return true;
-                })
-                .collect(Collectors.toList());
+    /**
+     * Recarga toda la lista de personajes desde el repositorio y replica filtros actuales.
+     * Mantiene página actual si es válida; se usa cuando los datos se han sustituido por completo
+     * y no hay cambios concretos que aplicar.
+     *
+     * @author Telmo
+     */
+    private void recargarListaCompleta() {
+        logger.info("Recargando lista completa de personajes...");
+        int paginaGuardada = this.paginaActual;
+        listaPersonajesMapeados = PersonajeCSVManager.leerTodosLosPersonajes();
+        if (listaPersonajesMapeados.isEmpty()) {
+            listaFiltrada = new ArrayList<>();
+            mostrarMensajeImportar();
+            return;
+        }
+        filtrarPersonajes(paginaGuardada);
+    }
 
-        logger.debug("Filtro aplicado. Coincidencias encontradas: {}", filtrados.size());
+    /**
+     * Aplica los cambios publicados por el repositorio sobre la lista en memoria y el resultado del
+     * filtro actual, sin volver a leer ni a filtrar todo el anuario. Solo se evalúa el filtro sobre los
+     * personajes añadidos o modificados y solo se vuelven a pintar sus fichas si están en la página visible.
+     * Si los cambios no parten de la lista que tiene la vista (o piden una recarga), se recarga entera.
+     *
+     * @param cambios cambios publicados por {@link RepositorioPersonajes}
+     * @author Nizam
+     */
+    private void aplicarCambios(CambiosPersonajes cambios) {
+        if (listaPersonajesMapeados == null || cambios.anteriores() != listaPersonajesMapeados) {
+            if (cambios.recargaCompleta() && PersonajeCSVManager.leerTodosLosPersonajes() == listaPersonajesMapeados) return;
+            if (cambios.personajes() != listaPersonajesMapeados) recargarListaCompleta();
+            return;
+        }
+        listaPersonajesMapeados = cambios.personajes();
 
-        int totalFiltrados = filtrados.size();
-        totalPaginas = (int) Math.ceil((double) totalFiltrados / personajesPorPagina);
-        paginaActual = 1;
+        Set<String> repintar = new HashSet<>();
+        if (filtroActual == null) {
+            // Sin filtro el resultado es la lista completa
+            listaFiltrada = listaPersonajesMapeados;
+            cambios.actualizados().values().forEach(nuevo -> repintar.add(CambiosPersonajes.clave(nuevo.get("slug"))));
+        } else {
+            aplicarCambiosFiltrados(cambios, repintar);
+        }
 
-        cargarPersonajes(filtrados);
+        selectedSlugs.removeIf(slug -> cambios.eliminados().contains(CambiosPersonajes.clave(slug)));
+        cambios.actualizados().forEach((clave, nuevo) -> {
+            if (selectedSlugs.removeIf(slug -> CambiosPersonajes.clave(slug).equals(clave))) {
+                selectedSlugs.add(nuevo.getOrDefault("slug", ""));
+            }
+        });
+        totalPaginas = Math.max(1, (int) Math.ceil((double) listaFiltrada.size() / personajesPorPagina));
+        actualizarPaginaVisible(repintar);
+        actualizarRecuentos();
+        logger.debug("Aplicados cambios en la vista: {} altas, {} modificaciones, {} bajas.",
+                cambios.insertados().size(), cambios.actualizados().size(), cambios.eliminados().size());
     }
 
     /**
-     * Determina si algún filtro seleccionado coincide con las condiciones booleanas del personaje.
+     * Aplica los cambios sobre el resultado de un filtro activo, evaluándolo solo sobre los personajes
+     * añadidos o modificados. Si el resultado es de solo lectura se copia antes.
      *
-     * @param selectedSpeciesIndices conjunto de índices de filtros activos (0-3)
-     * @param species primer filtro booleano
-     * @param species1 segundo filtro booleano
-     * @param species2 tercer filtro booleano
-     * @param species3 cuarto filtro booleano
-     * @return true si al menos un filtro seleccionado coincide
-     * @author Erlantz
+     * @param cambios  cambios publicados por {@link RepositorioPersonajes}
+     * @param repintar claves de las fichas que deben repintarse; se añaden las de los personajes modificados
+     * @author Nizam
      */
-    private static boolean isMatch(Set<Integer> selectedSpeciesIndices, boolean species, boolean species1, boolean species2, boolean species3) {
-        boolean match = selectedSpeciesIndices.contains(0) && species;
-        if (selectedSpeciesIndices.contains(1) && species1) {
-            match = true;
+    private void aplicarCambiosFiltrados(CambiosPersonajes cambios, Set<String> repintar) {
+        if (!(listaFiltrada instanceof ArrayList)) listaFiltrada = new ArrayList<>(listaFiltrada);
+        Set<String> tratados = new HashSet<>();
+        ListIterator<Map<String, String>> it = listaFiltrada.listIterator();
+        while (it.hasNext()) {
+            String clave = CambiosPersonajes.clave(it.next().get("slug"));
+            if (cambios.eliminados().contains(clave)) {
+                it.remove();
+                continue;
+            }
+            Map<String, String> nuevo = cambios.actualizados().get(clave);
+            if (nuevo == null) continue;
+            tratados.add(clave);
+            if (filtroActual.test(nuevo)) {
+                it.set(nuevo);
+                repintar.add(CambiosPersonajes.clave(nuevo.get("slug")));
+            } else {
+                it.remove();
+            }
         }
-        if (selectedSpeciesIndices.contains(2) && species2) {
-            match = true;
+
+        if (consultaActual.texto() != null && !consultaActual.vacia() || ordenActual != null) {
+            // Con texto o con un orden elegido el resultado no va en el orden de la lista: lo que empieza
+            // a cumplir el filtro se añade al final hasta el siguiente filtrado
+            cambios.actualizados().forEach((clave, nuevo) -> {
+                if (!tratados.contains(clave) && filtroActual.test(nuevo)) listaFiltrada.add(nuevo);
+            });
+            for (Map<String, String> nuevo : cambios.insertados()) {
+                if (filtroActual.test(nuevo)) listaFiltrada.add(nuevo);
+            }
+            return;
         }
-        if (selectedSpeciesIndices.contains(3) && species3) {
-            match = true;
+
+        // Personajes modificados que antes no cumplían el filtro y ahora sí: se recoloca la lista
+        // filtrada en el orden de la completa comparando por identidad, sin volver a evaluar el filtro
+        Set<Map<String, String>> incorporados = Collections.newSetFromMap(new IdentityHashMap<>());
+        cambios.actualizados().forEach((clave, nuevo) -> {
+            if (!tratados.contains(clave) && filtroActual.test(nuevo)) incorporados.add(nuevo);
+        });
+        for (Map<String, String> nuevo : cambios.insertados()) {
+            if (filtroActual.test(nuevo)) {
+                if (incorporados.isEmpty()) listaFiltrada.add(nuevo);
+                else incorporados.add(nuevo);
+            }
+        }
+        if (!incorporados.isEmpty()) {
+            incorporados.addAll(listaFiltrada);
+            List<Map<String, String>> ordenada = new ArrayList<>(incorporados.size());
+            for (Map<String, String> p : listaPersonajesMapeados) {
+                if (incorporados.contains(p)) ordenada.add(p);
+            }
+            listaFiltrada = ordenada;
         }
-        return match;
     }
 
     /**
-     * Recarga toda la lista de personajes desde CSV y replica filtros actuales.
-     * Mantiene página actual si es válida, usado tras eliminar personajes.
+     * Vuelve a montar la página actual reutilizando las fichas de los personajes que siguen en ella.
+     * Solo se crean fichas para los personajes que acaban de entrar en la página y solo se repintan
+     * las de los personajes modificados.
      *
-     * @author Telmo
+     * @param repintar claves de los personajes modificados cuyas fichas deben repintarse
+     * @author Nizam
      */
-    private void recargarListaCompleta() {
-        logger.info("Recargando lista completa de personajes desde disco...");
-        int paginaGuardada = this.paginaActual;
-        listaPersonajesMapeados = PersonajeCSVManager.leerTodosLosPersonajes();
-        filtrarPersonajes();
+    private void actualizarPaginaVisible(Set<String> repintar) {
+        if (tilePanePersonajes == null) return;
+        if (listaControladores == null || listaControladores.size() != tilePanePersonajes.getChildren().size()) {
+            cargarPersonajes(listaFiltrada);
+            return;
+        }
+        if (paginaActual > totalPaginas) {
+            paginaActual = totalPaginas;
+        }
 
-        if (paginaGuardada <= totalPaginas) {
-            setPaginaActual(paginaGuardada);
-        } else {
-            setPaginaActual(Math.max(1, totalPaginas));
+        int indiceInicio = (paginaActual - 1) * personajesPorPagina;
+        int indiceFin = Math.min(indiceInicio + personajesPorPagina, listaFiltrada.size());
+
+        Map<String, Integer> existentes = new HashMap<>();
+        for (int i = 0; i < listaControladores.size(); i++) {
+            existentes.put(CambiosPersonajes.clave(listaControladores.get(i).getPersonajeSlug()), i);
         }
+
+        List<ControladorFichaPersonaje> controladores = new ArrayList<>(personajesPorPagina);
+        List<Node> fichas = new ArrayList<>(personajesPorPagina);
+        int creadas = 0;
+        for (int i = indiceInicio; i < indiceFin; i++) {
+            Map<String, String> p = listaFiltrada.get(i);
+            String clave = CambiosPersonajes.clave(p.get("slug"));
+            Integer existente = existentes.remove(clave);
+            if (existente == null) {
+                crearFicha(p, controladores, fichas);
+                creadas++;
+                continue;
+            }
+            ControladorFichaPersonaje controller = listaControladores.get(existente);
+            if (repintar.contains(clave)) {
+                controller.setPersonajeSlug(p.getOrDefault("slug", ""));
+                pintarFicha(controller, p);
+            }
+            controladores.add(controller);
+            fichas.add(tilePanePersonajes.getChildren().get(existente));
+        }
+
+        listaControladores = controladores;
+        tilePanePersonajes.getChildren().setAll(fichas);
+        logger.debug("Página {} actualizada: {} fichas nuevas, {} repintadas.", paginaActual, creadas, repintar.size());
+
+        if (selectionModeActive) {
+            actualizarEstadoBotonExportar();
+        }
+        actualizarControlesPaginacion();
     }
 
     /**
@@ -950,10 +1548,14 @@ public class ControladorVisualizarPersonajes {
 
             ControladorNuevoPersonaje controller = loader.getController();
             controller.setOnPersonajeGuardado(() -> {
-                listaPersonajesMapeados = PersonajeCSVManager.leerTodosLosPersonajes();
-                limpiarFiltros();
-                calcularTotalPaginas();
-                setPaginaActual(totalPaginas);
+                // El alta ya se ha aplicado con los cambios del repositorio; solo se lleva al usuario hasta ella,
+                // una vez que la lista sin filtros (quizá ordenada en segundo plano) se está mostrando
+                String slug = controller.getSlugActualizado();
+                if (filtroActual != null) {
+                    limpiarFiltros(() -> mostrarPaginaDe(slug));
+                } else {
+                    mostrarPaginaDe(slug);
+                }
             });
 
             Scene scene = new Scene(root);
@@ -1056,9 +1658,16 @@ public class ControladorVisualizarPersonajes {
         botonImportar.setDisable(false);
         mensaje.setVisible(false);
 
+        PersonajeCSVManager.descartarCambiosPendientes();
         listaPersonajesMapeados = PersonajeCSVManager.leerTodosLosPersonajes();
+        cancelarFiltrado();
+        filtroActual = null;
+        consultaActual = ConsultaFiltro.interpretar("");
+        seleccionActual = new int[FacetasPersonajes.FACETAS];
+        listaFiltrada = listaPersonajesMapeados;
         calcularTotalPaginas();
-        cargarPersonajes(listaPersonajesMapeados);
+        cargarPersonajes(listaFiltrada);
+        actualizarRecuentos();
     }
 
     /**
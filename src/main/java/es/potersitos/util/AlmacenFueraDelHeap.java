@@ -0,0 +1,148 @@
+package es.potersitos.util;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+/**
+ * Almacén de personajes fuera del heap: proyecta todosPersonajes.bin ({@link BinarioIndexado}) como un
+ * {@link MemorySegment} y decodifica cada campo solo cuando se consulta.
+ * En el heap quedan únicamente la posición de cada registro y las vistas de fila, de modo que un anuario
+ * de millones de personajes no necesita un heap de varios gigas y el recolector no tiene que recorrer
+ * sus textos durante los filtrados. A diferencia de {@link java.nio.MappedByteBuffer}, el segmento
+ * admite archivos de más de 2 GB.
+ * <p>
+ * Los registros nunca se mueven ni se modifican dentro del binario (las altas se añaden al final y las
+ * bajas solo tocan el índice), así que las posiciones leídas al cargar siguen siendo válidas mientras la
+ * proyección esté abierta. La proyección se libera al cerrar el almacén.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class AlmacenFueraDelHeap implements TablaPersonajes.Fuente {
+
+    /** Entero de 32 bits tal como lo escribe {@link java.io.DataOutputStream}. */
+    private static final ValueLayout.OfInt ENTERO = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    /** Entero de 64 bits tal como lo escribe {@link java.io.DataOutputStream}. */
+    private static final ValueLayout.OfLong LARGO = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    /** Ámbito de la proyección, compartido entre hilos. */
+    private final Arena arena;
+
+    /** Binario proyectado completo. */
+    private final MemorySegment segmento;
+
+    /** Número de columnas de cada registro. */
+    private final int columnas;
+
+    /**
+     * Crea el almacén sobre una proyección ya hecha.
+     *
+     * @param arena    ámbito de la proyección
+     * @param segmento binario proyectado
+     * @param columnas número de columnas de cada registro
+     * @author Nizam
+     */
+    private AlmacenFueraDelHeap(Arena arena, MemorySegment segmento, int columnas) {
+        this.arena = arena;
+        this.segmento = segmento;
+        this.columnas = columnas;
+    }
+
+    /**
+     * Proyecta un binario indexado en memoria.
+     *
+     * @param ruta     binario a proyectar (ya comprobado con {@link BinarioIndexado#abrir(Path)})
+     * @param columnas número de columnas de cada registro
+     * @return almacén abierto
+     * @throws IOException si no se puede proyectar
+     * @author Nizam
+     */
+    static AlmacenFueraDelHeap abrir(Path ruta, int columnas) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            MemorySegment segmento = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size(), arena);
+            if (segmento.byteSize() < BinarioIndexado.TAMANO_CABECERA || segmento.get(ENTERO, 0) != BinarioIndexado.MAGICO) {
+                throw new IOException("El binario no está en formato indexado");
+            }
+            return new AlmacenFueraDelHeap(arena, segmento, columnas);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Recorre el índice del binario y entrega la posición de cada registro no borrado, en orden.
+     *
+     * @param consumidor receptor de las posiciones
+     * @author Nizam
+     */
+    void recorrer(LongConsumer consumidor) {
+        int registros = segmento.get(ENTERO, BinarioIndexado.POS_REGISTROS);
+        long indice = segmento.get(LARGO, BinarioIndexado.POS_INDICE + Integer.BYTES);
+        for (int n = 0; n < registros; n++) {
+            long posicion = segmento.get(LARGO, indice + (long) n * Long.BYTES);
+            if (posicion != 0) consumidor.accept(posicion);
+        }
+    }
+
+    @Override
+    public String[] leer(long origen) {
+        String[] valores = new String[columnas];
+        long p = origen + Integer.BYTES;
+        for (int c = 0; c < columnas; c++) {
+            int longitud = segmento.get(ENTERO, p);
+            valores[c] = texto(p + Integer.BYTES, longitud);
+            p += Integer.BYTES + longitud;
+        }
+        return valores;
+    }
+
+    @Override
+    public String leerCampo(long origen, int columna) {
+        long p = origen + Integer.BYTES;
+        for (int c = 0; c < columna; c++) {
+            p += Integer.BYTES + segmento.get(ENTERO, p);
+        }
+        return texto(p + Integer.BYTES, segmento.get(ENTERO, p));
+    }
+
+    @Override
+    public boolean lecturaPorCampo() {
+        return true;
+    }
+
+    /**
+     * Decodifica un texto UTF-8 del segmento.
+     *
+     * @param posicion posición del primer byte
+     * @param longitud número de bytes
+     * @return texto decodificado
+     * @author Nizam
+     */
+    private String texto(long posicion, int longitud) {
+        if (longitud == 0) return "";
+        byte[] bytes = new byte[longitud];
+        MemorySegment.copy(segmento, ValueLayout.JAVA_BYTE, posicion, bytes, 0, longitud);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Libera la proyección. Solo debe llamarse cuando ninguna fila la va a consultar.
+     *
+     * @author Nizam
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+}
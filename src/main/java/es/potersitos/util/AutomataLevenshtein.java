@@ -0,0 +1,239 @@
+package es.potersitos.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Búsqueda de las palabras de un diccionario ordenado que están a poca distancia de edición (Levenshtein)
+ * de una dada. Es un autómata de Levenshtein recorrido sobre el diccionario como si fuera un árbol de
+ * prefijos: el estado tras leer un prefijo es la fila de la tabla de distancias de ese prefijo, las palabras
+ * consecutivas comparten las filas de su prefijo común, y en cuanto el mínimo de una fila supera la tolerancia
+ * ninguna palabra con ese prefijo puede servir, así que se saltan todas de una vez con una búsqueda binaria.
+ * Solo se visitan los prefijos cercanos a la palabra buscada, no todo el diccionario.
+ * <p>
+ * Para comparar pocas palabras sueltas está el {@link Patron}, que calcula la distancia con vectores de bits.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class AutomataLevenshtein {
+
+    /**
+     * Constructor privado (clase de utilidades).
+     */
+    private AutomataLevenshtein() {
+    }
+
+    /**
+     * Calcula la tolerancia de una búsqueda aproximada según la longitud de la palabra: ninguna con una o
+     * dos letras, una hasta cinco y dos a partir de seis.
+     *
+     * @param longitud número de caracteres de la palabra buscada
+     * @return distancia de edición máxima admitida
+     * @author Nizam
+     */
+    static int tolerancia(int longitud) {
+        return longitud <= 2 ? 0 : longitud <= 5 ? 1 : 2;
+    }
+
+    /**
+     * Busca las palabras de un diccionario a una distancia no mayor que la tolerancia.
+     *
+     * @param ordenadas  palabras distintas ordenadas con el orden natural de {@link String}
+     * @param total      número de palabras usadas de {@code ordenadas}
+     * @param palabra    palabra buscada
+     * @param tolerancia distancia máxima
+     * @return pares (posición en {@code ordenadas}, distancia) consecutivos, en el orden del diccionario
+     * @author Nizam
+     */
+    static int[] buscar(String[] ordenadas, int total, String palabra, int tolerancia) {
+        int m = palabra.length();
+        int[][] filas = new int[m + tolerancia + 2][m + 1];
+        for (int j = 0; j <= m; j++) filas[0][j] = j;
+        int[] encontradas = new int[16];
+        int n = 0;
+        // Filas válidas para el prefijo de la última palabra visitada
+        String anterior = "";
+        int validas = 0;
+        int i = 0;
+        while (i < total) {
+            String w = ordenadas[i];
+            int fila = Math.min(validas, prefijoComun(anterior, w));
+            boolean podada = false;
+            while (fila < w.length()) {
+                if (fila + 1 == filas.length) {
+                    // Más larga que la buscada más la tolerancia: no puede coincidir
+                    podada = true;
+                    break;
+                }
+                char c = w.charAt(fila);
+                int[] arriba = filas[fila];
+                int[] actual = filas[fila + 1];
+                actual[0] = fila + 1;
+                int minimo = actual[0];
+                for (int j = 1; j <= m; j++) {
+                    int coste = palabra.charAt(j - 1) == c ? 0 : 1;
+                    int v = Math.min(Math.min(actual[j - 1] + 1, arriba[j] + 1), arriba[j - 1] + coste);
+                    actual[j] = v;
+                    if (v < minimo) minimo = v;
+                }
+                fila++;
+                if (minimo > tolerancia) {
+                    podada = true;
+                    break;
+                }
+            }
+            anterior = w;
+            validas = fila;
+            if (podada) {
+                // Ninguna palabra con este prefijo sirve: se salta a la primera que no lo tiene
+                i = siguienteSinPrefijo(ordenadas, i + 1, total, w.substring(0, fila));
+                continue;
+            }
+            if (filas[fila][m] <= tolerancia) {
+                if (n == encontradas.length) encontradas = Arrays.copyOf(encontradas, n * 2);
+                encontradas[n++] = i;
+                encontradas[n++] = filas[fila][m];
+            }
+            i++;
+        }
+        return Arrays.copyOf(encontradas, n);
+    }
+
+    /**
+     * Calcula la longitud del prefijo común de dos palabras.
+     *
+     * @param a primera palabra
+     * @param b segunda palabra
+     * @return número de caracteres iniciales iguales
+     * @author Nizam
+     */
+    private static int prefijoComun(String a, String b) {
+        int limite = Math.min(a.length(), b.length());
+        int k = 0;
+        while (k < limite && a.charAt(k) == b.charAt(k)) k++;
+        return k;
+    }
+
+    /**
+     * Busca la primera palabra que no empieza por un prefijo, sabiendo que las que lo tienen son consecutivas.
+     *
+     * @param ordenadas palabras ordenadas
+     * @param desde     primera posición a considerar
+     * @param total     número de palabras usadas
+     * @param prefijo   prefijo
+     * @return posición de la primera palabra sin el prefijo, o {@code total}
+     * @author Nizam
+     */
+    private static int siguienteSinPrefijo(String[] ordenadas, int desde, int total, String prefijo) {
+        int bajo = desde, alto = total;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (ordenadas[medio].startsWith(prefijo)) bajo = medio + 1;
+            else alto = medio;
+        }
+        return bajo;
+    }
+
+    /**
+     * Palabra preparada para calcular muchas distancias contra ella con el algoritmo de vectores de bits de
+     * Myers (en la variante de Hyyrö para cadenas completas): una máscara por carácter con las posiciones en
+     * que aparece, y unas pocas operaciones sobre un {@code long} por cada carácter del otro texto. Las
+     * palabras de más de 64 caracteres usan la tabla clásica.
+     */
+    static final class Patron {
+        /** Palabra original. */
+        private final String palabra;
+        /** Máscara de cada carácter ASCII. */
+        private final long[] ascii = new long[128];
+        /** Máscara del resto de caracteres. */
+        private final Map<Character, Long> otros = new HashMap<>();
+        /** Bit de la última posición. */
+        private final long ultimo;
+        /** Bits de todas las posiciones. */
+        private final long todos;
+
+        /**
+         * Prepara una palabra.
+         *
+         * @param palabra palabra contra la que se medirán las distancias
+         * @author Nizam
+         */
+        Patron(String palabra) {
+            this.palabra = palabra;
+            int m = palabra.length();
+            ultimo = m == 0 || m > 64 ? 0 : 1L << (m - 1);
+            todos = m >= 64 ? -1L : (1L << m) - 1;
+            if (m > 64) return;
+            for (int i = 0; i < m; i++) {
+                char c = palabra.charAt(i);
+                if (c < 128) ascii[c] |= 1L << i;
+                else otros.merge(c, 1L << i, (x, y) -> x | y);
+            }
+        }
+
+        /**
+         * Calcula la distancia con otra palabra, dejando de calcular en cuanto se sabe que supera la cota.
+         *
+         * @param texto otra palabra
+         * @param cota  distancia a partir de la cual no interesa el valor exacto
+         * @return distancia de Levenshtein, o {@code cota + 1} si es mayor que la cota
+         * @author Nizam
+         */
+        int distancia(String texto, int cota) {
+            int m = palabra.length();
+            int n = texto.length();
+            if (Math.abs(m - n) > cota) return cota + 1;
+            if (m == 0) return n;
+            if (m > 64) {
+                int d = tabla(palabra, texto);
+                return d > cota ? cota + 1 : d;
+            }
+            long pv = todos, mv = 0;
+            int puntuacion = m;
+            for (int j = 0; j < n; j++) {
+                long eq = mascara(texto.charAt(j));
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if ((ph & ultimo) != 0) puntuacion++;
+                else if ((mh & ultimo) != 0) puntuacion--;
+                ph = (ph << 1) | 1;
+                mh <<= 1;
+                pv = (mh | ~(xv | ph)) & todos;
+                mv = ph & xv & todos;
+                // Quedan n - j - 1 caracteres: como mucho restan uno cada uno
+                if (puntuacion - (n - j - 1) > cota) return cota + 1;
+            }
+            return puntuacion;
+        }
+
+        private long mascara(char c) {
+            if (c < 128) return ascii[c];
+            Long m = otros.get(c);
+            return m == null ? 0 : m;
+        }
+
+        /**
+         * Distancia de Levenshtein con la tabla de programación dinámica, en dos filas.
+         */
+        private static int tabla(String a, String b) {
+            int[] anterior = new int[b.length() + 1];
+            int[] actual = new int[b.length() + 1];
+            for (int j = 0; j <= b.length(); j++) anterior[j] = j;
+            for (int i = 1; i <= a.length(); i++) {
+                actual[0] = i;
+                for (int j = 1; j <= b.length(); j++) {
+                    int coste = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                    actual[j] = Math.min(Math.min(actual[j - 1] + 1, anterior[j] + 1), anterior[j - 1] + coste);
+                }
+                int[] t = anterior;
+                anterior = actual;
+                actual = t;
+            }
+            return anterior[b.length()];
+        }
+    }
+}
@@ -0,0 +1,638 @@
+package es.potersitos.util;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Formato binario indexado de todosPersonajes.bin (versión 1).
+ * <pre>
+ * cabecera (64 bytes):
+ *   0  int   mágico "HPBN"
+ *   4  short versión
+ *   6  short número de columnas
+ *   8  int   registros (huecos usados del índice, incluidos los borrados)
+ *   12 int   capacidad del índice
+ *   16 long  posición del índice
+ *   24 long×4 firma del CSV y del diario con los que está sincronizado
+ * índice: un long por registro con la posición del registro (0 = borrado)
+ * registro: int longitud total y, por cada columna, int longitud + bytes UTF-8
+ * </pre>
+ * Añadir un registro es O(1) amortizado: se escribe al final del archivo y ocupa el siguiente hueco del
+ * índice; cuando el índice se llena se copia al final con el doble de capacidad. Las bajas solo ponen el
+ * hueco a 0. Las lecturas se hacen sobre un {@link MappedByteBuffer} del archivo.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class BinarioIndexado implements Closeable {
+
+    /** Número mágico "HPBN". */
+    static final int MAGICO = 0x4850424E;
+
+    /** Versión del formato. */
+    static final short VERSION = 1;
+
+    /** Tamaño de la cabecera. */
+    static final int TAMANO_CABECERA = 64;
+
+    /** Posición del número de registros en la cabecera. */
+    static final int POS_REGISTROS = 8;
+
+    /** Posición de la capacidad y de la posición del índice en la cabecera. */
+    static final int POS_INDICE = 12;
+
+    /** Posición de la firma en la cabecera. */
+    private static final int POS_FIRMA = 24;
+
+    /** Columna del slug dentro de cada registro. */
+    private static final int COLUMNA_SLUG = 2;
+
+    /**
+     * Estado de los archivos de texto con el que el binario está sincronizado.
+     *
+     * @param tamanoCSV       tamaño del CSV
+     * @param modificacionCSV fecha de modificación del CSV en milisegundos
+     * @param tamanoDiario    tamaño del diario activo
+     * @param tamanoApartado  tamaño del diario apartado por una compactación
+     */
+    record Firma(long tamanoCSV, long modificacionCSV, long tamanoDiario, long tamanoApartado) {
+        /** Firma que no coincide con ningún estado real. */
+        static final Firma NINGUNA = new Firma(-1, -1, -1, -1);
+    }
+
+    /** Canal abierto sobre el archivo. */
+    private final FileChannel canal;
+
+    /** Número de columnas de cada registro. */
+    private final int columnas;
+
+    /** Huecos usados del índice. */
+    private int registros;
+
+    /** Capacidad del índice. */
+    private int capacidad;
+
+    /** Posición del índice en el archivo. */
+    private long posicionIndice;
+
+    /** Proyección en memoria del archivo ({@code null} si hay que volver a proyectarlo). */
+    private MappedByteBuffer mapa;
+
+    /** Tabla hash slug → número de registro + 1 (0 = libre), creada en la primera búsqueda. */
+    private int[] porSlug;
+
+    /** Hash del slug de cada hueco de {@link #porSlug}. */
+    private int[] hashesSlug;
+
+    /** Huecos ocupados de {@link #porSlug}. */
+    private int ocupadosSlug;
+
+    /**
+     * Abre un archivo existente en formato indexado.
+     *
+     * @param canal canal de lectura y escritura
+     * @throws IOException si el archivo no tiene el formato esperado
+     * @author Nizam
+     */
+    private BinarioIndexado(FileChannel canal) throws IOException {
+        this.canal = canal;
+        ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA);
+        if (canal.read(cabecera, 0) < TAMANO_CABECERA || cabecera.getInt(0) != MAGICO) {
+            throw new IOException("El binario no está en formato indexado");
+        }
+        if (cabecera.getShort(4) != VERSION) {
+            throw new IOException("Versión de binario no soportada: " + cabecera.getShort(4));
+        }
+        columnas = cabecera.getShort(6);
+        registros = cabecera.getInt(POS_REGISTROS);
+        capacidad = cabecera.getInt(POS_INDICE);
+        posicionIndice = cabecera.getLong(POS_INDICE + 4);
+    }
+
+    /**
+     * Indica si un archivo tiene el formato indexado (y no, por ejemplo, pickle o serialización Java).
+     *
+     * @param ruta archivo a comprobar
+     * @return true si empieza por el número mágico
+     * @author Nizam
+     */
+    static boolean esIndexado(Path ruta) {
+        if (!Files.isRegularFile(ruta)) return false;
+        try (InputStream in = Files.newInputStream(ruta)) {
+            byte[] magico = in.readNBytes(4);
+            return magico.length == 4 && ByteBuffer.wrap(magico).getInt() == MAGICO;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Abre un binario indexado para leer y añadir registros.
+     *
+     * @param ruta archivo a abrir
+     * @return binario abierto
+     * @throws IOException si no existe o no tiene el formato indexado
+     * @author Nizam
+     */
+    static BinarioIndexado abrir(Path ruta) throws IOException {
+        FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new BinarioIndexado(canal);
+        } catch (IOException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Escribe un binario completo de forma atómica.
+     *
+     * @param ruta      archivo destino
+     * @param registros registros con las columnas en orden
+     * @param columnas  número de columnas
+     * @param firma     estado de los archivos de texto que reflejan los registros
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    static void escribir(Path ruta, Collection<String[]> registros, int columnas, Firma firma) throws IOException {
+        int capacidad = Math.max(16, registros.size() * 2);
+        long posicionIndice = TAMANO_CABECERA;
+
+        EscrituraAtomica.escribir(ruta, salida -> {
+            DataOutputStream out = new DataOutputStream(salida);
+            out.writeInt(MAGICO);
+            out.writeShort(VERSION);
+            out.writeShort(columnas);
+            out.writeInt(registros.size());
+            out.writeInt(capacidad);
+            out.writeLong(posicionIndice);
+            escribirFirma(out, firma);
+            out.write(new byte[TAMANO_CABECERA - POS_FIRMA - 32]);
+
+            // Primera pasada: posiciones de cada registro (solo se cuentan bytes)
+            long posicion = posicionIndice + (long) capacidad * Long.BYTES;
+            for (String[] registro : registros) {
+                out.writeLong(posicion);
+                posicion += longitudRegistro(registro, columnas);
+            }
+            out.write(new byte[(capacidad - registros.size()) * Long.BYTES]);
+
+            for (String[] registro : registros) {
+                escribirRegistro(out, registro, columnas);
+            }
+            out.flush();
+        });
+    }
+
+    /**
+     * Escribe un registro en el formato de este archivo (longitud total y, por columna, longitud y bytes UTF-8).
+     * Lo usan también otros archivos que guardan registros legibles con {@link #leerRegistro}.
+     *
+     * @param out      flujo de salida
+     * @param registro columnas del registro
+     * @param columnas número de columnas
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    static void escribirRegistro(DataOutputStream out, String[] registro, int columnas) throws IOException {
+        out.writeInt(longitudRegistro(registro, columnas));
+        for (int c = 0; c < columnas; c++) {
+            byte[] bytes = campo(registro, c).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Fuente de las columnas que una {@link TablaPersonajes} no cargó: lee cada registro por su posición.
+     * El canal es propio, así que sigue siendo válido aunque el archivo se sustituya.
+     *
+     * @param canal    canal de solo lectura sobre el archivo cargado
+     * @param columnas número de columnas de cada registro
+     */
+    record FuenteRegistros(FileChannel canal, int columnas) implements TablaPersonajes.Fuente {
+        @Override
+        public String[] leer(long origen) throws IOException {
+            return leerRegistro(canal, origen, columnas);
+        }
+
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+
+    /**
+     * Devuelve la firma guardada en la cabecera.
+     *
+     * @return firma del binario
+     * @throws IOException si falla la lectura
+     * @author Nizam
+     */
+    Firma firma() throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(32);
+        canal.read(b, POS_FIRMA);
+        return new Firma(b.getLong(0), b.getLong(8), b.getLong(16), b.getLong(24));
+    }
+
+    /**
+     * Guarda una nueva firma en la cabecera.
+     *
+     * @param firma estado de los archivos de texto que refleja ahora el binario
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    void firmar(Firma firma) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(32)
+                .putLong(firma.tamanoCSV()).putLong(firma.modificacionCSV())
+                .putLong(firma.tamanoDiario()).putLong(firma.tamanoApartado())
+                .flip();
+        escribirEn(b, POS_FIRMA);
+        canal.force(false);
+    }
+
+    /**
+     * Devuelve el número de huecos usados del índice (incluidos los borrados).
+     *
+     * @return número de registros
+     * @author Nizam
+     */
+    int numeroRegistros() {
+        return registros;
+    }
+
+    /**
+     * Devuelve el número de columnas de cada registro.
+     *
+     * @return número de columnas
+     * @author Nizam
+     */
+    int numeroColumnas() {
+        return columnas;
+    }
+
+    /**
+     * Lee un registro por su número de orden.
+     *
+     * @param numero número de registro
+     * @return columnas del registro, o {@code null} si está borrado
+     * @throws IOException si falla la lectura
+     * @author Nizam
+     */
+    String[] leer(int numero) throws IOException {
+        MappedByteBuffer m = mapa();
+        long posicion = m.getLong((int) (posicionIndice + (long) numero * Long.BYTES));
+        if (posicion == 0) return null;
+        return decodificar(m, (int) posicion + Integer.BYTES, columnas, null);
+    }
+
+    /**
+     * Recorre en orden todos los registros no borrados decodificando solo las columnas pedidas.
+     *
+     * @param cargar     columnas a decodificar ({@code null} = todas); las demás se devuelven como {@code null}
+     * @param consumidor receptor de las columnas y de la posición de cada registro (para {@link #leerRegistro})
+     * @throws IOException si falla la lectura
+     * @author Nizam
+     */
+    void leerTodos(boolean[] cargar, ObjLongConsumer<String[]> consumidor) throws IOException {
+        MappedByteBuffer m = mapa();
+        for (int n = 0; n < registros; n++) {
+            long posicion = m.getLong((int) (posicionIndice + (long) n * Long.BYTES));
+            if (posicion != 0) consumidor.accept(decodificar(m, (int) posicion + Integer.BYTES, columnas, cargar), posicion);
+        }
+    }
+
+    /**
+     * Lee un registro completo a partir de su posición con lecturas posicionales, sin proyectar el archivo.
+     * Los registros nunca se mueven dentro del archivo, así que la posición sigue siendo válida tras
+     * otras altas y bajas.
+     *
+     * @param canal    canal abierto sobre el binario
+     * @param posicion posición del registro (la recibida en {@link #leerTodos})
+     * @param columnas número de columnas
+     * @return columnas del registro
+     * @throws IOException si falla la lectura o el registro está incompleto
+     * @author Nizam
+     */
+    static String[] leerRegistro(FileChannel canal, long posicion, int columnas) throws IOException {
+        ByteBuffer longitud = ByteBuffer.allocate(Integer.BYTES);
+        leerCompleto(canal, longitud, posicion);
+        ByteBuffer registro = ByteBuffer.allocate(longitud.getInt(0));
+        leerCompleto(canal, registro, posicion);
+        return decodificar(registro, Integer.BYTES, columnas, null);
+    }
+
+    /**
+     * Busca un registro por su slug.
+     *
+     * @param clave slug normalizado
+     * @return número de registro, o -1 si no existe
+     * @throws IOException si falla la lectura
+     * @author Nizam
+     */
+    int buscar(String clave) throws IOException {
+        if (clave.isEmpty()) return -1;
+        if (porSlug == null) indexarSlugs();
+
+        int h = clave.hashCode();
+        int mascara = porSlug.length - 1;
+        for (int i = h & mascara; porSlug[i] != 0; i = (i + 1) & mascara) {
+            int numero = porSlug[i] - 1;
+            if (hashesSlug[i] == h && clave.equals(IndicePersonajes.clave(leerSlug(numero)))) return numero;
+        }
+        return -1;
+    }
+
+    /**
+     * Añade un registro al final en O(1) amortizado.
+     *
+     * @param valores columnas del registro
+     * @return número del registro añadido
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    int anadir(String[] valores) throws IOException {
+        int longitud = longitudRegistro(valores, columnas);
+        ByteBuffer registro = ByteBuffer.allocate(longitud);
+        registro.putInt(longitud);
+        for (int c = 0; c < columnas; c++) {
+            byte[] bytes = campo(valores, c).getBytes(StandardCharsets.UTF_8);
+            registro.putInt(bytes.length).put(bytes);
+        }
+        long posicion = canal.size();
+        escribirEn(registro.flip(), posicion);
+
+        if (registros == capacidad) {
+            reubicarIndice();
+        }
+        escribirEn(ByteBuffer.allocate(Long.BYTES).putLong(0, posicion), posicionIndice + (long) registros * Long.BYTES);
+        canal.force(false);
+
+        // La cabecera es el punto de confirmación: hasta aquí el registro no existe
+        registros++;
+        escribirEn(ByteBuffer.allocate(Integer.BYTES).putInt(0, registros), POS_REGISTROS);
+        canal.force(false);
+        mapa = null;
+
+        if (porSlug != null) insertarSlug(registros - 1, IndicePersonajes.clave(campo(valores, COLUMNA_SLUG)));
+        return registros - 1;
+    }
+
+    /**
+     * Marca un registro como borrado.
+     *
+     * @param numero número de registro
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    void eliminar(int numero) throws IOException {
+        escribirEn(ByteBuffer.allocate(Long.BYTES), posicionIndice + (long) numero * Long.BYTES);
+        canal.force(false);
+        mapa = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapa = null;
+        canal.close();
+    }
+
+    /**
+     * Copia el índice al final del archivo con el doble de capacidad.
+     *
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    private void reubicarIndice() throws IOException {
+        int nuevaCapacidad = capacidad * 2;
+        ByteBuffer indice = ByteBuffer.allocate(nuevaCapacidad * Long.BYTES);
+        canal.read(indice.limit(capacidad * Long.BYTES), posicionIndice);
+        long nuevaPosicion = canal.size();
+        escribirEn(indice.clear(), nuevaPosicion);
+        canal.force(false);
+
+        escribirEn(ByteBuffer.allocate(12).putInt(0, nuevaCapacidad).putLong(4, nuevaPosicion), POS_INDICE);
+        canal.force(false);
+        capacidad = nuevaCapacidad;
+        posicionIndice = nuevaPosicion;
+        mapa = null;
+    }
+
+    /**
+     * Construye la tabla hash de slugs recorriendo una vez todos los registros.
+     *
+     * @throws IOException si falla la lectura
+     * @author Nizam
+     */
+    private void indexarSlugs() throws IOException {
+        int tamano = Math.max(16, Integer.highestOneBit(Math.max(1, registros)) << 2);
+        porSlug = new int[tamano];
+        hashesSlug = new int[tamano];
+        ocupadosSlug = 0;
+        for (int n = 0; n < registros; n++) {
+            String slug = leerSlug(n);
+            if (slug != null) insertarSlug(n, IndicePersonajes.clave(slug));
+        }
+    }
+
+    /**
+     * Añade un registro a la tabla hash de slugs. Los registros borrados se quedan en la tabla
+     * y se descartan al comprobar el slug.
+     *
+     * @param numero número de registro
+     * @param clave  slug normalizado
+     * @throws IOException si hay que reconstruir la tabla y falla la lectura
+     * @author Nizam
+     */
+    private void insertarSlug(int numero, String clave) throws IOException {
+        if (clave.isEmpty()) return;
+        if ((ocupadosSlug + 1) * 2 > porSlug.length) {
+            porSlug = null;
+            indexarSlugs();
+            return;
+        }
+        int h = clave.hashCode();
+        int mascara = porSlug.length - 1;
+        int i = h & mascara;
+        while (porSlug[i] != 0) i = (i + 1) & mascara;
+        porSlug[i] = numero + 1;
+        hashesSlug[i] = h;
+        ocupadosSlug++;
+    }
+
+    /**
+     * Lee solo el slug de un registro.
+     *
+     * @param numero número de registro
+     * @return slug, o {@code null} si el registro está borrado
+     * @throws IOException si falla la lectura
+     * @author Nizam
+     */
+    private String leerSlug(int numero) throws IOException {
+        MappedByteBuffer m = mapa();
+        long posicion = m.getLong((int) (posicionIndice + (long) numero * Long.BYTES));
+        if (posicion == 0) return null;
+        int p = (int) posicion + Integer.BYTES;
+        for (int c = 0; c < COLUMNA_SLUG; c++) {
+            p += Integer.BYTES + m.getInt(p);
+        }
+        byte[] bytes = new byte[m.getInt(p)];
+        m.get(p + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Devuelve la proyección en memoria del archivo completo, rehaciéndola si ha crecido.
+     *
+     * @return proyección de solo lectura
+     * @throws IOException si el archivo no se puede proyectar
+     * @author Nizam
+     */
+    private MappedByteBuffer mapa() throws IOException {
+        if (mapa == null) {
+            long tamano = canal.size();
+            if (tamano > Integer.MAX_VALUE) {
+                throw new IOException("El binario supera el tamaño máximo proyectable (2 GB)");
+            }
+            mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamano);
+        }
+        return mapa;
+    }
+
+    /**
+     * Escribe un búfer completo en una posición del archivo.
+     *
+     * @param bytes    datos a escribir
+     * @param posicion posición de destino
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    private void escribirEn(ByteBuffer bytes, long posicion) throws IOException {
+        while (bytes.hasRemaining()) {
+            posicion += canal.write(bytes, posicion);
+        }
+    }
+
+    /**
+     * Decodifica las columnas de un registro.
+     *
+     * @param b        búfer con el registro
+     * @param p        posición de la primera columna (tras la longitud del registro)
+     * @param columnas número de columnas
+     * @param cargar   columnas a decodificar ({@code null} = todas)
+     * @return columnas del registro, {@code null} en las no decodificadas
+     * @author Nizam
+     */
+    private static String[] decodificar(ByteBuffer b, int p, int columnas, boolean[] cargar) {
+        String[] valores = new String[columnas];
+        for (int c = 0; c < columnas; c++) {
+            int longitud = b.getInt(p);
+            p += Integer.BYTES;
+            if (cargar == null || (c < cargar.length && cargar[c])) {
+                byte[] bytes = new byte[longitud];
+                b.get(p, bytes);
+                valores[c] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            p += longitud;
+        }
+        return valores;
+    }
+
+    /**
+     * Llena un búfer leyendo desde una posición del canal.
+     *
+     * @param canal    canal de lectura
+     * @param b        búfer a llenar
+     * @param posicion posición de origen
+     * @throws IOException si el archivo termina antes de llenarlo
+     * @author Nizam
+     */
+    private static void leerCompleto(FileChannel canal, ByteBuffer b, long posicion) throws IOException {
+        while (b.hasRemaining()) {
+            int leidos = canal.read(b, posicion);
+            if (leidos < 0) throw new IOException("Registro del binario incompleto");
+            posicion += leidos;
+        }
+    }
+
+    /**
+     * Escribe una firma en un flujo.
+     *
+     * @param out   flujo de salida
+     * @param firma firma a escribir
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    private static void escribirFirma(DataOutputStream out, Firma firma) throws IOException {
+        out.writeLong(firma.tamanoCSV());
+        out.writeLong(firma.modificacionCSV());
+        out.writeLong(firma.tamanoDiario());
+        out.writeLong(firma.tamanoApartado());
+    }
+
+    /**
+     * Calcula los bytes que ocupa un registro sin codificarlo.
+     *
+     * @param valores  columnas del registro
+     * @param columnas número de columnas
+     * @return longitud total del registro
+     * @author Nizam
+     */
+    private static int longitudRegistro(String[] valores, int columnas) {
+        int longitud = Integer.BYTES;
+        for (int c = 0; c < columnas; c++) {
+            longitud += Integer.BYTES + longitudUtf8(campo(valores, c));
+        }
+        return longitud;
+    }
+
+    /**
+     * Cuenta los bytes UTF-8 de una cadena sin codificarla.
+     *
+     * @param s cadena
+     * @return número de bytes en UTF-8
+     * @author Nizam
+     */
+    private static int longitudUtf8(String s) {
+        int bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++; // suplente suelto: el codificador lo sustituye por '?'
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Devuelve una columna de un registro, vacía si no existe.
+     *
+     * @param valores columnas del registro
+     * @param c       posición de la columna
+     * @return valor de la columna
+     * @author Nizam
+     */
+    private static String campo(String[] valores, int c) {
+        return c < valores.length && valores[c] != null ? valores[c] : "";
+    }
+}
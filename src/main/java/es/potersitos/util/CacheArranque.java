@@ -0,0 +1,218 @@
+package es.potersitos.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Caché de arranque (todosPersonajes.cache): instantánea de los personajes ya analizados que se
+ * proyecta en memoria al arrancar para no leer el CSV ni decodificar el binario registro a registro.
+ * <pre>
+ * registros: un registro completo por personaje, en el formato de {@link BinarioIndexado}
+ * tabla:     volcado de {@link TablaPersonajes} (columnas del listado y posición de cada registro)
+ * índices:   volcado de {@link IndicePersonajes} (fila de cada hueco y hash de su clave)
+ * cola (64 bytes):
+ *   0  int   mágico "HPSN"
+ *   4  short versión
+ *   6  short número de columnas
+ *   8  int   número de personajes
+ *   12 int   CRC32C de todo lo anterior a la cola
+ *   16 long  posición del volcado de la tabla
+ *   24 long  máscara de las columnas cargadas en memoria
+ *   32 long×4 firma del CSV y del diario con los que se generó
+ * </pre>
+ * La cola va al final porque el archivo se escribe de una pasada. La caché solo se usa si su firma
+ * coincide con el estado actual del CSV y del diario y si el CRC es correcto; en cualquier otro caso
+ * se ignora y se carga como siempre.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class CacheArranque {
+
+    /** Logger para la clase. */
+    private static final Logger logger = LoggerFactory.getLogger(CacheArranque.class);
+
+    /** Nombre del archivo de la caché. */
+    private static final String NOMBRE_ARCHIVO = "todosPersonajes.cache";
+
+    /** Número mágico "HPSN". */
+    private static final int MAGICO = 0x4850534E;
+
+    /** Versión del formato. */
+    private static final short VERSION = 1;
+
+    /** Tamaño de la cola. */
+    private static final int TAMANO_COLA = 64;
+
+    /**
+     * Personajes restaurados desde la caché.
+     *
+     * @param tabla      tabla por columnas, con la caché como fuente de las columnas no cargadas
+     * @param personajes vistas de los personajes en orden
+     * @param indice     índices por slug e id
+     */
+    record Contenido(TablaPersonajes tabla, List<Map<String, String>> personajes, IndicePersonajes indice) {
+    }
+
+    /**
+     * Constructor privado (clase de utilidades).
+     */
+    private CacheArranque() {
+    }
+
+    /**
+     * Carga los personajes desde la caché si corresponde al estado actual de los archivos.
+     * Las columnas del listado y los índices se copian de una vez desde la proyección en memoria; el resto
+     * se lee bajo demanda de la propia caché, que queda abierta como fuente de la tabla.
+     *
+     * @param firma estado actual del CSV y del diario
+     * @return personajes restaurados, o {@code null} si la caché no existe, está desfasada o dañada
+     * @author Nizam
+     */
+    static Contenido leerSiVigente(BinarioIndexado.Firma firma) {
+        Path ruta = obtenerRuta();
+        if (!Files.isRegularFile(ruta)) return null;
+
+        FileChannel canal = null;
+        try {
+            canal = FileChannel.open(ruta, StandardOpenOption.READ);
+            long tamano = canal.size();
+            if (tamano < TAMANO_COLA || tamano > Integer.MAX_VALUE) return null;
+
+            ByteBuffer cola = ByteBuffer.allocate(TAMANO_COLA);
+            while (cola.hasRemaining()) {
+                if (canal.read(cola, tamano - TAMANO_COLA + cola.position()) < 0) return null;
+            }
+            if (cola.getInt(0) != MAGICO || cola.getShort(4) != VERSION
+                    || cola.getShort(6) != PersonajeCSVManager.CLAVES_PERSONAJE.length || cola.getLong(24) != mascara()) {
+                logger.info("La caché de arranque tiene otro formato; se ignora.");
+                return null;
+            }
+            BinarioIndexado.Firma guardada = new BinarioIndexado.Firma(cola.getLong(32), cola.getLong(40), cola.getLong(48), cola.getLong(56));
+            if (!firma.equals(guardada)) {
+                logger.info("La caché de arranque no está sincronizada con el CSV; se ignora.");
+                return null;
+            }
+
+            int datos = (int) (tamano - TAMANO_COLA);
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, datos);
+            CRC32C crc = new CRC32C();
+            crc.update(mapa.slice(0, datos));
+            if ((int) crc.getValue() != cola.getInt(12)) {
+                logger.warn("La caché de arranque está dañada (CRC incorrecto); se ignora.");
+                return null;
+            }
+
+            int posicionTabla = (int) cola.getLong(16);
+            ByteBuffer volcado = mapa.slice(posicionTabla, datos - posicionTabla);
+            TablaPersonajes tabla = TablaPersonajes.restaurar(PersonajeCSVManager.CLAVES_PERSONAJE,
+                    PersonajeCSVManager.COLUMNAS_LISTADO, volcado);
+            List<Map<String, String>> personajes = tabla.vistas();
+            IndicePersonajes indice = IndicePersonajes.restaurar(volcado, personajes);
+            tabla.asignarFuente(new BinarioIndexado.FuenteRegistros(canal, PersonajeCSVManager.CLAVES_PERSONAJE.length));
+            canal = null;
+            logger.info("Carga completada desde la caché de arranque: {} personajes.", personajes.size());
+            return new Contenido(tabla, personajes, indice);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("No se pudo leer la caché de arranque: {}", e.getMessage());
+            return null;
+        } finally {
+            if (canal != null) {
+                try {
+                    canal.close();
+                } catch (IOException e) {
+                    logger.warn("Error al cerrar la caché de arranque: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Escribe la caché con los personajes indicados de forma atómica.
+     *
+     * @param personajes lista completa de personajes
+     * @param firma      estado del CSV y del diario que refleja la lista
+     * @return true si se escribió, false en caso contrario
+     * @author Nizam
+     */
+    static boolean guardar(List<Map<String, String>> personajes, BinarioIndexado.Firma firma) {
+        int columnas = PersonajeCSVManager.CLAVES_PERSONAJE.length;
+        try {
+            EscrituraAtomica.escribir(obtenerRuta(), salida -> {
+                CRC32C crc = new CRC32C();
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(salida, crc));
+                TablaPersonajes tabla = new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE, PersonajeCSVManager.COLUMNAS_LISTADO);
+                for (Map<String, String> p : personajes) {
+                    String[] valores = PersonajeCSVManager.aValores(p);
+                    long posicion = out.size();
+                    BinarioIndexado.escribirRegistro(out, valores, columnas);
+                    tabla.anadirParcial(valores, posicion);
+                }
+                long posicionTabla = out.size();
+                tabla.volcar(out);
+                new IndicePersonajes(tabla.vistas()).volcar(out);
+                out.flush();
+                if (out.size() == Integer.MAX_VALUE) {
+                    throw new IOException("La caché supera el tamaño máximo proyectable (2 GB)");
+                }
+
+                DataOutputStream cola = new DataOutputStream(salida);
+                cola.writeInt(MAGICO);
+                cola.writeShort(VERSION);
+                cola.writeShort(columnas);
+                cola.writeInt(personajes.size());
+                cola.writeInt((int) crc.getValue());
+                cola.writeLong(posicionTabla);
+                cola.writeLong(mascara());
+                cola.writeLong(firma.tamanoCSV());
+                cola.writeLong(firma.modificacionCSV());
+                cola.writeLong(firma.tamanoDiario());
+                cola.writeLong(firma.tamanoApartado());
+                cola.flush();
+            });
+            logger.info("Caché de arranque guardada con {} personajes.", personajes.size());
+            return true;
+        } catch (IOException e) {
+            logger.warn("No se pudo guardar la caché de arranque: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Calcula la máscara de las columnas del listado, para descartar cachés hechas con otra proyección.
+     *
+     * @return un bit por columna cargada en memoria
+     * @author Nizam
+     */
+    private static long mascara() {
+        long mascara = 0;
+        for (int i = 0; i < PersonajeCSVManager.CLAVES_PERSONAJE.length; i++) {
+            if (PersonajeCSVManager.COLUMNAS_LISTADO.contains(PersonajeCSVManager.CLAVES_PERSONAJE[i])) mascara |= 1L << i;
+        }
+        return mascara;
+    }
+
+    /**
+     * Obtiene la ruta de la caché, junto al CSV.
+     *
+     * @return ruta completa de la caché
+     * @author Nizam
+     */
+    static Path obtenerRuta() {
+        return Paths.get(PersonajeCSVManager.obtenerRutaCompletaCSV()).resolveSibling(NOMBRE_ARCHIVO);
+    }
+}
@@ -0,0 +1,164 @@
+package es.potersitos.util;
+
+import java.util.*;
+
+/**
+ * Cambios publicados por {@link RepositorioPersonajes} tras cada escritura, para que las vistas
+ * los apliquen sobre lo que ya tienen en memoria en lugar de volver a leer y filtrar todo el anuario.
+ * Los personajes se identifican por su clave: el slug normalizado con {@link #clave(String)}.
+ * <p>
+ * Los cambios solo pueden aplicarse sobre la lista de la que parten ({@link #anteriores()}, la misma
+ * instancia que devolvió el repositorio); quien tenga otra lista, por ejemplo porque se perdió un aviso,
+ * debe recargar. Cuando los datos se han sustituido por completo (importación, CSV modificado desde fuera,
+ * reescritura de otro proceso) no hay cambios concretos que aplicar y se publica {@link #recarga()}.
+ *
+ * @param anteriores   lista completa sobre la que se aplican los cambios, o {@code null} si hay que recargar
+ * @param personajes   lista completa resultante, o {@code null} si hay que recargar
+ * @param insertados   personajes nuevos, en el orden en que se añadieron al final de la lista
+ * @param actualizados personajes modificados: clave que tenían antes del cambio y fila que los sustituye
+ * @param eliminados   claves de los personajes eliminados
+ * @author Nizam
+ * @version 1.0
+ */
+public record CambiosPersonajes(List<Map<String, String>> anteriores,
+                                List<Map<String, String>> personajes,
+                                List<Map<String, String>> insertados,
+                                Map<String, Map<String, String>> actualizados,
+                                Set<String> eliminados) {
+
+    /** Aviso único de recarga completa. */
+    private static final CambiosPersonajes RECARGA = new CambiosPersonajes(null, null, List.of(), Map.of(), Set.of());
+
+    /**
+     * Devuelve el aviso de que los datos se han sustituido y deben leerse de nuevo.
+     *
+     * @return cambios sin detalle que piden una recarga completa
+     * @author Nizam
+     */
+    public static CambiosPersonajes recarga() {
+        return RECARGA;
+    }
+
+    /**
+     * Normaliza un slug igual que los índices del repositorio.
+     *
+     * @param slug slug del personaje
+     * @return clave sin mayúsculas ni espacios en los extremos
+     * @author Nizam
+     */
+    public static String clave(String slug) {
+        return IndicePersonajes.clave(slug);
+    }
+
+    /**
+     * Indica si la lista debe volver a leerse entera en lugar de aplicar cambios.
+     *
+     * @return {@code true} si los datos se sustituyeron por completo
+     * @author Nizam
+     */
+    public boolean recargaCompleta() {
+        return personajes == null;
+    }
+
+    /**
+     * Acumula las operaciones de una escritura (o de varios registros del diario) y las resume:
+     * un alta que luego se modifica sigue siendo un alta, y un alta que luego se borra desaparece.
+     *
+     * @author Nizam
+     */
+    static final class Acumulador {
+
+        /** Clave original de cada fila tocada; {@code null} para las filas dadas de alta. */
+        private final Map<Map<String, String>, String> origen = new IdentityHashMap<>();
+
+        /** Filas resultantes en orden de operación. */
+        private final List<Map<String, String>> filas = new ArrayList<>();
+
+        /** Claves eliminadas. */
+        private final Set<String> eliminados = new LinkedHashSet<>();
+
+        /**
+         * Registra el alta de una fila.
+         *
+         * @param nuevo fila añadida
+         * @author Nizam
+         */
+        void alta(Map<String, String> nuevo) {
+            origen.put(nuevo, null);
+            filas.add(nuevo);
+        }
+
+        /**
+         * Registra la sustitución de una fila por otra.
+         *
+         * @param anterior fila sustituida
+         * @param nuevo    fila que la reemplaza
+         * @author Nizam
+         */
+        void cambio(Map<String, String> anterior, Map<String, String> nuevo) {
+            String clave;
+            if (origen.containsKey(anterior)) {
+                clave = origen.remove(anterior);
+                filas.set(posicion(anterior), nuevo);
+            } else {
+                clave = clave(anterior.get("slug"));
+                filas.add(nuevo);
+            }
+            origen.put(nuevo, clave);
+        }
+
+        /**
+         * Registra la baja de una fila.
+         *
+         * @param anterior fila eliminada
+         * @author Nizam
+         */
+        void baja(Map<String, String> anterior) {
+            String clave;
+            if (origen.containsKey(anterior)) {
+                clave = origen.remove(anterior);
+                filas.remove(posicion(anterior));
+            } else {
+                clave = clave(anterior.get("slug"));
+            }
+            if (clave != null) eliminados.add(clave);
+        }
+
+        /**
+         * Busca una fila por identidad.
+         *
+         * @param fila fila a buscar
+         * @return posición en {@link #filas}
+         * @author Nizam
+         */
+        private int posicion(Map<String, String> fila) {
+            for (int i = filas.size() - 1; i >= 0; i--) {
+                if (filas.get(i) == fila) return i;
+            }
+            throw new IllegalStateException("Fila acumulada no encontrada");
+        }
+
+        /**
+         * Construye los cambios acumulados.
+         *
+         * @param anteriores lista completa antes de los cambios
+         * @param personajes lista completa resultante
+         * @return cambios inmutables
+         * @author Nizam
+         */
+        CambiosPersonajes construir(List<Map<String, String>> anteriores, List<Map<String, String>> personajes) {
+            List<Map<String, String>> insertados = new ArrayList<>();
+            Map<String, Map<String, String>> actualizados = new LinkedHashMap<>();
+            for (Map<String, String> fila : filas) {
+                String clave = origen.get(fila);
+                if (clave == null) {
+                    insertados.add(fila);
+                } else {
+                    actualizados.put(clave, fila);
+                }
+            }
+            return new CambiosPersonajes(anteriores, personajes, Collections.unmodifiableList(insertados),
+                    Collections.unmodifiableMap(actualizados), Collections.unmodifiableSet(eliminados));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package es.potersitos.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Cerrojo entre procesos sobre los archivos de datos, para que dos instancias de la aplicación
+ * (o una instancia y otra herramienta que respete el cerrojo) no pierdan los cambios de la otra.
+ * Se usa un {@link FileLock} consultivo sobre todosPersonajes.csv.lock, que nunca contiene datos:
+ * <ul>
+ *   <li>byte 0: escritura. Lo toma quien añade al diario o modifica el XML o el binario, durante
+ *   toda la operación; antes de escribir se pone al día con lo que hayan escrito los demás.</li>
+ *   <li>byte 1: compactación. Lo toma quien reescribe el CSV, para que solo compacte un proceso a la vez.</li>
+ * </ul>
+ * Los lectores no usan el cerrojo: el CSV se sustituye de forma atómica y el diario solo crece, así que
+ * siempre ven un estado completo. Dentro del proceso el cerrojo de escritura es reentrante y se toma
+ * siempre después del cerrojo de {@link PersonajeCSVManager}.
+ * <p>
+ * Si el archivo del cerrojo no se puede crear (por ejemplo, porque la carpeta de datos aún no existe)
+ * se continúa sin coordinación entre procesos.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class CerrojoArchivos {
+
+    /** Logger para la clase. */
+    private static final Logger logger = LoggerFactory.getLogger(CerrojoArchivos.class);
+
+    /** Sufijo del archivo del cerrojo, junto al CSV. */
+    private static final String SUFIJO = ".lock";
+
+    /** Byte del archivo que protege las escrituras. */
+    private static final long POS_ESCRITURA = 0;
+
+    /** Byte del archivo que protege la compactación. */
+    private static final long POS_COMPACTACION = 1;
+
+    /** Cerrojo de escritura dentro del proceso (el {@link FileLock} es de todo el proceso). */
+    private static final ReentrantLock local = new ReentrantLock();
+
+    /** Canal del archivo del cerrojo; se mantiene abierto porque cerrarlo libera los bloqueos. */
+    private static FileChannel canal;
+
+    /** Bloqueo de escritura vigente. */
+    private static FileLock escritura;
+
+    /** Bloqueo de compactación vigente. */
+    private static FileLock compactacion;
+
+    /**
+     * Constructor privado (clase de utilidades).
+     */
+    private CerrojoArchivos() {
+    }
+
+    /**
+     * Ejecuta una acción con el cerrojo de escritura, esperando si otro proceso lo tiene,
+     * y lo libera al terminar aunque la acción lance una excepción.
+     *
+     * @param accion acción que escribe los datos
+     * @param <T>    tipo del resultado
+     * @return resultado de la acción
+     * @author Nizam
+     */
+    static <T> T conCerrojo(Supplier<T> accion) {
+        adquirir();
+        try {
+            return accion.get();
+        } finally {
+            liberar();
+        }
+    }
+
+    /**
+     * Ejecuta una acción sin resultado con el cerrojo de escritura.
+     *
+     * @param accion acción que escribe los datos
+     * @author Nizam
+     */
+    static void conCerrojo(Runnable accion) {
+        adquirir();
+        try {
+            accion.run();
+        } finally {
+            liberar();
+        }
+    }
+
+    /**
+     * Toma el cerrojo de escritura, esperando si otro proceso lo tiene.
+     *
+     * @author Nizam
+     */
+    private static void adquirir() {
+        local.lock();
+        if (local.getHoldCount() == 1) {
+            try {
+                FileChannel c = obtenerCanal();
+                if (c != null) {
+                    escritura = c.tryLock(POS_ESCRITURA, 1, false);
+                    if (escritura == null) {
+                        logger.info("Otro proceso está escribiendo los datos; se espera a que termine.");
+                        escritura = c.lock(POS_ESCRITURA, 1, false);
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("No se pudo tomar el cerrojo entre procesos: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Libera el cerrojo de escritura.
+     *
+     * @author Nizam
+     */
+    private static void liberar() {
+        try {
+            if (local.getHoldCount() == 1 && escritura != null) {
+                escritura.release();
+            }
+        } catch (IOException e) {
+            logger.warn("No se pudo liberar el cerrojo entre procesos: {}", e.getMessage());
+        } finally {
+            if (local.getHoldCount() == 1) escritura = null;
+            local.unlock();
+        }
+    }
+
+    /**
+     * Intenta tomar el cerrojo de compactación sin esperar.
+     *
+     * @return {@code true} si se tomó (o no hay coordinación posible), {@code false} si otro proceso está compactando
+     * @author Nizam
+     */
+    static synchronized boolean intentarCompactar() {
+        if (compactacion != null) return false;
+        try {
+            FileChannel c = obtenerCanal();
+            if (c == null) return true;
+            compactacion = c.tryLock(POS_COMPACTACION, 1, false);
+            return compactacion != null;
+        } catch (IOException e) {
+            logger.warn("No se pudo tomar el cerrojo de compactación: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Libera el cerrojo de compactación tomado con {@link #intentarCompactar()}.
+     *
+     * @author Nizam
+     */
+    static synchronized void liberarCompactacion() {
+        if (compactacion == null) return;
+        try {
+            compactacion.release();
+        } catch (IOException e) {
+            logger.warn("No se pudo liberar el cerrojo de compactación: {}", e.getMessage());
+        }
+        compactacion = null;
+    }
+
+    /**
+     * Abre (una sola vez) el archivo del cerrojo.
+     *
+     * @return canal del archivo, o {@code null} si la carpeta de datos no existe
+     * @throws IOException si no se puede abrir
+     * @author Nizam
+     */
+    private static synchronized FileChannel obtenerCanal() throws IOException {
+        if (canal == null || !canal.isOpen()) {
+            Path csv = Paths.get(PersonajeCSVManager.obtenerRutaCompletaCSV());
+            if (!Files.isDirectory(csv.getParent())) return null;
+            canal = FileChannel.open(csv.resolveSibling(csv.getFileName() + SUFIJO),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return canal;
+    }
+}
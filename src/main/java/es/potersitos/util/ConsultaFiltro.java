@@ -0,0 +1,680 @@
+package es.potersitos.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Texto del buscador interpretado como consulta de filtros que se combinan con operadores, por ejemplo
+ * {@code house:gryffindor AND species:human AND born>1970}. La gramática es:
+ * <pre>
+ * consulta   := conjuncion ( OR conjuncion )*
+ * conjuncion := negacion ( [AND] negacion )*
+ * negacion   := NOT negacion | -clausula | ( consulta ) | clausula
+ * clausula   := campo operador valor | palabra
+ * operador   := :  =  !=  &gt;  &lt;  &gt;=  &lt;=
+ * </pre>
+ * Los operadores van en mayúsculas (en minúsculas son palabras normales) y un valor con espacios va
+ * entre comillas. {@code campo:valor} contiene el valor, {@code campo=valor} es igual a él, y las
+ * comparaciones leen la fecha en {@code born} y {@code died} ({@code born>1970} compara solo el año) y
+ * el primer número en el resto de columnas. Con los valores de las casillas del panel
+ * ({@code house:gryffindor}, {@code species:human}, {@code gender:female}...) la cláusula equivale a marcar
+ * esa casilla. Las palabras sueltas y los campos de texto ({@code job:auror}, {@code hermoine~}) se buscan
+ * como en {@link ConsultaTexto}. Lo que no se entiende (un campo desconocido, un paréntesis sin cerrar, un
+ * operador al final mientras se escribe) se toma como texto o se ignora, nunca es un error.
+ * <p>
+ * La consulta se interpreta una vez y se compila en un árbol que el planificador reordena por coste: dentro
+ * de cada AND y cada OR van primero las casillas, que son mapas de bits de {@link FacetasPersonajes}, luego
+ * el texto, que resuelve el {@link IndiceTextos}, y al final las cláusulas que hay que comprobar fila a fila,
+ * las de las columnas en memoria antes que las que se leen de disco. Así {@link IndicePersonajes} solo
+ * recorre los personajes que han pasado las cláusulas con índice. Los términos de texto de un mismo AND se
+ * juntan en una sola {@link ConsultaTexto}, de modo que una consulta sin operadores ni campos de columna
+ * se resuelve exactamente como hasta ahora ({@link #texto()}).
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+public final class ConsultaFiltro {
+
+    /** Operador Y. */
+    private static final String Y_LOGICO = "AND";
+
+    /** Operador O. */
+    private static final String O_LOGICO = "OR";
+
+    /** Operador de negación. */
+    private static final String NO_LOGICO = "NOT";
+
+    /** Cláusula con campo: nombre del campo, operador y valor. */
+    private static final Pattern CLAUSULA = Pattern.compile("([\\p{L}_]+)(!=|>=|<=|[:=<>])(.*)", Pattern.DOTALL);
+
+    /** Número dentro de un valor, con decimales opcionales. */
+    private static final Pattern NUMERO = Pattern.compile("-?\\d+(?:[.,]\\d+)?");
+
+    /** Columna del CSV de cada nombre de campo aceptado: las propias columnas y algunos nombres en castellano. */
+    private static final Map<String, String> COLUMNAS = new HashMap<>();
+
+    /** Faceta de {@link FacetasPersonajes} de cada columna con casillas. */
+    private static final Map<String, Integer> FACETAS = Map.of(
+            "house", FacetasPersonajes.CASA, "nationality", FacetasPersonajes.NACIONALIDAD,
+            "species", FacetasPersonajes.ESPECIE, "gender", FacetasPersonajes.GENERO);
+
+    /** Opción de su faceta de cada valor de una columna con casillas, en inglés y en castellano. */
+    private static final Map<String, Map<String, Integer>> OPCIONES = Map.of(
+            "house", Map.of("gryffindor", 0, "slytherin", 1, "hufflepuff", 2, "ravenclaw", 3),
+            "nationality", Map.of("british", 0, "britanico", 0, "irish", 1, "irlandes", 1,
+                    "french", 2, "frances", 2, "bulgarian", 3, "bulgaro", 3),
+            "species", Map.of("human", 0, "humano", 0, "half", 1, "mestizo", 1,
+                    "elf", 2, "elfo", 2, "giant", 3, "gigante", 3),
+            "gender", Map.of("male", 0, "masculino", 0, "female", 1, "femenino", 1));
+
+    /** Valor con el que se escribe cada opción de cada faceta, en el orden de las casillas. */
+    private static final String[][] VALORES_OPCIONES = {
+            {"gryffindor", "slytherin", "hufflepuff", "ravenclaw"},
+            {"british", "irish", "french", "bulgarian"},
+            {"human", "half", "elf", "giant"},
+            {"male", "female"}
+    };
+
+    /** Columna de cada faceta. */
+    private static final String[] COLUMNAS_FACETAS = {"house", "nationality", "species", "gender"};
+
+    static {
+        for (String columna : PersonajeCSVManager.CLAVES_PERSONAJE) COLUMNAS.put(columna, columna);
+        String[][] alias = {
+                {"casa", "house"}, {"nacionalidad", "nationality"}, {"especie", "species"}, {"genero", "gender"},
+                {"nacido", "born"}, {"nacimiento", "born"}, {"fallecido", "died"}, {"muerte", "died"},
+                {"sangre", "blood_status"}, {"ojos", "eye_color"}, {"pelo", "hair_color"}, {"piel", "skin_color"},
+                {"altura", "height"}, {"peso", "weight"}, {"estado_civil", "marital_status"}
+        };
+        for (String[] a : alias) COLUMNAS.put(a[0], a[1]);
+    }
+
+    /** Nodo del árbol compilado. */
+    sealed interface Nodo permits Y, O, No, Faceta, Texto, Fila {
+    }
+
+    /**
+     * Se cumplen todos los hijos.
+     *
+     * @param hijos condiciones, de menor a mayor coste tras planificar
+     */
+    record Y(List<Nodo> hijos) implements Nodo {
+    }
+
+    /**
+     * Se cumple alguno de los hijos.
+     *
+     * @param hijos condiciones, de menor a mayor coste tras planificar
+     */
+    record O(List<Nodo> hijos) implements Nodo {
+    }
+
+    /**
+     * No se cumple el hijo.
+     *
+     * @param hijo condición negada
+     */
+    record No(Nodo hijo) implements Nodo {
+    }
+
+    /**
+     * Casilla del panel de filtros, resuelta con su mapa de bits.
+     *
+     * @param faceta faceta de {@link FacetasPersonajes}
+     * @param opcion número de opción dentro de la faceta
+     */
+    record Faceta(int faceta, int opcion) implements Nodo {
+    }
+
+    /**
+     * Búsqueda de texto, resuelta con los índices de nombres y de textos.
+     *
+     * @param fuente   texto del que sale, para juntarla con otras
+     * @param consulta consulta interpretada
+     */
+    record Texto(String fuente, ConsultaTexto consulta) implements Nodo {
+    }
+
+    /**
+     * Condición que se comprueba fila a fila.
+     *
+     * @param columna     columna que lee
+     * @param descripcion cláusula tal como se escribió, para el registro
+     * @param condicion   condición sobre el personaje; puede llamarse desde varios hilos a la vez
+     */
+    record Fila(String columna, String descripcion, Predicate<Map<String, String>> condicion) implements Nodo {
+    }
+
+    /** Consulta vacía. */
+    private static final ConsultaFiltro VACIA = new ConsultaFiltro(null, ConsultaTexto.interpretar(""));
+
+    /** Árbol planificado, o {@code null} si la consulta no filtra. */
+    private final Nodo raiz;
+
+    /** La consulta si es solo de texto, o {@code null} si tiene otras cláusulas. */
+    private final ConsultaTexto texto;
+
+    /** Árbol compilado como condición sobre un personaje. */
+    private final Predicate<Map<String, String>> condicion;
+
+    /** Indica si algún texto necesita el índice de textos. */
+    private final boolean necesitaTextos;
+
+    /**
+     * Crea la consulta.
+     *
+     * @param raiz  árbol planificado
+     * @param texto consulta de texto equivalente, si la hay
+     */
+    private ConsultaFiltro(Nodo raiz, ConsultaTexto texto) {
+        this.raiz = raiz;
+        this.texto = texto;
+        this.condicion = raiz == null ? p -> true : compilar(raiz);
+        this.necesitaTextos = raiz != null && necesitaTextos(raiz);
+    }
+
+    /**
+     * Interpreta el texto del buscador.
+     *
+     * @param texto texto escrito por el usuario (puede ser nulo)
+     * @return consulta planificada y compilada
+     * @author Nizam
+     */
+    public static ConsultaFiltro interpretar(String texto) {
+        if (texto == null || texto.isBlank()) return VACIA;
+        Analizador analizador = new Analizador(trocear(texto));
+        Nodo raiz = analizador.consulta();
+        if (raiz != null) raiz = planificar(raiz);
+        if (raiz == null) return analizador.operadores ? VACIA : de(ConsultaTexto.interpretar(texto));
+        if (raiz instanceof Texto t) {
+            // Sin operadores se conserva el texto tal cual, que es lo que buscaba el buscador hasta ahora
+            return de(analizador.operadores ? t.consulta() : ConsultaTexto.interpretar(texto));
+        }
+        return new ConsultaFiltro(raiz, null);
+    }
+
+    /**
+     * Envuelve una consulta de texto.
+     *
+     * @param consulta consulta de texto
+     * @return consulta de filtros equivalente
+     * @author Nizam
+     */
+    public static ConsultaFiltro de(ConsultaTexto consulta) {
+        if (consulta.vacia()) return VACIA;
+        return new ConsultaFiltro(new Texto(consulta.nombre(), consulta), consulta);
+    }
+
+    /**
+     * Escribe como consulta el texto del buscador y las casillas marcadas, para guardarlas juntas.
+     *
+     * @param texto     texto del buscador (puede ser nulo)
+     * @param seleccion opciones marcadas de cada faceta de {@link FacetasPersonajes}
+     * @return consulta que filtra lo mismo, o cadena vacía si no filtra nada
+     * @author Nizam
+     */
+    public static String escribir(String texto, int[] seleccion) {
+        StringJoiner partes = new StringJoiner(" " + Y_LOGICO + " ");
+        if (texto != null && !texto.isBlank()) partes.add(FacetasPersonajes.filtra(seleccion) ? "(" + texto.trim() + ")" : texto.trim());
+        for (int f = 0; f < seleccion.length && f < VALORES_OPCIONES.length; f++) {
+            StringJoiner opciones = new StringJoiner(" " + O_LOGICO + " ");
+            for (int o = 0; o < VALORES_OPCIONES[f].length; o++) {
+                if ((seleccion[f] & (1 << o)) != 0) opciones.add(COLUMNAS_FACETAS[f] + ":" + VALORES_OPCIONES[f][o]);
+            }
+            if (Integer.bitCount(seleccion[f]) > 1) partes.add("(" + opciones + ")");
+            else if (seleccion[f] != 0) partes.add(opciones.toString());
+        }
+        return partes.toString();
+    }
+
+    /**
+     * Indica si la consulta no filtra.
+     *
+     * @return {@code true} si no hay ninguna cláusula
+     * @author Nizam
+     */
+    public boolean vacia() {
+        return raiz == null;
+    }
+
+    /**
+     * Devuelve la consulta como búsqueda de texto, si solo es eso. Entonces se resuelve como
+     * {@link ConsultaTexto}, con su orden de relevancia y su búsqueda aproximada.
+     *
+     * @return consulta de texto (vacía si no filtra), o {@code null} si tiene otras cláusulas
+     * @author Nizam
+     */
+    public ConsultaTexto texto() {
+        return texto;
+    }
+
+    /**
+     * Comprueba un personaje sin índices, con el árbol compilado: en cada AND y cada OR se evalúan
+     * primero las condiciones baratas y se deja de evaluar en cuanto se sabe el resultado.
+     *
+     * @param p personaje
+     * @return {@code true} si cumple la consulta
+     * @author Nizam
+     */
+    public boolean cumple(Map<String, String> p) {
+        return condicion.test(p);
+    }
+
+    /**
+     * Indica si algún texto de la consulta tiene campos o términos aproximados, que solo resuelve el
+     * {@link IndiceTextos}.
+     *
+     * @return {@code true} si la consulta necesita el índice de textos
+     * @author Nizam
+     */
+    boolean necesitaTextos() {
+        return necesitaTextos;
+    }
+
+    /**
+     * Devuelve el árbol planificado, que {@link IndicePersonajes} resuelve con sus índices.
+     *
+     * @return raíz, o {@code null} si la consulta no filtra
+     * @author Nizam
+     */
+    Nodo raiz() {
+        return raiz;
+    }
+
+    /**
+     * Escribe el árbol planificado, en el orden en que se evalúa, para el registro.
+     *
+     * @return plan de la consulta
+     */
+    @Override
+    public String toString() {
+        return raiz == null ? "" : describir(raiz);
+    }
+
+    /**
+     * Reordena el árbol: junta los AND y los OR anidados, los términos de texto de un mismo AND y las dobles
+     * negaciones, y pone los hijos de cada AND y cada OR de menor a mayor coste.
+     *
+     * @param nodo árbol interpretado
+     * @return árbol equivalente planificado
+     * @author Nizam
+     */
+    static Nodo planificar(Nodo nodo) {
+        return switch (nodo) {
+            case Y y -> {
+                List<Nodo> hijos = new ArrayList<>();
+                List<Texto> textos = new ArrayList<>();
+                for (Nodo hijo : y.hijos()) {
+                    Nodo planificado = planificar(hijo);
+                    List<Nodo> planos = planificado instanceof Y anidado ? anidado.hijos() : List.of(planificado);
+                    for (Nodo n : planos) {
+                        if (n instanceof Texto t) textos.add(t);
+                        else hijos.add(n);
+                    }
+                }
+                if (textos.size() == 1) hijos.add(textos.getFirst());
+                if (textos.size() > 1) {
+                    StringJoiner fuente = new StringJoiner(" ");
+                    for (Texto t : textos) fuente.add(t.fuente());
+                    hijos.add(new Texto(fuente.toString(), ConsultaTexto.interpretar(fuente.toString())));
+                }
+                yield unir(hijos, true);
+            }
+            case O o -> {
+                List<Nodo> hijos = new ArrayList<>();
+                for (Nodo hijo : o.hijos()) {
+                    Nodo planificado = planificar(hijo);
+                    if (planificado instanceof O anidado) hijos.addAll(anidado.hijos());
+                    else hijos.add(planificado);
+                }
+                yield unir(hijos, false);
+            }
+            case No no -> no.hijo() instanceof No doble ? planificar(doble.hijo()) : new No(planificar(no.hijo()));
+            default -> nodo;
+        };
+    }
+
+    /**
+     * Estima el coste relativo de evaluar un nodo: los mapas de bits no cuestan nada, el texto una búsqueda
+     * en el índice, y las filas una lectura por personaje, en memoria o de disco.
+     *
+     * @param nodo nodo
+     * @return 0 (casillas), 1 (texto), 2 (filas en memoria) o 3 (filas de disco); el máximo de los hijos
+     * @author Nizam
+     */
+    static int coste(Nodo nodo) {
+        return switch (nodo) {
+            case Faceta f -> 0;
+            case Texto t -> 1;
+            case Fila f -> PersonajeCSVManager.COLUMNAS_LISTADO.contains(f.columna()) ? 2 : 3;
+            case No no -> coste(no.hijo());
+            case Y y -> y.hijos().stream().mapToInt(ConsultaFiltro::coste).max().orElse(0);
+            case O o -> o.hijos().stream().mapToInt(ConsultaFiltro::coste).max().orElse(0);
+        };
+    }
+
+    /**
+     * Busca en un árbol algún texto con campos o términos aproximados.
+     */
+    private static boolean necesitaTextos(Nodo nodo) {
+        return switch (nodo) {
+            case Texto t -> t.consulta().conCampos() || t.consulta().aproximada();
+            case No no -> necesitaTextos(no.hijo());
+            case Y y -> y.hijos().stream().anyMatch(ConsultaFiltro::necesitaTextos);
+            case O o -> o.hijos().stream().anyMatch(ConsultaFiltro::necesitaTextos);
+            case Faceta f -> false;
+            case Fila f -> false;
+        };
+    }
+
+    /**
+     * Crea un AND o un OR con los hijos ordenados por coste (el orden es estable: a igual coste, el escrito).
+     *
+     * @param hijos hijos ya planificados
+     * @param y     {@code true} para AND
+     * @return el nodo, o el único hijo si solo hay uno
+     */
+    private static Nodo unir(List<Nodo> hijos, boolean y) {
+        if (hijos.size() == 1) return hijos.getFirst();
+        hijos.sort(Comparator.comparingInt(ConsultaFiltro::coste));
+        return y ? new Y(List.copyOf(hijos)) : new O(List.copyOf(hijos));
+    }
+
+    /**
+     * Compila un árbol en una condición.
+     *
+     * @param nodo árbol planificado
+     * @return condición sobre un personaje
+     */
+    private static Predicate<Map<String, String>> compilar(Nodo nodo) {
+        return switch (nodo) {
+            case Y y -> {
+                Predicate<Map<String, String>>[] hijos = compilar(y.hijos());
+                yield p -> {
+                    for (Predicate<Map<String, String>> h : hijos) {
+                        if (!h.test(p)) return false;
+                    }
+                    return true;
+                };
+            }
+            case O o -> {
+                Predicate<Map<String, String>>[] hijos = compilar(o.hijos());
+                yield p -> {
+                    for (Predicate<Map<String, String>> h : hijos) {
+                        if (h.test(p)) return true;
+                    }
+                    return false;
+                };
+            }
+            case No no -> compilar(no.hijo()).negate();
+            case Faceta f -> {
+                int bit = 1 << f.opcion();
+                yield p -> (FacetasPersonajes.opciones(f.faceta(), p) & bit) != 0;
+            }
+            case Texto t -> t.consulta()::cumple;
+            case Fila f -> f.condicion();
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Predicate<Map<String, String>>[] compilar(List<Nodo> nodos) {
+        Predicate<Map<String, String>>[] compilados = (Predicate<Map<String, String>>[]) new Predicate<?>[nodos.size()];
+        for (int i = 0; i < compilados.length; i++) compilados[i] = compilar(nodos.get(i));
+        return compilados;
+    }
+
+    /**
+     * Escribe un nodo con la sintaxis de la consulta.
+     */
+    private static String describir(Nodo nodo) {
+        return switch (nodo) {
+            case Y y -> describir(y.hijos(), Y_LOGICO);
+            case O o -> describir(o.hijos(), O_LOGICO);
+            case No no -> NO_LOGICO + " " + describir(no.hijo());
+            case Faceta f -> COLUMNAS_FACETAS[f.faceta()] + ":" + VALORES_OPCIONES[f.faceta()][f.opcion()];
+            case Texto t -> "\"" + t.fuente() + "\"";
+            case Fila f -> f.descripcion();
+        };
+    }
+
+    private static String describir(List<Nodo> hijos, String operador) {
+        StringJoiner partes = new StringJoiner(" " + operador + " ", "(", ")");
+        for (Nodo hijo : hijos) partes.add(describir(hijo));
+        return partes.toString();
+    }
+
+    /**
+     * Separa el texto en paréntesis y palabras; lo que va entre comillas es una sola palabra, comillas incluidas.
+     *
+     * @param texto texto de la consulta
+     * @return piezas en orden
+     */
+    private static List<String> trocear(String texto) {
+        List<String> piezas = new ArrayList<>();
+        int i = 0, n = texto.length();
+        while (i < n) {
+            char c = texto.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                piezas.add(String.valueOf(c));
+                i++;
+            } else {
+                int inicio = i;
+                boolean comillas = false;
+                while (i < n) {
+                    char d = texto.charAt(i);
+                    if (d == '"') comillas = !comillas;
+                    else if (!comillas && (Character.isWhitespace(d) || d == '(' || d == ')')) break;
+                    i++;
+                }
+                piezas.add(texto.substring(inicio, i));
+            }
+        }
+        return piezas;
+    }
+
+    /**
+     * Analizador descendente recursivo sobre las piezas de la consulta.
+     */
+    private static final class Analizador {
+        private final List<String> piezas;
+        private int pos;
+        /** Indica si se ha leído algún operador, paréntesis o negación. */
+        private boolean operadores;
+
+        Analizador(List<String> piezas) {
+            this.piezas = piezas;
+        }
+
+        /**
+         * Lee toda la consulta; un paréntesis de cierre sobrante se salta y lo que sigue se une con AND.
+         */
+        Nodo consulta() {
+            List<Nodo> partes = new ArrayList<>();
+            while (pos < piezas.size()) {
+                if (piezas.get(pos).equals(")")) {
+                    operadores = true;
+                    pos++;
+                    continue;
+                }
+                Nodo parte = disyuncion();
+                if (parte != null) partes.add(parte);
+            }
+            return partes.isEmpty() ? null : partes.size() == 1 ? partes.getFirst() : new Y(partes);
+        }
+
+        private Nodo disyuncion() {
+            List<Nodo> hijos = new ArrayList<>();
+            Nodo primero = conjuncion();
+            if (primero != null) hijos.add(primero);
+            while (pos < piezas.size() && piezas.get(pos).equals(O_LOGICO)) {
+                operadores = true;
+                pos++;
+                Nodo siguiente = conjuncion();
+                if (siguiente != null) hijos.add(siguiente);
+            }
+            return hijos.isEmpty() ? null : hijos.size() == 1 ? hijos.getFirst() : new O(hijos);
+        }
+
+        private Nodo conjuncion() {
+            List<Nodo> hijos = new ArrayList<>();
+            while (pos < piezas.size()) {
+                String pieza = piezas.get(pos);
+                if (pieza.equals(O_LOGICO) || pieza.equals(")")) break;
+                if (pieza.equals(Y_LOGICO)) {
+                    operadores = true;
+                    pos++;
+                    continue;
+                }
+                Nodo hijo = negacion();
+                if (hijo != null) hijos.add(hijo);
+            }
+            return hijos.isEmpty() ? null : hijos.size() == 1 ? hijos.getFirst() : new Y(hijos);
+        }
+
+        private Nodo negacion() {
+            if (pos == piezas.size()) return null;
+            String pieza = piezas.get(pos);
+            if (pieza.equals(O_LOGICO) || pieza.equals(Y_LOGICO) || pieza.equals(")")) return null;
+            pos++;
+            if (pieza.equals(NO_LOGICO)) {
+                operadores = true;
+                Nodo negado = negacion();
+                return negado == null ? null : new No(negado);
+            }
+            if (pieza.equals("(")) {
+                operadores = true;
+                Nodo grupo = disyuncion();
+                if (pos < piezas.size() && piezas.get(pos).equals(")")) pos++;
+                return grupo;
+            }
+            if (pieza.length() > 1 && pieza.charAt(0) == '-') {
+                operadores = true;
+                Nodo negado = clausula(pieza.substring(1));
+                return negado == null ? null : new No(negado);
+            }
+            return clausula(pieza);
+        }
+
+        /**
+         * Interpreta una cláusula suelta.
+         *
+         * @param pieza palabra o {@code campo operador valor}
+         * @return nodo, o {@code null} si la cláusula aún no tiene valor
+         */
+        private Nodo clausula(String pieza) {
+            Matcher m = CLAUSULA.matcher(pieza);
+            if (!m.matches()) return texto(pieza);
+            String campo = IndiceTextos.plegar(m.group(1));
+            String operador = m.group(2);
+            String valor = sinComillas(m.group(3)).trim();
+            if (operador.equals(":") && ConsultaTexto.columna(campo) != null) {
+                // Campo de texto: cada palabra del valor se busca en ese campo
+                operadores = true;
+                if (valor.isEmpty()) return null;
+                StringJoiner terminos = new StringJoiner(" ");
+                for (String palabra : valor.split("\\s+")) terminos.add(campo + ":" + palabra);
+                return new Texto(terminos.toString(), ConsultaTexto.interpretar(terminos.toString()));
+            }
+            String columna = COLUMNAS.get(campo);
+            if (columna == null) return texto(pieza);
+            operadores = true;
+            if (valor.isEmpty()) return null;
+            String plegado = IndiceTextos.plegar(valor);
+            String descripcion = columna + operador + (valor.contains(" ") ? "\"" + valor + "\"" : valor);
+            switch (operador) {
+                case ":" -> {
+                    Integer opcion = OPCIONES.containsKey(columna) ? OPCIONES.get(columna).get(plegado) : null;
+                    if (opcion != null) return new Faceta(FACETAS.get(columna), opcion);
+                    return new Fila(columna, descripcion, p -> IndiceTextos.plegar(p.get(columna)).contains(plegado));
+                }
+                case "=" -> {
+                    return new Fila(columna, descripcion, p -> IndiceTextos.plegar(p.get(columna)).trim().equals(plegado));
+                }
+                case "!=" -> {
+                    return new No(new Fila(columna, columna + "=" + valor,
+                            p -> IndiceTextos.plegar(p.get(columna)).trim().equals(plegado)));
+                }
+                default -> {
+                    Predicate<Map<String, String>> comparacion = comparar(columna, operador, valor);
+                    return comparacion == null ? texto(pieza) : new Fila(columna, descripcion, comparacion);
+                }
+            }
+        }
+
+        /**
+         * Palabra sin campo: se busca como texto.
+         */
+        private Nodo texto(String pieza) {
+            String palabra = sinComillas(pieza);
+            return IndiceNombres.normalizar(palabra).isEmpty() ? null : new Texto(palabra, ConsultaTexto.interpretar(palabra));
+        }
+    }
+
+    /**
+     * Crea la condición de una comparación de orden.
+     *
+     * @param columna  columna comparada
+     * @param operador {@code >}, {@code <}, {@code >=} o {@code <=}
+     * @param valor    valor escrito
+     * @return condición, o {@code null} si el valor no es una fecha (en las columnas de fechas) o un número
+     */
+    private static Predicate<Map<String, String>> comparar(String columna, String operador, String valor) {
+        if (OrdenPersonajes.esFecha(columna)) {
+            int fecha = OrdenPersonajes.fecha(valor);
+            if (fecha == OrdenPersonajes.SIN_VALOR) return null;
+            // Se compara con la precisión escrita: solo el año, el año y el mes, o la fecha completa
+            int divisor = fecha % 10_000 == 0 ? 10_000 : fecha % 100 == 0 ? 100 : 1;
+            int buscada = fecha / divisor;
+            return p -> {
+                int suya = OrdenPersonajes.fecha(p.getOrDefault(columna, ""));
+                return suya != OrdenPersonajes.SIN_VALOR && cumple(Integer.compare(suya / divisor, buscada), operador);
+            };
+        }
+        Double buscado = numero(valor);
+        if (buscado == null) return null;
+        return p -> {
+            Double suyo = numero(p.get(columna));
+            return suyo != null && cumple(Double.compare(suyo, buscado), operador);
+        };
+    }
+
+    /**
+     * Lee el primer número de un texto.
+     *
+     * @param texto texto (puede ser nulo)
+     * @return número, o {@code null} si no hay ninguno
+     */
+    private static Double numero(String texto) {
+        if (texto == null) return null;
+        Matcher m = NUMERO.matcher(texto);
+        return m.find() ? Double.valueOf(m.group().replace(',', '.')) : null;
+    }
+
+    /**
+     * Aplica un operador de orden al resultado de una comparación.
+     */
+    private static boolean cumple(int comparacion, String operador) {
+        return switch (operador) {
+            case ">" -> comparacion > 0;
+            case "<" -> comparacion < 0;
+            case ">=" -> comparacion >= 0;
+            default -> comparacion <= 0;
+        };
+    }
+
+    /**
+     * Quita las comillas de un valor.
+     */
+    private static String sinComillas(String valor) {
+        return valor.replace("\"", "");
+    }
+}
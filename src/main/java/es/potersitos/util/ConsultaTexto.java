@@ -0,0 +1,229 @@
+package es.potersitos.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Texto del buscador de la vista interpretado como consulta sobre el {@link IndiceTextos}.
+ * Cada palabra es un término y todos deben cumplirse; un término coincide con las palabras que empiezan
+ * por él. Con el prefijo de un campo ({@code job:auror}, {@code alias:padfoot}, {@code title:head}) el término
+ * solo se busca en esa columna; sin prefijo se busca en todas. Las mayúsculas y las tildes no cuentan.
+ * Un término terminado en {@code ~} ({@code hermoine~}) es aproximado: coincide con las palabras de los
+ * nombres a poca distancia de edición ({@link AutomataLevenshtein#tolerancia(int)}), sin importar el prefijo de campo.
+ * <p>
+ * Una consulta sin campos ni términos aproximados se cumple además, como hasta ahora, si el nombre contiene
+ * el texto completo.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+public final class ConsultaTexto {
+
+    /** Prefijos de campo aceptados y su columna, en singular, plural y castellano. */
+    private static final Map<String, String> PREFIJOS = Map.ofEntries(
+            Map.entry("name", "name"), Map.entry("nombre", "name"),
+            Map.entry("alias", "alias_names"), Map.entry("alias_names", "alias_names"),
+            Map.entry("title", "titles"), Map.entry("titles", "titles"), Map.entry("titulo", "titles"),
+            Map.entry("job", "jobs"), Map.entry("jobs", "jobs"), Map.entry("trabajo", "jobs"),
+            Map.entry("family", "family_members"), Map.entry("family_members", "family_members"),
+            Map.entry("familia", "family_members"),
+            Map.entry("romance", "romances"), Map.entry("romances", "romances"),
+            Map.entry("wand", "wands"), Map.entry("wands", "wands"), Map.entry("varita", "wands"),
+            Map.entry("patronus", "patronus"), Map.entry("boggart", "boggart"));
+
+    /** Consulta vacía. */
+    private static final ConsultaTexto VACIA = new ConsultaTexto("", List.of(), false);
+
+    /**
+     * Término de la consulta.
+     *
+     * @param campo      campo de {@link IndiceTextos#CAMPOS} al que se restringe, o -1 para todos
+     * @param texto      palabra plegada
+     * @param aproximado si se busca por distancia de edición entre las palabras de los nombres
+     */
+    record Termino(int campo, String texto, boolean aproximado) {
+    }
+
+    /** Texto completo normalizado con {@link IndiceNombres#normalizar(String)}. */
+    private final String nombre;
+
+    /** Términos, todos obligatorios. */
+    private final List<Termino> terminos;
+
+    /** Indica si algún término tiene prefijo de campo. */
+    private final boolean conCampos;
+
+    /** Indica si algún término es aproximado. */
+    private final boolean aproximada;
+
+    /** Patrón de cada término aproximado ({@code null} en los demás), para {@link #cumple(Map)}. */
+    private final AutomataLevenshtein.Patron[] patrones;
+
+    /**
+     * Crea la consulta.
+     *
+     * @param nombre    texto completo normalizado
+     * @param terminos  términos
+     * @param conCampos si algún término tiene prefijo de campo
+     */
+    private ConsultaTexto(String nombre, List<Termino> terminos, boolean conCampos) {
+        this.nombre = nombre;
+        this.terminos = terminos;
+        this.conCampos = conCampos;
+        this.patrones = new AutomataLevenshtein.Patron[terminos.size()];
+        boolean alguno = false;
+        for (int t = 0; t < patrones.length; t++) {
+            if (!terminos.get(t).aproximado()) continue;
+            patrones[t] = new AutomataLevenshtein.Patron(terminos.get(t).texto());
+            alguno = true;
+        }
+        this.aproximada = alguno;
+    }
+
+    /**
+     * Interpreta el texto del buscador. Un prefijo desconocido ({@code abc:def}) se toma como texto normal.
+     *
+     * @param texto texto escrito por el usuario (puede ser nulo)
+     * @return consulta, vacía si no hay ninguna palabra
+     * @author Nizam
+     */
+    public static ConsultaTexto interpretar(String texto) {
+        String nombre = IndiceNombres.normalizar(texto);
+        if (nombre.isEmpty()) return VACIA;
+        List<Termino> terminos = new ArrayList<>();
+        boolean conCampos = false;
+        for (String trozo : nombre.split("\\s+")) {
+            int campo = -1;
+            int dosPuntos = trozo.indexOf(':');
+            if (dosPuntos > 0) {
+                String columna = PREFIJOS.get(IndiceTextos.plegar(trozo.substring(0, dosPuntos)));
+                if (columna != null) {
+                    campo = List.of(IndiceTextos.CAMPOS).indexOf(columna);
+                    trozo = trozo.substring(dosPuntos + 1);
+                    conCampos = true;
+                }
+            }
+            boolean aproximado = trozo.endsWith("~");
+            final int c = aproximado ? 0 : campo;
+            IndiceTextos.trocear(IndiceTextos.plegar(trozo), palabra -> terminos.add(new Termino(c, palabra, aproximado)));
+        }
+        return new ConsultaTexto(nombre, Collections.unmodifiableList(terminos), conCampos);
+    }
+
+    /**
+     * Devuelve la columna de un prefijo de campo.
+     *
+     * @param prefijo prefijo sin los dos puntos
+     * @return columna del CSV, o {@code null} si no es un prefijo de campo
+     * @author Nizam
+     */
+    static String columna(String prefijo) {
+        return PREFIJOS.get(IndiceTextos.plegar(prefijo));
+    }
+
+    /**
+     * Devuelve la misma consulta con todos los términos aproximados, para volver a buscar cuando la exacta
+     * no encuentra nada (por ejemplo, con el nombre mal escrito).
+     *
+     * @return consulta aproximada, o {@code null} si esta tiene campos, ya es aproximada o no tiene términos
+     * @author Nizam
+     */
+    public ConsultaTexto versionAproximada() {
+        if (conCampos || aproximada || terminos.isEmpty()) return null;
+        List<Termino> aproximados = new ArrayList<>(terminos.size());
+        for (Termino t : terminos) aproximados.add(new Termino(0, t.texto(), true));
+        return new ConsultaTexto(nombre, Collections.unmodifiableList(aproximados), false);
+    }
+
+    /**
+     * Indica si la consulta no filtra.
+     *
+     * @return {@code true} si no hay texto
+     * @author Nizam
+     */
+    public boolean vacia() {
+        return nombre.isEmpty();
+    }
+
+    /**
+     * Indica si algún término se restringe a un campo. Esas consultas no se cumplen por el nombre completo.
+     *
+     * @return {@code true} si hay prefijos de campo
+     * @author Nizam
+     */
+    public boolean conCampos() {
+        return conCampos;
+    }
+
+    /**
+     * Indica si algún término es aproximado. Esas consultas no se cumplen por el nombre completo.
+     *
+     * @return {@code true} si hay términos aproximados
+     * @author Nizam
+     */
+    public boolean aproximada() {
+        return aproximada;
+    }
+
+    /**
+     * Devuelve el texto completo normalizado, para buscarlo como subcadena del nombre.
+     *
+     * @return texto normalizado con {@link IndiceNombres#normalizar(String)}
+     * @author Nizam
+     */
+    public String nombre() {
+        return nombre;
+    }
+
+    /**
+     * Devuelve los términos de la consulta.
+     *
+     * @return términos, todos obligatorios
+     * @author Nizam
+     */
+    List<Termino> terminos() {
+        return terminos;
+    }
+
+    /**
+     * Comprueba un personaje sin usar los índices: cada término debe coincidir con el comienzo de alguna
+     * palabra de sus campos (o, si es aproximado, estar cerca de alguna palabra del nombre), o bien, si la
+     * consulta no tiene campos ni términos aproximados, el nombre debe contener el texto. Cada columna de
+     * texto se lee y se trocea solo si algún término la necesita, pero aun así es mucho más lento que el índice.
+     *
+     * @param p personaje
+     * @return {@code true} si cumple la consulta
+     * @author Nizam
+     */
+    public boolean cumple(Map<String, String> p) {
+        if (nombre.isEmpty()) return true;
+        if (!conCampos && !aproximada && IndiceNombres.normalizar(p.get("name")).contains(nombre)) return true;
+        if (terminos.isEmpty()) return false;
+        List<List<String>> palabras = new ArrayList<>(Collections.nCopies(IndiceTextos.CAMPOS.length, null));
+        for (int t = 0; t < terminos.size(); t++) {
+            Termino termino = terminos.get(t);
+            boolean prefijo = termino.texto().length() >= IndiceTextos.MINIMO_PREFIJO;
+            int tolerancia = AutomataLevenshtein.tolerancia(termino.texto().length());
+            boolean encontrado = false;
+            for (int c = 0; c < IndiceTextos.CAMPOS.length && !encontrado; c++) {
+                if (termino.campo() >= 0 && termino.campo() != c) continue;
+                if (palabras.get(c) == null) {
+                    List<String> campo = new ArrayList<>();
+                    IndiceTextos.trocear(IndiceTextos.plegar(p.get(IndiceTextos.CAMPOS[c])), campo::add);
+                    palabras.set(c, campo);
+                }
+                for (String palabra : palabras.get(c)) {
+                    if (patrones[t] != null ? patrones[t].distancia(palabra, tolerancia) <= tolerancia
+                            : prefijo ? palabra.startsWith(termino.texto()) : palabra.equals(termino.texto())) {
+                        encontrado = true;
+                        break;
+                    }
+                }
+            }
+            if (!encontrado) return false;
+        }
+        return true;
+    }
+}
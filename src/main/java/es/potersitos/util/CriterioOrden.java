@@ -0,0 +1,40 @@
+package es.potersitos.util;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Criterio de ordenación de la vista de personajes: la columna, el sentido y el idioma con el que se
+ * comparan los textos. Las fechas ({@code born}, {@code died}) se comparan por su valor y no dependen del idioma.
+ *
+ * @param columna    columna del CSV por la que se ordena
+ * @param ascendente {@code true} de menor a mayor; los personajes sin valor van siempre al final
+ * @param idioma     idioma cuyas reglas de ordenación alfabética se aplican
+ * @author Nizam
+ * @version 1.0
+ */
+public record CriterioOrden(String columna, boolean ascendente, Locale idioma) {
+
+    /**
+     * Identifica la permutación que sirve a este criterio, que es la misma en los dos sentidos.
+     *
+     * @return columna, más el idioma si es una columna de texto
+     * @author Nizam
+     */
+    String clave() {
+        return OrdenPersonajes.esFecha(columna) ? columna : columna + "|" + idioma.toLanguageTag();
+    }
+
+    /**
+     * Ordena una lista de personajes sin índices, para cuando la vista ha tenido que recorrer la lista.
+     * Las claves de ordenación se calculan una vez por valor distinto, no en cada comparación.
+     *
+     * @param personajes personajes a ordenar (no se modifica)
+     * @return nueva lista ordenada
+     * @author Nizam
+     */
+    public List<Map<String, String>> ordenar(List<Map<String, String>> personajes) {
+        return new OrdenPersonajes(personajes, this).ordenar(personajes, ascendente);
+    }
+}
@@ -0,0 +1,322 @@
+package es.potersitos.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Diario de cambios (write-ahead log) que acompaña a todosPersonajes.csv.
+ * Cada alta, modificación o baja se añade al final como un registro CSV en lugar de reescribir
+ * el archivo completo. Al cargar se reproduce sobre el CSV y, cuando crece demasiado, se compacta
+ * en un CSV nuevo.
+ * <p>
+ * Formato de cada registro: {@code U,claveAnterior,<columnas>} para altas y modificaciones
+ * (clave vacía en las altas) y {@code D,clave} para las bajas.
+ * <p>
+ * Varios procesos pueden añadir registros al mismo diario (siempre con {@link CerrojoArchivos}); cada uno
+ * recuerda hasta dónde lo ha aplicado en memoria y lee el resto con {@link #leerNuevos()}.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class DiarioCambios {
+
+    /** Logger para la clase. */
+    private static final Logger logger = LoggerFactory.getLogger(DiarioCambios.class);
+
+    /** Operación de alta o modificación. */
+    static final String OP_GUARDAR = "U";
+
+    /** Operación de baja (lápida). */
+    static final String OP_BAJA = "D";
+
+    /** Ruta del diario activo. */
+    private final Path ruta;
+
+    /** Ruta del diario apartado mientras se compacta. */
+    private final Path rutaCompactando;
+
+    /** Ruta de la unión del diario apartado y el activo mientras se sustituye al apartado (ver {@link #apartar()}). */
+    private final Path rutaUnion;
+
+    /** Número de registros en el diario activo. */
+    private int entradas;
+
+    /** Bytes del diario activo ya aplicados en memoria; lo que siga lo ha escrito otro proceso. */
+    private long leidoHasta;
+
+    /**
+     * Crea el diario asociado a un CSV.
+     *
+     * @param csv ruta del CSV
+     * @author Nizam
+     */
+    DiarioCambios(Path csv) {
+        ruta = csv.resolveSibling(csv.getFileName() + ".diario");
+        rutaCompactando = csv.resolveSibling(csv.getFileName() + ".diario.compactando");
+        rutaUnion = csv.resolveSibling(csv.getFileName() + ".diario.union");
+    }
+
+    /**
+     * Construye el registro de un alta o modificación.
+     *
+     * @param claveAnterior slug normalizado del registro sustituido (vacío en altas)
+     * @param valores       columnas del personaje en el orden del CSV
+     * @return registro listo para {@link #registrar(List)}
+     * @author Nizam
+     */
+    static String[] guardar(String claveAnterior, String[] valores) {
+        String[] registro = new String[valores.length + 2];
+        registro[0] = OP_GUARDAR;
+        registro[1] = claveAnterior;
+        System.arraycopy(valores, 0, registro, 2, valores.length);
+        return registro;
+    }
+
+    /**
+     * Construye el registro de una baja.
+     *
+     * @param clave slug normalizado del registro eliminado
+     * @return registro listo para {@link #registrar(List)}
+     * @author Nizam
+     */
+    static String[] baja(String clave) {
+        return new String[]{OP_BAJA, clave};
+    }
+
+    /**
+     * Añade registros al final del diario con una única escritura y los fuerza a disco.
+     *
+     * @param registros registros a añadir
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    synchronized void registrar(List<String[]> registros) throws IOException {
+        recuperarUnion();
+        StringBuilder sb = new StringBuilder();
+        for (String[] registro : registros) {
+            sb.append(PersonajeCSVManager.formatearLineaCSV(registro));
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (bytes.hasRemaining()) {
+                canal.write(bytes);
+            }
+            canal.force(false);
+            leidoHasta = canal.size();
+        }
+        entradas += registros.size();
+    }
+
+    /**
+     * Recorta el diario activo a un tamaño anterior, descartando los últimos registros
+     * (deshace un {@link #registrar(List)} o elimina una escritura incompleta).
+     *
+     * @param tamano    tamaño en bytes que tenía el diario antes de registrar
+     * @param registros número de registros descartados
+     * @throws IOException si no se puede recortar
+     * @author Nizam
+     */
+    synchronized void recortar(long tamano, int registros) throws IOException {
+        if (Files.exists(ruta)) {
+            try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.WRITE)) {
+                canal.truncate(tamano);
+                canal.force(false);
+            }
+        }
+        entradas = Math.max(0, entradas - registros);
+        leidoHasta = Math.min(leidoHasta, tamano);
+    }
+
+    /**
+     * Lee todos los registros pendientes: primero los apartados por una compactación
+     * interrumpida y después los del diario activo. Si {@link #apartar()} se interrumpió después de
+     * borrar el diario activo, los apartados están en la unión.
+     *
+     * @return registros en orden de escritura
+     * @author Nizam
+     */
+    synchronized List<String[]> leerEntradas() {
+        List<String[]> registros = new ArrayList<>();
+        leer(Files.exists(rutaUnion) && !Files.exists(ruta) ? rutaUnion : rutaCompactando, 0, registros);
+        int apartados = registros.size();
+        leidoHasta = leer(ruta, 0, registros);
+        entradas = registros.size() - apartados;
+        return registros;
+    }
+
+    /**
+     * Lee los registros que otro proceso ha añadido al diario activo desde la última lectura o escritura.
+     *
+     * @return registros nuevos en orden de escritura
+     * @author Nizam
+     */
+    synchronized List<String[]> leerNuevos() {
+        List<String[]> registros = new ArrayList<>();
+        leidoHasta = leer(ruta, leidoHasta, registros);
+        entradas += registros.size();
+        return registros;
+    }
+
+    /**
+     * Lee los registros de un archivo de diario si existe, desde una posición.
+     * Un último registro sin salto de línea final se ignora: otro proceso lo está escribiendo.
+     *
+     * @param archivo   archivo a leer
+     * @param desde     posición del primer registro a leer
+     * @param registros lista donde se añaden
+     * @return posición que sigue al último registro completo leído
+     * @author Nizam
+     */
+    private static long leer(Path archivo, long desde, List<String[]> registros) {
+        if (!Files.exists(archivo)) return 0;
+        long leido = desde;
+        try (LectorCSV lector = new LectorCSV(Channels.newInputStream(FileChannel.open(archivo, StandardOpenOption.READ).position(desde)))) {
+            String[] registro;
+            while ((registro = lector.siguienteRegistro()) != null && lector.terminadoEnSaltoDeLinea()) {
+                if (registro.length >= 2) registros.add(registro);
+                leido = desde + lector.posicion();
+            }
+        } catch (IOException e) {
+            logger.error("Error leyendo el diario {}: {}", archivo, e.getMessage());
+        }
+        return leido;
+    }
+
+    /**
+     * Devuelve cuántos registros tiene el diario activo.
+     *
+     * @return número de registros en el diario activo
+     * @author Nizam
+     */
+    synchronized int getEntradas() {
+        return entradas;
+    }
+
+    /**
+     * Devuelve hasta dónde se ha leído o escrito el diario activo desde este proceso.
+     *
+     * @return posición en bytes
+     * @author Nizam
+     */
+    synchronized long getLeidoHasta() {
+        return leidoHasta;
+    }
+
+    /**
+     * Devuelve el tamaño del diario activo en disco.
+     *
+     * @return tamaño en bytes del diario activo
+     * @author Nizam
+     */
+    long getTamanoBytes() {
+        try {
+            return Files.exists(ruta) ? Files.size(ruta) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Devuelve el tamaño del diario apartado por una compactación en curso o interrumpida.
+     *
+     * @return tamaño en bytes del diario apartado, 0 si no hay
+     * @author Nizam
+     */
+    long getTamanoApartado() {
+        try {
+            return Files.exists(rutaCompactando) ? Files.size(rutaCompactando) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Aparta el diario activo para compactarlo y empieza uno vacío.
+     * Si quedaba un diario apartado por una compactación fallida, se escribe la unión de los dos en otro
+     * archivo, se borra el activo y la unión sustituye al apartado. Así ningún registro queda a la vez en
+     * el apartado y en el activo: si se interrumpe, {@link #recuperarUnion()} sabe por el diario activo
+     * cuál de los dos estados vale.
+     *
+     * @throws IOException si no se puede mover el diario
+     * @author Nizam
+     */
+    synchronized void apartar() throws IOException {
+        recuperarUnion();
+        if (Files.exists(ruta)) {
+            if (Files.exists(rutaCompactando)) {
+                EscrituraAtomica.escribir(rutaUnion, salida -> {
+                    Files.copy(rutaCompactando, salida);
+                    Files.copy(ruta, salida);
+                });
+                Files.delete(ruta);
+                EscrituraAtomica.mover(rutaUnion, rutaCompactando);
+            } else {
+                Files.move(ruta, rutaCompactando, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        entradas = 0;
+        leidoHasta = 0;
+    }
+
+    /**
+     * Resuelve una unión que {@link #apartar()} dejó a medias. Si el diario activo aún existe, no se llegó
+     * a borrar y la unión sobra; si no, la unión ya lo incluye y pasa a ser el apartado. Se llama con
+     * {@link CerrojoArchivos} antes de escribir en el diario, para que un diario activo nuevo no se confunda
+     * con el que se unió.
+     *
+     * @throws IOException si no se puede borrar o mover la unión
+     * @author Nizam
+     */
+    private void recuperarUnion() throws IOException {
+        if (!Files.exists(rutaUnion)) return;
+        if (Files.exists(ruta)) {
+            Files.delete(rutaUnion);
+            logger.warn("Descartada una unión de diarios interrumpida antes de borrar el diario activo.");
+        } else {
+            EscrituraAtomica.mover(rutaUnion, rutaCompactando);
+            logger.warn("Completada una unión de diarios interrumpida.");
+        }
+    }
+
+    /**
+     * Borra el diario apartado una vez que el CSV compactado ya lo incluye.
+     *
+     * @author Nizam
+     */
+    synchronized void descartarApartado() {
+        try {
+            Files.deleteIfExists(rutaCompactando);
+        } catch (IOException e) {
+            logger.warn("No se pudo borrar el diario compactado: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Borra todos los cambios pendientes (por ejemplo, tras importar un CSV nuevo).
+     *
+     * @author Nizam
+     */
+    synchronized void descartarTodo() {
+        descartarApartado();
+        try {
+            Files.deleteIfExists(rutaUnion);
+            Files.deleteIfExists(ruta);
+        } catch (IOException e) {
+            logger.warn("No se pudo borrar el diario: {}", e.getMessage());
+        }
+        entradas = 0;
+        leidoHasta = 0;
+    }
+}
@@ -0,0 +1,185 @@
+package es.potersitos.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * Evalúa un filtro fila a fila sobre toda la lista, para los filtros que los índices no resuelven (por ejemplo,
+ * mientras se construyen). El resultado es un bit por posición, de modo que se devuelve como una
+ * {@link SeleccionPersonajes} que la paginación lee sin copiar ninguna referencia y que conserva el orden
+ * de la lista.
+ * <p>
+ * Antes de decidir cómo evaluar se mide el coste real del filtro sobre las primeras {@link #MUESTRA} filas:
+ * si el resto costaría más de {@link #UMBRAL_PARALELO_NANOS}, se reparte en trozos sobre un
+ * {@link ForkJoinPool} propio (para no competir con el pool común, que usa la carga del CSV); si no, o si
+ * solo hay un procesador, se sigue en el hilo que llama. Cada trozo escribe palabras distintas del mapa de
+ * bits, así que no hace falta sincronizar nada. El número de hilos se cambia con
+ * {@code -Dpotersitos.hilosFiltro=N}.
+ * <p>
+ * Lo mismo sirve para las cláusulas fila a fila de una {@link ConsultaFiltro}, que solo se evalúan sobre
+ * los documentos que han dejado los índices.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+public final class EjecutorFiltros {
+
+    /** Logger para la clase. */
+    private static final Logger logger = LoggerFactory.getLogger(EjecutorFiltros.class);
+
+    /** Filas que se evalúan en el hilo que llama para medir el coste del filtro (múltiplo de 64). */
+    private static final int MUESTRA = 4096;
+
+    /** Coste estimado del resto de filas a partir del cual compensa repartirlas entre varios hilos. */
+    private static final long UMBRAL_PARALELO_NANOS = 10_000_000;
+
+    /** Filas de cada trozo que evalúa un hilo sin volver a dividir (múltiplo de 64). */
+    private static final int FILAS_TROZO = 16 * 1024;
+
+    /** Cada cuántas filas se comprueba si se ha cancelado la evaluación en el hilo que llama. */
+    private static final int COMPROBAR_CANCELACION = 4096;
+
+    /** Hilos que evalúan los filtros en paralelo. */
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Math.max(1, Integer.getInteger("potersitos.hilosFiltro", Runtime.getRuntime().availableProcessors())),
+            pool -> {
+                ForkJoinWorkerThread hilo = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                hilo.setName("filtro-paralelo-" + hilo.getPoolIndex());
+                hilo.setDaemon(true);
+                return hilo;
+            }, null, false);
+
+    /**
+     * Constructor privado (clase de utilidades).
+     */
+    private EjecutorFiltros() {
+    }
+
+    /**
+     * Evalúa el filtro sobre todas las filas de la lista.
+     *
+     * @param lista     lista inmutable a filtrar
+     * @param filtro    condición de cada fila; puede llamarse desde varios hilos a la vez
+     * @param cancelado indica si se ha cancelado la evaluación (se consulta también desde otros hilos)
+     * @return vista de solo lectura con las filas que cumplen el filtro en el orden de la lista, o
+     * {@code null} si se ha cancelado
+     * @author Nizam
+     */
+    public static List<Map<String, String>> filtrar(List<Map<String, String>> lista, Predicate<Map<String, String>> filtro,
+                                                    BooleanSupplier cancelado) {
+        int n = lista.size();
+        long[] bits = new long[(n + 63) >>> 6];
+        boolean terminado = ejecutar(n, (desde, hasta) -> {
+            for (int i = desde; i < hasta; i++) {
+                if (filtro.test(lista.get(i))) bits[i >>> 6] |= 1L << i;
+            }
+        }, cancelado);
+        return terminado ? new SeleccionPersonajes(lista, bits) : null;
+    }
+
+    /**
+     * Evalúa el filtro solo sobre los documentos candidatos, para las cláusulas de una {@link ConsultaFiltro}
+     * que {@link IndicePersonajes} no resuelve con sus índices. El coste se mide y se reparte igual que al
+     * recorrer la lista, por rangos de documentos.
+     *
+     * @param candidatos un bit por documento a evaluar (no se modifica)
+     * @param personajes personaje de cada documento candidato
+     * @param filtro     condición de cada personaje; puede llamarse desde varios hilos a la vez
+     * @param cancelado  indica si se ha cancelado la evaluación (se consulta también desde otros hilos)
+     * @return un bit por documento candidato que cumple el filtro, o {@code null} si se ha cancelado
+     * @author Nizam
+     */
+    static long[] filtrar(long[] candidatos, IntFunction<Map<String, String>> personajes, Predicate<Map<String, String>> filtro,
+                          BooleanSupplier cancelado) {
+        long[] bits = new long[candidatos.length];
+        boolean terminado = ejecutar(candidatos.length << 6, (desde, hasta) -> {
+            for (int i = desde >>> 6; i < (hasta + 63) >>> 6; i++) {
+                for (long w = candidatos[i]; w != 0; w &= w - 1) {
+                    int d = (i << 6) + Long.numberOfTrailingZeros(w);
+                    if (filtro.test(personajes.apply(d))) bits[i] |= 1L << d;
+                }
+            }
+        }, cancelado);
+        return terminado ? bits : null;
+    }
+
+    /**
+     * Evalúa un rango tras otro en el hilo que llama, o en paralelo si la muestra indica que compensa.
+     *
+     * @param n         número de posiciones
+     * @param tramo     evaluación de un rango de posiciones
+     * @param cancelado indica si se ha cancelado la evaluación
+     * @return {@code false} si se ha cancelado
+     */
+    private static boolean ejecutar(int n, Tramo tramo, BooleanSupplier cancelado) {
+        long inicio = System.nanoTime();
+        int muestra = Math.min(n, MUESTRA);
+        tramo.evaluar(0, muestra);
+        long estimado = (System.nanoTime() - inicio) / Math.max(1, muestra) * (n - muestra);
+
+        boolean paralelo = POOL.getParallelism() > 1 && estimado > UMBRAL_PARALELO_NANOS;
+        if (paralelo) {
+            POOL.invoke(new Trozo(tramo, cancelado, muestra, n));
+        } else {
+            for (int desde = muestra; desde < n; desde += COMPROBAR_CANCELACION) {
+                if (cancelado.getAsBoolean()) return false;
+                tramo.evaluar(desde, Math.min(n, desde + COMPROBAR_CANCELACION));
+            }
+        }
+        if (cancelado.getAsBoolean()) return false;
+        logger.debug("Filtro evaluado {} sobre {} posiciones en {} ms.", paralelo ? "en paralelo" : "en un hilo", n,
+                (System.nanoTime() - inicio) / 1_000_000);
+        return true;
+    }
+
+    /**
+     * Evaluación de un rango de posiciones, que marca las que cumplen el filtro. Dos rangos distintos
+     * escriben palabras distintas del mapa de bits.
+     */
+    @FunctionalInterface
+    private interface Tramo {
+        /**
+         * @param desde primera posición, múltiplo de 64
+         * @param hasta posición siguiente a la última
+         */
+        void evaluar(int desde, int hasta);
+    }
+
+    /**
+     * Rango de posiciones que se divide por la mitad, en múltiplos de 64, hasta quedar en {@link #FILAS_TROZO}.
+     */
+    private static final class Trozo extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Tramo tramo;
+        private final transient BooleanSupplier cancelado;
+        private final int desde, hasta;
+
+        Trozo(Tramo tramo, BooleanSupplier cancelado, int desde, int hasta) {
+            this.tramo = tramo;
+            this.cancelado = cancelado;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelado.getAsBoolean()) return;
+            if (hasta - desde <= FILAS_TROZO) {
+                tramo.evaluar(desde, hasta);
+                return;
+            }
+            int medio = desde + ((hasta - desde) / 2 & ~63);
+            invokeAll(new Trozo(tramo, cancelado, desde, medio), new Trozo(tramo, cancelado, medio, hasta));
+        }
+    }
+}
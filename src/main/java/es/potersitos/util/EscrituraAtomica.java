@@ -0,0 +1,165 @@
+package es.potersitos.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Escritura segura de archivos completos (CSV, XML y binario).
+ * El contenido se escribe en un archivo temporal junto al destino a través de un único
+ * {@link FileChannel} con búfer, se fuerza a disco y se sustituye el destino con un movimiento
+ * atómico, de modo que un cierre inesperado deja siempre el archivo anterior o el nuevo, nunca uno a medias.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+public final class EscrituraAtomica {
+
+    /** Logger para la clase. */
+    private static final Logger logger = LoggerFactory.getLogger(EscrituraAtomica.class);
+
+    /** Sufijo de los archivos temporales. */
+    static final String SUFIJO_TEMPORAL = ".tmp";
+
+    /** Tamaño del búfer de escritura. */
+    private static final int TAMANO_BUFER = 1 << 16;
+
+    /**
+     * Contenido que se vuelca sobre el flujo del archivo temporal.
+     *
+     * @author Nizam
+     */
+    @FunctionalInterface
+    public interface Contenido {
+        /**
+         * Escribe el contenido completo del archivo.
+         *
+         * @param salida flujo con búfer sobre el archivo temporal (no hace falta cerrarlo)
+         * @throws Exception si falla la generación o la escritura
+         */
+        void escribir(OutputStream salida) throws Exception;
+    }
+
+    /**
+     * Constructor privado (clase de utilidades).
+     */
+    private EscrituraAtomica() {
+    }
+
+    /**
+     * Escribe un archivo completo de forma atómica.
+     *
+     * @param destino   archivo a crear o sustituir
+     * @param contenido generador del contenido
+     * @throws IOException si falla la escritura; el destino queda intacto
+     * @author Nizam
+     */
+    public static void escribir(Path destino, Contenido contenido) throws IOException {
+        escribir(destino, contenido, new Object(), () -> {
+        });
+    }
+
+    /**
+     * Escribe un archivo completo de forma atómica y ejecuta una acción justo después de sustituirlo.
+     * El temporal se escribe sin bloqueo; solo la sustitución y la acción se hacen bajo el cerrojo,
+     * de modo que quien lo comparta ve el archivo anterior o el nuevo junto con el efecto de la acción.
+     *
+     * @param destino     archivo a crear o sustituir
+     * @param contenido   generador del contenido
+     * @param cerrojo     objeto con el que se sincroniza la sustitución
+     * @param alSustituir acción a ejecutar bajo el cerrojo tras la sustitución
+     * @throws IOException si falla la escritura; el destino queda intacto
+     * @author Nizam
+     */
+    static void escribir(Path destino, Contenido contenido, Object cerrojo, Runnable alSustituir) throws IOException {
+        Path temporal = destino.resolveSibling(destino.getFileName() + SUFIJO_TEMPORAL);
+        try {
+            try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream salida = new BufferedOutputStream(Channels.newOutputStream(canal), TAMANO_BUFER);
+                contenido.escribir(salida);
+                salida.flush();
+                canal.force(true);
+            }
+            synchronized (cerrojo) {
+                mover(temporal, destino);
+                alSustituir.run();
+            }
+            forzarCarpeta(destino.getParent());
+        } catch (Exception e) {
+            Files.deleteIfExists(temporal);
+            throw e instanceof IOException io ? io : new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Resuelve los temporales que dejó una escritura interrumpida en la carpeta.
+     * Si el destino existe se conserva (la sustitución no llegó a hacerse) y se borra el temporal;
+     * si no existe, el temporal es la única copia y pasa a ser el destino.
+     *
+     * @param carpeta carpeta de datos de la aplicación
+     * @author Nizam
+     */
+    static void recuperarTemporales(Path carpeta) {
+        if (carpeta == null || !Files.isDirectory(carpeta)) return;
+
+        try (DirectoryStream<Path> temporales = Files.newDirectoryStream(carpeta, "*" + SUFIJO_TEMPORAL)) {
+            for (Path temporal : temporales) {
+                String nombre = temporal.getFileName().toString();
+                Path destino = temporal.resolveSibling(nombre.substring(0, nombre.length() - SUFIJO_TEMPORAL.length()));
+                if (Files.exists(destino)) {
+                    Files.delete(temporal);
+                    logger.warn("Descartada escritura interrumpida de {}", destino.getFileName());
+                } else {
+                    mover(temporal, destino);
+                    logger.warn("Recuperado {} desde su archivo temporal", destino.getFileName());
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error recuperando archivos temporales: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Sustituye el destino por el temporal, de forma atómica si el sistema de archivos lo permite.
+     *
+     * @param temporal archivo ya escrito
+     * @param destino  archivo a sustituir
+     * @throws IOException si no se puede mover
+     * @author Nizam
+     */
+    static void mover(Path temporal, Path destino) throws IOException {
+        try {
+            Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Fuerza a disco la entrada de directorio del renombrado. En sistemas que no permiten
+     * abrir carpetas (Windows) no hace nada.
+     *
+     * @param carpeta carpeta del archivo
+     * @author Nizam
+     */
+    private static void forzarCarpeta(Path carpeta) {
+        if (carpeta == null) return;
+        try (FileChannel canal = FileChannel.open(carpeta, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException e) {
+            logger.debug("No se pudo forzar la carpeta {}: {}", carpeta, e.getMessage());
+        }
+    }
+}
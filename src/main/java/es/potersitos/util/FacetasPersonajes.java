@@ -0,0 +1,304 @@
+package es.potersitos.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Mapas de bits de los filtros por categoría (casa, nacionalidad, especie y género) de la vista de personajes.
+ * Cada opción de cada faceta se resuelve una sola vez por personaje, al indexarlo, y queda como un bit en el
+ * mapa de esa opción; filtrar es entonces unir (OR) las opciones marcadas de cada faceta e intersecar (AND)
+ * las facetas, de 64 en 64 personajes y sin leer ninguna fila. Con los mismos mapas se cuenta, para cada
+ * opción, cuántos personajes quedarían al marcarla ({@link #contar(int[], long[])}).
+ * <p>
+ * Los bits se numeran con los documentos de {@link IndiceNombres}, que siguen el orden de la lista pero dejan
+ * huecos al eliminar. {@link #aPosiciones(long[])} quita esos huecos para obtener las posiciones en la lista.
+ * <p>
+ * No es seguro para varios hilos: {@link IndicePersonajes} lo usa bajo su propio cerrojo.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+public final class FacetasPersonajes {
+
+    /** Faceta de la casa: Gryffindor, Slytherin, Hufflepuff y Ravenclaw. */
+    public static final int CASA = 0;
+
+    /** Faceta de la nacionalidad: británica, irlandesa, francesa y búlgara. */
+    public static final int NACIONALIDAD = 1;
+
+    /** Faceta de la especie: humana, mestiza, elfo y gigante. */
+    public static final int ESPECIE = 2;
+
+    /** Faceta del género: masculino y femenino. */
+    public static final int GENERO = 3;
+
+    /** Número de facetas. */
+    public static final int FACETAS = 4;
+
+    /** Número de opciones de cada faceta, en el orden de las casillas del panel de filtros. */
+    private static final int[] OPCIONES = {4, 4, 4, 2};
+
+    /** Bits de cada opción: {@code bits[faceta][opcion][palabra]}. */
+    private final long[][][] bits = new long[FACETAS][][];
+
+    /** Documentos vigentes (los eliminados quedan a 0). */
+    private long[] vivos;
+
+    /**
+     * Construye los mapas con los personajes en el orden de la lista, que deben recibir los mismos números
+     * de documento que en {@link IndiceNombres}.
+     *
+     * @param personajes personajes a indexar
+     * @author Nizam
+     */
+    FacetasPersonajes(List<Map<String, String>> personajes) {
+        int palabras = Math.max(1, (personajes.size() + personajes.size() / 8 + 63) >>> 6);
+        vivos = new long[palabras];
+        for (int f = 0; f < FACETAS; f++) {
+            bits[f] = new long[OPCIONES[f]][palabras];
+        }
+        int documento = 0;
+        for (Map<String, String> p : personajes) {
+            asignar(documento++, p);
+        }
+    }
+
+    /**
+     * Calcula las opciones de una faceta que cumple un personaje. Un personaje puede cumplir varias
+     * (por ejemplo, una especie «half-giant» es mestiza y gigante) o ninguna.
+     *
+     * @param faceta faceta ({@link #CASA}, {@link #NACIONALIDAD}, {@link #ESPECIE} o {@link #GENERO})
+     * @param p      personaje
+     * @return un bit por opción cumplida
+     * @author Nizam
+     */
+    public static int opciones(int faceta, Map<String, String> p) {
+        switch (faceta) {
+            case CASA -> {
+                String house = p.getOrDefault("house", "").toLowerCase(Locale.ROOT);
+                return bit(house.contains("gryffindor"), 0) | bit(house.contains("slytherin"), 1)
+                        | bit(house.contains("hufflepuff"), 2) | bit(house.contains("ravenclaw"), 3);
+            }
+            case NACIONALIDAD -> {
+                String nac = p.getOrDefault("nationality", "").toLowerCase(Locale.ROOT);
+                return bit(nac.contains("brit") || nac.contains("kingdom") || nac.contains("uk")
+                                || nac.contains("scot") || nac.contains("eng"), 0)
+                        | bit(nac.contains("irish") || nac.contains("ireland"), 1)
+                        | bit(nac.contains("french") || nac.contains("france"), 2)
+                        | bit(nac.contains("bulgar"), 3);
+            }
+            case ESPECIE -> {
+                String species = p.getOrDefault("species", "").toLowerCase(Locale.ROOT);
+                return bit(species.equals("human"), 0) | bit(species.contains("half") || species.contains("mixed"), 1)
+                        | bit(species.contains("elf"), 2) | bit(species.contains("giant"), 3);
+            }
+            case GENERO -> {
+                String gender = p.getOrDefault("gender", "").toLowerCase(Locale.ROOT);
+                return bit(gender.equals("male"), 0) | bit(gender.equals("female"), 1);
+            }
+            default -> throw new IllegalArgumentException("Faceta desconocida: " + faceta);
+        }
+    }
+
+    /**
+     * Comprueba un personaje contra una selección sin usar los mapas, para los personajes que aún no
+     * están indexados.
+     *
+     * @param seleccion opciones marcadas de cada faceta (un bit por opción; 0 si la faceta no filtra)
+     * @param p         personaje
+     * @return {@code true} si cumple alguna opción marcada de cada faceta que filtra
+     * @author Nizam
+     */
+    public static boolean cumple(int[] seleccion, Map<String, String> p) {
+        for (int f = 0; f < FACETAS; f++) {
+            if (seleccion[f] != 0 && (opciones(f, p) & seleccion[f]) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Indica si una selección filtra por alguna faceta.
+     *
+     * @param seleccion opciones marcadas de cada faceta
+     * @return {@code true} si hay alguna opción marcada
+     * @author Nizam
+     */
+    public static boolean filtra(int[] seleccion) {
+        for (int marcadas : seleccion) {
+            if (marcadas != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Marca o desmarca las opciones de un documento.
+     *
+     * @param documento número de documento
+     * @param p         personaje del documento
+     * @author Nizam
+     */
+    void asignar(int documento, Map<String, String> p) {
+        int palabra = documento >>> 6;
+        if (palabra >= vivos.length) crecer(Math.max(palabra + 1, vivos.length + (vivos.length >> 1)));
+        long bit = 1L << documento;
+        vivos[palabra] |= bit;
+        for (int f = 0; f < FACETAS; f++) {
+            int cumplidas = opciones(f, p);
+            for (int o = 0; o < OPCIONES[f]; o++) {
+                if ((cumplidas & (1 << o)) != 0) bits[f][o][palabra] |= bit;
+                else bits[f][o][palabra] &= ~bit;
+            }
+        }
+    }
+
+    /**
+     * Quita un documento eliminado.
+     *
+     * @param documento número de documento
+     * @author Nizam
+     */
+    void quitar(int documento) {
+        int palabra = documento >>> 6;
+        if (palabra >= vivos.length) return;
+        long bit = ~(1L << documento);
+        vivos[palabra] &= bit;
+        for (long[][] faceta : bits) {
+            for (long[] opcion : faceta) {
+                opcion[palabra] &= bit;
+            }
+        }
+    }
+
+    /**
+     * Calcula los documentos que cumplen una selección: OR de las opciones marcadas dentro de cada faceta
+     * y AND entre facetas.
+     *
+     * @param seleccion opciones marcadas de cada faceta (un bit por opción; 0 si la faceta no filtra)
+     * @return un bit por documento, nuevo y propiedad del llamante
+     * @author Nizam
+     */
+    long[] filtrar(int[] seleccion) {
+        long[] resultado = vivos.clone();
+        long[] union = new long[vivos.length];
+        for (int f = 0; f < FACETAS; f++) {
+            if (seleccion[f] == 0) continue;
+            Arrays.fill(union, 0);
+            for (int o = 0; o < OPCIONES[f]; o++) {
+                if ((seleccion[f] & (1 << o)) == 0) continue;
+                long[] opcion = bits[f][o];
+                for (int i = 0; i < union.length; i++) union[i] |= opcion[i];
+            }
+            for (int i = 0; i < resultado.length; i++) resultado[i] &= union[i];
+        }
+        return resultado;
+    }
+
+    /**
+     * Devuelve los documentos que cumplen una opción.
+     *
+     * @param faceta faceta
+     * @param opcion número de opción dentro de la faceta
+     * @return un bit por documento; es el mapa interno y no debe modificarse
+     * @author Nizam
+     */
+    long[] opcion(int faceta, int opcion) {
+        return bits[faceta][opcion];
+    }
+
+    /**
+     * Cuenta, para cada opción, los documentos que la cumplen y cumplen además el resto del filtro: el
+     * nombre y las demás facetas, pero no las otras opciones de la misma faceta. Es el número de resultados
+     * que tendría el filtro si solo se marcara esa opción en su faceta. Se hace en una sola pasada sobre
+     * los mapas, sin crear mapas intermedios.
+     *
+     * @param seleccion opciones marcadas de cada faceta (un bit por opción; 0 si la faceta no filtra)
+     * @param porNombre documentos que cumplen el filtro por nombre, o {@code null} si no se filtra por nombre
+     * @return recuentos por faceta y opción
+     * @author Nizam
+     */
+    int[][] contar(int[] seleccion, long[] porNombre) {
+        int[][] recuentos = new int[FACETAS][];
+        for (int f = 0; f < FACETAS; f++) recuentos[f] = new int[OPCIONES[f]];
+        long[] uniones = new long[FACETAS];
+        for (int i = 0; i < vivos.length; i++) {
+            long comun = vivos[i];
+            if (porNombre != null) comun &= i < porNombre.length ? porNombre[i] : 0;
+            if (comun == 0) continue;
+            for (int f = 0; f < FACETAS; f++) {
+                long union = -1L;
+                if (seleccion[f] != 0) {
+                    union = 0;
+                    for (int o = 0; o < OPCIONES[f]; o++) {
+                        if ((seleccion[f] & (1 << o)) != 0) union |= bits[f][o][i];
+                    }
+                }
+                uniones[f] = union;
+            }
+            for (int f = 0; f < FACETAS; f++) {
+                long base = comun;
+                for (int g = 0; g < FACETAS; g++) {
+                    if (g != f) base &= uniones[g];
+                }
+                if (base == 0) continue;
+                for (int o = 0; o < OPCIONES[f]; o++) {
+                    recuentos[f][o] += Long.bitCount(base & bits[f][o][i]);
+                }
+            }
+        }
+        return recuentos;
+    }
+
+    /**
+     * Convierte un mapa de documentos en un mapa de posiciones de la lista, quitando los huecos de los
+     * documentos eliminados. Cada palabra se compacta de una vez con {@link Long#compress(long, long)}.
+     *
+     * @param documentos un bit por documento; solo se tienen en cuenta los vigentes
+     * @return un bit por posición de la lista
+     * @author Nizam
+     */
+    long[] aPosiciones(long[] documentos) {
+        long[] posiciones = new long[documentos.length];
+        int destino = 0;
+        for (int i = 0; i < documentos.length && i < vivos.length; i++) {
+            long vigentes = vivos[i];
+            if (vigentes == 0) continue;
+            long compactados = Long.compress(documentos[i], vigentes);
+            int desplazamiento = destino & 63;
+            posiciones[destino >>> 6] |= compactados << desplazamiento;
+            if (desplazamiento != 0 && (destino >>> 6) + 1 < posiciones.length) {
+                posiciones[(destino >>> 6) + 1] |= compactados >>> (64 - desplazamiento);
+            }
+            destino += Long.bitCount(vigentes);
+        }
+        return posiciones;
+    }
+
+    /**
+     * Amplía todos los mapas.
+     *
+     * @param palabras nuevo número de palabras de 64 bits
+     * @author Nizam
+     */
+    private void crecer(int palabras) {
+        vivos = Arrays.copyOf(vivos, palabras);
+        for (int f = 0; f < FACETAS; f++) {
+            for (int o = 0; o < OPCIONES[f]; o++) {
+                bits[f][o] = Arrays.copyOf(bits[f][o], palabras);
+            }
+        }
+    }
+
+    /**
+     * Convierte una condición en el bit de una opción.
+     *
+     * @param cumple condición
+     * @param opcion número de opción
+     * @return el bit de la opción si se cumple, o 0
+     * @author Nizam
+     */
+    private static int bit(boolean cumple, int opcion) {
+        return cumple ? 1 << opcion : 0;
+    }
+}
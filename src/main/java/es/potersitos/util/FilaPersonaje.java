@@ -0,0 +1,161 @@
+package es.potersitos.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Vista de solo lectura de una fila de {@link TablaPersonajes} con la interfaz de {@code Map}.
+ * Los controladores la usan como el mapa de personaje de siempre; los valores se leen de las
+ * columnas al consultarlos y cualquier intento de modificación lanza {@link UnsupportedOperationException}.
+ * <p>
+ * Como vista, su igualdad es la de la fila y no la de los valores (ver {@link #equals(Object)}).
+ * <p>
+ * Las filas que se añaden enteras (altas y cambios) a una tabla con proyección guardan aquí todas sus
+ * columnas, ya que no tienen un registro en disco del que leer las que no están en memoria. Así, cuando
+ * un cambio sustituye la fila y nadie conserva ya la vista, esos valores se liberan con ella.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class FilaPersonaje extends AbstractMap<String, String> {
+
+    /** Tabla que contiene los datos. */
+    private final TablaPersonajes tabla;
+
+    /** Número de fila dentro de la tabla. */
+    private final int fila;
+
+    /** Todas las columnas de una fila añadida entera a una tabla con proyección, o {@code null}. */
+    private final String[] registro;
+
+    /**
+     * Crea la vista de una fila cuyas columnas están en la tabla o en su fuente.
+     *
+     * @param tabla tabla de personajes
+     * @param fila  número de fila
+     * @author Nizam
+     */
+    FilaPersonaje(TablaPersonajes tabla, int fila) {
+        this(tabla, fila, null);
+    }
+
+    /**
+     * Crea la vista de una fila que guarda sus propias columnas.
+     *
+     * @param tabla    tabla de personajes
+     * @param fila     número de fila
+     * @param registro valores de todas las columnas en el orden de la tabla (no se copian), o {@code null}
+     * @author Nizam
+     */
+    FilaPersonaje(TablaPersonajes tabla, int fila, String[] registro) {
+        this.tabla = tabla;
+        this.fila = fila;
+        this.registro = registro;
+    }
+
+    @Override
+    public String get(Object clave) {
+        int columna = tabla.columna(clave);
+        return columna < 0 ? null : valor(columna);
+    }
+
+    @Override
+    public boolean containsKey(Object clave) {
+        return tabla.columna(clave) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return tabla.numeroColumnas();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<>() {
+                    private int columna;
+
+                    @Override
+                    public boolean hasNext() {
+                        return columna < tabla.numeroColumnas();
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        int c = columna++;
+                        return new SimpleImmutableEntry<>(tabla.clave(c), valor(c));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return tabla.numeroColumnas();
+            }
+        };
+    }
+
+    /**
+     * Devuelve el número de fila dentro de la tabla.
+     *
+     * @return número de fila
+     * @author Nizam
+     */
+    int fila() {
+        return fila;
+    }
+
+    /**
+     * Devuelve todas las columnas de la fila de una vez, leyendo el registro una sola vez aunque
+     * haya columnas que no están en memoria.
+     *
+     * @return valores de las columnas en el orden de la tabla
+     * @author Nizam
+     */
+    String[] valores() {
+        return (registro != null ? registro : tabla.registro(fila)).clone();
+    }
+
+    /**
+     * Devuelve el valor de una columna, de la propia vista o de la tabla.
+     *
+     * @param columna posición de la columna
+     * @return valor de la celda
+     */
+    private String valor(int columna) {
+        return registro != null ? registro[columna] : tabla.valor(fila, columna);
+    }
+
+    /**
+     * Dos vistas son iguales si muestran la misma fila de la misma tabla. No se comparan los valores,
+     * que con una tabla con proyección obligarían a leer de disco las columnas que no están en memoria
+     * cada vez que la fila se guarda en un {@code HashSet} o se busca en una lista. Por eso una fila no es
+     * igual a un mapa con los mismos datos; para comparar valores se copia antes ({@code new HashMap<>(fila)}).
+     *
+     * @param o objeto a comparar
+     * @return {@code true} si es una vista de la misma fila
+     * @author Nizam
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FilaPersonaje otra && otra.tabla == tabla && otra.fila == fila;
+    }
+
+    /**
+     * Código hash de la fila, coherente con {@link #equals(Object)} y sin leer ningún valor.
+     *
+     * @return código hash
+     * @author Nizam
+     */
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(tabla) * 31 + fila;
+    }
+}
@@ -0,0 +1,111 @@
+package es.potersitos.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Consultas de filtros guardadas con un nombre (filtrosGuardados.properties, en la carpeta de la aplicación),
+ * para volver a aplicarlas desde el panel de filtros. Cada una es el texto de una {@link ConsultaFiltro},
+ * que se vuelve a interpretar al usarla. El archivo se sustituye entero con {@link EscrituraAtomica}.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+public final class FiltrosGuardados {
+
+    /** Logger para la clase. */
+    private static final Logger logger = LoggerFactory.getLogger(FiltrosGuardados.class);
+
+    /** Nombre del archivo de las consultas guardadas. */
+    private static final String NOMBRE_ARCHIVO = "filtrosGuardados.properties";
+
+    /**
+     * Constructor privado (clase de utilidades).
+     */
+    private FiltrosGuardados() {
+    }
+
+    /**
+     * Lee las consultas guardadas.
+     *
+     * @return consulta de cada nombre, por orden alfabético; vacío si no hay ninguna o no se puede leer el archivo
+     * @author Nizam
+     */
+    public static synchronized SortedMap<String, String> cargar() {
+        SortedMap<String, String> consultas = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Path ruta = ruta();
+        if (!Files.exists(ruta)) return consultas;
+        Properties propiedades = new Properties();
+        try (InputStream entrada = Files.newInputStream(ruta)) {
+            propiedades.load(entrada);
+        } catch (IOException e) {
+            logger.error("No se pudieron leer las consultas guardadas de {}", ruta, e);
+            return consultas;
+        }
+        for (String nombre : propiedades.stringPropertyNames()) consultas.put(nombre, propiedades.getProperty(nombre));
+        return consultas;
+    }
+
+    /**
+     * Guarda una consulta; si ya había una con el mismo nombre, la sustituye.
+     *
+     * @param nombre   nombre de la consulta
+     * @param consulta texto de la consulta
+     * @throws IOException si no se puede escribir el archivo; las consultas guardadas quedan como estaban
+     * @author Nizam
+     */
+    public static synchronized void guardar(String nombre, String consulta) throws IOException {
+        SortedMap<String, String> consultas = cargar();
+        consultas.remove(nombre);
+        consultas.put(nombre, consulta);
+        escribir(consultas);
+        logger.info("Consulta guardada como '{}': {}", nombre, consulta);
+    }
+
+    /**
+     * Borra una consulta guardada.
+     *
+     * @param nombre nombre de la consulta
+     * @throws IOException si no se puede escribir el archivo; las consultas guardadas quedan como estaban
+     * @author Nizam
+     */
+    public static synchronized void eliminar(String nombre) throws IOException {
+        SortedMap<String, String> consultas = cargar();
+        if (consultas.remove(nombre) == null) return;
+        escribir(consultas);
+        logger.info("Consulta guardada '{}' eliminada", nombre);
+    }
+
+    /**
+     * Sustituye el archivo por las consultas indicadas.
+     *
+     * @param consultas consulta de cada nombre
+     * @throws IOException si falla la escritura
+     */
+    private static void escribir(Map<String, String> consultas) throws IOException {
+        Path ruta = ruta();
+        Files.createDirectories(ruta.getParent());
+        Properties propiedades = new Properties();
+        propiedades.putAll(consultas);
+        EscrituraAtomica.escribir(ruta, salida -> propiedades.store(salida, "Consultas de filtros guardadas"));
+    }
+
+    /**
+     * Devuelve la ruta del archivo, junto al CSV.
+     *
+     * @return ruta de filtrosGuardados.properties
+     */
+    private static Path ruta() {
+        return Paths.get(PersonajeCSVManager.obtenerRutaCompletaCSV()).resolveSibling(NOMBRE_ARCHIVO);
+    }
+}
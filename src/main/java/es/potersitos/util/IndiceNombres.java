@@ -0,0 +1,543 @@
+package es.potersitos.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Índice invertido de trigramas sobre los nombres normalizados ({@link #normalizar(String)}) que
+ * responde a búsquedas por subcadena sin recorrer todos los personajes ni copiar sus nombres.
+ * <p>
+ * Cada personaje recibe un número de documento en el orden de la lista, y cada trigrama guarda la lista
+ * ordenada de los documentos que lo contienen. Los nombres se indexan con dos caracteres de relleno al
+ * final, de modo que cada carácter del nombre empieza un trigrama:
+ * <ul>
+ *   <li>Búsquedas de uno o dos caracteres: unión de los trigramas que empiezan por ellos (exacta).</li>
+ *   <li>Búsquedas de tres caracteres: la lista de ese trigrama (exacta).</li>
+ *   <li>Búsquedas más largas: intersección de las listas de sus trigramas y comprobación final del
+ *   nombre, porque tener todos los trigramas no garantiza que aparezcan seguidos.</li>
+ * </ul>
+ * Para esa comprobación el índice guarda los nombres ya normalizados en UTF-8, todos seguidos en un mismo
+ * array; así no hay que decodificar el nombre de la tabla ni pasarlo a minúsculas en cada búsqueda.
+ * Buscar los bytes UTF-8 de la búsqueda equivale a buscar sus caracteres, porque en UTF-8 ninguna
+ * secuencia válida empieza en mitad de otra.
+ * Un personaje modificado conserva su número de documento (ocupa el mismo lugar en la lista) y las altas
+ * se numeran al final, así que los resultados salen siempre en el orden de la lista.
+ * <p>
+ * No es seguro para varios hilos: {@link IndicePersonajes} lo usa bajo su propio cerrojo.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+public final class IndiceNombres {
+
+    /** Carácter de relleno al final del nombre; no aparece en nombres normalizados. */
+    private static final char RELLENO = '\0';
+
+    /** Lista vacía de documentos. */
+    private static final int[] VACIA = new int[0];
+
+    /** Marca de hueco libre (ningún trigrama empaquetado vale -1). */
+    private static final long LIBRE = -1;
+
+    /** Trigrama de cada hueco de la tabla ({@link #LIBRE} si está libre). */
+    private long[] trigramas;
+
+    /** Documentos de cada trigrama, ordenados; solo son válidos los {@link #longitudes} primeros. */
+    private int[][] listas;
+
+    /** Número de documentos de cada lista. */
+    private int[] longitudes;
+
+    /** Trigramas distintos. */
+    private int ocupados;
+
+    /** Personaje de cada documento ({@code null} si se eliminó). */
+    private Map<String, String>[] documentos;
+
+    /** Documentos numerados. */
+    private int numeroDocumentos;
+
+    /** Documento de cada fila de {@link TablaPersonajes} (-1 si no está indexada). */
+    private int[] documentoDeFila = VACIA;
+
+    /** Nombres normalizados en UTF-8, uno detrás de otro. */
+    private byte[] nombres = new byte[1024];
+
+    /** Bytes usados de {@link #nombres}. */
+    private int usados;
+
+    /** Posición en {@link #nombres} del nombre de cada documento. */
+    private int[] inicioNombre;
+
+    /** Longitud en bytes del nombre de cada documento. */
+    private int[] longitudNombre;
+
+    /**
+     * Construye el índice con los personajes en el orden de la lista.
+     *
+     * @param personajes personajes a indexar
+     * @author Nizam
+     */
+    @SuppressWarnings("unchecked")
+    IndiceNombres(List<Map<String, String>> personajes) {
+        int capacidad = Math.max(16, personajes.size() + personajes.size() / 8);
+        documentos = (Map<String, String>[]) new Map<?, ?>[capacidad];
+        inicioNombre = new int[capacidad];
+        longitudNombre = new int[capacidad];
+        crearTabla(1 << 12);
+        for (Map<String, String> p : personajes) {
+            insertar(p);
+        }
+    }
+
+    /**
+     * Normaliza un nombre o un texto de búsqueda: minúsculas independientes del idioma del sistema y
+     * sin espacios en los extremos.
+     *
+     * @param texto texto original
+     * @return texto normalizado, o cadena vacía si es nulo
+     * @author Nizam
+     */
+    public static String normalizar(String texto) {
+        return texto == null ? "" : texto.toLowerCase(Locale.ROOT).trim();
+    }
+
+    /**
+     * Añade un personaje al final de la lista.
+     *
+     * @param p personaje añadido
+     * @return número de documento asignado
+     * @author Nizam
+     */
+    int insertar(Map<String, String> p) {
+        if (numeroDocumentos == documentos.length) {
+            int capacidad = documentos.length + documentos.length / 2;
+            documentos = Arrays.copyOf(documentos, capacidad);
+            inicioNombre = Arrays.copyOf(inicioNombre, capacidad);
+            longitudNombre = Arrays.copyOf(longitudNombre, capacidad);
+        }
+        int documento = numeroDocumentos++;
+        documentos[documento] = p;
+        asignarFila(p, documento);
+        String nombre = normalizar(p.get("name"));
+        guardarNombre(nombre, documento);
+        indexar(nombre, documento);
+        return documento;
+    }
+
+    /**
+     * Sustituye un personaje por su versión modificada, que conserva su lugar en la lista.
+     *
+     * @param anterior personaje indexado
+     * @param nuevo    personaje que lo reemplaza
+     * @return número de documento del personaje (nuevo si el anterior no estaba indexado)
+     * @author Nizam
+     */
+    int actualizar(Map<String, String> anterior, Map<String, String> nuevo) {
+        int documento = documento(anterior);
+        if (documento < 0) {
+            return insertar(nuevo);
+        }
+        String nombreAnterior = normalizar(anterior.get("name"));
+        String nombreNuevo = normalizar(nuevo.get("name"));
+        if (!nombreAnterior.equals(nombreNuevo)) {
+            desindexar(nombreAnterior, documento);
+            guardarNombre(nombreNuevo, documento);
+            indexar(nombreNuevo, documento);
+        }
+        documentos[documento] = nuevo;
+        asignarFila(anterior, -1);
+        asignarFila(nuevo, documento);
+        return documento;
+    }
+
+    /**
+     * Quita un personaje del índice.
+     *
+     * @param p personaje eliminado
+     * @return número de documento que tenía, o -1 si no estaba indexado
+     * @author Nizam
+     */
+    int eliminar(Map<String, String> p) {
+        int documento = documento(p);
+        if (documento < 0) return -1;
+        desindexar(normalizar(p.get("name")), documento);
+        documentos[documento] = null;
+        asignarFila(p, -1);
+        return documento;
+    }
+
+    /**
+     * Devuelve el personaje de un documento.
+     *
+     * @param documento número de documento
+     * @return personaje, o {@code null} si se eliminó
+     * @author Nizam
+     */
+    Map<String, String> personaje(int documento) {
+        return documentos[documento];
+    }
+
+    /**
+     * Copia el personaje de cada documento, para leerlos sin el cerrojo de quien mantiene el índice.
+     *
+     * @return personaje de cada documento, {@code null} en los eliminados
+     * @author Nizam
+     */
+    List<Map<String, String>> copiarPersonajes() {
+        return Arrays.asList(Arrays.copyOf(documentos, numeroDocumentos));
+    }
+
+    /**
+     * Devuelve cuántos documentos se han numerado, incluidos los eliminados.
+     *
+     * @return número de documentos
+     * @author Nizam
+     */
+    int numeroDocumentos() {
+        return numeroDocumentos;
+    }
+
+    /**
+     * Devuelve los documentos vigentes en orden, que es el documento de cada posición de la lista.
+     *
+     * @return documento de cada posición
+     * @author Nizam
+     */
+    int[] documentosVigentes() {
+        int[] vigentes = new int[numeroDocumentos];
+        int n = 0;
+        for (int d = 0; d < numeroDocumentos; d++) {
+            if (documentos[d] != null) vigentes[n++] = d;
+        }
+        return Arrays.copyOf(vigentes, n);
+    }
+
+    /**
+     * Busca los personajes cuyo nombre normalizado contiene el texto.
+     *
+     * @param texto texto a buscar, ya normalizado y no vacío
+     * @return un bit por documento encontrado
+     * @author Nizam
+     */
+    long[] buscar(String texto) {
+        if (texto.length() < 3) {
+            return unirPorPrefijo(texto);
+        }
+        long[] marcas = new long[(numeroDocumentos + 63) >>> 6];
+
+        // Listas de los trigramas de la búsqueda, de la más corta a la más larga
+        int total = texto.length() - 2;
+        int[] huecos = new int[total];
+        int distintos = 0;
+        for (int i = 0; i < total; i++) {
+            int hueco = buscarHueco(empaquetar(texto.charAt(i), texto.charAt(i + 1), texto.charAt(i + 2)));
+            if (trigramas[hueco] == LIBRE || longitudes[hueco] == 0) return marcas;
+            boolean repetido = false;
+            for (int j = 0; j < distintos; j++) {
+                if (huecos[j] == hueco) repetido = true;
+            }
+            if (!repetido) huecos[distintos++] = hueco;
+        }
+        Integer[] orden = new Integer[distintos];
+        for (int i = 0; i < distintos; i++) orden[i] = huecos[i];
+        Arrays.sort(orden, (a, b) -> Integer.compare(longitudes[a], longitudes[b]));
+
+        int[] candidatos = Arrays.copyOf(listas[orden[0]], longitudes[orden[0]]);
+        int n = candidatos.length;
+        for (int k = 1; k < distintos && n > 0; k++) {
+            n = intersecar(candidatos, n, listas[orden[k]], longitudes[orden[k]]);
+        }
+
+        byte[] buscado = texto.length() > 3 ? texto.getBytes(StandardCharsets.UTF_8) : null;
+        for (int i = 0; i < n; i++) {
+            int documento = candidatos[i];
+            if (buscado != null && !contiene(documento, buscado)) continue;
+            marcas[documento >>> 6] |= 1L << documento;
+        }
+        return marcas;
+    }
+
+    /**
+     * Comprueba si el nombre guardado de un documento contiene unos bytes.
+     *
+     * @param documento número de documento
+     * @param buscado   bytes UTF-8 del texto normalizado
+     * @return {@code true} si aparecen seguidos en el nombre
+     * @author Nizam
+     */
+    private boolean contiene(int documento, byte[] buscado) {
+        int inicio = inicioNombre[documento];
+        int ultimo = inicio + longitudNombre[documento] - buscado.length;
+        byte primero = buscado[0];
+        for (int i = inicio; i <= ultimo; i++) {
+            if (nombres[i] != primero) continue;
+            int j = 1;
+            while (j < buscado.length && nombres[i + j] == buscado[j]) j++;
+            if (j == buscado.length) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Guarda el nombre normalizado de un documento al final de {@link #nombres}.
+     * El nombre anterior de un documento modificado queda sin uso hasta que se reconstruye el índice.
+     *
+     * @param nombre    nombre normalizado
+     * @param documento número de documento
+     * @author Nizam
+     */
+    private void guardarNombre(String nombre, int documento) {
+        byte[] bytes = nombre.getBytes(StandardCharsets.UTF_8);
+        if (usados + bytes.length > nombres.length) {
+            nombres = Arrays.copyOf(nombres, Math.max(usados + bytes.length, nombres.length + (nombres.length >> 1)));
+        }
+        System.arraycopy(bytes, 0, nombres, usados, bytes.length);
+        inicioNombre[documento] = usados;
+        longitudNombre[documento] = bytes.length;
+        usados += bytes.length;
+    }
+
+    /**
+     * Marca los documentos de todos los trigramas que empiezan por un texto de uno o dos caracteres.
+     *
+     * @param prefijo texto de la búsqueda
+     * @return un bit por documento
+     * @author Nizam
+     */
+    private long[] unirPorPrefijo(String prefijo) {
+        long[] marcas = new long[(numeroDocumentos + 63) >>> 6];
+        long primero = (long) prefijo.charAt(0) << 32;
+        long mascara = 0xFFFFL << 32;
+        if (prefijo.length() == 2) {
+            primero |= (long) prefijo.charAt(1) << 16;
+            mascara |= 0xFFFFL << 16;
+        }
+        for (int hueco = 0; hueco < trigramas.length; hueco++) {
+            if (trigramas[hueco] == LIBRE || (trigramas[hueco] & mascara) != primero) continue;
+            int[] lista = listas[hueco];
+            for (int i = 0, n = longitudes[hueco]; i < n; i++) {
+                marcas[lista[i] >>> 6] |= 1L << lista[i];
+            }
+        }
+        return marcas;
+    }
+
+    /**
+     * Deja en {@code a} los documentos que están también en {@code b}. En {@code b} se avanza a saltos
+     * que se duplican y después por búsqueda binaria, así que cuesta poco tanto si las listas son
+     * parecidas (los saltos son cortos) como si {@code a} es mucho más corta.
+     *
+     * @param a  lista ordenada que se reduce
+     * @param na documentos válidos de {@code a}
+     * @param b  lista ordenada con la que se interseca
+     * @param nb documentos válidos de {@code b}
+     * @return documentos que quedan en {@code a}
+     * @author Nizam
+     */
+    private static int intersecar(int[] a, int na, int[] b, int nb) {
+        int quedan = 0;
+        int j = 0;
+        for (int i = 0; i < na && j < nb; i++) {
+            int d = a[i];
+            int salto = 1;
+            while (j + salto < nb && b[j + salto] < d) salto <<= 1;
+            int r = Arrays.binarySearch(b, j, Math.min(nb, j + salto + 1), d);
+            if (r >= 0) {
+                a[quedan++] = d;
+                j = r + 1;
+            } else {
+                j = -r - 1;
+            }
+        }
+        return quedan;
+    }
+
+    /**
+     * Añade un documento a las listas de los trigramas de un nombre.
+     *
+     * @param nombre    nombre normalizado
+     * @param documento número de documento
+     * @author Nizam
+     */
+    private void indexar(String nombre, int documento) {
+        if (nombre.isEmpty()) return;
+        for (int i = 0; i < nombre.length(); i++) {
+            long trigrama = trigrama(nombre, i);
+            int hueco = buscarHueco(trigrama);
+            if (trigramas[hueco] == LIBRE) {
+                if ((ocupados + 1) * 2 > trigramas.length) {
+                    redimensionar();
+                    hueco = buscarHueco(trigrama);
+                }
+                trigramas[hueco] = trigrama;
+                listas[hueco] = VACIA;
+                ocupados++;
+            }
+            anadirOrdenado(hueco, documento);
+        }
+    }
+
+    /**
+     * Quita un documento de las listas de los trigramas de un nombre.
+     *
+     * @param nombre    nombre normalizado con el que se indexó
+     * @param documento número de documento
+     * @author Nizam
+     */
+    private void desindexar(String nombre, int documento) {
+        for (int i = 0; i < nombre.length(); i++) {
+            int hueco = buscarHueco(trigrama(nombre, i));
+            if (trigramas[hueco] == LIBRE) continue;
+            int[] lista = listas[hueco];
+            int n = longitudes[hueco];
+            int r = Arrays.binarySearch(lista, 0, n, documento);
+            if (r < 0) continue;
+            System.arraycopy(lista, r + 1, lista, r, n - r - 1);
+            longitudes[hueco] = n - 1;
+        }
+    }
+
+    /**
+     * Inserta un documento en la lista de un trigrama manteniendo el orden y sin repetirlo.
+     * Lo habitual es añadir al final, porque los documentos nuevos son los mayores.
+     *
+     * @param hueco     hueco del trigrama
+     * @param documento número de documento
+     * @author Nizam
+     */
+    private void anadirOrdenado(int hueco, int documento) {
+        int[] lista = listas[hueco];
+        int n = longitudes[hueco];
+        int posicion;
+        if (n == 0 || lista[n - 1] < documento) {
+            posicion = n;
+        } else {
+            posicion = Arrays.binarySearch(lista, 0, n, documento);
+            if (posicion >= 0) return;
+            posicion = -posicion - 1;
+        }
+        if (n == lista.length) {
+            lista = listas[hueco] = Arrays.copyOf(lista, Math.max(4, n + (n >> 1)));
+        }
+        System.arraycopy(lista, posicion, lista, posicion + 1, n - posicion);
+        lista[posicion] = documento;
+        longitudes[hueco] = n + 1;
+    }
+
+    /**
+     * Trigrama que empieza en una posición del nombre, rellenando con {@link #RELLENO} tras el final.
+     *
+     * @param nombre   nombre normalizado
+     * @param posicion posición del primer carácter
+     * @return trigrama empaquetado
+     * @author Nizam
+     */
+    private static long trigrama(String nombre, int posicion) {
+        int n = nombre.length();
+        char b = posicion + 1 < n ? nombre.charAt(posicion + 1) : RELLENO;
+        char c = posicion + 2 < n ? nombre.charAt(posicion + 2) : RELLENO;
+        return empaquetar(nombre.charAt(posicion), b, c);
+    }
+
+    /**
+     * Empaqueta tres caracteres en un {@code long}.
+     *
+     * @param a primer carácter
+     * @param b segundo carácter
+     * @param c tercer carácter
+     * @return trigrama empaquetado
+     * @author Nizam
+     */
+    private static long empaquetar(char a, char b, char c) {
+        return (long) a << 32 | (long) b << 16 | c;
+    }
+
+    /**
+     * Busca el hueco de un trigrama, o el hueco libre donde iría.
+     *
+     * @param trigrama trigrama empaquetado
+     * @return hueco de la tabla
+     * @author Nizam
+     */
+    private int buscarHueco(long trigrama) {
+        int mascara = trigramas.length - 1;
+        long h = trigrama * 0x9E3779B97F4A7C15L;
+        int i = (int) (h ^ (h >>> 32)) & mascara;
+        while (trigramas[i] != LIBRE && trigramas[i] != trigrama) i = (i + 1) & mascara;
+        return i;
+    }
+
+    /**
+     * Crea una tabla de trigramas vacía.
+     *
+     * @param capacidad número de huecos (potencia de dos)
+     * @author Nizam
+     */
+    private void crearTabla(int capacidad) {
+        trigramas = new long[capacidad];
+        Arrays.fill(trigramas, LIBRE);
+        listas = new int[capacidad][];
+        longitudes = new int[capacidad];
+        ocupados = 0;
+    }
+
+    /**
+     * Duplica la tabla de trigramas conservando las listas.
+     *
+     * @author Nizam
+     */
+    private void redimensionar() {
+        long[] anteriores = trigramas;
+        int[][] listasAnteriores = listas;
+        int[] longitudesAnteriores = longitudes;
+        crearTabla(anteriores.length * 2);
+        for (int j = 0; j < anteriores.length; j++) {
+            if (anteriores[j] == LIBRE) continue;
+            int hueco = buscarHueco(anteriores[j]);
+            trigramas[hueco] = anteriores[j];
+            listas[hueco] = listasAnteriores[j];
+            longitudes[hueco] = longitudesAnteriores[j];
+            ocupados++;
+        }
+    }
+
+    /**
+     * Obtiene el documento de un personaje a partir de su fila en la tabla.
+     *
+     * @param p personaje indexado
+     * @return número de documento, o -1 si no está indexado
+     * @author Nizam
+     */
+    private int documento(Map<String, String> p) {
+        if (p instanceof FilaPersonaje fila) {
+            return fila.fila() < documentoDeFila.length ? documentoDeFila[fila.fila()] : -1;
+        }
+        for (int d = numeroDocumentos - 1; d >= 0; d--) {
+            if (documentos[d] == p) return d;
+        }
+        return -1;
+    }
+
+    /**
+     * Recuerda el documento de la fila de un personaje.
+     *
+     * @param p         personaje
+     * @param documento número de documento, o -1 para olvidarlo
+     * @author Nizam
+     */
+    private void asignarFila(Map<String, String> p, int documento) {
+        if (!(p instanceof FilaPersonaje fila)) return;
+        int f = fila.fila();
+        if (f >= documentoDeFila.length) {
+            if (documento < 0) return;
+            int anterior = documentoDeFila.length;
+            documentoDeFila = Arrays.copyOf(documentoDeFila, Math.max(f + 1, anterior + (anterior >> 1)));
+            Arrays.fill(documentoDeFila, anterior, documentoDeFila.length, -1);
+        }
+        documentoDeFila[f] = documento;
+    }
+}
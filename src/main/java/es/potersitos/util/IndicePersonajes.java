@@ -0,0 +1,764 @@
+package es.potersitos.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+
+/**
+ * Índices hash por clave primaria (slug e id) de los personajes en memoria.
+ * Las claves no distinguen mayúsculas y se mantienen de forma incremental en cada alta,
+ * modificación y baja, de modo que las búsquedas son O(1).
+ * <p>
+ * Cada índice es una tabla de direccionamiento abierto que solo guarda la referencia a la fila y el hash
+ * de su clave; la clave se lee de la propia fila al comparar, así que no hay un {@code String} ni un nodo
+ * por entrada.
+ * <p>
+ * Opcionalmente mantiene también los índices de búsqueda de la vista: el {@link IndiceNombres} para buscar
+ * por subcadena del nombre y las {@link FacetasPersonajes} para filtrar por categorías, ambos con los mismos
+ * números de documento. Como construirlos cuesta más que el resto, se construyen aparte y se asignan con
+ * {@link #asignarBusqueda(IndiceNombres, FacetasPersonajes)}. Después puede asignarse el {@link IndiceTextos}
+ * de las columnas de texto ({@link #asignarTextos(IndiceTextos)}), que también usa esos documentos, y las
+ * permutaciones de {@link OrdenPersonajes} de las columnas por las que se ha ordenado la vista
+ * ({@link #asignarOrden(OrdenPersonajes)}), de las que se guardan las {@link #MAX_ORDENES} últimas usadas.
+ * Con todos ellos se resuelven también las consultas compiladas de {@link ConsultaFiltro}.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class IndicePersonajes {
+
+    /** Permutaciones de orden que se conservan y mantienen. */
+    private static final int MAX_ORDENES = 4;
+
+    /** Personajes indexados por slug normalizado. */
+    private final Dispersion porSlug;
+
+    /** Personajes indexados por id normalizado. */
+    private final Dispersion porId;
+
+    /** Índice de trigramas de los nombres, o {@code null} si aún no se ha construido. */
+    private IndiceNombres nombres;
+
+    /** Mapas de bits de las categorías, o {@code null} si aún no se han construido. */
+    private FacetasPersonajes facetas;
+
+    /** Índice de las columnas de texto, o {@code null} si aún no se ha construido. */
+    private IndiceTextos textos;
+
+    /** Permutaciones de orden por {@link CriterioOrden#clave()}, de la menos a la más usada. */
+    private final Map<String, OrdenPersonajes> ordenes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, OrdenPersonajes> eldest) {
+            return size() > MAX_ORDENES;
+        }
+    };
+
+    /** Último texto buscado, para no repetir la búsqueda al filtrar y contar. */
+    private String ultimoTexto;
+
+    /** Documentos encontrados para {@link #ultimoTexto}; se descartan con cualquier cambio. */
+    private long[] ultimoPorTexto;
+
+    /**
+     * Documentos encontrados para {@link #ultimoTexto} de más a menos relevante, o {@code null} si el
+     * resultado no tiene orden de relevancia (búsqueda solo por nombre) y se muestra en el de la lista.
+     */
+    private int[] ultimoOrden;
+
+    /**
+     * Cambios de los índices que alteran los documentos (altas, modificaciones, bajas y nuevos índices de
+     * búsqueda), para saber si sigue valiendo una {@link ConsultaPreparada}.
+     */
+    private long cambios;
+
+    /**
+     * Construye los índices a partir de una colección completa de personajes.
+     *
+     * @param personajes personajes a indexar
+     * @author Nizam
+     */
+    IndicePersonajes(Collection<Map<String, String>> personajes) {
+        porSlug = new Dispersion("slug", personajes.size());
+        porId = new Dispersion("id", personajes.size());
+        for (Map<String, String> p : personajes) {
+            insertar(p);
+        }
+    }
+
+    /**
+     * Crea los índices a partir de tablas ya construidas.
+     *
+     * @param porSlug índice por slug
+     * @param porId   índice por id
+     * @author Nizam
+     */
+    private IndicePersonajes(Dispersion porSlug, Dispersion porId) {
+        this.porSlug = porSlug;
+        this.porId = porId;
+    }
+
+    /**
+     * Vuelca los índices con la fila de cada hueco en lugar de la referencia, para {@link CacheArranque}.
+     * Solo es válido si los personajes indexados son vistas de una misma {@link TablaPersonajes}
+     * cuyas filas coinciden con las posiciones de la lista.
+     *
+     * @param out flujo de salida
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    synchronized void volcar(DataOutputStream out) throws IOException {
+        porSlug.volcar(out);
+        porId.volcar(out);
+    }
+
+    /**
+     * Reconstruye unos índices volcados con {@link #volcar(DataOutputStream)} sin volver a calcular claves ni hashes.
+     *
+     * @param b          búfer situado al comienzo del volcado
+     * @param personajes lista cuyas posiciones corresponden a las filas volcadas
+     * @return índices restaurados
+     * @author Nizam
+     */
+    static IndicePersonajes restaurar(ByteBuffer b, List<Map<String, String>> personajes) {
+        Dispersion porSlug = new Dispersion("slug", 0);
+        porSlug.restaurar(b, personajes);
+        Dispersion porId = new Dispersion("id", 0);
+        porId.restaurar(b, personajes);
+        return new IndicePersonajes(porSlug, porId);
+    }
+
+    /**
+     * Normaliza una clave para búsqueda sin distinguir mayúsculas.
+     *
+     * @param valor valor original
+     * @return clave normalizada, o cadena vacía si es nula
+     * @author Nizam
+     */
+    static String clave(String valor) {
+        return valor == null ? "" : valor.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Añade un personaje a los índices. Si la clave ya existe se conserva el primero.
+     *
+     * @param p personaje a indexar
+     * @author Nizam
+     */
+    synchronized void insertar(Map<String, String> p) {
+        cambios++;
+        porSlug.insertar(p);
+        porId.insertar(p);
+        ultimoPorTexto = null;
+        if (nombres == null) return;
+        int documento = nombres.insertar(p);
+        facetas.asignar(documento, p);
+        if (textos != null) textos.anadir(documento, p);
+        for (OrdenPersonajes orden : ordenes.values()) orden.insertar(documento, p, nombres::personaje);
+    }
+
+    /**
+     * Quita un personaje de los índices, solo si es el registro indexado para sus claves.
+     *
+     * @param p personaje a quitar
+     * @author Nizam
+     */
+    synchronized void eliminar(Map<String, String> p) {
+        cambios++;
+        porSlug.eliminar(p);
+        porId.eliminar(p);
+        ultimoPorTexto = null;
+        if (nombres == null) return;
+        int documento = nombres.eliminar(p);
+        if (documento < 0) return;
+        facetas.quitar(documento);
+        if (textos != null) textos.quitar(documento, p);
+        for (OrdenPersonajes orden : ordenes.values()) orden.quitar(documento);
+    }
+
+    /**
+     * Sustituye un personaje por su versión modificada (el slug o el id pueden cambiar).
+     *
+     * @param anterior registro indexado hasta ahora
+     * @param nuevo    registro que lo reemplaza
+     * @author Nizam
+     */
+    synchronized void actualizar(Map<String, String> anterior, Map<String, String> nuevo) {
+        cambios++;
+        porSlug.eliminar(anterior);
+        porId.eliminar(anterior);
+        porSlug.insertar(nuevo);
+        porId.insertar(nuevo);
+        ultimoPorTexto = null;
+        if (nombres == null) return;
+        int documento = nombres.actualizar(anterior, nuevo);
+        facetas.asignar(documento, nuevo);
+        if (textos != null) {
+            textos.quitar(documento, anterior);
+            textos.anadir(documento, nuevo);
+        }
+        for (OrdenPersonajes orden : ordenes.values()) {
+            orden.quitar(documento);
+            orden.insertar(documento, nuevo, nombres::personaje);
+        }
+    }
+
+    /**
+     * Busca por slug.
+     *
+     * @param slug slug del personaje
+     * @return personaje o {@code null}
+     * @author Nizam
+     */
+    synchronized Map<String, String> findBySlug(String slug) {
+        return porSlug.buscar(clave(slug));
+    }
+
+    /**
+     * Busca por id.
+     *
+     * @param id id del personaje
+     * @return personaje o {@code null}
+     * @author Nizam
+     */
+    synchronized Map<String, String> findById(String id) {
+        return porId.buscar(clave(id));
+    }
+
+    /**
+     * Asigna los índices de búsqueda, que deben estar construidos sobre la lista que estos índices reflejan
+     * y a partir de ahora se mantienen con cada alta, modificación y baja.
+     *
+     * @param nombres índice de nombres
+     * @param facetas mapas de las categorías, con los mismos documentos que {@code nombres}
+     * @author Nizam
+     */
+    synchronized void asignarBusqueda(IndiceNombres nombres, FacetasPersonajes facetas) {
+        cambios++;
+        this.nombres = nombres;
+        this.facetas = facetas;
+        ordenes.clear();
+        ultimoPorTexto = null;
+    }
+
+    /**
+     * Asigna el índice de las columnas de texto, construido con las posiciones de la lista que estos
+     * índices reflejan, y lo pasa a los documentos del índice de nombres.
+     *
+     * @param textos índice de textos
+     * @throws IllegalStateException si aún no hay índices de búsqueda o no tienen los mismos personajes
+     * @author Nizam
+     */
+    synchronized void asignarTextos(IndiceTextos textos) {
+        if (nombres == null) throw new IllegalStateException("Faltan los índices de búsqueda");
+        textos.renumerar(nombres.documentosVigentes());
+        this.textos = textos;
+        ultimoPorTexto = null;
+    }
+
+    /**
+     * Asigna la permutación de una columna, construida con las posiciones de la lista que estos índices
+     * reflejan, y la pasa a los documentos del índice de nombres. Si ya había {@link #MAX_ORDENES}, se
+     * descarta la que lleva más tiempo sin usarse.
+     *
+     * @param orden permutación de la columna
+     * @throws IllegalStateException si aún no hay índices de búsqueda
+     * @author Nizam
+     */
+    synchronized void asignarOrden(OrdenPersonajes orden) {
+        if (nombres == null) throw new IllegalStateException("Faltan los índices de búsqueda");
+        orden.renumerar(nombres.documentosVigentes());
+        ordenes.put(orden.clave(), orden);
+    }
+
+    /**
+     * Indica si ya está la permutación que sirve a un criterio de orden.
+     *
+     * @param criterio criterio de orden
+     * @return {@code true} si se ha asignado y no se ha descartado
+     * @author Nizam
+     */
+    synchronized boolean tieneOrden(CriterioOrden criterio) {
+        return ordenes.containsKey(criterio.clave());
+    }
+
+    /**
+     * Indica si ya hay índices de búsqueda.
+     *
+     * @return {@code true} si se han asignado
+     * @author Nizam
+     */
+    synchronized boolean tieneBusqueda() {
+        return nombres != null;
+    }
+
+    /**
+     * Indica si ya hay índice de las columnas de texto.
+     *
+     * @return {@code true} si se ha asignado
+     * @author Nizam
+     */
+    synchronized boolean tieneTextos() {
+        return textos != null;
+    }
+
+    /**
+     * Filtra por texto y por categorías sin recorrer los personajes. Sin texto, o mientras no esté el índice
+     * de textos y la consulta no tenga campos ni términos aproximados (se busca solo en el nombre), el
+     * resultado es una vista de la lista en su orden; con el índice de textos, los personajes van de más a
+     * menos relevante y, detrás, los que solo contienen el texto en el nombre. Con un criterio de orden el
+     * resultado sale de recorrer su permutación, que debe estar asignada.
+     *
+     * @param consulta  texto de búsqueda
+     * @param seleccion opciones marcadas de cada faceta de {@link FacetasPersonajes}
+     * @param lista     lista que reflejan estos índices
+     * @param criterio  orden del resultado, o {@code null} para el de la lista (o el de relevancia)
+     * @return personajes que cumplen el filtro, o {@code null} si aún no hay índices para responder
+     * @author Nizam
+     */
+    synchronized List<Map<String, String>> filtrar(ConsultaTexto consulta, int[] seleccion,
+                                                   List<Map<String, String>> lista, CriterioOrden criterio) {
+        if (nombres == null) return null;
+        OrdenPersonajes orden = criterio == null ? null : ordenes.get(criterio.clave());
+        if (criterio != null && orden == null) return null;
+        long[] documentos = facetas.filtrar(seleccion);
+        if (!consulta.vacia()) {
+            if (!buscarTexto(consulta)) return null;
+            if (ultimoOrden != null && orden == null) {
+                List<Map<String, String>> resultado = new ArrayList<>();
+                for (int d : ultimoOrden) {
+                    if ((documentos[d >>> 6] & (1L << d)) != 0) resultado.add(nombres.personaje(d));
+                }
+                return Collections.unmodifiableList(resultado);
+            }
+            for (int i = 0; i < documentos.length; i++) {
+                documentos[i] &= i < ultimoPorTexto.length ? ultimoPorTexto[i] : 0;
+            }
+        }
+        return resultado(documentos, lista, orden, criterio);
+    }
+
+    /**
+     * Consulta compilada con las cláusulas que tienen índice ya resueltas, para evaluar las que se comprueban
+     * fila a fila sin el cerrojo de estos índices (véase {@link #preparar(ConsultaFiltro, int[], CriterioOrden)}).
+     *
+     * @param raiz       árbol que falta evaluar, o {@code null} si {@code candidatos} ya es el resultado
+     * @param candidatos un bit por documento que cumple las casillas marcadas
+     * @param hojas      mapa de bits de cada casilla y cada texto del árbol, que no cambia
+     * @param personajes personaje de cada documento al preparar la consulta
+     * @param cambios    número de cambios de los índices al preparar la consulta
+     */
+    record ConsultaPreparada(ConsultaFiltro.Nodo raiz, long[] candidatos, Map<ConsultaFiltro.Nodo, long[]> hojas,
+                             IntFunction<Map<String, String>> personajes, long cambios) {
+    }
+
+    /**
+     * Prepara una consulta compilada y las categorías marcadas para resolverlas sin recorrer todos los
+     * personajes. Las casillas y el texto se resuelven aquí con sus mapas de bits; si además hay cláusulas
+     * fila a fila, se copian los mapas y los personajes de cada documento para que
+     * {@link #evaluar(ConsultaPreparada, BooleanSupplier)} las compruebe sin este cerrojo, que así no bloquea
+     * a los escritores ni a las búsquedas por clave durante el recorrido. Como en
+     * {@link #filtrar(ConsultaTexto, int[], List, CriterioOrden)}, el texto con campos o aproximado necesita el
+     * índice de textos, y ordenar por un criterio necesita su permutación.
+     *
+     * @param filtro    consulta compilada
+     * @param seleccion opciones marcadas de cada faceta de {@link FacetasPersonajes}
+     * @param criterio  orden del resultado, o {@code null} para el de la lista
+     * @return consulta preparada, o {@code null} si aún no hay índices para responder
+     * @author Nizam
+     */
+    synchronized ConsultaPreparada preparar(ConsultaFiltro filtro, int[] seleccion, CriterioOrden criterio) {
+        if (nombres == null) return null;
+        if (criterio != null && !ordenes.containsKey(criterio.clave()) || textos == null && filtro.necesitaTextos()) return null;
+        long[] candidatos = facetas.filtrar(seleccion);
+        if (filtro.vacia()) return new ConsultaPreparada(null, candidatos, null, null, cambios);
+        Map<ConsultaFiltro.Nodo, long[]> hojas = new IdentityHashMap<>();
+        boolean porFilas = conFilas(filtro.raiz());
+        resolver(filtro.raiz(), hojas, porFilas);
+        if (!porFilas) {
+            return new ConsultaPreparada(null, evaluar(filtro.raiz(), candidatos, hojas, null, () -> false), null, null, cambios);
+        }
+        return new ConsultaPreparada(filtro.raiz(), candidatos, hojas, nombres.copiarPersonajes()::get, cambios);
+    }
+
+    /**
+     * Comprueba las cláusulas fila a fila de una consulta preparada sobre los candidatos que dejan las demás.
+     * No toma el cerrojo de estos índices: solo usa lo que se copió al prepararla.
+     *
+     * @param consulta  consulta preparada
+     * @param cancelado indica si se ha cancelado la evaluación (se consulta también desde otros hilos)
+     * @return un bit por documento que cumple la consulta, o {@code null} si se ha cancelado
+     * @author Nizam
+     */
+    static long[] evaluar(ConsultaPreparada consulta, BooleanSupplier cancelado) {
+        if (consulta.raiz() == null) return consulta.candidatos();
+        return evaluar(consulta.raiz(), consulta.candidatos(), consulta.hojas(), consulta.personajes(), cancelado);
+    }
+
+    /**
+     * Convierte el resultado de una consulta preparada en la lista de resultado. Los documentos solo valen
+     * si los índices no han cambiado desde que se preparó.
+     *
+     * @param consulta   consulta preparada
+     * @param documentos resultado de {@link #evaluar(ConsultaPreparada, BooleanSupplier)}
+     * @param lista      lista que reflejan estos índices
+     * @param criterio   orden del resultado, o {@code null} para el de la lista
+     * @return personajes que cumplen el filtro, o {@code null} si los índices han cambiado entretanto
+     * @author Nizam
+     */
+    synchronized List<Map<String, String>> resultado(ConsultaPreparada consulta, long[] documentos,
+                                                     List<Map<String, String>> lista, CriterioOrden criterio) {
+        if (consulta.cambios() != cambios) return null;
+        OrdenPersonajes orden = criterio == null ? null : ordenes.get(criterio.clave());
+        if (criterio != null && orden == null) return null;
+        return resultado(documentos, lista, orden, criterio);
+    }
+
+    /**
+     * Cuenta cuántos personajes daría cada opción de cada faceta con el resultado de una consulta preparada
+     * sin categorías marcadas.
+     *
+     * @param consulta   consulta preparada
+     * @param documentos resultado de {@link #evaluar(ConsultaPreparada, BooleanSupplier)}
+     * @param seleccion  opciones marcadas de cada faceta de {@link FacetasPersonajes}
+     * @return recuentos por faceta y opción, o {@code null} si los índices han cambiado entretanto
+     * @author Nizam
+     */
+    synchronized int[][] contar(ConsultaPreparada consulta, long[] documentos, int[] seleccion) {
+        if (consulta.cambios() != cambios) return null;
+        return facetas.contar(seleccion, documentos);
+    }
+
+    /**
+     * Convierte los documentos de un filtro en la lista de resultado.
+     *
+     * @param documentos un bit por documento del resultado
+     * @param lista      lista que reflejan estos índices
+     * @param orden      permutación del criterio, o {@code null} para el orden de la lista
+     * @param criterio   criterio de orden, o {@code null}
+     * @return vista de la lista, o lista ordenada por la permutación
+     */
+    private List<Map<String, String>> resultado(long[] documentos, List<Map<String, String>> lista,
+                                                OrdenPersonajes orden, CriterioOrden criterio) {
+        if (orden != null) {
+            int[] ordenados = orden.ordenar(documentos, criterio.ascendente());
+            List<Map<String, String>> resultado = new ArrayList<>(ordenados.length);
+            for (int d : ordenados) resultado.add(nombres.personaje(d));
+            return Collections.unmodifiableList(resultado);
+        }
+        return new SeleccionPersonajes(lista, facetas.aPosiciones(documentos));
+    }
+
+    /**
+     * Indica si un árbol tiene alguna cláusula que se comprueba fila a fila.
+     *
+     * @param nodo nodo planificado
+     * @return {@code true} si hay alguna {@link ConsultaFiltro.Fila}
+     */
+    private static boolean conFilas(ConsultaFiltro.Nodo nodo) {
+        return switch (nodo) {
+            case ConsultaFiltro.Y y -> y.hijos().stream().anyMatch(IndicePersonajes::conFilas);
+            case ConsultaFiltro.O o -> o.hijos().stream().anyMatch(IndicePersonajes::conFilas);
+            case ConsultaFiltro.No no -> conFilas(no.hijo());
+            case ConsultaFiltro.Faceta f -> false;
+            case ConsultaFiltro.Texto t -> false;
+            case ConsultaFiltro.Fila f -> true;
+        };
+    }
+
+    /**
+     * Resuelve con los índices las casillas y los textos de un árbol. Quien llama ya ha comprobado que
+     * está el índice de textos si hace falta.
+     *
+     * @param nodo   nodo planificado
+     * @param hojas  mapa de bits de cada hoja resuelta
+     * @param copiar si los mapas de las casillas se copian, porque se leerán sin el cerrojo
+     */
+    private void resolver(ConsultaFiltro.Nodo nodo, Map<ConsultaFiltro.Nodo, long[]> hojas, boolean copiar) {
+        switch (nodo) {
+            case ConsultaFiltro.Y y -> y.hijos().forEach(hijo -> resolver(hijo, hojas, copiar));
+            case ConsultaFiltro.O o -> o.hijos().forEach(hijo -> resolver(hijo, hojas, copiar));
+            case ConsultaFiltro.No no -> resolver(no.hijo(), hojas, copiar);
+            case ConsultaFiltro.Faceta f -> {
+                long[] opcion = facetas.opcion(f.faceta(), f.opcion());
+                hojas.put(f, copiar ? opcion.clone() : opcion);
+            }
+            case ConsultaFiltro.Texto t -> {
+                // Cada búsqueda deja un mapa nuevo, que ya no cambia
+                buscarTexto(t.consulta());
+                hojas.put(t, ultimoPorTexto);
+            }
+            case ConsultaFiltro.Fila f -> {
+            }
+        }
+    }
+
+    /**
+     * Resuelve un nodo de una consulta compilada sobre unos candidatos. Los hijos de cada AND estrechan los
+     * candidatos del siguiente, y los de cada OR solo miran los candidatos que aún no ha aceptado otro hijo,
+     * así que las cláusulas caras, que el planificador deja al final, ven los menos personajes posibles.
+     *
+     * @param nodo       nodo planificado
+     * @param candidatos un bit por documento candidato; pasa a ser propiedad de este método
+     * @param hojas      mapa de bits de cada casilla y cada texto
+     * @param personajes personaje de cada documento, para las cláusulas fila a fila
+     * @param cancelado  indica si se ha cancelado la evaluación
+     * @return un bit por candidato que cumple el nodo, o {@code null} si se ha cancelado
+     * @author Nizam
+     */
+    private static long[] evaluar(ConsultaFiltro.Nodo nodo, long[] candidatos, Map<ConsultaFiltro.Nodo, long[]> hojas,
+                                  IntFunction<Map<String, String>> personajes, BooleanSupplier cancelado) {
+        switch (nodo) {
+            case ConsultaFiltro.Y y -> {
+                for (ConsultaFiltro.Nodo hijo : y.hijos()) {
+                    if (vacio(candidatos)) break;
+                    candidatos = evaluar(hijo, candidatos, hojas, personajes, cancelado);
+                    if (candidatos == null) return null;
+                }
+                return candidatos;
+            }
+            case ConsultaFiltro.O o -> {
+                long[] resultado = new long[candidatos.length];
+                for (ConsultaFiltro.Nodo hijo : o.hijos()) {
+                    if (vacio(candidatos)) break;
+                    long[] cumplen = evaluar(hijo, candidatos.clone(), hojas, personajes, cancelado);
+                    if (cumplen == null) return null;
+                    for (int i = 0; i < candidatos.length; i++) {
+                        resultado[i] |= cumplen[i];
+                        candidatos[i] &= ~cumplen[i];
+                    }
+                }
+                return resultado;
+            }
+            case ConsultaFiltro.No no -> {
+                long[] cumplen = evaluar(no.hijo(), candidatos.clone(), hojas, personajes, cancelado);
+                if (cumplen == null) return null;
+                for (int i = 0; i < candidatos.length; i++) candidatos[i] &= ~cumplen[i];
+                return candidatos;
+            }
+            case ConsultaFiltro.Faceta f -> {
+                return interseccion(candidatos, hojas.get(f));
+            }
+            case ConsultaFiltro.Texto t -> {
+                return interseccion(candidatos, hojas.get(t));
+            }
+            case ConsultaFiltro.Fila f -> {
+                return EjecutorFiltros.filtrar(candidatos, personajes, f.condicion(), cancelado);
+            }
+        }
+    }
+
+    /**
+     * Interseca los candidatos con otro mapa, que puede ser más corto.
+     *
+     * @param candidatos mapa que se modifica
+     * @param otro       mapa que no se modifica
+     * @return los candidatos
+     */
+    private static long[] interseccion(long[] candidatos, long[] otro) {
+        for (int i = 0; i < candidatos.length; i++) candidatos[i] &= i < otro.length ? otro[i] : 0;
+        return candidatos;
+    }
+
+    /**
+     * Indica si un mapa no tiene ningún bit.
+     *
+     * @param bits mapa
+     * @return {@code true} si todas las palabras son 0
+     */
+    private static boolean vacio(long[] bits) {
+        for (long palabra : bits) {
+            if (palabra != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cuenta cuántos personajes daría cada opción de cada faceta con el resto del filtro.
+     *
+     * @param consulta  texto de búsqueda
+     * @param seleccion opciones marcadas de cada faceta de {@link FacetasPersonajes}
+     * @return recuentos por faceta y opción, o {@code null} si aún no hay índices para responder
+     * @author Nizam
+     */
+    synchronized int[][] contar(ConsultaTexto consulta, int[] seleccion) {
+        if (nombres == null) return null;
+        if (consulta.vacia()) return facetas.contar(seleccion, null);
+        if (!buscarTexto(consulta)) return null;
+        return facetas.contar(seleccion, ultimoPorTexto);
+    }
+
+    /**
+     * Busca el texto en los índices y deja el resultado en {@link #ultimoPorTexto} y {@link #ultimoOrden},
+     * reutilizando el anterior si el texto es el mismo y no ha habido cambios desde entonces.
+     *
+     * @param consulta consulta no vacía
+     * @return {@code false} si la consulta necesita el índice de textos y aún no está
+     * @author Nizam
+     */
+    private boolean buscarTexto(ConsultaTexto consulta) {
+        if (textos == null && (consulta.conCampos() || consulta.aproximada())) return false;
+        String clave = (textos == null ? "n:" : "t:") + (consulta.aproximada() ? "~" : "") + consulta.nombre();
+        if (ultimoPorTexto != null && clave.equals(ultimoTexto)) return true;
+        ultimoTexto = clave;
+        if (textos == null) {
+            ultimoPorTexto = nombres.buscar(consulta.nombre());
+            ultimoOrden = null;
+            return true;
+        }
+        int total = nombres.numeroDocumentos();
+        int[] relevantes = consulta.terminos().isEmpty() ? new int[0] : textos.buscar(consulta, total);
+        long[] marcas = new long[(total + 63) >>> 6];
+        for (int d : relevantes) marcas[d >>> 6] |= 1L << d;
+        int[] orden = relevantes;
+        if (!consulta.conCampos() && !consulta.aproximada()) {
+            // Detrás, en el orden de la lista, los que solo contienen el texto dentro del nombre
+            long[] porNombre = nombres.buscar(consulta.nombre());
+            int extra = 0;
+            for (int i = 0; i < porNombre.length; i++) extra += Long.bitCount(porNombre[i] & ~marcas[i]);
+            orden = Arrays.copyOf(relevantes, relevantes.length + extra);
+            int n = relevantes.length;
+            for (int i = 0; i < porNombre.length; i++) {
+                for (long w = porNombre[i] & ~marcas[i]; w != 0; w &= w - 1) {
+                    orden[n++] = (i << 6) + Long.numberOfTrailingZeros(w);
+                }
+                marcas[i] |= porNombre[i];
+            }
+        }
+        ultimoPorTexto = marcas;
+        ultimoOrden = orden;
+        return true;
+    }
+
+    /**
+     * Tabla hash de direccionamiento abierto (sondeo lineal) sobre una columna.
+     * Las bajas dejan una marca de borrado que se limpia al redimensionar.
+     */
+    private static final class Dispersion {
+        /** Marca de hueco borrado. */
+        private static final Map<String, String> BORRADO = Map.of();
+
+        /** Columna que hace de clave. */
+        private final String columna;
+        /** Fila de cada hueco ({@code null} si está libre). */
+        private Map<String, String>[] filas;
+        /** Hash de la clave de cada hueco. */
+        private int[] hashes;
+        /** Huecos ocupados, incluidos los borrados. */
+        private int ocupados;
+
+        Dispersion(String columna, int esperados) {
+            this.columna = columna;
+            crear(Math.max(16, Integer.highestOneBit(Math.max(1, esperados)) << 2));
+        }
+
+        @SuppressWarnings("unchecked")
+        private void crear(int capacidad) {
+            filas = (Map<String, String>[]) new Map<?, ?>[capacidad];
+            hashes = new int[capacidad];
+            ocupados = 0;
+        }
+
+        private static int hash(String clave) {
+            int h = clave.hashCode();
+            return h ^ (h >>> 16);
+        }
+
+        Map<String, String> buscar(String clave) {
+            if (clave.isEmpty()) return null;
+            int h = hash(clave);
+            int mascara = filas.length - 1;
+            for (int i = h & mascara; filas[i] != null; i = (i + 1) & mascara) {
+                Map<String, String> p = filas[i];
+                if (p != BORRADO && hashes[i] == h && clave.equals(clave(p.get(columna)))) return p;
+            }
+            return null;
+        }
+
+        void insertar(Map<String, String> p) {
+            String clave = clave(p.get(columna));
+            if (clave.isEmpty() || buscar(clave) != null) return;
+            if ((ocupados + 1) * 2 > filas.length) redimensionar();
+            int h = hash(clave);
+            int mascara = filas.length - 1;
+            int i = h & mascara;
+            while (filas[i] != null && filas[i] != BORRADO) i = (i + 1) & mascara;
+            if (filas[i] == null) ocupados++;
+            filas[i] = p;
+            hashes[i] = h;
+        }
+
+        void eliminar(Map<String, String> p) {
+            String clave = clave(p.get(columna));
+            if (clave.isEmpty()) return;
+            int h = hash(clave);
+            int mascara = filas.length - 1;
+            for (int i = h & mascara; filas[i] != null; i = (i + 1) & mascara) {
+                if (filas[i] == p) {
+                    filas[i] = BORRADO;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Escribe la capacidad, los huecos ocupados, la fila de cada hueco (-1 libre, -2 borrado) y los hashes.
+         */
+        void volcar(DataOutputStream out) throws IOException {
+            int[] posiciones = new int[filas.length];
+            for (int i = 0; i < filas.length; i++) {
+                Map<String, String> p = filas[i];
+                posiciones[i] = p == null ? -1 : p == BORRADO ? -2 : ((FilaPersonaje) p).fila();
+            }
+            out.writeInt(filas.length);
+            out.writeInt(ocupados);
+            TablaPersonajes.escribirEnteros(out, posiciones, posiciones.length);
+            TablaPersonajes.escribirEnteros(out, hashes, hashes.length);
+        }
+
+        /**
+         * Lee lo escrito por {@link #volcar(DataOutputStream)} resolviendo cada fila en la lista.
+         */
+        void restaurar(ByteBuffer b, List<Map<String, String>> personajes) {
+            int capacidad = b.getInt();
+            crear(capacidad);
+            ocupados = b.getInt();
+            int[] posiciones = TablaPersonajes.leerEnteros(b, capacidad);
+            hashes = TablaPersonajes.leerEnteros(b, capacidad);
+            for (int i = 0; i < capacidad; i++) {
+                int posicion = posiciones[i];
+                filas[i] = posicion == -1 ? null : posicion == -2 ? BORRADO : personajes.get(posicion);
+            }
+        }
+
+        private void redimensionar() {
+            Map<String, String>[] anteriores = filas;
+            int[] hashesAnteriores = hashes;
+            int vivos = 0;
+            for (Map<String, String> p : anteriores) {
+                if (p != null && p != BORRADO) vivos++;
+            }
+            crear(Math.max(16, Integer.highestOneBit(Math.max(1, vivos)) << 2));
+            int mascara = filas.length - 1;
+            for (int j = 0; j < anteriores.length; j++) {
+                Map<String, String> p = anteriores[j];
+                if (p == null || p == BORRADO) continue;
+                int i = hashesAnteriores[j] & mascara;
+                while (filas[i] != null) i = (i + 1) & mascara;
+                filas[i] = p;
+                hashes[i] = hashesAnteriores[j];
+                ocupados++;
+            }
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package es.potersitos.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Índice invertido de palabras sobre las columnas de texto libre y las listas JSON de los personajes
+ * (nombre, alias, títulos, trabajos, familia, romances, varitas, patronus y boggart).
+ * Cada columna se trocea en palabras plegadas con {@link #plegar(String)} (minúsculas y sin tildes), y
+ * para cada campo y palabra se guarda la lista ordenada de documentos que la contienen con su frecuencia.
+ * <p>
+ * Una {@link ConsultaTexto} es una conjunción de términos, cada uno restringido o no a un campo; un término
+ * coincide con las palabras que empiezan por él, que se localizan con una búsqueda binaria en las palabras
+ * ordenadas del campo. Los documentos que cumplen todos los términos se ordenan por una puntuación BM25
+ * sumada sobre los campos, cada uno con su peso ({@link #PESOS}): el nombre pesa más que los alias, y estos
+ * más que el resto.
+ * <p>
+ * Los términos aproximados se buscan entre las palabras ordenadas de los nombres con el
+ * {@link AutomataLevenshtein}, que admite unas pocas letras cambiadas, sobrantes o que faltan; cada palabra
+ * encontrada puntúa menos cuanto más lejos está, y de una consulta aproximada solo se devuelven los
+ * {@link #MAXIMO_APROXIMADOS} mejores.
+ * <p>
+ * Los documentos son los de {@link IndiceNombres}: se construye con las posiciones de la lista y
+ * {@link #renumerar(int[])} los traduce a esos documentos al asignarlo. No es seguro para varios hilos:
+ * {@link IndicePersonajes} lo usa bajo su propio cerrojo.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class IndiceTextos {
+
+    /** Columnas indexadas, en el orden de sus campos. */
+    static final String[] CAMPOS = {"name", "alias_names", "titles", "jobs", "family_members", "romances",
+            "wands", "patronus", "boggart"};
+
+    /** Peso de cada campo en la puntuación. */
+    private static final float[] PESOS = {3f, 2f, 1.5f, 1.5f, 1f, 1f, 1f, 1f, 1f};
+
+    /** Saturación de la frecuencia de BM25. */
+    private static final float K1 = 1.2f;
+
+    /** Normalización por longitud de BM25. */
+    private static final float B = 0.75f;
+
+    /** Términos más cortos que esto solo coinciden con palabras completas, no como prefijo. */
+    static final int MINIMO_PREFIJO = 2;
+
+    /** Resultados que se devuelven como mucho de una consulta aproximada. */
+    static final int MAXIMO_APROXIMADOS = 100;
+
+    /** Documentos de cada palabra de cada campo. */
+    private final List<Map<String, Apariciones>> palabras;
+
+    /**
+     * Palabras de cada campo ordenadas, o {@code null} si aún no se han ordenado. Se ordenan al terminar de
+     * construir el índice, en segundo plano, y después cada palabra nueva se inserta en su sitio.
+     */
+    private final String[][] ordenadas = new String[CAMPOS.length][];
+
+    /** Palabras usadas de cada array de {@link #ordenadas}. */
+    private final int[] numeroOrdenadas = new int[CAMPOS.length];
+
+    /** Número de palabras de cada campo en cada documento. */
+    private final int[][] longitudes = new int[CAMPOS.length][];
+
+    /** Suma de {@link #longitudes} de cada campo. */
+    private final long[] totales = new long[CAMPOS.length];
+
+    /** Documentos con algún texto indexado. */
+    private int indexados;
+
+    /** Puntuación acumulada de cada documento durante una búsqueda. */
+    private float[] puntos;
+
+    /** Términos cumplidos por cada documento durante una búsqueda. */
+    private int[] cumplidos;
+
+    /**
+     * Documentos de una palabra en un campo, ordenados, con el número de veces que aparece en cada uno.
+     */
+    private static final class Apariciones {
+        int[] documentos = new int[2];
+        short[] frecuencias = new short[2];
+        int total;
+
+        /**
+         * Suma una aparición, que siempre es del último documento o de uno posterior salvo en las
+         * modificaciones.
+         */
+        void anadir(int documento) {
+            int i = total > 0 && documentos[total - 1] <= documento
+                    ? total - 1 : Arrays.binarySearch(documentos, 0, total, documento);
+            if (i >= 0 && documentos[i] == documento) {
+                if (frecuencias[i] < Short.MAX_VALUE) frecuencias[i]++;
+                return;
+            }
+            int hueco = i >= 0 ? i + 1 : -i - 1;
+            if (total == documentos.length) {
+                documentos = Arrays.copyOf(documentos, total * 2);
+                frecuencias = Arrays.copyOf(frecuencias, total * 2);
+            }
+            System.arraycopy(documentos, hueco, documentos, hueco + 1, total - hueco);
+            System.arraycopy(frecuencias, hueco, frecuencias, hueco + 1, total - hueco);
+            documentos[hueco] = documento;
+            frecuencias[hueco] = 1;
+            total++;
+        }
+
+        /** Quita todas las apariciones de un documento. */
+        void quitar(int documento) {
+            int i = Arrays.binarySearch(documentos, 0, total, documento);
+            if (i < 0) return;
+            System.arraycopy(documentos, i + 1, documentos, i, total - i - 1);
+            System.arraycopy(frecuencias, i + 1, frecuencias, i, total - i - 1);
+            total--;
+        }
+    }
+
+    /**
+     * Construye el índice con los personajes numerados por su posición en la lista.
+     *
+     * @param personajes personajes a indexar
+     * @author Nizam
+     */
+    IndiceTextos(List<Map<String, String>> personajes) {
+        int capacidad = Math.max(16, personajes.size() + personajes.size() / 8);
+        palabras = new ArrayList<>(CAMPOS.length);
+        for (int c = 0; c < CAMPOS.length; c++) {
+            palabras.add(new HashMap<>());
+            longitudes[c] = new int[capacidad];
+        }
+        int documento = 0;
+        for (Map<String, String> p : personajes) {
+            anadir(documento++, p);
+        }
+        // Con un millón de nombres ordenar las palabras lleva segundos: mejor aquí que en la primera búsqueda
+        for (int c = 0; c < CAMPOS.length; c++) {
+            ordenadas(c);
+        }
+    }
+
+    /**
+     * Pasa a minúsculas independientes del idioma y quita las tildes y demás marcas diacríticas, para que
+     * «Hermíone» y «hermione» sean la misma palabra.
+     *
+     * @param texto texto original
+     * @return texto plegado, o cadena vacía si es nulo
+     * @author Nizam
+     */
+    static String plegar(String texto) {
+        if (texto == null) return "";
+        String minusculas = texto.toLowerCase(Locale.ROOT);
+        boolean ascii = true;
+        for (int i = 0; i < minusculas.length() && ascii; i++) {
+            ascii = minusculas.charAt(i) < 0x80;
+        }
+        if (ascii) return minusculas;
+        String descompuesto = Normalizer.normalize(minusculas, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(descompuesto.length());
+        for (int i = 0; i < descompuesto.length(); i++) {
+            char c = descompuesto.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Trocea un texto plegado en palabras: secuencias de letras y dígitos. Las comillas, corchetes y comas
+     * de las listas JSON quedan fuera como cualquier otro separador.
+     *
+     * @param plegado texto ya plegado
+     * @param destino receptor de cada palabra, en orden
+     * @author Nizam
+     */
+    static void trocear(String plegado, Consumer<String> destino) {
+        int inicio = -1;
+        for (int i = 0; i <= plegado.length(); i++) {
+            boolean letra = i < plegado.length() && Character.isLetterOrDigit(plegado.charAt(i));
+            if (letra && inicio < 0) {
+                inicio = i;
+            } else if (!letra && inicio >= 0) {
+                destino.accept(plegado.substring(inicio, i));
+                inicio = -1;
+            }
+        }
+    }
+
+    /**
+     * Traduce los documentos, que hasta ahora son posiciones de la lista, a los documentos de
+     * {@link IndiceNombres}. La traducción es creciente, así que las listas siguen ordenadas.
+     *
+     * @param documentos documento de cada posición de la lista
+     * @author Nizam
+     */
+    void renumerar(int[] documentos) {
+        int capacidad = documentos.length == 0 ? 16 : documentos[documentos.length - 1] + 1;
+        for (int c = 0; c < CAMPOS.length; c++) {
+            for (Apariciones a : palabras.get(c).values()) {
+                for (int i = 0; i < a.total; i++) a.documentos[i] = documentos[a.documentos[i]];
+            }
+            int[] anteriores = longitudes[c];
+            longitudes[c] = new int[Math.max(capacidad + capacidad / 8, 16)];
+            for (int posicion = 0; posicion < documentos.length; posicion++) {
+                longitudes[c][documentos[posicion]] = anteriores[posicion];
+            }
+        }
+        puntos = null;
+        cumplidos = null;
+    }
+
+    /**
+     * Indexa los textos de un documento nuevo o que se había quitado con {@link #quitar(int, Map)}.
+     *
+     * @param documento número de documento
+     * @param p         personaje del documento
+     * @author Nizam
+     */
+    void anadir(int documento, Map<String, String> p) {
+        boolean alguno = false;
+        for (int c = 0; c < CAMPOS.length; c++) {
+            if (documento >= longitudes[c].length) {
+                longitudes[c] = Arrays.copyOf(longitudes[c], Math.max(documento + 1, longitudes[c].length * 3 / 2));
+            }
+            Map<String, Apariciones> campo = palabras.get(c);
+            int[] longitud = new int[1];
+            final int indice = c;
+            trocear(plegar(p.get(CAMPOS[c])), palabra -> {
+                Apariciones a = campo.get(palabra);
+                if (a == null) {
+                    a = new Apariciones();
+                    campo.put(palabra, a);
+                    if (ordenadas[indice] != null) insertarOrdenada(indice, palabra);
+                }
+                a.anadir(documento);
+                longitud[0]++;
+            });
+            longitudes[c][documento] = longitud[0];
+            totales[c] += longitud[0];
+            alguno |= longitud[0] > 0;
+        }
+        if (alguno) indexados++;
+    }
+
+    /**
+     * Quita los textos de un documento. Se pasan los valores con los que se indexó.
+     *
+     * @param documento número de documento
+     * @param p         personaje tal como se indexó
+     * @author Nizam
+     */
+    void quitar(int documento, Map<String, String> p) {
+        if (documento < 0) return;
+        boolean alguno = false;
+        for (int c = 0; c < CAMPOS.length; c++) {
+            if (documento >= longitudes[c].length || longitudes[c][documento] == 0) continue;
+            Map<String, Apariciones> campo = palabras.get(c);
+            trocear(plegar(p.get(CAMPOS[c])), palabra -> {
+                Apariciones a = campo.get(palabra);
+                if (a != null) a.quitar(documento);
+            });
+            totales[c] -= longitudes[c][documento];
+            longitudes[c][documento] = 0;
+            alguno = true;
+        }
+        if (alguno) indexados--;
+    }
+
+    /**
+     * Busca los documentos que cumplen todos los términos de una consulta, de mayor a menor puntuación.
+     * Se empieza por el término con menos apariciones, de modo que los demás solo suman puntos a los
+     * documentos que ya lo cumplen. Si la consulta es aproximada solo se devuelven los mejores.
+     *
+     * @param consulta consulta con al menos un término
+     * @param limite   número de documentos de la tabla de acumuladores
+     * @return documentos encontrados, ordenados por puntuación y, a igual puntuación, por documento
+     * @author Nizam
+     */
+    int[] buscar(ConsultaTexto consulta, int limite) {
+        List<ConsultaTexto.Termino> terminos = consulta.terminos();
+        int n = terminos.size();
+        int[][] coincidencias = new int[n][];
+        long[] tamanos = new long[n];
+        for (int t = 0; t < n; t++) {
+            coincidencias[t] = expandir(terminos.get(t));
+            for (int k = 0; k < coincidencias[t].length; k += 3) {
+                tamanos[t] += apariciones(coincidencias[t][k], coincidencias[t][k + 1]).total;
+            }
+            if (tamanos[t] == 0) return new int[0];
+        }
+        Integer[] orden = new Integer[n];
+        for (int t = 0; t < n; t++) orden[t] = t;
+        Arrays.sort(orden, (a, b) -> Long.compare(tamanos[a], tamanos[b]));
+
+        if (puntos == null || puntos.length < limite) {
+            puntos = new float[limite];
+            cumplidos = new int[limite];
+        }
+        int[] tocados = new int[(int) Math.min(tamanos[orden[0]], limite)];
+        int numeroTocados = 0;
+        for (int paso = 0; paso < n; paso++) {
+            int[] ternas = coincidencias[orden[paso]];
+            for (int k = 0; k < ternas.length; k += 3) {
+                int c = ternas[k];
+                Apariciones a = apariciones(c, ternas[k + 1]);
+                float idf = (float) Math.log(1 + (indexados - a.total + 0.5) / (a.total + 0.5)) / (1 + ternas[k + 2]);
+                float media = totales[c] == 0 ? 1 : (float) totales[c] / Math.max(1, indexados);
+                for (int i = 0; i < a.total; i++) {
+                    int d = a.documentos[i];
+                    if (d >= limite || cumplidos[d] < paso) continue;
+                    if (cumplidos[d] == paso) {
+                        if (paso == 0) tocados[numeroTocados++] = d;
+                        cumplidos[d] = paso + 1;
+                    }
+                    float tf = a.frecuencias[i];
+                    puntos[d] += PESOS[c] * idf * tf * (K1 + 1)
+                            / (tf + K1 * (1 - B + B * longitudes[c][d] / media));
+                }
+            }
+        }
+
+        long[] claves = new long[numeroTocados];
+        int encontrados = 0;
+        for (int i = 0; i < numeroTocados; i++) {
+            int d = tocados[i];
+            if (cumplidos[d] == n) {
+                // Puntuaciones positivas: sus bits ordenan igual que los valores
+                claves[encontrados++] = ((long) (Integer.MAX_VALUE - Float.floatToIntBits(puntos[d])) << 32) | d;
+            }
+            puntos[d] = 0;
+            cumplidos[d] = 0;
+        }
+        Arrays.sort(claves, 0, encontrados);
+        if (consulta.aproximada()) encontrados = Math.min(encontrados, MAXIMO_APROXIMADOS);
+        int[] resultado = new int[encontrados];
+        for (int i = 0; i < encontrados; i++) resultado[i] = (int) claves[i];
+        return resultado;
+    }
+
+    /**
+     * Localiza las palabras que coinciden con un término en los campos que le corresponden: las que empiezan
+     * por él o, si es aproximado, las de los nombres que están a poca distancia de edición.
+     *
+     * @param termino término de la consulta
+     * @return ternas (campo, posición en {@link #ordenadas}, distancia) consecutivas
+     * @author Nizam
+     */
+    private int[] expandir(ConsultaTexto.Termino termino) {
+        String texto = termino.texto();
+        if (termino.aproximado()) {
+            int[] pares = AutomataLevenshtein.buscar(ordenadas(0), numeroOrdenadas[0], texto,
+                    AutomataLevenshtein.tolerancia(texto.length()));
+            int[] ternas = new int[pares.length / 2 * 3];
+            for (int k = 0, n = 0; k < pares.length; k += 2) {
+                ternas[n++] = 0;
+                ternas[n++] = pares[k];
+                ternas[n++] = pares[k + 1];
+            }
+            return ternas;
+        }
+        int[] ternas = new int[12];
+        int n = 0;
+        boolean prefijo = texto.length() >= MINIMO_PREFIJO;
+        for (int c = 0; c < CAMPOS.length; c++) {
+            if (termino.campo() >= 0 && termino.campo() != c) continue;
+            String[] campo = ordenadas(c);
+            int total = numeroOrdenadas[c];
+            int i = Arrays.binarySearch(campo, 0, total, texto);
+            if (i < 0) i = prefijo ? -i - 1 : total;
+            for (; i < total && (prefijo ? campo[i].startsWith(texto) : campo[i].equals(texto)); i++) {
+                if (n == ternas.length) ternas = Arrays.copyOf(ternas, n * 2);
+                ternas[n++] = c;
+                ternas[n++] = i;
+                ternas[n++] = 0;
+            }
+        }
+        return Arrays.copyOf(ternas, n);
+    }
+
+    /**
+     * Devuelve las apariciones de una palabra localizada con {@link #expandir(ConsultaTexto.Termino)}.
+     *
+     * @param campo   campo
+     * @param posicion posición de la palabra en las palabras ordenadas del campo
+     * @return apariciones de la palabra
+     * @author Nizam
+     */
+    private Apariciones apariciones(int campo, int posicion) {
+        return palabras.get(campo).get(ordenadas[campo][posicion]);
+    }
+
+    /**
+     * Devuelve las palabras de un campo ordenadas, ordenándolas si es la primera vez.
+     *
+     * @param campo campo
+     * @return palabras ordenadas; solo son válidas las {@link #numeroOrdenadas} primeras
+     * @author Nizam
+     */
+    private String[] ordenadas(int campo) {
+        if (ordenadas[campo] == null) {
+            String[] todas = palabras.get(campo).keySet().toArray(new String[0]);
+            Arrays.sort(todas);
+            ordenadas[campo] = todas;
+            numeroOrdenadas[campo] = todas.length;
+        }
+        return ordenadas[campo];
+    }
+
+    /**
+     * Inserta una palabra nueva en su sitio de las palabras ordenadas de un campo.
+     *
+     * @param campo   campo
+     * @param palabra palabra que no estaba
+     * @author Nizam
+     */
+    private void insertarOrdenada(int campo, String palabra) {
+        String[] campoOrdenado = ordenadas[campo];
+        int total = numeroOrdenadas[campo];
+        int hueco = -Arrays.binarySearch(campoOrdenado, 0, total, palabra) - 1;
+        if (total == campoOrdenado.length) {
+            campoOrdenado = Arrays.copyOf(campoOrdenado, Math.max(16, total + (total >> 3)));
+            ordenadas[campo] = campoOrdenado;
+        }
+        System.arraycopy(campoOrdenado, hueco, campoOrdenado, hueco + 1, total - hueco);
+        campoOrdenado[hueco] = palabra;
+        numeroOrdenadas[campo] = total + 1;
+    }
+}
@@ -0,0 +1,301 @@
+package es.potersitos.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Lector CSV según RFC 4180 implementado como máquina de estados.
+ * Recorre la entrada byte a byte sobre un buffer propio, por lo que soporta
+ * comillas escapadas ({@code ""}) y saltos de línea dentro de campos entrecomillados
+ * sin expresiones regulares ni lecturas línea a línea.
+ * <p>
+ * La entrada se lee en UTF-8 sin decodificarla carácter a carácter: los separadores son ASCII y nunca
+ * aparecen dentro de una secuencia multibyte, así que cada campo se decodifica de una vez al terminarlo.
+ * Esto permite además saltarse sin decodificar los campos que no se piden (proyección) y conocer la
+ * posición en bytes de cada registro para volver a leerlo más tarde.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+public class LectorCSV implements Closeable {
+
+    /** Tamaño por defecto del buffer de lectura en bytes. */
+    private static final int TAM_BUFFER = 64 * 1024;
+
+    /** Estado: al comienzo de un campo. */
+    private static final int INICIO_CAMPO = 0;
+
+    /** Estado: dentro de un campo sin comillas. */
+    private static final int SIN_COMILLAS = 1;
+
+    /** Estado: dentro de un campo entrecomillado. */
+    private static final int CON_COMILLAS = 2;
+
+    /** Estado: se ha leído una comilla dentro de un campo entrecomillado. */
+    private static final int COMILLA_LEIDA = 3;
+
+    /** Origen de los bytes. */
+    private final InputStream entrada;
+
+    /** Buffer de lectura. */
+    private final byte[] buffer;
+
+    /** Posición actual y número de bytes válidos en el buffer. */
+    private int posicion, limite;
+
+    /** Bytes de la entrada anteriores al comienzo del buffer. */
+    private long leidosAntes;
+
+    /** Acumulador reutilizable de los bytes del campo en curso. */
+    private byte[] campo = new byte[128];
+
+    /** Bytes ocupados de {@link #campo}. */
+    private int longitudCampo;
+
+    /** Indica si el campo en curso se decodifica o se descarta. */
+    private boolean guardarCampo;
+
+    /** Campos pedidos en la lectura en curso ({@code null} = todos). */
+    private boolean[] seleccion;
+
+    /** Acumulador reutilizable de los campos del registro en curso. */
+    private final ArrayList<String> campos = new ArrayList<>(32);
+
+    /** Posición en bytes donde empieza el último registro devuelto. */
+    private long inicioRegistro;
+
+    /** Indica si el último registro devuelto terminaba en salto de línea (y no en el final de la entrada). */
+    private boolean terminadoEnSaltoDeLinea;
+
+    /** Indica si ya se ha comprobado la marca BOM inicial. */
+    private boolean inicio = true;
+
+    /**
+     * Crea un lector sobre la entrada indicada, codificada en UTF-8.
+     *
+     * @param entrada origen de los bytes; se cierra junto con este lector
+     * @author Nizam
+     */
+    public LectorCSV(InputStream entrada) {
+        this(entrada, TAM_BUFFER);
+    }
+
+    /**
+     * Crea un lector con un buffer del tamaño indicado (por ejemplo, pequeño para leer un solo registro).
+     *
+     * @param entrada   origen de los bytes; se cierra junto con este lector
+     * @param tamBuffer tamaño del buffer en bytes
+     * @author Nizam
+     */
+    public LectorCSV(InputStream entrada, int tamBuffer) {
+        this.entrada = entrada;
+        this.buffer = new byte[tamBuffer];
+    }
+
+    /**
+     * Lee el siguiente registro completo, aunque ocupe varias líneas físicas.
+     * Las líneas vacías se ignoran.
+     *
+     * @return campos del registro, o {@code null} al llegar al final de la entrada
+     * @throws IOException si falla la lectura
+     * @author Nizam
+     */
+    public String[] siguienteRegistro() throws IOException {
+        return siguienteRegistro(null);
+    }
+
+    /**
+     * Lee el siguiente registro decodificando solo los campos pedidos.
+     * Los demás se recorren (para respetar comillas y saltos de línea) pero se devuelven como {@code null}.
+     *
+     * @param seleccion campos a decodificar por posición ({@code null} = todos; los que quedan fuera del array se descartan)
+     * @return campos del registro, o {@code null} al llegar al final de la entrada
+     * @throws IOException si falla la lectura
+     * @author Nizam
+     */
+    public String[] siguienteRegistro(boolean[] seleccion) throws IOException {
+        this.seleccion = seleccion;
+        campos.clear();
+        empezarCampo();
+        int estado = INICIO_CAMPO;
+        boolean hayDatos = false;
+
+        while (true) {
+            if (posicion >= limite && !rellenarBuffer()) {
+                if (!hayDatos) return null;
+                terminarCampo();
+                terminadoEnSaltoDeLinea = false;
+                return campos.toArray(new String[0]);
+            }
+
+            byte c = buffer[posicion++];
+            if (!hayDatos && longitudCampo == 0 && estado == INICIO_CAMPO) {
+                inicioRegistro = leidosAntes + posicion - 1;
+            }
+
+            switch (estado) {
+                case INICIO_CAMPO, SIN_COMILLAS -> {
+                    if (c == ',') {
+                        terminarCampo();
+                        estado = INICIO_CAMPO;
+                        hayDatos = true;
+                    } else if (c == '\n' || c == '\r') {
+                        if (c == '\r') saltarSaltoLinea();
+                        if (!hayDatos && longitudCampo == 0) continue;
+                        terminarCampo();
+                        terminadoEnSaltoDeLinea = true;
+                        return campos.toArray(new String[0]);
+                    } else if (c == '"' && estado == INICIO_CAMPO) {
+                        estado = CON_COMILLAS;
+                        hayDatos = true;
+                    } else {
+                        anadirByte(c);
+                        estado = SIN_COMILLAS;
+                        hayDatos = true;
+                    }
+                }
+                case CON_COMILLAS -> {
+                    if (c == '"') {
+                        estado = COMILLA_LEIDA;
+                    } else {
+                        anadirByte(c);
+                    }
+                }
+                case COMILLA_LEIDA -> {
+                    if (c == '"') {
+                        anadirByte(c);
+                        estado = CON_COMILLAS;
+                    } else if (c == ',') {
+                        terminarCampo();
+                        estado = INICIO_CAMPO;
+                    } else if (c == '\n' || c == '\r') {
+                        if (c == '\r') saltarSaltoLinea();
+                        terminarCampo();
+                        terminadoEnSaltoDeLinea = true;
+                        return campos.toArray(new String[0]);
+                    } else {
+                        // Contenido tras la comilla de cierre: se conserva de forma tolerante
+                        anadirByte(c);
+                        estado = SIN_COMILLAS;
+                    }
+                }
+                default -> throw new IllegalStateException("Estado CSV desconocido: " + estado);
+            }
+        }
+    }
+
+    /**
+     * Devuelve la posición en bytes, desde el comienzo de la entrada, del último registro devuelto.
+     *
+     * @return posición del registro
+     * @author Nizam
+     */
+    public long inicioRegistro() {
+        return inicioRegistro;
+    }
+
+    /**
+     * Indica si el último registro devuelto terminaba en un salto de línea. Un registro cortado por el
+     * final de la entrada puede estar a medio escribir por otro proceso.
+     *
+     * @return {@code true} si el registro terminaba en salto de línea
+     * @author Nizam
+     */
+    public boolean terminadoEnSaltoDeLinea() {
+        return terminadoEnSaltoDeLinea;
+    }
+
+    /**
+     * Devuelve la posición en bytes, desde el comienzo de la entrada, del siguiente byte por leer.
+     *
+     * @return posición actual del lector
+     * @author Nizam
+     */
+    public long posicion() {
+        return leidosAntes + posicion;
+    }
+
+    /**
+     * Prepara el acumulador para un campo nuevo y decide si se decodificará.
+     *
+     * @author Nizam
+     */
+    private void empezarCampo() {
+        longitudCampo = 0;
+        int indice = campos.size();
+        guardarCampo = seleccion == null || (indice < seleccion.length && seleccion[indice]);
+    }
+
+    /**
+     * Añade un byte al campo en curso si se va a decodificar.
+     *
+     * @param b byte leído
+     * @author Nizam
+     */
+    private void anadirByte(byte b) {
+        if (!guardarCampo) return;
+        if (longitudCampo == campo.length) {
+            campo = Arrays.copyOf(campo, campo.length * 2);
+        }
+        campo[longitudCampo++] = b;
+    }
+
+    /**
+     * Cierra el campo en curso, lo añade al registro y empieza el siguiente.
+     *
+     * @author Nizam
+     */
+    private void terminarCampo() {
+        campos.add(guardarCampo ? new String(campo, 0, longitudCampo, StandardCharsets.UTF_8) : null);
+        empezarCampo();
+    }
+
+    /**
+     * Consume el {@code \n} que sigue a un {@code \r} (saltos de línea CRLF).
+     *
+     * @throws IOException si falla la lectura
+     * @author Nizam
+     */
+    private void saltarSaltoLinea() throws IOException {
+        if (posicion >= limite && !rellenarBuffer()) return;
+        if (buffer[posicion] == '\n') posicion++;
+    }
+
+    /**
+     * Rellena el buffer desde la entrada, descartando la marca BOM inicial si existe.
+     *
+     * @return {@code false} si no quedan bytes por leer
+     * @throws IOException si falla la lectura
+     * @author Nizam
+     */
+    private boolean rellenarBuffer() throws IOException {
+        leidosAntes += limite;
+        int leidos = entrada.read(buffer, 0, buffer.length);
+        if (leidos <= 0) {
+            posicion = limite = 0;
+            return false;
+        }
+        posicion = 0;
+        limite = leidos;
+        if (inicio) {
+            inicio = false;
+            if (leidos >= 3 && buffer[0] == (byte) 0xEF && buffer[1] == (byte) 0xBB && buffer[2] == (byte) 0xBF) posicion = 3;
+        }
+        return posicion < limite || rellenarBuffer();
+    }
+
+    /**
+     * Cierra la entrada subyacente.
+     *
+     * @throws IOException si falla el cierre
+     * @author Nizam
+     */
+    @Override
+    public void close() throws IOException {
+        entrada.close();
+    }
+}
@@ -0,0 +1,272 @@
+package es.potersitos.util;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Permutación de los personajes ordenados por una columna, para ordenar la vista sin comparar textos en
+ * cada filtrado. Al construirla se calcula una clave por valor distinto de la columna: la
+ * {@link CollationKey} del {@link Collator} del idioma para los textos, o la fecha leída del texto para
+ * {@code born} y {@code died}; las claves se ordenan una vez y cada personaje queda con un entero, de modo
+ * que ordenar la columna es ordenar enteros. Después, ordenar cualquier resultado es recorrer la permutación
+ * quedándose con los documentos del resultado, en un sentido o en el otro.
+ * <p>
+ * Los personajes sin valor (o con una fecha ilegible, como «Unknown») van al final en los dos sentidos.
+ * Se construye con las posiciones de la lista; {@link IndicePersonajes} la pasa a sus documentos con
+ * {@link #renumerar(int[])} y la mantiene en cada alta, modificación y baja, bajo su cerrojo.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class OrdenPersonajes {
+
+    /** Columnas con fechas. */
+    private static final Set<String> COLUMNAS_FECHA = Set.of("born", "died");
+
+    /** Comienzo de los nombres de los meses en inglés, como vienen en el CSV. */
+    private static final String[] MESES = {"jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"};
+
+    /** Año de una fecha: tres o cuatro cifras sueltas. */
+    private static final Pattern ANIO = Pattern.compile("(?<!\\d)(\\d{3,4})(?!\\d)");
+
+    /** Día de una fecha: una o dos cifras sueltas. */
+    private static final Pattern DIA = Pattern.compile("(?<!\\d)(\\d{1,2})(?!\\d)");
+
+    /** Valores distintos por tarea al calcular sus claves de ordenación en paralelo. */
+    private static final int TROZO_CLAVES = 16 * 1024;
+
+    /** Clave de los valores que van al final. */
+    static final int SIN_VALOR = Integer.MAX_VALUE;
+
+    /** Criterio de la permutación, identificado por {@link CriterioOrden#clave()}. */
+    private final String clave;
+
+    /** Columna ordenada. */
+    private final String columna;
+
+    /** Comparador de textos del idioma, o {@code null} si la columna es de fechas. */
+    private final Collator collator;
+
+    /** Documentos ordenados: primero los que tienen valor, luego el resto en orden de documento. */
+    private int[] orden;
+
+    /** Documentos usados de {@link #orden}. */
+    private int total;
+
+    /** Documentos con valor, al comienzo de {@link #orden}. */
+    private int conValor;
+
+    /**
+     * Ordena los personajes de una lista, numerados por su posición.
+     *
+     * @param personajes personajes a ordenar
+     * @param criterio   columna e idioma (el sentido no cuenta)
+     * @author Nizam
+     */
+    OrdenPersonajes(List<Map<String, String>> personajes, CriterioOrden criterio) {
+        clave = criterio.clave();
+        columna = criterio.columna();
+        collator = esFecha(columna) ? null : Collator.getInstance(criterio.idioma());
+        int n = personajes.size();
+
+        // Entero de cada valor distinto: la fecha, o el puesto de su clave de ordenación entre todas
+        String[] valores = new String[n];
+        Map<String, Integer> enteros = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            valores[i] = valor(personajes.get(i));
+            enteros.put(valores[i], SIN_VALOR);
+        }
+        if (collator == null) {
+            enteros.replaceAll((v, x) -> fecha(v));
+        } else {
+            enteros.remove("");
+            String[] distintos = enteros.keySet().toArray(new String[0]);
+            // Calcular las claves es lo que más cuesta (microsegundos por nombre): por trozos en el pool
+            // común, cada uno con su copia del Collator, que no admite varios hilos
+            CollationKey[] claves = new CollationKey[distintos.length];
+            IntStream.range(0, (distintos.length + TROZO_CLAVES - 1) / TROZO_CLAVES).parallel().forEach(t -> {
+                Collator propio = (Collator) collator.clone();
+                int fin = Math.min(distintos.length, (t + 1) * TROZO_CLAVES);
+                for (int i = t * TROZO_CLAVES; i < fin; i++) claves[i] = propio.getCollationKey(distintos[i]);
+            });
+            Arrays.parallelSort(claves);
+            for (int puesto = 0; puesto < claves.length; puesto++) {
+                enteros.put(claves[puesto].getSourceString(), puesto);
+            }
+        }
+
+        // Entero y posición en un long: al ordenarlos quedan por valor y, a igual valor, por posición
+        long[] empaquetados = new long[n];
+        for (int i = 0; i < n; i++) {
+            int entero = enteros.getOrDefault(valores[i], SIN_VALOR);
+            if (entero != SIN_VALOR) conValor++;
+            empaquetados[i] = (long) entero << 32 | i;
+        }
+        Arrays.parallelSort(empaquetados);
+        orden = new int[Math.max(16, n + n / 8)];
+        for (int i = 0; i < n; i++) orden[i] = (int) empaquetados[i];
+        total = n;
+    }
+
+    /**
+     * Indica si una columna se ordena como fecha.
+     *
+     * @param columna columna del CSV
+     * @return {@code true} para {@code born} y {@code died}
+     * @author Nizam
+     */
+    static boolean esFecha(String columna) {
+        return COLUMNAS_FECHA.contains(columna);
+    }
+
+    /**
+     * Lee una fecha del CSV («31 July 1980», «c. 1926», «1980s») como un entero que se ordena como ella:
+     * año, mes y día, con el mes o el día a 0 si faltan.
+     *
+     * @param texto fecha escrita
+     * @return fecha como entero, o {@link #SIN_VALOR} si no tiene año
+     * @author Nizam
+     */
+    static int fecha(String texto) {
+        Matcher anio = ANIO.matcher(texto);
+        if (!anio.find()) return SIN_VALOR;
+        int mes = 0, dia = 0;
+        String minusculas = texto.toLowerCase(Locale.ROOT);
+        for (int m = 0; m < MESES.length && mes == 0; m++) {
+            int donde = minusculas.indexOf(MESES[m]);
+            if (donde < 0) continue;
+            mes = m + 1;
+            // El día va delante del mes
+            Matcher d = DIA.matcher(minusculas.substring(0, donde));
+            while (d.find()) dia = Integer.parseInt(d.group(1));
+        }
+        return Integer.parseInt(anio.group(1)) * 10_000 + mes * 100 + dia;
+    }
+
+    /**
+     * Devuelve el criterio de la permutación.
+     *
+     * @return {@link CriterioOrden#clave()} con el que se construyó
+     * @author Nizam
+     */
+    String clave() {
+        return clave;
+    }
+
+    /**
+     * Traduce las posiciones de la lista, con las que se construyó, a los documentos de {@link IndiceNombres}.
+     * La traducción es creciente, así que los empates siguen en orden de documento.
+     *
+     * @param documentos documento de cada posición de la lista
+     * @author Nizam
+     */
+    void renumerar(int[] documentos) {
+        for (int i = 0; i < total; i++) orden[i] = documentos[orden[i]];
+    }
+
+    /**
+     * Coloca un documento nuevo, o que se había quitado con {@link #quitar(int)}, en su sitio: una búsqueda
+     * binaria que compara su valor con el de los documentos ya ordenados.
+     *
+     * @param documento  número de documento
+     * @param p          personaje del documento
+     * @param personajes personaje de cada documento ya ordenado
+     * @author Nizam
+     */
+    void insertar(int documento, Map<String, String> p, IntFunction<Map<String, String>> personajes) {
+        String valor = valor(p);
+        int fecha = collator == null ? fecha(valor) : 0;
+        boolean sinValor = collator == null ? fecha == SIN_VALOR : valor.isEmpty();
+        int bajo = sinValor ? conValor : 0, alto = sinValor ? total : conValor;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            int otro = orden[medio];
+            int comparacion = 0;
+            if (!sinValor) {
+                String suyo = valor(personajes.apply(otro));
+                comparacion = collator == null ? Integer.compare(fecha, fecha(suyo)) : collator.compare(valor, suyo);
+            }
+            if (comparacion < 0 || comparacion == 0 && documento < otro) alto = medio;
+            else bajo = medio + 1;
+        }
+        if (total == orden.length) orden = Arrays.copyOf(orden, total + total / 8 + 16);
+        System.arraycopy(orden, bajo, orden, bajo + 1, total - bajo);
+        orden[bajo] = documento;
+        total++;
+        if (!sinValor) conValor++;
+    }
+
+    /**
+     * Quita un documento de la permutación.
+     *
+     * @param documento número de documento
+     * @author Nizam
+     */
+    void quitar(int documento) {
+        for (int i = 0; i < total; i++) {
+            if (orden[i] != documento) continue;
+            System.arraycopy(orden, i + 1, orden, i, total - i - 1);
+            total--;
+            if (i < conValor) conValor--;
+            return;
+        }
+    }
+
+    /**
+     * Ordena un resultado recorriendo la permutación, sin comparar nada.
+     *
+     * @param documentos un bit por documento del resultado
+     * @param ascendente sentido del orden; los documentos sin valor van al final en los dos
+     * @return documentos del resultado ordenados
+     * @author Nizam
+     */
+    int[] ordenar(long[] documentos, boolean ascendente) {
+        int cuenta = 0;
+        for (long palabra : documentos) cuenta += Long.bitCount(palabra);
+        int[] resultado = new int[cuenta];
+        int n = 0;
+        for (int i = 0; i < total && n < cuenta; i++) {
+            int d = orden[ascendente || i >= conValor ? i : conValor - 1 - i];
+            if ((d >>> 6) < documentos.length && (documentos[d >>> 6] & (1L << d)) != 0) resultado[n++] = d;
+        }
+        return n == cuenta ? resultado : Arrays.copyOf(resultado, n);
+    }
+
+    /**
+     * Ordena la lista con la que se construyó, antes de {@link #renumerar(int[])}.
+     *
+     * @param personajes lista con la que se construyó
+     * @param ascendente sentido del orden; los personajes sin valor van al final en los dos
+     * @return nueva lista ordenada
+     * @author Nizam
+     */
+    List<Map<String, String>> ordenar(List<Map<String, String>> personajes, boolean ascendente) {
+        List<Map<String, String>> resultado = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            resultado.add(personajes.get(orden[ascendente || i >= conValor ? i : conValor - 1 - i]));
+        }
+        return resultado;
+    }
+
+    /**
+     * Lee el valor que se ordena.
+     *
+     * @param p personaje
+     * @return valor de la columna sin espacios alrededor, o cadena vacía si no tiene
+     */
+    private String valor(Map<String, String> p) {
+        String v = p == null ? null : p.get(columna);
+        return v == null ? "" : v.trim();
+    }
+}
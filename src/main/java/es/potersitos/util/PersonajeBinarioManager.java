@@ -0,0 +1,371 @@
+package es.potersitos.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Gestor del archivo binario de personajes (todosPersonajes.bin) en formato {@link BinarioIndexado}.
+ * Refleja cada alta, modificación y baja hecha sobre el CSV sin reescribir el archivo y, cuando su firma
+ * coincide con el estado del CSV y del diario, permite arrancar sin analizar el CSV.
+ * <p>
+ * Cada cambio recibe la firma anterior y la posterior: el binario solo se vuelve a firmar si estaba
+ * sincronizado con la anterior, de modo que un binario desfasado nunca pasa por válido.
+ * Si el archivo no existe o tiene otro formato (por ejemplo, el pickle del importador) se reconstruye
+ * a partir de los personajes en memoria.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+public class PersonajeBinarioManager {
+
+    /** Logger para la clase. */
+    private static final Logger logger = LoggerFactory.getLogger(PersonajeBinarioManager.class);
+
+    /** Nombre del archivo binario. */
+    private static final String NOMBRE_ARCHIVO = "todosPersonajes.bin";
+
+    /** Binario abierto (se conserva para no rehacer la tabla de slugs en cada cambio). */
+    private static BinarioIndexado abierto;
+
+    /**
+     * Lee todos los personajes del binario si está sincronizado con el CSV y el diario.
+     * Solo se decodifican las columnas que la tabla guarda en memoria; el resto se lee después
+     * registro a registro desde un canal de solo lectura que queda como fuente de la tabla.
+     *
+     * @param tabla tabla donde se guardan los personajes
+     * @param firma estado actual del CSV y del diario
+     * @return vistas de los personajes, o {@code null} si hay que leer el CSV
+     * @author Nizam
+     */
+    static synchronized List<Map<String, String>> leerSiVigente(TablaPersonajes tabla, BinarioIndexado.Firma firma) {
+        if (!BinarioIndexado.esIndexado(obtenerRutaBinario())) {
+            return null;
+        }
+        try {
+            BinarioIndexado bin = obtenerAbierto();
+            if (!firma.equals(bin.firma())) {
+                logger.info("El binario no está sincronizado con el CSV; se leerá el CSV.");
+                return null;
+            }
+            List<Map<String, String>> personajes = new ArrayList<>(bin.numeroRegistros());
+            if (tabla.esCompleta()) {
+                bin.leerTodos(null, (valores, posicion) -> personajes.add(tabla.anadir(valores)));
+            } else {
+                FileChannel lectura = FileChannel.open(obtenerRutaBinario(), StandardOpenOption.READ);
+                try {
+                    bin.leerTodos(tabla.columnasCargadas(), (valores, posicion) -> personajes.add(tabla.anadirParcial(valores, posicion)));
+                } catch (IOException | RuntimeException e) {
+                    lectura.close();
+                    throw e;
+                }
+                tabla.asignarFuente(new BinarioIndexado.FuenteRegistros(lectura, PersonajeCSVManager.CLAVES_PERSONAJE.length));
+            }
+            tabla.ajustar();
+            logger.info("Carga completada desde el binario: {} personajes leídos.", personajes.size());
+            return personajes;
+        } catch (IOException e) {
+            logger.warn("No se pudo leer el binario: {}", e.getMessage());
+            cerrar();
+            return null;
+        }
+    }
+
+    /**
+     * Carga los personajes sin copiarlos al heap: proyecta el binario con {@link AlmacenFueraDelHeap}
+     * y la tabla solo guarda la posición de cada registro. Requiere que el binario esté sincronizado.
+     *
+     * @param tabla tabla sin columnas en memoria donde se registran las filas
+     * @param firma estado actual del CSV y del diario
+     * @return vistas de los personajes, o {@code null} si el binario no está sincronizado
+     * @author Nizam
+     */
+    static synchronized List<Map<String, String>> leerFueraDelHeap(TablaPersonajes tabla, BinarioIndexado.Firma firma) {
+        if (!BinarioIndexado.esIndexado(obtenerRutaBinario())) {
+            return null;
+        }
+        try {
+            if (!firma.equals(obtenerAbierto().firma())) {
+                logger.info("El binario no está sincronizado con el CSV; no se puede usar el almacén fuera del heap.");
+                return null;
+            }
+            AlmacenFueraDelHeap almacen = AlmacenFueraDelHeap.abrir(obtenerRutaBinario(), PersonajeCSVManager.CLAVES_PERSONAJE.length);
+            List<Map<String, String>> personajes = new ArrayList<>();
+            String[] sinValores = new String[0];
+            almacen.recorrer(posicion -> personajes.add(tabla.anadirParcial(sinValores, posicion)));
+            tabla.ajustar();
+            tabla.asignarFuente(almacen);
+            logger.info("Carga completada fuera del heap: {} personajes proyectados desde el binario.", personajes.size());
+            return personajes;
+        } catch (IOException e) {
+            logger.warn("No se pudo proyectar el binario: {}", e.getMessage());
+            cerrar();
+            return null;
+        }
+    }
+
+    /**
+     * Añade un personaje al binario como parte de una {@link TransaccionArchivos}.
+     * Mientras la transacción no se confirma el binario queda sin firmar, para que un cierre inesperado
+     * a mitad del cambio nunca lo dé por válido; al confirmar se firma con el estado nuevo y al deshacer
+     * se borra el registro y se recupera la firma anterior.
+     *
+     * @param valores    columnas del nuevo personaje
+     * @param antes      firma anterior al cambio
+     * @param anteriores lista completa antes del alta (para deshacer una reconstrucción)
+     * @param personajes lista completa resultante (por si hay que reconstruir el binario)
+     * @return alta preparada
+     * @throws IOException si no se pudo escribir; el binario queda como estaba
+     * @author Nizam
+     */
+    static synchronized TransaccionArchivos.Preparada prepararAlta(String[] valores, BinarioIndexado.Firma antes,
+                                                                   List<Map<String, String>> anteriores,
+                                                                   List<Map<String, String>> personajes) throws IOException {
+        BinarioIndexado bin;
+        try {
+            bin = obtenerAbierto();
+        } catch (IOException e) {
+            logger.info("Binario ausente o en otro formato ({}); se reconstruye.", e.getMessage());
+            if (!reconstruir(personajes, BinarioIndexado.Firma.NINGUNA)) {
+                throw new IOException("No se pudo reconstruir el binario");
+            }
+            return new TransaccionArchivos.Preparada() {
+                @Override
+                public void deshacer() {
+                    reconstruir(anteriores, antes);
+                }
+
+                @Override
+                public void confirmar() {
+                    refirmar(List.of(BinarioIndexado.Firma.NINGUNA), PersonajeCSVManager.firmaActual());
+                }
+            };
+        }
+
+        boolean sincronizado = antes.equals(bin.firma());
+        int numero;
+        try {
+            if (sincronizado) bin.firmar(BinarioIndexado.Firma.NINGUNA);
+            numero = bin.anadir(valores);
+        } catch (IOException e) {
+            // La cabecera no llegó a contar el registro: el contenido sigue siendo el anterior
+            if (sincronizado) firmarAbierto(antes);
+            cerrar();
+            throw e;
+        }
+        return new TransaccionArchivos.Preparada() {
+            @Override
+            public void deshacer() throws IOException {
+                synchronized (PersonajeBinarioManager.class) {
+                    BinarioIndexado abiertoAhora = obtenerAbierto();
+                    abiertoAhora.eliminar(numero);
+                    if (sincronizado) abiertoAhora.firmar(antes);
+                }
+            }
+
+            @Override
+            public void confirmar() {
+                if (sincronizado) firmarAbierto(PersonajeCSVManager.firmaActual());
+            }
+        };
+    }
+
+    /**
+     * Refleja la modificación de un personaje: se borra el registro anterior y se añade el nuevo.
+     *
+     * @param claveAnterior slug normalizado del registro sustituido
+     * @param valores       columnas del personaje modificado
+     * @param antes         firma anterior al cambio
+     * @param despues       firma posterior al cambio
+     * @param personajes    lista completa resultante (por si hay que reconstruir el binario)
+     * @return true si el cambio se aplicó, false si hubo un error
+     * @author Nizam
+     */
+    static synchronized boolean registrarCambio(String claveAnterior, String[] valores, BinarioIndexado.Firma antes,
+                                                BinarioIndexado.Firma despues, List<Map<String, String>> personajes) {
+        return registrar(antes, despues, personajes, bin -> {
+            int numero = bin.buscar(claveAnterior);
+            if (numero >= 0) bin.eliminar(numero);
+            bin.anadir(valores);
+        });
+    }
+
+    /**
+     * Refleja la baja de varios personajes marcando sus registros como borrados.
+     *
+     * @param slugs      slugs normalizados (minúsculas, sin espacios) a eliminar
+     * @param antes      firma anterior al cambio
+     * @param despues    firma posterior al cambio
+     * @param personajes lista completa resultante (por si hay que reconstruir el binario)
+     * @return true si el cambio se aplicó, false si hubo un error
+     * @author Nizam
+     */
+    static synchronized boolean registrarBajas(Set<String> slugs, BinarioIndexado.Firma antes, BinarioIndexado.Firma despues,
+                                               List<Map<String, String>> personajes) {
+        return registrar(antes, despues, personajes, bin -> {
+            for (String slug : slugs) {
+                int numero = bin.buscar(slug);
+                if (numero >= 0) bin.eliminar(numero);
+            }
+        });
+    }
+
+    /**
+     * Reescribe el binario completo a partir de los personajes en memoria.
+     *
+     * @param personajes lista completa de personajes
+     * @param firma      estado del CSV y del diario que refleja la lista
+     * @return true si se escribió, false en caso contrario
+     * @author Nizam
+     */
+    static synchronized boolean reconstruir(List<Map<String, String>> personajes, BinarioIndexado.Firma firma) {
+        cerrar();
+        List<String[]> registros = new ArrayList<>(personajes.size());
+        for (Map<String, String> p : personajes) {
+            registros.add(PersonajeCSVManager.aValores(p));
+        }
+        try {
+            BinarioIndexado.escribir(obtenerRutaBinario(), registros, PersonajeCSVManager.CLAVES_PERSONAJE.length, firma);
+            logger.info("Binario reconstruido con {} personajes.", registros.size());
+            return true;
+        } catch (IOException e) {
+            logger.error("Error al reconstruir el binario", e);
+            return false;
+        }
+    }
+
+    /**
+     * Vuelve a firmar el binario si estaba sincronizado con alguno de los estados esperados.
+     * Se usa cuando cambian los archivos de texto pero no su contenido (compactación del diario).
+     *
+     * @param esperadas firmas con las que el binario se considera sincronizado
+     * @param nueva     firma del nuevo estado
+     * @author Nizam
+     */
+    static synchronized void refirmar(Collection<BinarioIndexado.Firma> esperadas, BinarioIndexado.Firma nueva) {
+        if (!BinarioIndexado.esIndexado(obtenerRutaBinario())) return;
+        try {
+            BinarioIndexado bin = obtenerAbierto();
+            if (esperadas.contains(bin.firma())) {
+                bin.firmar(nueva);
+            }
+        } catch (IOException e) {
+            logger.warn("No se pudo firmar el binario: {}", e.getMessage());
+            cerrar();
+        }
+    }
+
+    /**
+     * Firma el binario abierto sin comprobar su firma actual.
+     *
+     * @param firma nueva firma
+     * @author Nizam
+     */
+    private static synchronized void firmarAbierto(BinarioIndexado.Firma firma) {
+        try {
+            obtenerAbierto().firmar(firma);
+        } catch (IOException e) {
+            logger.warn("No se pudo firmar el binario: {}", e.getMessage());
+            cerrar();
+        }
+    }
+
+    /**
+     * Cierra el binario abierto (por ejemplo, porque otro proceso lo va a sustituir).
+     *
+     * @author Nizam
+     */
+    static synchronized void cerrar() {
+        if (abierto == null) return;
+        try {
+            abierto.close();
+        } catch (IOException e) {
+            logger.warn("Error al cerrar el binario: {}", e.getMessage());
+        }
+        abierto = null;
+    }
+
+    /**
+     * Cambio sobre un binario abierto.
+     */
+    @FunctionalInterface
+    private interface Operacion {
+        void aplicar(BinarioIndexado bin) throws IOException;
+    }
+
+    /**
+     * Aplica un cambio al binario y lo vuelve a firmar si estaba sincronizado.
+     * Si el binario no existe o no está en formato indexado se reconstruye desde la lista.
+     *
+     * @param antes      firma anterior al cambio
+     * @param despues    firma posterior al cambio
+     * @param personajes lista completa resultante
+     * @param operacion  cambio a aplicar
+     * @return true si el cambio se aplicó, false si hubo un error
+     * @author Nizam
+     */
+    private static boolean registrar(BinarioIndexado.Firma antes, BinarioIndexado.Firma despues,
+                                     List<Map<String, String>> personajes, Operacion operacion) {
+        BinarioIndexado bin;
+        try {
+            bin = obtenerAbierto();
+        } catch (IOException e) {
+            logger.info("Binario ausente o en otro formato ({}); se reconstruye.", e.getMessage());
+            return reconstruir(personajes, despues);
+        }
+        try {
+            boolean sincronizado = antes.equals(bin.firma());
+            operacion.aplicar(bin);
+            if (sincronizado) {
+                bin.firmar(despues);
+            } else {
+                logger.debug("Binario desfasado: se aplica el cambio pero no se firma.");
+            }
+            return true;
+        } catch (IOException e) {
+            logger.error("Error al actualizar el binario", e);
+            cerrar();
+            return false;
+        }
+    }
+
+    /**
+     * Devuelve el binario abierto, abriéndolo si hace falta.
+     *
+     * @return binario abierto
+     * @throws IOException si no se puede abrir
+     * @author Nizam
+     */
+    private static BinarioIndexado obtenerAbierto() throws IOException {
+        if (abierto == null) {
+            BinarioIndexado bin = BinarioIndexado.abrir(obtenerRutaBinario());
+            if (bin.numeroColumnas() != PersonajeCSVManager.CLAVES_PERSONAJE.length) {
+                bin.close();
+                throw new IOException("El binario tiene " + bin.numeroColumnas() + " columnas en lugar de "
+                        + PersonajeCSVManager.CLAVES_PERSONAJE.length);
+            }
+            abierto = bin;
+        }
+        return abierto;
+    }
+
+    /**
+     * Obtiene la ruta del binario, junto al CSV.
+     *
+     * @return ruta completa del binario
+     * @author Nizam
+     */
+    static Path obtenerRutaBinario() {
+        return Paths.get(PersonajeCSVManager.obtenerRutaCompletaCSV()).resolveSibling(NOMBRE_ARCHIVO);
+    }
+}
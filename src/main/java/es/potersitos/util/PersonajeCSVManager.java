@@ -1,17 +1,36 @@
 package es.potersitos.util;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Gestor de personajes desde un CSV.
  * Proporciona lectura, eliminación y actualización de registros de personajes.
+ * Los cambios se añaden a un {@link DiarioCambios} y el CSV se compacta en segundo plano
+ * cuando el diario crece, en lugar de reescribirlo en cada modificación.
  *
  * @author Nizam
  * @version 1.0
@@ -28,7 +47,7 @@ public class PersonajeCSVManager {
     private static final String NOMBRE_ARCHIVO = "todosPersonajes.csv";
 
     /** Claves/columnas esperadas en el CSV. */
-    private static final String[] CLAVES_PERSONAJE = {
+    static final String[] CLAVES_PERSONAJE = {
             "id",
             "type",
             "slug",
@@ -56,83 +75,649 @@ public class PersonajeCSVManager {
             "titles",
             "wands",
             "weight",
-            "wiki"
+            "wiki",
+            "version"
     };
 
+    /** Columna con la versión de cada personaje, que aumenta con cada modificación. */
+    static final String CLAVE_VERSION = "version";
+
+    /** Posición de {@link #CLAVE_VERSION} en {@link #CLAVES_PERSONAJE}. */
+    private static final int POS_VERSION = CLAVES_PERSONAJE.length - 1;
+
+    /**
+     * Resultado de {@link #actualizarPersonaje(Map)}.
+     */
+    public enum ResultadoActualizacion {
+        /** El personaje se actualizó. */
+        ACTUALIZADO,
+        /** El personaje no existe (o lo ha eliminado otro proceso). */
+        NO_ENCONTRADO,
+        /** El personaje se modificó después de leerlo; no se ha sobrescrito. */
+        CONFLICTO,
+        /** El nuevo slug ya es de otro personaje; no se ha guardado. */
+        SLUG_DUPLICADO,
+        /** No se pudo escribir el cambio. */
+        ERROR
+    }
+
+    /**
+     * Resultado de {@link #agregarPersonaje(Map)}.
+     */
+    public enum ResultadoAlta {
+        /** El personaje se guardó en todos los formatos. */
+        GUARDADO,
+        /** Ya existe un personaje con el mismo slug o id (por ejemplo, guardado desde otra ventana o proceso). */
+        CONFLICTO,
+        /** No se pudo escribir; no se ha guardado en ningún formato. */
+        ERROR
+    }
+
+    /**
+     * Columnas que se cargan en memoria al arrancar: las que usan el listado, los filtros y los índices.
+     * El resto se lee de disco la primera vez que se consulta un personaje (por ejemplo, al abrir su ficha).
+     */
+    static final Set<String> COLUMNAS_LISTADO = Set.of(
+            "id", "slug", "name", "house", "image", "nationality", "species", "gender");
+
+    /** Tamaño del buffer con el que se leen registros sueltos del CSV. */
+    private static final int TAM_LECTURA_REGISTRO = 16 * 1024;
+
+    /** Tamaño mínimo de cada trozo del CSV en la carga en paralelo. */
+    private static final long TAM_MIN_TROZO = 4L * 1024 * 1024;
+
+    /** Bytes que un trozo especulativo puede leer más allá de su límite antes de darse por no válido. */
+    private static final long MAX_DESBORDE_TROZO = 1024 * 1024;
+
+    /** Registros del diario a partir de los cuales siempre se compacta. */
+    private static final int MAX_ENTRADAS_DIARIO = 1000;
+
+    /** Registros mínimos del diario para compactar por tamaño. */
+    private static final int MIN_ENTRADAS_DIARIO = 20;
+
+    /** Proporción del tamaño del CSV a partir de la cual el diario se compacta. */
+    private static final double PROPORCION_DIARIO = 0.5;
+
+    /** Segundos que se esperan a los guardados pendientes al cerrar. */
+    private static final long ESPERA_GUARDADOS_SEGUNDOS = 10;
+
+    /** Hilo único que compacta el diario sobre el CSV. */
+    private static final ExecutorService compactador = Executors.newSingleThreadExecutor(r -> {
+        Thread hilo = new Thread(r, "compactador-csv");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
+    /** Hilo único que ejecuta los guardados pedidos en segundo plano. */
+    private static final ExecutorService guardados = Executors.newSingleThreadExecutor(r -> {
+        Thread hilo = new Thread(r, "guardado-personajes");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
+    /** Evita encolar varias compactaciones a la vez. */
+    private static final AtomicBoolean compactacionPendiente = new AtomicBoolean();
+
     /**
-     * Lee todos los personajes desde el CSV.
+     * Lee todos los personajes desde el repositorio en memoria.
+     * El CSV solo se vuelve a leer si ha cambiado fuera de la aplicación.
      *
-     * @return Lista de mapas, donde cada mapa representa un personaje con claves de CLAVES_PERSONAJE.
+     * @return Lista inmutable de mapas, donde cada mapa representa un personaje con claves de CLAVES_PERSONAJE.
      * @author Nizam
      */
     public static List<Map<String, String>> leerTodosLosPersonajes() {
-        String rutaCompleta = obtenerRutaCompletaCSV();
-        List<Map<String, String>> personajes = leerPersonajesCSV(rutaCompleta);
+        List<Map<String, String>> personajes = RepositorioPersonajes.getInstancia().obtenerTodos();
         return personajes.isEmpty() ? Collections.emptyList() : personajes;
     }
 
     /**
-     * Lee todos los personajes desde el CSV omitiendo el encabezado.
+     * Busca un personaje por su slug mediante el índice hash (O(1)).
+     *
+     * @param slug Slug del personaje (no distingue mayúsculas).
+     * @return personaje encontrado o vacío.
+     * @author Nizam
+     */
+    public static Optional<Map<String, String>> findBySlug(String slug) {
+        return RepositorioPersonajes.getInstancia().findBySlug(slug);
+    }
+
+    /**
+     * Busca un personaje por su id mediante el índice hash (O(1)).
+     *
+     * @param id Id del personaje (no distingue mayúsculas).
+     * @return personaje encontrado o vacío.
+     * @author Nizam
+     */
+    public static Optional<Map<String, String>> findById(String id) {
+        return RepositorioPersonajes.getInstancia().findById(id);
+    }
+
+    /**
+     * Resuelve varios slugs a la vez con una búsqueda O(1) por cada uno.
+     *
+     * @param slugs Slugs a buscar (no distingue mayúsculas).
+     * @return personajes encontrados; los slugs inexistentes se omiten.
+     * @author Nizam
+     */
+    public static List<Map<String, String>> findAllBySlugs(Collection<String> slugs) {
+        return RepositorioPersonajes.getInstancia().findAllBySlugs(slugs);
+    }
+
+    /**
+     * Descarta los datos en memoria para que la próxima lectura vuelva al CSV
+     * (por ejemplo, tras una importación externa).
+     *
+     * @author Nizam
+     */
+    public static void invalidarCache() {
+        RepositorioPersonajes.getInstancia().invalidar();
+    }
+
+    /**
+     * Descarta los cambios pendientes del diario y los datos en memoria porque el CSV
+     * se ha sustituido por completo (por ejemplo, tras importar los datos de la API).
+     *
+     * @author Nizam
+     */
+    public static synchronized void descartarCambiosPendientes() {
+        CerrojoArchivos.conCerrojo(() -> {
+            obtenerDiario().descartarTodo();
+            PersonajeXMLManager.descartarPendientes();
+            PersonajeBinarioManager.cerrar();
+            invalidarCache();
+        });
+    }
+
+    /**
+     * Espera a los guardados en segundo plano y vuelca en el CSV y en el XML los cambios pendientes
+     * antes de cerrar la aplicación.
+     *
+     * @author Nizam
+     */
+    public static void cerrar() {
+        guardados.shutdown();
+        try {
+            if (!guardados.awaitTermination(ESPERA_GUARDADOS_SEGUNDOS, TimeUnit.SECONDS)) {
+                logger.warn("Quedan guardados en curso al cerrar la aplicación.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compactador.shutdown();
+        try {
+            if (!compactador.awaitTermination(ESPERA_GUARDADOS_SEGUNDOS, TimeUnit.SECONDS)) {
+                logger.warn("Queda una compactación en curso al cerrar la aplicación.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (obtenerDiario().getEntradas() > 0 || PersonajeXMLManager.pendiente()) {
+            compactar();
+        }
+        PersonajeBinarioManager.cerrar();
+    }
+
+    /**
+     * Lee todos los personajes desde el CSV. Las columnas se localizan por su nombre en el encabezado,
+     * de modo que el orden de las columnas y las columnas desconocidas no afectan a los datos.
+     * Solo se decodifican las columnas que la tabla guarda en memoria; para el resto se recuerda la
+     * posición de cada registro y el archivo queda abierto como fuente de la tabla.
      *
      * @param rutaCSV ruta completa del archivo CSV
+     * @param tabla   tabla donde se almacenan los personajes leídos
+     * @return lista de mapas de personajes
+     * @author Nizam
+     */
+    static List<Map<String, String>> leerPersonajesCSV(String rutaCSV, TablaPersonajes tabla) {
+        return leerPersonajesCSV(rutaCSV, tabla, ForkJoinPool.getCommonPoolParallelism(), TAM_MIN_TROZO, MAX_DESBORDE_TROZO);
+    }
+
+    /**
+     * Lee todos los personajes desde el CSV repartiendo el análisis entre varios hilos.
+     * Con un solo hilo, o si el CSV mide menos de dos trozos, se lee de principio a fin en el hilo actual.
+     * Los tamaños se reciben como parámetros para poder probar los límites de trozo con archivos pequeños.
+     *
+     * @param rutaCSV     ruta completa del archivo CSV
+     * @param tabla       tabla donde se almacenan los personajes leídos
+     * @param paralelismo número de hilos que pueden analizar trozos a la vez
+     * @param tamMinTrozo tamaño mínimo de cada trozo en bytes ({@link #TAM_MIN_TROZO} al cargar la aplicación)
+     * @param maxDesborde bytes que un trozo especulativo puede leer más allá de su límite ({@link #MAX_DESBORDE_TROZO})
      * @return lista de mapas de personajes
      * @author Nizam
      */
-    private static List<Map<String, String>> leerPersonajesCSV(String rutaCSV) {
+    static List<Map<String, String>> leerPersonajesCSV(String rutaCSV, TablaPersonajes tabla, int paralelismo,
+                                                       long tamMinTrozo, long maxDesborde) {
         List<Map<String, String>> personajes = new ArrayList<>();
-        File archivo = new File(rutaCSV);
+        Path archivo = Paths.get(rutaCSV);
 
-        if (!archivo.exists()) {
+        if (!Files.exists(archivo)) {
             logger.warn("Archivo CSV no encontrado en: {}", rutaCSV);
             return personajes;
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(archivo))) {
-            String linea;
-            boolean esEncabezado = true;
+        FileChannel canal = null;
+        try {
+            canal = FileChannel.open(archivo, StandardOpenOption.READ);
+            LectorCSV lector = new LectorCSV(new EntradaCanal(canal, 0));
+            String[] encabezado = lector.siguienteRegistro();
+            if (encabezado == null) {
+                logger.info("Carga completada: el CSV está vacío.");
+                return personajes;
+            }
+
+            int[] mapa = mapaColumnas(encabezado);
+            boolean[] seleccion = null;
+            if (!tabla.esCompleta()) {
+                boolean[] cargadas = tabla.columnasCargadas();
+                seleccion = new boolean[Math.max(encabezado.length, CLAVES_PERSONAJE.length)];
+                for (int i = 0; i < mapa.length; i++) {
+                    if (cargadas[i] && mapa[i] >= 0) seleccion[mapa[i]] = true;
+                }
+            }
 
-            while ((linea = reader.readLine()) != null) {
-                if (esEncabezado) {
-                    esEncabezado = false;
-                    continue;
+            long inicioDatos = lector.posicion();
+            if (paralelismo > 1 && canal.size() - inicioDatos >= 2 * tamMinTrozo) {
+                leerEnParalelo(canal, inicioDatos, mapa, seleccion, tabla, personajes, paralelismo, tamMinTrozo, maxDesborde);
+            } else {
+                String[] registro;
+                while ((registro = lector.siguienteRegistro(seleccion)) != null) {
+                    if (registro.length == 1 && (registro[0] == null || registro[0].isBlank())) {
+                        continue;
+                    }
+                    String[] valores = valoresSegunMapa(registro, mapa);
+                    personajes.add(seleccion == null ? tabla.anadir(valores) : tabla.anadirParcial(valores, lector.inicioRegistro()));
                 }
-                procesarLineaCSV(linea, personajes);
+            }
+            tabla.ajustar();
+            if (seleccion != null) {
+                tabla.asignarFuente(new FuenteCSV(canal, mapa));
+                canal = null;
             }
             logger.info("Carga completada: {} personajes leídos.", personajes.size());
         } catch (IOException e) {
             logger.error("Error leyendo el CSV: {}", e.getMessage());
+        } finally {
+            if (canal != null) {
+                try {
+                    canal.close();
+                } catch (IOException e) {
+                    logger.warn("Error al cerrar el CSV: {}", e.getMessage());
+                }
+            }
         }
 
         return personajes;
     }
 
     /**
-     * Procesa una línea del CSV y la añade a la lista de personajes.
+     * Analiza los datos del CSV por trozos en el {@link ForkJoinPool} común y añade los personajes en el
+     * orden del archivo.
+     * <p>
+     * Cada trozo empieza, de forma especulativa, en la primera línea que sigue a su límite en bytes, sin
+     * saber si ese salto de línea está dentro de un campo entrecomillado. Al unir los trozos se comprueba
+     * que el primer registro de cada uno es justo el que sigue al último del anterior. Si no lo es (el
+     * límite cayó dentro de un campo con saltos de línea), se analiza desde la posición correcta solo
+     * hasta dar con un registro que el trozo ya tenía, normalmente el siguiente: como el análisis solo
+     * depende de dónde empieza el registro, a partir de ahí los resultados son idénticos a los de la
+     * lectura secuencial. Solo hay unos pocos trozos en vuelo a la vez para no tener el CSV entero
+     * analizado en memoria antes de pasarlo a la tabla.
      *
-     * @param linea      Línea del CSV.
-     * @param personajes Lista donde se almacenarán los mapas de personajes.
+     * @param canal       CSV abierto
+     * @param inicioDatos posición del primer registro tras el encabezado
+     * @param mapa        posición en el CSV de cada columna
+     * @param seleccion   columnas del CSV que se decodifican ({@code null} = todas)
+     * @param tabla       tabla donde se almacenan los personajes
+     * @param personajes  lista donde se añaden las vistas
+     * @param paralelismo número de trozos que se analizan a la vez
+     * @param tamMinTrozo tamaño mínimo de cada trozo en bytes
+     * @param maxDesborde bytes que un trozo especulativo puede leer más allá de su límite
+     * @throws IOException si falla la lectura
      * @author Nizam
      */
-    private static void procesarLineaCSV(String linea, List<Map<String, String>> personajes) {
-        if (linea == null || linea.trim().isEmpty()) {
-            return;
+    private static void leerEnParalelo(FileChannel canal, long inicioDatos, int[] mapa, boolean[] seleccion,
+                                       TablaPersonajes tabla, List<Map<String, String>> personajes, int paralelismo,
+                                       long tamMinTrozo, long maxDesborde) throws IOException {
+        long tamano = canal.size();
+        long tamanoTrozo = Math.max(tamMinTrozo, (tamano - inicioDatos) / (paralelismo * 4L));
+        int totalTrozos = (int) ((tamano - inicioDatos + tamanoTrozo - 1) / tamanoTrozo);
+        long[] limites = new long[totalTrozos + 1];
+        for (int i = 0; i < totalTrozos; i++) limites[i] = inicioDatos + i * tamanoTrozo;
+        limites[totalTrozos] = tamano;
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        ArrayDeque<ForkJoinTask<Trozo>> enCurso = new ArrayDeque<>();
+        int siguiente = 0;
+        try {
+            while (siguiente < totalTrozos && enCurso.size() <= paralelismo) {
+                enCurso.add(pool.submit(analizador(canal, limites, siguiente++, maxDesborde, mapa, seleccion)));
+            }
+
+            long esperado = inicioDatos;
+            int resincronizados = 0;
+            for (int i = 0; i < totalTrozos; i++) {
+                Trozo trozo = enCurso.poll().join();
+                if (siguiente < totalTrozos) {
+                    enCurso.add(pool.submit(analizador(canal, limites, siguiente++, maxDesborde, mapa, seleccion)));
+                }
+                if (trozo.primero() != esperado) {
+                    trozo = analizarTrozo(canal, esperado, limites[i + 1], false, maxDesborde, trozo, mapa, seleccion);
+                    resincronizados++;
+                }
+                List<String[]> valores = trozo.valores();
+                for (int n = 0; n < valores.size(); n++) {
+                    personajes.add(seleccion == null ? tabla.anadir(valores.get(n)) : tabla.anadirParcial(valores.get(n), trozo.inicios()[n]));
+                }
+                esperado = trozo.siguiente();
+            }
+            logger.debug("CSV leído en {} trozos ({} resincronizados).", totalTrozos, resincronizados);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (ForkJoinTask<Trozo> tarea : enCurso) tarea.cancel(false);
         }
+    }
 
-        String[] datos = linea.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
+    /**
+     * Crea la tarea que analiza de forma especulativa uno de los trozos del CSV.
+     *
+     * @param canal     CSV abierto
+     * @param limites   límites en bytes de todos los trozos
+     * @param indice      trozo que se analiza
+     * @param maxDesborde bytes que el trozo puede leer más allá de su límite
+     * @param mapa        posición en el CSV de cada columna
+     * @param seleccion   columnas del CSV que se decodifican ({@code null} = todas)
+     * @return tarea que devuelve el trozo analizado
+     * @author Nizam
+     */
+    private static Callable<Trozo> analizador(FileChannel canal, long[] limites, int indice, long maxDesborde, int[] mapa,
+                                              boolean[] seleccion) {
+        return () -> {
+            try {
+                return analizarTrozo(canal, limites[indice], limites[indice + 1], indice > 0, maxDesborde, null, mapa, seleccion);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * Analiza los registros del CSV que empiezan entre dos posiciones.
+     * En modo especulativo se empieza en la primera línea a partir de {@code desde} y la lectura se corta
+     * si un registro se alarga más de {@code maxDesborde} bytes tras {@code hasta}, lo que indica
+     * que se empezó dentro de un campo entrecomillado; el trozo se marca entonces como no válido.
+     * Si se indica un trozo de referencia, la lectura se detiene en cuanto llega a uno de sus registros y
+     * el resto se toma de él.
+     *
+     * @param canal        CSV abierto
+     * @param desde        posición donde empieza el trozo
+     * @param hasta        posición donde empieza el trozo siguiente
+     * @param especulativo si {@code desde} puede no ser el comienzo de un registro
+     * @param maxDesborde  bytes que un trozo especulativo puede leer más allá de {@code hasta}
+     * @param referencia   trozo ya analizado desde otra posición con el que sincronizarse, o {@code null}
+     * @param mapa         posición en el CSV de cada columna
+     * @param seleccion    columnas del CSV que se decodifican ({@code null} = todas)
+     * @return trozo analizado
+     * @throws IOException si falla la lectura
+     * @author Nizam
+     */
+    private static Trozo analizarTrozo(FileChannel canal, long desde, long hasta, boolean especulativo, long maxDesborde,
+                                       Trozo referencia, int[] mapa, boolean[] seleccion) throws IOException {
+        long tamano = canal.size();
+        long arranque = especulativo ? inicioDeLinea(canal, desde) : desde;
+        long tope = especulativo ? Math.min(tamano, hasta + maxDesborde) : tamano;
+        LectorCSV lector = new LectorCSV(new EntradaCanal(canal, arranque, tope));
+
+        List<String[]> valores = new ArrayList<>();
+        long[] inicios = new long[1024];
+        long primero = -1;
+        String[] registro;
+        while ((registro = lector.siguienteRegistro(seleccion)) != null) {
+            long inicio = arranque + lector.inicioRegistro();
+            if (primero < 0) primero = inicio;
+            if (inicio >= hasta) return new Trozo(primero, inicio, valores, inicios);
+            if (referencia != null) {
+                int total = referencia.valores().size();
+                int k = Arrays.binarySearch(referencia.inicios(), 0, total, inicio);
+                if (k >= 0) {
+                    inicios = Arrays.copyOf(inicios, valores.size() + total - k);
+                    System.arraycopy(referencia.inicios(), k, inicios, valores.size(), total - k);
+                    valores.addAll(referencia.valores().subList(k, total));
+                    return new Trozo(primero, referencia.siguiente(), valores, inicios);
+                }
+            }
+            if (registro.length == 1 && (registro[0] == null || registro[0].isBlank())) {
+                continue;
+            }
+            if (valores.size() == inicios.length) inicios = Arrays.copyOf(inicios, inicios.length * 2);
+            inicios[valores.size()] = inicio;
+            valores.add(valoresSegunMapa(registro, mapa));
+        }
+        if (tope < tamano) {
+            return new Trozo(-1, -1, List.of(), inicios);
+        }
+        return new Trozo(primero < 0 ? tamano : primero, tamano, valores, inicios);
+    }
+
+    /**
+     * Busca el comienzo de la primera línea que empieza en la posición indicada o después.
+     *
+     * @param canal    CSV abierto
+     * @param posicion posición de partida
+     * @return posición que sigue al primer salto de línea desde {@code posicion - 1},
+     * o el tamaño del archivo si no hay más líneas
+     * @throws IOException si falla la lectura
+     * @author Nizam
+     */
+    private static long inicioDeLinea(FileChannel canal, long posicion) throws IOException {
+        if (posicion == 0) return 0;
+        ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+        long p = posicion - 1;
+        while (true) {
+            buffer.clear();
+            int leidos = canal.read(buffer, p);
+            if (leidos <= 0) return canal.size();
+            for (int i = 0; i < leidos; i++) {
+                if (buffer.get(i) == '\n') return p + i + 1;
+            }
+            p += leidos;
+        }
+    }
+
+    /**
+     * Resultado del análisis de un trozo del CSV.
+     *
+     * @param primero   posición del primer registro encontrado (-1 si el trozo no es válido)
+     * @param siguiente posición del primer registro que ya pertenece al trozo siguiente
+     * @param valores   columnas de cada personaje del trozo, en el orden de {@link #CLAVES_PERSONAJE}
+     * @param inicios   posición en el CSV de cada personaje del trozo
+     */
+    private record Trozo(long primero, long siguiente, List<String[]> valores, long[] inicios) {
+    }
 
-        Map<String, String> personaje = new HashMap<>();
+    /**
+     * Relaciona cada columna de {@link #CLAVES_PERSONAJE} con su posición en el encabezado del CSV.
+     * Si el encabezado no contiene ninguna columna conocida se asume el orden de {@link #CLAVES_PERSONAJE}.
+     *
+     * @param encabezado Campos del encabezado.
+     * @return posición en el CSV de cada columna, o -1 si el CSV no la tiene.
+     * @author Nizam
+     */
+    static int[] mapaColumnas(String[] encabezado) {
+        Map<String, Integer> posiciones = new HashMap<>(encabezado.length * 2);
+        for (int i = 0; i < encabezado.length; i++) {
+            if (encabezado[i] != null) posiciones.putIfAbsent(encabezado[i].trim().toLowerCase(Locale.ROOT), i);
+        }
 
-        int totalColumnas = Math.min(CLAVES_PERSONAJE.length, datos.length);
+        int[] mapa = new int[CLAVES_PERSONAJE.length];
+        List<String> ausentes = new ArrayList<>();
+        for (int i = 0; i < CLAVES_PERSONAJE.length; i++) {
+            Integer posicion = posiciones.get(CLAVES_PERSONAJE[i]);
+            mapa[i] = posicion == null ? -1 : posicion;
+            if (posicion == null) ausentes.add(CLAVES_PERSONAJE[i]);
+        }
 
-        for (int i = 0; i < totalColumnas; i++) {
-            String valor = datos[i].trim().replace("\"", "");
-            personaje.put(CLAVES_PERSONAJE[i], valor);
+        if (ausentes.size() == CLAVES_PERSONAJE.length) {
+            logger.warn("El encabezado del CSV no contiene columnas conocidas; se leen por posición.");
+            for (int i = 0; i < mapa.length; i++) mapa[i] = i;
+        } else if (!ausentes.isEmpty()) {
+            logger.info("Columnas que faltan en el CSV (se dejan vacías): {}", ausentes);
         }
+        return mapa;
+    }
 
-        personaje.putIfAbsent("name", "Sin Nombre");
-        personaje.putIfAbsent("house", "Sin Casa");
+    /**
+     * Ordena los campos de un registro del CSV según {@link #CLAVES_PERSONAJE}.
+     * Los campos sin decodificar se devuelven como {@code null} y las columnas que faltan con su valor por defecto.
+     *
+     * @param datos Campos del registro en el orden del CSV.
+     * @param mapa  Posición en el CSV de cada columna (ver {@link #mapaColumnas(String[])}).
+     * @return valores en el orden de {@link #CLAVES_PERSONAJE}.
+     * @author Nizam
+     */
+    private static String[] valoresSegunMapa(String[] datos, int[] mapa) {
+        String[] valores = new String[CLAVES_PERSONAJE.length];
+        for (int i = 0; i < valores.length; i++) {
+            int posicion = mapa[i];
+            if (posicion >= 0 && posicion < datos.length) {
+                valores[i] = datos[posicion] == null ? null : datos[posicion].trim();
+            } else {
+                valores[i] = valorPorDefecto(i);
+            }
+        }
+        return valores;
+    }
 
-        personajes.add(personaje);
+    /**
+     * Devuelve el valor de una columna que no aparece en el registro:
+     * "Sin Nombre" para el nombre, "Sin Casa" para la casa y vacío para el resto.
+     *
+     * @param columna Posición de la columna en {@link #CLAVES_PERSONAJE}.
+     * @return valor por defecto.
+     * @author Nizam
+     */
+    private static String valorPorDefecto(int columna) {
+        return switch (CLAVES_PERSONAJE[columna]) {
+            case "name" -> "Sin Nombre";
+            case "house" -> "Sin Casa";
+            default -> "";
+        };
+    }
+
+    /**
+     * Fuente de las columnas que no se cargaron: relee del CSV abierto el registro de una fila.
+     * Las lecturas consecutivas (por ejemplo, al compactar) continúan con el mismo lector.
+     */
+    private static final class FuenteCSV implements TablaPersonajes.Fuente {
+        /** CSV abierto durante la carga. */
+        private final FileChannel canal;
+        /** Posición en el CSV de cada columna. */
+        private final int[] mapa;
+        /** Tamaño del CSV al cargarlo. */
+        private final long tamano;
+        /** Lector de la última lectura y posición donde empezó. */
+        private LectorCSV lector;
+        private long base;
+
+        FuenteCSV(FileChannel canal, int[] mapa) throws IOException {
+            this.canal = canal;
+            this.mapa = mapa;
+            this.tamano = canal.size();
+        }
+
+        @Override
+        public synchronized String[] leer(long origen) throws IOException {
+            // Un CSV sustituido (compactación) sigue abierto tal como se cargó; uno modificado en el sitio ya no vale
+            if (canal.size() != tamano) return null;
+            if (lector == null || base + lector.posicion() != origen) {
+                lector = new LectorCSV(new EntradaCanal(canal, origen), TAM_LECTURA_REGISTRO);
+                base = origen;
+            }
+            String[] registro = lector.siguienteRegistro();
+            return registro == null ? null : valoresSegunMapa(registro, mapa);
+        }
+
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+
+    /**
+     * Flujo de entrada que lee un canal desde una posición con lecturas posicionales,
+     * sin mover la posición del canal ni cerrarlo.
+     */
+    private static final class EntradaCanal extends InputStream {
+        /** Canal leído. */
+        private final FileChannel canal;
+        /** Siguiente posición a leer. */
+        private long posicion;
+        /** Posición donde termina la entrada. */
+        private final long tope;
+
+        EntradaCanal(FileChannel canal, long posicion) {
+            this(canal, posicion, Long.MAX_VALUE);
+        }
+
+        EntradaCanal(FileChannel canal, long posicion, long tope) {
+            this.canal = canal;
+            this.posicion = posicion;
+            this.tope = tope;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) <= 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int desde, int longitud) throws IOException {
+            if (posicion >= tope) return -1;
+            longitud = (int) Math.min(longitud, tope - posicion);
+            int leidos = canal.read(ByteBuffer.wrap(b, desde, longitud), posicion);
+            if (leidos > 0) posicion += leidos;
+            return leidos;
+        }
+    }
+
+    /**
+     * Añade a la tabla un personaje a partir de sus columnas en el orden del CSV.
+     * Si el registro no llega al nombre o a la casa se usan "Sin Nombre" y "Sin Casa".
+     *
+     * @param tabla Tabla donde se guarda.
+     * @param datos Campos del registro.
+     * @param desde Posición de la primera columna dentro de {@code datos}.
+     * @return vista del personaje.
+     * @author Nizam
+     */
+    static Map<String, String> crearPersonaje(TablaPersonajes tabla, String[] datos, int desde) {
+        String[] valores = new String[CLAVES_PERSONAJE.length];
+
+        int totalColumnas = Math.min(CLAVES_PERSONAJE.length, datos.length - desde);
+
+        for (int i = 0; i < CLAVES_PERSONAJE.length; i++) {
+            valores[i] = i < totalColumnas ? datos[desde + i].trim() : valorPorDefecto(i);
+        }
+
+        return tabla.anadir(valores);
+    }
+
+    /**
+     * Obtiene las columnas de un personaje en el orden del CSV.
+     *
+     * @param p Mapa del personaje.
+     * @return valores de las columnas (vacíos si faltan).
+     * @author Nizam
+     */
+    static String[] aValores(Map<String, String> p) {
+        if (p instanceof FilaPersonaje fila) {
+            return fila.valores();
+        }
+        String[] valores = new String[CLAVES_PERSONAJE.length];
+        for (int i = 0; i < CLAVES_PERSONAJE.length; i++) {
+            valores[i] = p.getOrDefault(CLAVES_PERSONAJE[i], "");
+        }
+        return valores;
     }
 
     /**
@@ -146,64 +731,522 @@ public class PersonajeCSVManager {
         if (slug == null || slug.trim().isEmpty()) {
             return false;
         }
-        String rutaCSV = obtenerRutaCompletaCSV();
-        List<Map<String, String>> personajes = leerPersonajesCSV(rutaCSV);
-        boolean eliminado = personajes.removeIf(p -> slug.equalsIgnoreCase(p.getOrDefault("slug", "")));
-        return eliminado && reescribirCSV(personajes, rutaCSV);
+        return eliminarPersonajesPorSlugs(List.of(slug)).getOrDefault(slug, false);
+    }
+
+    /**
+     * Elimina varios personajes por su slug en una sola pasada: las bajas se añaden al diario con
+     * una única escritura, el binario se sincroniza también una sola vez y el XML queda pendiente de
+     * ponerse al día en la siguiente compactación.
+     *
+     * @param slugs Slugs de los personajes a eliminar (no distingue mayúsculas).
+     * @return resultado por slug, en el orden recibido: true si se eliminó, false si no existía o falló la escritura.
+     * @author Telmo
+     */
+    public static synchronized Map<String, Boolean> eliminarPersonajesPorSlugs(Collection<String> slugs) {
+        return CerrojoArchivos.conCerrojo(() -> {
+            RepositorioPersonajes.getInstancia().ponerseAlDia();
+            return eliminarConCerrojo(slugs);
+        });
+    }
+
+    /**
+     * Elimina varios personajes con el cerrojo entre procesos ya adquirido.
+     *
+     * @param slugs Slugs de los personajes a eliminar (no distingue mayúsculas).
+     * @return resultado por slug, en el orden recibido.
+     * @author Telmo
+     */
+    private static Map<String, Boolean> eliminarConCerrojo(Collection<String> slugs) {
+        Map<String, Boolean> resultados = new LinkedHashMap<>();
+        RepositorioPersonajes repositorio = RepositorioPersonajes.getInstancia();
+
+        Set<Map<String, String>> eliminados = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<String> clavesEliminadas = new HashSet<>();
+        for (String slug : slugs) {
+            Optional<Map<String, String>> encontrado = repositorio.findBySlug(slug);
+            resultados.put(slug, encontrado.isPresent());
+            encontrado.ifPresent(p -> {
+                eliminados.add(p);
+                clavesEliminadas.add(IndicePersonajes.clave(slug));
+            });
+        }
+        if (eliminados.isEmpty()) {
+            return resultados;
+        }
+
+        List<String[]> bajas = new ArrayList<>(clavesEliminadas.size());
+        for (String clave : clavesEliminadas) {
+            bajas.add(DiarioCambios.baja(clave));
+        }
+        BinarioIndexado.Firma antes = firmaActual();
+        if (!registrarEnDiario(bajas)) {
+            resultados.replaceAll((slug, ok) -> false);
+            return resultados;
+        }
+
+        List<Map<String, String>> personajes = new ArrayList<>(repositorio.obtenerTodos());
+        personajes.removeIf(eliminados::contains);
+        repositorio.publicarBajas(personajes, eliminados);
+        programarCompactacion();
+
+        if (!PersonajeXMLManager.marcarPendiente()) {
+            logger.warn("El XML no se pudo marcar como pendiente tras eliminar {} personajes.", eliminados.size());
+        }
+        if (!PersonajeBinarioManager.registrarBajas(clavesEliminadas, antes, firmaActual(), personajes)) {
+            logger.warn("El binario no se pudo sincronizar tras eliminar {} personajes.", eliminados.size());
+        }
+
+        logger.info("Eliminados {} personajes en una sola pasada.", eliminados.size());
+        return resultados;
     }
 
     /**
      * Actualiza un personaje con nuevos datos.
      * Intenta identificar al personaje primero por su "id" y luego por su "slug".
+     * <p>
+     * Si los datos traen la columna {@link #CLAVE_VERSION}, se comprueba que coincide con la versión
+     * guardada (incluidos los cambios de otros procesos); si no coincide, alguien modificó el personaje
+     * después de leerlo y el cambio no se escribe. Sin esa columna el cambio se escribe siempre.
      *
      * @param nuevosDatos Mapa con los datos actualizados del personaje.
-     * @return true si se actualizó correctamente, false en caso contrario.
+     * @return resultado de la actualización.
      * @author Telmo
      */
-    public static boolean actualizarPersonaje(Map<String, String> nuevosDatos) {
+    public static synchronized ResultadoActualizacion actualizarPersonaje(Map<String, String> nuevosDatos) {
         String id = nuevosDatos.get("id");
         String slug = nuevosDatos.get("slug");
 
         if ((id == null || id.isEmpty()) && (slug == null || slug.isEmpty())) {
+            return ResultadoActualizacion.NO_ENCONTRADO;
+        }
+
+        return CerrojoArchivos.conCerrojo(() -> {
+            RepositorioPersonajes repositorio = RepositorioPersonajes.getInstancia();
+            repositorio.ponerseAlDia();
+            Map<String, String> anterior = repositorio.findById(id).or(() -> repositorio.findBySlug(slug)).orElse(null);
+            if (anterior == null) {
+                return ResultadoActualizacion.NO_ENCONTRADO;
+            }
+
+            long version = version(anterior.get(CLAVE_VERSION));
+            String esperada = nuevosDatos.get(CLAVE_VERSION);
+            if (esperada != null && version(esperada) != version) {
+                logger.warn("Conflicto al actualizar {}: se editó la versión {} pero la guardada es la {}.",
+                        anterior.get("slug"), version(esperada), version);
+                return ResultadoActualizacion.CONFLICTO;
+            }
+            Map<String, String> mismoSlug = repositorio.findBySlug(slug).orElse(anterior);
+            if (mismoSlug != anterior) {
+                logger.warn("No se actualiza {}: el slug '{}' ya es de otro personaje.", anterior.get("slug"), slug);
+                return ResultadoActualizacion.SLUG_DUPLICADO;
+            }
+
+            String[] valores = aValores(nuevosDatos);
+            valores[POS_VERSION] = String.valueOf(version + 1);
+            String claveAnterior = IndicePersonajes.clave(anterior.get("slug"));
+            BinarioIndexado.Firma antes = firmaActual();
+            if (!registrarEnDiario(Collections.singletonList(DiarioCambios.guardar(claveAnterior, valores)))) {
+                return ResultadoActualizacion.ERROR;
+            }
+
+            Map<String, String> nuevo = repositorio.crearFila(valores);
+
+            List<Map<String, String>> personajes = new ArrayList<>(repositorio.obtenerTodos());
+            personajes.replaceAll(p -> p == anterior ? nuevo : p);
+            repositorio.publicarCambio(personajes, anterior, nuevo);
+            programarCompactacion();
+
+            if (!PersonajeXMLManager.marcarPendiente()) {
+                logger.warn("El XML no se pudo marcar como pendiente tras actualizar el personaje.");
+            }
+            if (!PersonajeBinarioManager.registrarCambio(claveAnterior, valores, antes, firmaActual(), personajes)) {
+                logger.warn("El binario no se pudo sincronizar tras actualizar el personaje.");
+            }
+            return ResultadoActualizacion.ACTUALIZADO;
+        });
+    }
+
+    /**
+     * Interpreta la versión de un personaje; los personajes sin versión (por ejemplo, importados) tienen la 0.
+     *
+     * @param texto valor de la columna {@link #CLAVE_VERSION}
+     * @return versión
+     * @author Nizam
+     */
+    static long version(String texto) {
+        if (texto == null || texto.isBlank()) return 0;
+        try {
+            return Long.parseLong(texto.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Actualiza un personaje en segundo plano, sin bloquear el hilo que lo pide (por ejemplo, el de JavaFX),
+     * en el mismo hilo y orden que los demás guardados.
+     *
+     * @param nuevosDatos Mapa con los datos actualizados del personaje.
+     * @return futuro que se completa con el resultado de la actualización.
+     * @author Telmo
+     */
+    public static CompletableFuture<ResultadoActualizacion> actualizarPersonajeEnSegundoPlano(Map<String, String> nuevosDatos) {
+        return CompletableFuture.supplyAsync(() -> actualizarPersonaje(nuevosDatos), guardados);
+    }
+
+    /**
+     * Añade un personaje en segundo plano, sin bloquear el hilo que lo pide (por ejemplo, el de JavaFX).
+     * Los guardados se hacen de uno en uno y en el orden en que se piden.
+     *
+     * @param datos Mapa con los datos del nuevo personaje.
+     * @return futuro que se completa con el resultado del guardado.
+     * @author Erlantz
+     */
+    public static CompletableFuture<ResultadoAlta> agregarPersonajeEnSegundoPlano(Map<String, String> datos) {
+        return CompletableFuture.supplyAsync(() -> agregarPersonaje(datos), guardados);
+    }
+
+    /**
+     * Añade un personaje al CSV (a través del diario), al XML y al binario como una sola transacción:
+     * los tres archivos se escriben en paralelo y, si alguno falla, se deshacen los demás.
+     * Solo si los tres se escribieron se publica el personaje en el repositorio en memoria.
+     * <p>
+     * La unicidad del slug y del id se comprueba con el cerrojo entre procesos tomado y los cambios de los
+     * demás ya incorporados, de modo que dos altas con el mismo slug (desde dos ventanas, dos procesos o
+     * dos envíos seguidos del formulario) no pueden guardarse las dos.
+     *
+     * @param datos Mapa con los datos del nuevo personaje.
+     * @return resultado del guardado.
+     * @author Erlantz
+     */
+    public static synchronized ResultadoAlta agregarPersonaje(Map<String, String> datos) {
+        return CerrojoArchivos.conCerrojo(() -> {
+            RepositorioPersonajes.getInstancia().ponerseAlDia();
+            return agregarConCerrojo(datos);
+        });
+    }
+
+    /**
+     * Añade un personaje con el cerrojo entre procesos ya adquirido.
+     *
+     * @param datos Mapa con los datos del nuevo personaje.
+     * @return resultado del guardado.
+     * @author Erlantz
+     */
+    private static ResultadoAlta agregarConCerrojo(Map<String, String> datos) {
+        RepositorioPersonajes repositorio = RepositorioPersonajes.getInstancia();
+        String slug = datos.getOrDefault("slug", "");
+        String id = datos.getOrDefault("id", "");
+        if (repositorio.findBySlug(slug).isPresent() || repositorio.findById(id).isPresent()) {
+            logger.warn("No se añade el personaje: ya existe uno con el slug '{}' o el id '{}'.", slug, id);
+            return ResultadoAlta.CONFLICTO;
+        }
+        List<Map<String, String>> anteriores = repositorio.obtenerTodos();
+
+        String[] valores = aValores(datos);
+        valores[POS_VERSION] = "1";
+        // La fila se crea antes de escribir porque XML y binario pueden necesitar la lista completa;
+        // si la transacción falla solo queda una fila sin publicar en la tabla
+        Map<String, String> nuevo = repositorio.crearFila(valores);
+        List<Map<String, String>> personajes = new ArrayList<>(anteriores.size() + 1);
+        personajes.addAll(anteriores);
+        personajes.add(nuevo);
+
+        BinarioIndexado.Firma antes = firmaActual();
+        Map<String, TransaccionArchivos.Escritura> escrituras = new LinkedHashMap<>();
+        escrituras.put("CSV", () -> prepararEnDiario(Collections.singletonList(DiarioCambios.guardar("", valores))));
+        escrituras.put("XML", () -> PersonajeXMLManager.prepararAlta(valores, anteriores, personajes));
+        escrituras.put("binario", () -> PersonajeBinarioManager.prepararAlta(valores, antes, anteriores, personajes));
+        List<TransaccionArchivos.Preparada> preparadas = TransaccionArchivos.preparar(escrituras);
+        if (preparadas == null) {
+            return ResultadoAlta.ERROR;
+        }
+
+        repositorio.publicarAlta(personajes, nuevo);
+        TransaccionArchivos.confirmar(preparadas);
+        programarCompactacion();
+        return ResultadoAlta.GUARDADO;
+    }
+
+    /**
+     * Obtiene el diario de cambios asociado al CSV.
+     *
+     * @return diario de cambios.
+     * @author Nizam
+     */
+    static DiarioCambios obtenerDiario() {
+        return Diario.INSTANCIA;
+    }
+
+    /**
+     * Contenedor del diario: se crea al primer uso sin bloquear la clase del gestor,
+     * ya que el repositorio lo consulta mientras carga.
+     */
+    private static final class Diario {
+        /** Diario de cambios del CSV. */
+        private static final DiarioCambios INSTANCIA = new DiarioCambios(Paths.get(obtenerRutaCompletaCSV()));
+    }
+
+    /**
+     * Obtiene el estado actual del CSV y del diario, con el que se firma el binario.
+     *
+     * @return firma del estado actual.
+     * @author Nizam
+     */
+    static BinarioIndexado.Firma firmaActual() {
+        long tamano = -1;
+        long modificacion = -1;
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(Paths.get(obtenerRutaCompletaCSV()), BasicFileAttributes.class);
+            tamano = attrs.size();
+            modificacion = attrs.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            // Sin CSV: la firma no coincidirá con ningún binario guardado
+        }
+        DiarioCambios d = obtenerDiario();
+        return new BinarioIndexado.Firma(tamano, modificacion, d.getTamanoBytes(), d.getTamanoApartado());
+    }
+
+    /**
+     * Encola la reconstrucción del binario con los personajes en memoria
+     * (se usa cuando el binario no estaba sincronizado al arrancar).
+     *
+     * @author Nizam
+     */
+    static void programarReconstruccionBinario() {
+        if (compactador.isShutdown()) return;
+        compactador.execute(() -> {
+            synchronized (PersonajeCSVManager.class) {
+                CerrojoArchivos.conCerrojo(() -> {
+                    RepositorioPersonajes.getInstancia().ponerseAlDia();
+                    PersonajeBinarioManager.reconstruir(RepositorioPersonajes.getInstancia().obtenerTodos(), firmaActual());
+                });
+            }
+        });
+    }
+
+    /**
+     * Encola la escritura de la caché de arranque con los personajes en memoria
+     * (se usa cuando la carga no vino de una caché vigente).
+     *
+     * @author Nizam
+     */
+    static void programarCacheArranque() {
+        if (compactador.isShutdown()) return;
+        compactador.execute(PersonajeCSVManager::guardarCacheArranque);
+    }
+
+    /**
+     * Personajes en memoria y firma de los archivos tomados juntos bajo los cerrojos.
+     *
+     * @param personajes lista de personajes
+     * @param firma      firma de los archivos que corresponde a la lista
+     */
+    private record Estado(List<Map<String, String>> personajes, BinarioIndexado.Firma firma) {
+    }
+
+    /**
+     * Escribe la caché de arranque. La lista y la firma se toman juntas bajo el cerrojo de la clase;
+     * la escritura se hace fuera, y si entretanto hay más cambios la firma ya no coincidirá y la caché se ignorará.
+     *
+     * @author Nizam
+     */
+    private static void guardarCacheArranque() {
+        if (RepositorioPersonajes.FUERA_DEL_HEAP) return;
+        Estado estado;
+        synchronized (PersonajeCSVManager.class) {
+            estado = CerrojoArchivos.conCerrojo(() -> {
+                RepositorioPersonajes.getInstancia().ponerseAlDia();
+                return new Estado(RepositorioPersonajes.getInstancia().obtenerTodos(), firmaActual());
+            });
+        }
+        if (estado.firma().tamanoCSV() >= 0) {
+            CacheArranque.guardar(estado.personajes(), estado.firma());
+        }
+    }
+
+    /**
+     * Añade registros al diario con una sola escritura.
+     *
+     * @param registros Registros a añadir.
+     * @return true si se escribieron, false en caso contrario.
+     * @author Nizam
+     */
+    private static boolean registrarEnDiario(List<String[]> registros) {
+        try {
+            obtenerDiario().registrar(registros);
+            return true;
+        } catch (IOException e) {
+            logger.error("Error al escribir en el diario del CSV: {}", e.getMessage(), e);
             return false;
         }
+    }
 
-        String rutaCSV = obtenerRutaCompletaCSV();
-        List<Map<String, String>> personajes = leerPersonajesCSV(rutaCSV);
+    /**
+     * Añade registros al diario como parte de una {@link TransaccionArchivos}.
+     * Deshacer el cambio recorta el diario al tamaño que tenía antes.
+     *
+     * @param registros Registros a añadir.
+     * @return cambio preparado.
+     * @throws IOException si falla la escritura; el diario queda como estaba.
+     * @author Nizam
+     */
+    private static TransaccionArchivos.Preparada prepararEnDiario(List<String[]> registros) throws IOException {
+        DiarioCambios diario = obtenerDiario();
+        long tamano = diario.getTamanoBytes();
+        try {
+            diario.registrar(registros);
+        } catch (IOException e) {
+            diario.recortar(tamano, 0);
+            throw e;
+        }
+        return () -> diario.recortar(tamano, registros.size());
+    }
+
+    /**
+     * Encola una compactación si el diario ha superado el límite de registros
+     * o pesa más que una parte del CSV.
+     *
+     * @author Nizam
+     */
+    private static void programarCompactacion() {
+        DiarioCambios d = obtenerDiario();
+        int entradas = d.getEntradas();
+        boolean superaLimite = entradas >= MAX_ENTRADAS_DIARIO;
+        if (!superaLimite && entradas >= MIN_ENTRADAS_DIARIO) {
+            long tamanoCSV = new File(obtenerRutaCompletaCSV()).length();
+            superaLimite = d.getTamanoBytes() >= tamanoCSV * PROPORCION_DIARIO;
+        }
+        if (superaLimite && !compactador.isShutdown() && compactacionPendiente.compareAndSet(false, true)) {
+            compactador.execute(() -> {
+                compactacionPendiente.set(false);
+                compactar();
+            });
+        }
+    }
 
-        for (int i = 0; i < personajes.size(); i++) {
-            Map<String, String> p = personajes.get(i);
-            if ((id != null && !id.isEmpty() && id.equalsIgnoreCase(p.get("id"))) ||
-                    (slug != null && !slug.isEmpty() && slug.equalsIgnoreCase(p.get("slug")))) {
-                personajes.set(i, nuevosDatos);
-                return reescribirCSV(personajes, rutaCSV);
+    /**
+     * Reescribe el CSV con la instantánea actual y descarta el diario que ya contiene, y pone al día el XML
+     * si tiene modificaciones o bajas pendientes.
+     * Los cambios que lleguen mientras tanto, de este o de otros procesos, van a un diario nuevo.
+     * Si otro proceso está compactando no se hace nada: su CSV incluirá también estos cambios.
+     *
+     * @author Nizam
+     */
+    private static void compactar() {
+        if (!CerrojoArchivos.intentarCompactar()) {
+            logger.info("Otro proceso está compactando el diario; se omite la compactación.");
+            return;
+        }
+        try {
+            if (obtenerDiario().getEntradas() > 0) {
+                compactarConCerrojo();
             }
+            sincronizarXML();
+        } finally {
+            CerrojoArchivos.liberarCompactacion();
         }
-        return false;
     }
 
+    /**
+     * Compacta el diario con el cerrojo de compactación ya adquirido.
+     *
+     * @author Nizam
+     */
+    private static void compactarConCerrojo() {
+        RepositorioPersonajes repositorio = RepositorioPersonajes.getInstancia();
+        Estado estado;
+        synchronized (PersonajeCSVManager.class) {
+            estado = CerrojoArchivos.conCerrojo(() -> {
+                repositorio.ponerseAlDia();
+                List<Map<String, String>> todos = repositorio.obtenerTodos();
+                BinarioIndexado.Firma antes = firmaActual();
+                try {
+                    obtenerDiario().apartar();
+                } catch (IOException e) {
+                    logger.error("No se pudo apartar el diario para compactarlo: {}", e.getMessage(), e);
+                    return null;
+                }
+                BinarioIndexado.Firma firma = firmaActual();
+                repositorio.recordarEscrituraPropia();
+                PersonajeBinarioManager.refirmar(List.of(antes), firma);
+                return new Estado(todos, firma);
+            });
+        }
+        if (estado == null) {
+            return;
+        }
+        List<Map<String, String>> personajes = estado.personajes();
+        BinarioIndexado.Firma apartado = estado.firma();
+
+        // El CSV se sustituye bajo el cerrojo de la clase para que ningún cambio quede entre el CSV
+        // nuevo y la firma del binario; el binario refleja el mismo contenido y solo cambia la firma.
+        // Los cambios que otros procesos hayan añadido al diario nuevo entretanto se incorporan después.
+        String rutaCSV = obtenerRutaCompletaCSV();
+        Runnable alSustituir = () -> {
+            CerrojoArchivos.conCerrojo(() -> {
+                BinarioIndexado.Firma sustituido = firmaActual();
+                BinarioIndexado.Firma sinCompactar = new BinarioIndexado.Firma(apartado.tamanoCSV(), apartado.modificacionCSV(),
+                        sustituido.tamanoDiario(), sustituido.tamanoApartado());
+                obtenerDiario().descartarApartado();
+                PersonajeBinarioManager.refirmar(List.of(sinCompactar), firmaActual());
+                repositorio.recordarEscrituraPropia();
+                repositorio.ponerseAlDia();
+            });
+        };
+        if (!repositorio.escrituraPropia(() -> reescribirCSV(personajes, rutaCSV, alSustituir))) {
+            return;
+        }
+
+        logger.info("Diario compactado: {} personajes escritos en el CSV.", personajes.size());
+        guardarCacheArranque();
+    }
+
+    /**
+     * Reconstruye el XML si tiene modificaciones o bajas pendientes. Como al compactar el CSV, la lista
+     * se toma bajo los cerrojos y el archivo se escribe fuera de ellos; debe llamarse con el cerrojo de compactación.
+     *
+     * @author Nizam
+     */
+    private static void sincronizarXML() {
+        List<Map<String, String>> personajes;
+        synchronized (PersonajeCSVManager.class) {
+            personajes = CerrojoArchivos.conCerrojo(() -> {
+                if (!PersonajeXMLManager.pendiente()) return null;
+                RepositorioPersonajes.getInstancia().ponerseAlDia();
+                return PersonajeXMLManager.empezarSincronizacion() ? RepositorioPersonajes.getInstancia().obtenerTodos() : null;
+            });
+        }
+        if (personajes != null && !PersonajeXMLManager.terminarSincronizacion(personajes)) {
+            logger.warn("El XML no se pudo poner al día; se reintentará en la próxima compactación.");
+        }
+    }
 
     /**
      * Reescribe el CSV a partir de la lista de personajes.
+     * Se escribe en un temporal con un único canal con búfer y se sustituye de forma atómica.
      *
-     * @param lista Lista de personajes (maps).
-     * @param ruta  Ruta completa del CSV.
+     * @param lista       Lista de personajes (maps).
+     * @param ruta        Ruta completa del CSV.
+     * @param alSustituir Acción que se ejecuta bajo el cerrojo de la clase al sustituir el CSV.
      * @return true si se escribió correctamente, false en caso contrario.
      * @author Nizam
      */
-    private static boolean reescribirCSV(List<Map<String, String>> lista, String ruta) {
-        try (FileWriter writer = new FileWriter(ruta)) {
-            writer.write(String.join(",", CLAVES_PERSONAJE) + "\n");
-            for (Map<String, String> p : lista) {
-                List<String> valores = new ArrayList<>();
-                for (String key : CLAVES_PERSONAJE) {
-                    String val = p.getOrDefault(key, "");
-                    if (val.contains(","))
-                        val = "\"" + val + "\"";
-                    valores.add(val);
+    private static boolean reescribirCSV(List<Map<String, String>> lista, String ruta, Runnable alSustituir) {
+        try {
+            EscrituraAtomica.escribir(Paths.get(ruta), salida -> {
+                Writer writer = new OutputStreamWriter(salida, StandardCharsets.UTF_8);
+                StringBuilder linea = new StringBuilder(512);
+                anadirLineaCSV(linea, CLAVES_PERSONAJE);
+                writer.append(linea);
+                for (Map<String, String> p : lista) {
+                    linea.setLength(0);
+                    anadirLineaCSV(linea, aValores(p));
+                    writer.append(linea);
                 }
-                writer.write(String.join(",", valores) + "\n");
-            }
+                writer.flush();
+            }, PersonajeCSVManager.class, alSustituir);
             return true;
         } catch (IOException e) {
             logger.error("Error al escribir en el CSV: {}", e.getMessage(), e);
@@ -211,13 +1254,58 @@ public class PersonajeCSVManager {
         }
     }
 
+    /**
+     * Construye una línea CSV (RFC 4180) terminada en salto de línea.
+     * Los campos con comas, comillas o saltos de línea se entrecomillan y sus comillas se duplican.
+     *
+     * @param valores Valores de las columnas en orden.
+     * @return línea CSV lista para escribir.
+     * @author Nizam
+     */
+    public static String formatearLineaCSV(String[] valores) {
+        StringBuilder sb = new StringBuilder(256);
+        anadirLineaCSV(sb, valores);
+        return sb.toString();
+    }
+
+    /**
+     * Añade una línea CSV (RFC 4180) al final de un {@link StringBuilder} reutilizable.
+     *
+     * @param sb      Destino de la línea.
+     * @param valores Valores de las columnas en orden.
+     * @author Nizam
+     */
+    private static void anadirLineaCSV(StringBuilder sb, String[] valores) {
+        for (int i = 0; i < valores.length; i++) {
+            if (i > 0) sb.append(',');
+            String val = valores[i] == null ? "" : valores[i];
+            boolean requiereComillas = false;
+            for (int j = 0; j < val.length() && !requiereComillas; j++) {
+                char c = val.charAt(j);
+                requiereComillas = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (requiereComillas) {
+                sb.append('"');
+                for (int j = 0; j < val.length(); j++) {
+                    char c = val.charAt(j);
+                    if (c == '"') sb.append('"');
+                    sb.append(c);
+                }
+                sb.append('"');
+            } else {
+                sb.append(val);
+            }
+        }
+        sb.append('\n');
+    }
+
     /**
      * Obtiene la ruta completa del CSV a partir del directorio del usuario.
      *
      * @return Ruta completa del CSV.
      * @author Erlantz
      */
-    private static String obtenerRutaCompletaCSV() {
+    static String obtenerRutaCompletaCSV() {
         String userHome = System.getProperty("user.home");
         return userHome + File.separator + NOMBRE_CARPETA + File.separator + NOMBRE_ARCHIVO;
     }
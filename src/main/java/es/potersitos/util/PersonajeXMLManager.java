@@ -0,0 +1,666 @@
+package es.potersitos.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Gestor del archivo XML de personajes (todosPersonajes.xml) basado en StAX.
+ * Mantiene el XML sincronizado con las altas, modificaciones y bajas hechas sobre el CSV sin
+ * construir nunca el árbol DOM completo:
+ * <ul>
+ *     <li>las altas sustituyen la etiqueta de cierre {@code </characters>} por el nuevo personaje
+ *     y la misma etiqueta, escribiendo solo el final del archivo;</li>
+ *     <li>las modificaciones y bajas no se escriben en el momento, porque cada una costaría una copia
+ *     completa del archivo: ya están en el diario del CSV, así que solo se anotan con una marca junto al
+ *     XML y este se reconstruye en segundo plano al compactar el diario, desde la instantánea en memoria.
+ *     La marca sobrevive a un cierre inesperado y la ven los demás procesos;</li>
+ *     <li>la lectura entrega los personajes de uno en uno.</li>
+ * </ul>
+ * Reconoce tanto el formato del importador (etiquetas con el nombre de la columna, como {@code <slug>})
+ * como el de la aplicación ({@code <field0>}, {@code <field1>}...). Si el XML no existe o está dañado
+ * se reconstruye a partir de los personajes en memoria.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+public class PersonajeXMLManager {
+
+    /** Logger para la clase. */
+    private static final Logger logger = LoggerFactory.getLogger(PersonajeXMLManager.class);
+
+    /** Nombre del archivo XML. */
+    private static final String NOMBRE_ARCHIVO = "todosPersonajes.xml";
+
+    /** Sufijo de la marca de modificaciones y bajas que el XML aún no refleja. */
+    private static final String SUFIJO_PENDIENTE = ".pendiente";
+
+    /** Sufijo de la marca de los cambios que se están llevando al XML. */
+    private static final String SUFIJO_SINCRONIZANDO = ".sincronizando";
+
+    /** Elemento raíz. */
+    private static final String RAIZ = "characters";
+
+    /** Elemento de cada personaje. */
+    private static final String PERSONAJE = "character";
+
+    /** Prefijo de los campos en el formato de la aplicación. */
+    private static final String PREFIJO_CAMPO = "field";
+
+    /** Cierre de la raíz que se sustituye al añadir un personaje. */
+    private static final String CIERRE_RAIZ = "</" + RAIZ + ">";
+
+    /** Raíz vacía, tal como la escribe un serializador DOM. */
+    private static final String RAIZ_VACIA = "<" + RAIZ + "/>";
+
+    /** Tamaño del búfer de lectura. */
+    private static final int TAMANO_BUFER = 1 << 16;
+
+    /** Bytes del final del archivo que se examinan para buscar el cierre de la raíz. */
+    private static final int BYTES_FINALES = 512;
+
+    /** Posición de cada columna a partir de su nombre. */
+    private static final Map<String, Integer> POSICIONES = new HashMap<>();
+
+    /** Posición del slug entre las columnas. */
+    private static final int POSICION_SLUG;
+
+    /** Fábrica de lectores StAX (sin DTD ni entidades externas). */
+    private static final XMLInputFactory FABRICA_ENTRADA = XMLInputFactory.newFactory();
+
+    /** Fábrica de escritores StAX. */
+    private static final XMLOutputFactory FABRICA_SALIDA = XMLOutputFactory.newFactory();
+
+    static {
+        for (int i = 0; i < PersonajeCSVManager.CLAVES_PERSONAJE.length; i++) {
+            POSICIONES.put(PersonajeCSVManager.CLAVES_PERSONAJE[i], i);
+        }
+        POSICION_SLUG = POSICIONES.get("slug");
+        FABRICA_ENTRADA.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FABRICA_ENTRADA.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Personaje tal como aparece en el XML: etiquetas de sus campos y sus textos, en orden.
+     *
+     * @param etiquetas nombres de los elementos hijos
+     * @param textos    texto de cada elemento hijo
+     */
+    private record Registro(List<String> etiquetas, List<String> textos) {
+
+        /**
+         * Crea el registro de un personaje con el estilo de etiquetas indicado.
+         *
+         * @param valores   columnas en el orden del CSV
+         * @param conNombre true para etiquetas con el nombre de la columna, false para {@code fieldN}
+         * @return registro listo para escribir
+         */
+        static Registro de(String[] valores, boolean conNombre) {
+            List<String> etiquetas = new ArrayList<>(valores.length);
+            List<String> textos = new ArrayList<>(valores.length);
+            for (int i = 0; i < valores.length; i++) {
+                etiquetas.add(conNombre ? PersonajeCSVManager.CLAVES_PERSONAJE[i] : PREFIJO_CAMPO + i);
+                textos.add(valores[i] == null ? "" : valores[i]);
+            }
+            return new Registro(etiquetas, textos);
+        }
+
+        /**
+         * Indica si el registro usa etiquetas con el nombre de la columna (formato del importador).
+         *
+         * @return true si tiene una etiqueta {@code <slug>}
+         */
+        boolean conNombre() {
+            return etiquetas.contains("slug");
+        }
+
+        /**
+         * Devuelve las columnas del registro en el orden del CSV.
+         *
+         * @return valores de las columnas (vacíos si faltan)
+         */
+        String[] valores() {
+            String[] valores = new String[PersonajeCSVManager.CLAVES_PERSONAJE.length];
+            Arrays.fill(valores, "");
+            for (int i = 0; i < etiquetas.size(); i++) {
+                int posicion = posicion(etiquetas.get(i));
+                if (posicion >= 0 && posicion < valores.length) {
+                    valores[posicion] = textos.get(i);
+                }
+            }
+            return valores;
+        }
+
+        /**
+         * Devuelve el slug normalizado del registro.
+         *
+         * @return clave del slug, o cadena vacía si no tiene
+         */
+        String clave() {
+            for (int i = 0; i < etiquetas.size(); i++) {
+                if (posicion(etiquetas.get(i)) == POSICION_SLUG) {
+                    return IndicePersonajes.clave(textos.get(i));
+                }
+            }
+            return "";
+        }
+    }
+
+    /**
+     * Final de un archivo XML guardado para poder deshacer un alta.
+     *
+     * @param posicion posición donde empieza el final
+     * @param bytes    contenido original desde esa posición hasta el final del archivo
+     */
+    private record Cola(long posicion, byte[] bytes) {
+    }
+
+    /**
+     * Lee el XML en streaming y entrega cada personaje con sus columnas en el orden del CSV.
+     *
+     * @param destino receptor de cada personaje
+     * @return número de personajes leídos (0 si el XML no existe)
+     * @throws IOException si el archivo no se puede leer o no es XML válido
+     * @author Nizam
+     */
+    public static int leerPersonajes(Consumer<String[]> destino) throws IOException {
+        Path xmlPath = obtenerRutaXML();
+        if (!Files.exists(xmlPath)) {
+            return 0;
+        }
+        int leidos = 0;
+        try (InputStream entrada = new BufferedInputStream(Files.newInputStream(xmlPath), TAMANO_BUFER)) {
+            XMLStreamReader lector = FABRICA_ENTRADA.createXMLStreamReader(entrada);
+            try {
+                Registro registro;
+                while ((registro = siguiente(lector)) != null) {
+                    destino.accept(registro.valores());
+                    leidos++;
+                }
+            } finally {
+                lector.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("XML no válido: " + e.getMessage(), e);
+        }
+        return leidos;
+    }
+
+    /**
+     * Añade un personaje al XML como parte de una {@link TransaccionArchivos}, escribiendo solo el final
+     * del archivo. Para deshacerlo se restaura el final original; si hubo que reescribir o reconstruir
+     * el XML, se vuelve a quitar el personaje o a reconstruir con la lista anterior.
+     *
+     * @param valores    columnas del nuevo personaje
+     * @param anteriores lista completa antes del alta (para deshacer una reconstrucción)
+     * @param personajes lista completa resultante (por si hay que reconstruir el XML)
+     * @return alta preparada
+     * @throws IOException si no se pudo escribir; el XML queda como estaba
+     * @author Nizam
+     */
+    static synchronized TransaccionArchivos.Preparada prepararAlta(String[] valores, List<Map<String, String>> anteriores,
+                                                                   List<Map<String, String>> personajes) throws IOException {
+        Path xmlPath = obtenerRutaXML();
+        if (!Files.exists(xmlPath)) {
+            if (!reconstruir(personajes)) throw new IOException("No se pudo crear el XML");
+            return () -> Files.deleteIfExists(xmlPath);
+        }
+        // Si se está reconstruyendo, el XML nuevo puede no incluir este personaje
+        if (Files.exists(marca(SUFIJO_SINCRONIZANDO)) && !marcarPendiente()) {
+            throw new IOException("No se pudo marcar el XML como pendiente");
+        }
+
+        try {
+            Cola cola = anadirAlFinal(xmlPath, Registro.de(valores, false));
+            if (cola != null) {
+                return () -> restaurarCola(xmlPath, cola);
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("No se pudo generar el personaje en XML: " + e.getMessage(), e);
+        }
+
+        String clave = IndicePersonajes.clave(valores[POSICION_SLUG]);
+        try {
+            reescribir(xmlPath, Set.of(), null, valores);
+            return () -> {
+                if (!reescribirOReconstruir(xmlPath, Set.of(clave), null, null, anteriores)) {
+                    throw new IOException("No se pudo quitar el personaje del XML");
+                }
+            };
+        } catch (IOException e) {
+            logger.warn("No se pudo reescribir el XML ({}); se reconstruye.", e.getMessage());
+            if (!reconstruir(personajes)) throw new IOException("No se pudo reconstruir el XML");
+            return () -> {
+                if (!reconstruir(anteriores)) throw new IOException("No se pudo reconstruir el XML");
+            };
+        }
+    }
+
+    /**
+     * Anota que el XML no refleja una modificación o una baja, que ya está en el diario del CSV.
+     * El XML se pondrá al día con {@link #terminarSincronizacion(List)}.
+     *
+     * @return true si quedó anotado, false si no se pudo crear la marca
+     * @author Nizam
+     */
+    static synchronized boolean marcarPendiente() {
+        try {
+            Files.createFile(marca(SUFIJO_PENDIENTE));
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return true;
+        } catch (IOException e) {
+            logger.error("No se pudo marcar el XML como pendiente", e);
+            return false;
+        }
+    }
+
+    /**
+     * Indica si hay modificaciones o bajas que el XML aún no refleja (también de una reconstrucción que
+     * no llegó a terminar).
+     *
+     * @return true si el XML está pendiente de reconstruir
+     * @author Nizam
+     */
+    static boolean pendiente() {
+        return Files.exists(marca(SUFIJO_PENDIENTE)) || Files.exists(marca(SUFIJO_SINCRONIZANDO));
+    }
+
+    /**
+     * Empieza a llevar al XML los cambios pendientes: la marca de pendiente pasa a ser la de reconstrucción
+     * en curso, y los cambios que se anoten a partir de ahora vuelven a quedar pendientes. Debe llamarse con
+     * {@link CerrojoArchivos} adquirido, a la vez que se toma la lista que se va a escribir.
+     *
+     * @return true si hay que reconstruir el XML
+     * @author Nizam
+     */
+    static synchronized boolean empezarSincronizacion() {
+        Path pendiente = marca(SUFIJO_PENDIENTE);
+        Path sincronizando = marca(SUFIJO_SINCRONIZANDO);
+        try {
+            if (Files.exists(pendiente)) {
+                Files.move(pendiente, sincronizando, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            logger.warn("No se pudo preparar la reconstrucción del XML: {}", e.getMessage());
+            return false;
+        }
+        return Files.exists(sincronizando);
+    }
+
+    /**
+     * Reconstruye el XML con la lista tomada junto a {@link #empezarSincronizacion()} y quita la marca.
+     * No toma el cerrojo de la clase, para no detener las altas mientras escribe; debe hacerse con el
+     * cerrojo de compactación para que dos reconstrucciones no se pisen.
+     *
+     * @param personajes lista completa de personajes
+     * @return true si el XML quedó al día con la lista
+     * @author Nizam
+     */
+    static boolean terminarSincronizacion(List<Map<String, String>> personajes) {
+        long inicio = System.nanoTime();
+        if (!escribirCompleto(personajes)) return false;
+        try {
+            Files.deleteIfExists(marca(SUFIJO_SINCRONIZANDO));
+        } catch (IOException e) {
+            logger.warn("No se pudo quitar la marca de reconstrucción del XML: {}", e.getMessage());
+        }
+        logger.info("XML puesto al día con {} personajes en {} ms.", personajes.size(), (System.nanoTime() - inicio) / 1_000_000);
+        return true;
+    }
+
+    /**
+     * Olvida los cambios pendientes porque el XML se ha sustituido por completo (por ejemplo, al importar).
+     *
+     * @author Nizam
+     */
+    static synchronized void descartarPendientes() {
+        try {
+            Files.deleteIfExists(marca(SUFIJO_PENDIENTE));
+            Files.deleteIfExists(marca(SUFIJO_SINCRONIZANDO));
+        } catch (IOException e) {
+            logger.warn("No se pudieron quitar las marcas del XML: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Escribe el XML completo a partir de los personajes en memoria.
+     *
+     * @param personajes lista completa de personajes
+     * @return true si se escribió, false en caso contrario
+     * @author Nizam
+     */
+    static synchronized boolean reconstruir(List<Map<String, String>> personajes) {
+        return escribirCompleto(personajes);
+    }
+
+    /**
+     * Escribe el XML completo en un temporal que sustituye al original de forma atómica.
+     *
+     * @param personajes lista completa de personajes
+     * @return true si se escribió, false en caso contrario
+     * @author Nizam
+     */
+    private static boolean escribirCompleto(List<Map<String, String>> personajes) {
+        try {
+            EscrituraAtomica.escribir(obtenerRutaXML(), salida -> {
+                XMLStreamWriter escritor = abrirDocumento(salida);
+                for (Map<String, String> p : personajes) {
+                    escribir(escritor, Registro.de(PersonajeCSVManager.aValores(p), false));
+                }
+                cerrarDocumento(escritor);
+            });
+            logger.info("XML reconstruido con {} personajes.", personajes.size());
+            return true;
+        } catch (IOException e) {
+            logger.error("Error al reconstruir el XML", e);
+            return false;
+        }
+    }
+
+    /**
+     * Devuelve la ruta de una marca junto al XML.
+     *
+     * @param sufijo sufijo de la marca
+     * @return ruta de la marca
+     */
+    private static Path marca(String sufijo) {
+        Path xmlPath = obtenerRutaXML();
+        return xmlPath.resolveSibling(xmlPath.getFileName() + sufijo);
+    }
+
+    /**
+     * Reescribe el XML en streaming y, si no es posible (XML dañado), lo reconstruye desde memoria.
+     *
+     * @param xmlPath       ruta del XML
+     * @param bajas         slugs normalizados a eliminar
+     * @param claveAnterior slug normalizado del registro a sustituir, o {@code null}
+     * @param valores       columnas del registro a sustituir o añadir, o {@code null}
+     * @param personajes    lista completa resultante
+     * @return true si el XML quedó sincronizado, false si hubo un error
+     * @author Nizam
+     */
+    private static boolean reescribirOReconstruir(Path xmlPath, Set<String> bajas, String claveAnterior, String[] valores,
+                                                   List<Map<String, String>> personajes) {
+        try {
+            int eliminados = reescribir(xmlPath, bajas, claveAnterior, valores);
+            if (eliminados > 0) {
+                logger.info("Eliminados {} personajes del XML.", eliminados);
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warn("No se pudo reescribir el XML ({}); se reconstruye.", e.getMessage());
+            return reconstruir(personajes);
+        }
+    }
+
+    /**
+     * Copia el XML elemento a elemento a un temporal aplicando bajas y una sustitución o alta,
+     * y sustituye el original de forma atómica.
+     *
+     * @param xmlPath       ruta del XML
+     * @param bajas         slugs normalizados a eliminar
+     * @param claveAnterior slug normalizado del registro a sustituir, o {@code null} para un alta
+     * @param valores       columnas del registro a sustituir o añadir, o {@code null} si solo hay bajas
+     * @return número de personajes eliminados
+     * @throws IOException si el XML no se puede leer, no es válido o no se puede escribir
+     * @author Nizam
+     */
+    private static int reescribir(Path xmlPath, Set<String> bajas, String claveAnterior, String[] valores) throws IOException {
+        int[] eliminados = {0};
+        EscrituraAtomica.escribir(xmlPath, salida -> {
+            boolean pendiente = valores != null;
+            try (InputStream entrada = new BufferedInputStream(Files.newInputStream(xmlPath), TAMANO_BUFER)) {
+                XMLStreamReader lector = FABRICA_ENTRADA.createXMLStreamReader(entrada);
+                XMLStreamWriter escritor = abrirDocumento(salida);
+                Registro registro;
+                while ((registro = siguiente(lector)) != null) {
+                    String clave = registro.clave();
+                    if (pendiente && claveAnterior != null && clave.equals(claveAnterior)) {
+                        escribir(escritor, Registro.de(valores, registro.conNombre()));
+                        pendiente = false;
+                    } else if (bajas.contains(clave)) {
+                        eliminados[0]++;
+                    } else {
+                        escribir(escritor, registro);
+                    }
+                }
+                if (pendiente) {
+                    escribir(escritor, Registro.de(valores, false));
+                }
+                cerrarDocumento(escritor);
+                lector.close();
+            }
+        });
+        return eliminados[0];
+    }
+
+    /**
+     * Añade un personaje sustituyendo el cierre de la raíz al final del archivo.
+     *
+     * @param xmlPath  ruta del XML
+     * @param registro personaje a añadir
+     * @return final original del archivo (para deshacer), o {@code null} si el final no es el esperado
+     * @throws IOException        si falla la escritura; el final original se restaura
+     * @throws XMLStreamException si falla la generación del fragmento
+     * @author Nizam
+     */
+    private static Cola anadirAlFinal(Path xmlPath, Registro registro) throws IOException, XMLStreamException {
+        Cola original;
+        byte[] nuevo;
+        try (FileChannel canal = FileChannel.open(xmlPath, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            int leer = (int) Math.min(tamano, BYTES_FINALES);
+            long desde = tamano - leer;
+            ByteBuffer finales = ByteBuffer.allocate(leer);
+            while (finales.hasRemaining()) {
+                if (canal.read(finales, desde + finales.position()) < 0) break;
+            }
+            // ISO-8859-1 conserva un carácter por byte, así que los índices son posiciones en el archivo
+            String cola = new String(finales.array(), 0, finales.position(), StandardCharsets.ISO_8859_1);
+
+            boolean raizVacia = false;
+            int indice = cola.lastIndexOf(CIERRE_RAIZ);
+            int finMarca = indice + CIERRE_RAIZ.length();
+            if (indice < 0) {
+                indice = cola.lastIndexOf(RAIZ_VACIA);
+                finMarca = indice + RAIZ_VACIA.length();
+                raizVacia = true;
+            }
+            if (indice < 0 || !cola.substring(finMarca).isBlank()) {
+                return null;
+            }
+            original = new Cola(desde + indice, Arrays.copyOfRange(finales.array(), indice, finales.position()));
+
+            ByteArrayOutputStream fragmento = new ByteArrayOutputStream(1024);
+            if (raizVacia) {
+                fragmento.writeBytes(("<" + RAIZ + ">").getBytes(StandardCharsets.UTF_8));
+            }
+            XMLStreamWriter escritor = FABRICA_SALIDA.createXMLStreamWriter(fragmento, StandardCharsets.UTF_8.name());
+            escribir(escritor, registro);
+            escritor.writeCharacters("\n");
+            escritor.flush();
+            escritor.close();
+            fragmento.writeBytes((CIERRE_RAIZ + "\n").getBytes(StandardCharsets.UTF_8));
+            nuevo = fragmento.toByteArray();
+        }
+
+        try {
+            escribirFinal(xmlPath, original.posicion(), nuevo);
+        } catch (IOException e) {
+            restaurarCola(xmlPath, original);
+            throw e;
+        }
+        return original;
+    }
+
+    /**
+     * Deja el archivo como estaba antes de {@link #anadirAlFinal(Path, Registro)}.
+     *
+     * @param xmlPath ruta del XML
+     * @param cola    final original del archivo
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    private static synchronized void restaurarCola(Path xmlPath, Cola cola) throws IOException {
+        escribirFinal(xmlPath, cola.posicion(), cola.bytes());
+    }
+
+    /**
+     * Sustituye el final del archivo a partir de una posición y lo fuerza a disco.
+     *
+     * @param xmlPath  ruta del XML
+     * @param posicion posición desde la que se escribe
+     * @param bytes    nuevo final del archivo
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    private static void escribirFinal(Path xmlPath, long posicion, byte[] bytes) throws IOException {
+        try (FileChannel canal = FileChannel.open(xmlPath, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                canal.write(buffer, posicion + buffer.position());
+            }
+            canal.truncate(posicion + bytes.length);
+            canal.force(false);
+        }
+    }
+
+    /**
+     * Avanza el lector hasta el siguiente {@code <character>} y lo lee completo.
+     *
+     * @param lector lector StAX
+     * @return personaje leído, o {@code null} al llegar al final del documento
+     * @throws XMLStreamException si el XML no es válido
+     * @author Nizam
+     */
+    private static Registro siguiente(XMLStreamReader lector) throws XMLStreamException {
+        while (lector.hasNext()) {
+            if (lector.next() == XMLStreamConstants.START_ELEMENT && PERSONAJE.equals(lector.getLocalName())) {
+                List<String> etiquetas = new ArrayList<>(PersonajeCSVManager.CLAVES_PERSONAJE.length);
+                List<String> textos = new ArrayList<>(PersonajeCSVManager.CLAVES_PERSONAJE.length);
+                while (lector.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    etiquetas.add(lector.getLocalName());
+                    textos.add(lector.getElementText());
+                }
+                return new Registro(etiquetas, textos);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Escribe un {@code <character>} completo en una línea propia.
+     *
+     * @param escritor escritor StAX
+     * @param registro personaje a escribir
+     * @throws XMLStreamException si falla la escritura
+     * @author Nizam
+     */
+    private static void escribir(XMLStreamWriter escritor, Registro registro) throws XMLStreamException {
+        escritor.writeCharacters("\n  ");
+        escritor.writeStartElement(PERSONAJE);
+        for (int i = 0; i < registro.etiquetas().size(); i++) {
+            String texto = registro.textos().get(i);
+            if (texto.isEmpty()) {
+                escritor.writeEmptyElement(registro.etiquetas().get(i));
+            } else {
+                escritor.writeStartElement(registro.etiquetas().get(i));
+                escritor.writeCharacters(texto);
+                escritor.writeEndElement();
+            }
+        }
+        escritor.writeEndElement();
+    }
+
+    /**
+     * Empieza un documento XML completo con su elemento raíz.
+     *
+     * @param salida flujo de salida
+     * @return escritor StAX posicionado dentro de la raíz
+     * @throws XMLStreamException si falla la escritura
+     * @author Nizam
+     */
+    private static XMLStreamWriter abrirDocumento(OutputStream salida) throws XMLStreamException {
+        XMLStreamWriter escritor = FABRICA_SALIDA.createXMLStreamWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8));
+        escritor.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+        escritor.writeCharacters("\n");
+        escritor.writeStartElement(RAIZ);
+        return escritor;
+    }
+
+    /**
+     * Cierra la raíz y el documento y vuelca el escritor.
+     *
+     * @param escritor escritor StAX
+     * @throws XMLStreamException si falla la escritura
+     * @author Nizam
+     */
+    private static void cerrarDocumento(XMLStreamWriter escritor) throws XMLStreamException {
+        escritor.writeCharacters("\n");
+        escritor.writeEndElement();
+        escritor.writeCharacters("\n");
+        escritor.writeEndDocument();
+        escritor.flush();
+    }
+
+    /**
+     * Devuelve la columna que corresponde a una etiqueta en cualquiera de los dos formatos.
+     *
+     * @param etiqueta nombre del elemento hijo
+     * @return posición de la columna, o -1 si no corresponde a ninguna
+     * @author Nizam
+     */
+    private static int posicion(String etiqueta) {
+        Integer posicion = POSICIONES.get(etiqueta);
+        if (posicion != null) {
+            return posicion;
+        }
+        if (etiqueta.startsWith(PREFIJO_CAMPO)) {
+            try {
+                return Integer.parseInt(etiqueta.substring(PREFIJO_CAMPO.length()));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Obtiene la ruta del XML, junto al CSV.
+     *
+     * @return ruta completa del XML
+     * @author Nizam
+     */
+    static Path obtenerRutaXML() {
+        return Paths.get(PersonajeCSVManager.obtenerRutaCompletaCSV()).resolveSibling(NOMBRE_ARCHIVO);
+    }
+}
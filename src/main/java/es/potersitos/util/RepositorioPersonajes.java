@@ -0,0 +1,847 @@
+package es.potersitos.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Repositorio compartido en memoria de los personajes del CSV.
+ * Carga el archivo una sola vez en una {@link TablaPersonajes} por columnas, sirve instantáneas inmutables y se invalida mediante un
+ * {@link WatchService} cuando el archivo se modifica desde fuera de la aplicación.
+ * Mantiene además los índices por slug e id ({@link IndicePersonajes}) sin reconstruirlos en cada cambio
+ * y, al cargar, reproduce sobre el CSV los cambios pendientes del {@link DiarioCambios}. Si el binario
+ * indexado está sincronizado se carga desde él sin analizar el CSV. En ambos casos solo se cargan las
+ * columnas del listado ({@link PersonajeCSVManager#COLUMNAS_LISTADO}); el resto se lee bajo demanda.
+ * Antes que ambos se prueba la {@link CacheArranque}, que restaura la tabla sin analizar nada, o bien,
+ * con {@link #FUERA_DEL_HEAP}, el {@link AlmacenFueraDelHeap}, que deja los datos en el binario proyectado.
+ * Cada escritura se publica a los suscriptores como {@link CambiosPersonajes}, para que las vistas no
+ * tengan que volver a leer la lista entera. Los filtros de la vista usan un {@link IndiceNombres}, unas
+ * {@link FacetasPersonajes} y un {@link IndiceTextos} que se construyen en segundo plano tras la carga y se
+ * mantienen con cada escritura.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+public final class RepositorioPersonajes {
+
+    /** Logger para la clase. */
+    private static final Logger logger = LoggerFactory.getLogger(RepositorioPersonajes.class);
+
+    /**
+     * Indica si los personajes se sirven desde el binario proyectado fuera del heap ({@link AlmacenFueraDelHeap})
+     * en lugar de copiar las columnas del listado al heap. Se activa con {@code -Dpotersitos.fueraDelHeap=true}.
+     */
+    static final boolean FUERA_DEL_HEAP = Boolean.getBoolean("potersitos.fueraDelHeap");
+
+    /** Intentos de construir los índices de búsqueda sin bloquear a los escritores. */
+    private static final int INTENTOS_INDICES_BUSQUEDA = 3;
+
+    /** Instancia única compartida por toda la aplicación. */
+    private static final RepositorioPersonajes INSTANCIA = new RepositorioPersonajes();
+
+    /** Instantánea vigente, o {@code null} si debe recargarse desde disco. */
+    private volatile Instantanea instantanea;
+
+    /** Tamaño y fecha de modificación del CSV tras la última carga o escritura propia. */
+    private volatile long tamanoConocido = -1, modificacionConocida = -1;
+
+    /** Tamaño del diario apartado tras la última carga o escritura propia. */
+    private volatile long apartadoConocido = -1;
+
+    /** Hilo que vigila la carpeta del CSV. */
+    private Thread vigilante;
+
+    /** Indica que la propia aplicación está reescribiendo el CSV (compactación). */
+    private volatile boolean escribiendo;
+
+    /** Indica que hay un hilo construyendo los índices de búsqueda. */
+    private boolean construyendoBusqueda;
+
+    /** Avisos pendientes para cuando estén listos los índices de búsqueda. */
+    private final List<Runnable> esperandoBusqueda = new ArrayList<>();
+
+    /** Suscriptores a los cambios de la lista. */
+    private final List<Consumer<CambiosPersonajes>> suscriptores = new CopyOnWriteArrayList<>();
+
+    /**
+     * Datos publicados a los lectores.
+     *
+     * @param personajes lista inmutable de vistas de fila en el orden del archivo
+     * @param indice     índices por slug e id, mantenidos de forma incremental
+     * @param tabla      almacén por columnas donde se añaden las filas nuevas
+     */
+    private record Instantanea(List<Map<String, String>> personajes, IndicePersonajes indice, TablaPersonajes tabla) {
+    }
+
+    /**
+     * Índices de búsqueda construidos juntos, con los mismos documentos.
+     *
+     * @param nombres índice de nombres
+     * @param facetas mapas de las categorías
+     */
+    private record IndicesBusqueda(IndiceNombres nombres, FacetasPersonajes facetas) {
+    }
+
+    /**
+     * Constructor privado (singleton).
+     */
+    private RepositorioPersonajes() {
+    }
+
+    /**
+     * Devuelve la instancia compartida del repositorio.
+     *
+     * @return repositorio de personajes
+     * @author Nizam
+     */
+    public static RepositorioPersonajes getInstancia() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Devuelve todos los personajes, cargándolos desde disco solo si no hay instantánea válida.
+     *
+     * @return lista inmutable de personajes
+     * @author Nizam
+     */
+    public List<Map<String, String>> obtenerTodos() {
+        return cargar().personajes();
+    }
+
+    /**
+     * Busca un personaje por su slug sin recorrer la lista.
+     *
+     * @param slug slug del personaje (no distingue mayúsculas)
+     * @return personaje encontrado o vacío
+     * @author Nizam
+     */
+    public Optional<Map<String, String>> findBySlug(String slug) {
+        return Optional.ofNullable(cargar().indice().findBySlug(slug));
+    }
+
+    /**
+     * Busca un personaje por su id sin recorrer la lista.
+     *
+     * @param id id del personaje (no distingue mayúsculas)
+     * @return personaje encontrado o vacío
+     * @author Nizam
+     */
+    public Optional<Map<String, String>> findById(String id) {
+        return Optional.ofNullable(cargar().indice().findById(id));
+    }
+
+    /**
+     * Resuelve varios slugs con una búsqueda O(1) por slug.
+     * Los slugs inexistentes se omiten y se respeta el orden de iteración de la colección.
+     *
+     * @param slugs slugs a buscar
+     * @return personajes encontrados
+     * @author Nizam
+     */
+    public List<Map<String, String>> findAllBySlugs(Collection<String> slugs) {
+        IndicePersonajes indice = cargar().indice();
+        List<Map<String, String>> encontrados = new ArrayList<>(slugs.size());
+        for (String slug : slugs) {
+            Map<String, String> p = indice.findBySlug(slug);
+            if (p != null) encontrados.add(p);
+        }
+        return encontrados;
+    }
+
+    /**
+     * Filtra los personajes por texto y por categorías con los índices de búsqueda, sin recorrer la lista.
+     * Sin texto el resultado es una vista de solo lectura sobre la lista, en su mismo orden, que no copia
+     * los personajes; con texto, cuando ya está el índice de las columnas de texto, los personajes van de
+     * más a menos relevante (véase {@link IndicePersonajes#filtrar(ConsultaTexto, int[], List)}).
+     * Solo responde si la lista indicada es la vigente (la misma instancia devuelta por {@link #obtenerTodos()}),
+     * para que el resultado sea coherente con ella; si no, o si los índices que necesita la consulta aún se
+     * están construyendo, devuelve {@code null} y el llamante debe recorrer la lista.
+     *
+     * @param consulta  texto de búsqueda (vacío si no filtra por texto)
+     * @param seleccion opciones marcadas de cada faceta de {@link FacetasPersonajes} (un bit por opción)
+     * @param lista     lista sobre la que filtra el llamante
+     * @return personajes que cumplen el filtro, o {@code null} si no se puede responder con los índices
+     * @author Nizam
+     */
+    public List<Map<String, String>> filtrar(ConsultaTexto consulta, int[] seleccion,
+                                             List<Map<String, String>> lista) {
+        return filtrar(consulta, seleccion, lista, null);
+    }
+
+    /**
+     * Filtra como {@link #filtrar(ConsultaTexto, int[], List)} y ordena el resultado por una columna.
+     * La primera vez que se ordena por una columna en un idioma se construye su permutación
+     * ({@link OrdenPersonajes}) en el hilo que llama, sin bloquear a los escritores; después se reutiliza
+     * en cada filtrado y se mantiene con cada cambio. Si aún no hay índices de búsqueda devuelve {@code null}
+     * y el llamante debe recorrer la lista y ordenarla con {@link CriterioOrden#ordenar(List)}.
+     *
+     * @param consulta  texto de búsqueda (vacío si no filtra por texto)
+     * @param seleccion opciones marcadas de cada faceta de {@link FacetasPersonajes} (un bit por opción)
+     * @param lista     lista sobre la que filtra el llamante
+     * @param criterio  orden del resultado, o {@code null} para el de la lista (o el de relevancia)
+     * @return personajes que cumplen el filtro, o {@code null} si no se puede responder con los índices
+     * @author Nizam
+     */
+    public List<Map<String, String>> filtrar(ConsultaTexto consulta, int[] seleccion,
+                                             List<Map<String, String>> lista, CriterioOrden criterio) {
+        prepararOrden(criterio);
+        synchronized (this) {
+            Instantanea actual = instantanea;
+            if (actual == null || actual.personajes() != lista) return null;
+            if (consulta.vacia() && !FacetasPersonajes.filtra(seleccion) && criterio == null) return lista;
+            List<Map<String, String>> filtrados = actual.indice().filtrar(consulta, seleccion, lista, criterio);
+            if (filtrados == null) prepararBusqueda();
+            return filtrados;
+        }
+    }
+
+    /**
+     * Filtra con una consulta compilada ({@link ConsultaFiltro}) y por categorías, con los índices de
+     * búsqueda: las cláusulas con índice se resuelven con mapas de bits y solo el resto recorre los personajes
+     * que quedan (véase {@link IndicePersonajes#preparar(ConsultaFiltro, int[], CriterioOrden)}). Ese recorrido
+     * se hace sin el cerrojo del repositorio ni el de los índices, así que no bloquea las búsquedas por clave
+     * ni los guardados, y se detiene en cuanto se cancela. Una consulta que solo es texto se filtra como
+     * {@link #filtrar(ConsultaTexto, int[], List, CriterioOrden)}. Devuelve {@code null} en los mismos casos,
+     * si se cancela o si la lista cambia durante el recorrido, y entonces el llamante debe recorrer la lista
+     * con {@link ConsultaFiltro#cumple(Map)}.
+     *
+     * @param filtro    consulta compilada
+     * @param seleccion opciones marcadas de cada faceta de {@link FacetasPersonajes} (un bit por opción)
+     * @param lista     lista sobre la que filtra el llamante
+     * @param criterio  orden del resultado, o {@code null} para el de la lista (o el de relevancia)
+     * @param cancelado indica si se ha cancelado el filtrado (se consulta también desde otros hilos)
+     * @return personajes que cumplen el filtro, o {@code null} si no se puede responder con los índices
+     * @author Nizam
+     */
+    public List<Map<String, String>> filtrar(ConsultaFiltro filtro, int[] seleccion, List<Map<String, String>> lista,
+                                             CriterioOrden criterio, BooleanSupplier cancelado) {
+        if (filtro.texto() != null) return filtrar(filtro.texto(), seleccion, lista, criterio);
+        prepararOrden(criterio);
+        long inicio = System.nanoTime();
+        IndicePersonajes indice;
+        IndicePersonajes.ConsultaPreparada preparada;
+        synchronized (this) {
+            Instantanea actual = instantanea;
+            if (actual == null || actual.personajes() != lista) return null;
+            indice = actual.indice();
+            preparada = indice.preparar(filtro, seleccion, criterio);
+            if (preparada == null) {
+                prepararBusqueda();
+                return null;
+            }
+        }
+        long[] documentos = IndicePersonajes.evaluar(preparada, cancelado);
+        List<Map<String, String>> filtrados = documentos == null ? null : indice.resultado(preparada, documentos, lista, criterio);
+        if (filtrados != null) {
+            logger.debug("Consulta {} resuelta con los índices en {} ms: {} personajes.", filtro,
+                    (System.nanoTime() - inicio) / 1_000_000, filtrados.size());
+        }
+        return filtrados;
+    }
+
+    /**
+     * Construye la permutación de un criterio de orden si aún no está, sin bloquear a los escritores.
+     *
+     * @param criterio criterio de orden, o {@code null} si no se ordena
+     * @author Nizam
+     */
+    private void prepararOrden(CriterioOrden criterio) {
+        if (criterio == null) return;
+        construirIndice("de orden por " + criterio.clave(), indice -> indice.tieneOrden(criterio) || !indice.tieneBusqueda(),
+                personajes -> new OrdenPersonajes(personajes, criterio), IndicePersonajes::asignarOrden);
+    }
+
+    /**
+     * Cuenta cuántos personajes daría cada casilla de los filtros por categoría con el resto del filtro
+     * (el texto y las demás facetas), con los índices de búsqueda y sin recorrer la lista.
+     * Solo responde si la lista indicada es la vigente; si no, o si los índices que necesita la consulta aún
+     * se están construyendo, devuelve {@code null}.
+     *
+     * @param consulta  texto de búsqueda (vacío si no filtra por texto)
+     * @param seleccion opciones marcadas de cada faceta de {@link FacetasPersonajes} (un bit por opción)
+     * @param lista     lista sobre la que filtra el llamante
+     * @return recuentos por faceta y opción, o {@code null} si no se pueden calcular con los índices
+     * @author Nizam
+     */
+    public synchronized int[][] contarFacetas(ConsultaTexto consulta, int[] seleccion, List<Map<String, String>> lista) {
+        Instantanea actual = instantanea;
+        if (actual == null || actual.personajes() != lista) return null;
+        int[][] recuentos = actual.indice().contar(consulta, seleccion);
+        if (recuentos == null) prepararBusqueda();
+        return recuentos;
+    }
+
+    /**
+     * Cuenta como {@link #contarFacetas(ConsultaTexto, int[], List)} con una consulta compilada como resto del filtro.
+     * Las cláusulas fila a fila se comprueban sin los cerrojos, como en
+     * {@link #filtrar(ConsultaFiltro, int[], List, CriterioOrden, BooleanSupplier)}.
+     *
+     * @param filtro    consulta compilada
+     * @param seleccion opciones marcadas de cada faceta de {@link FacetasPersonajes} (un bit por opción)
+     * @param lista     lista sobre la que filtra el llamante
+     * @param cancelado indica si se ha cancelado el recuento (se consulta también desde otros hilos)
+     * @return recuentos por faceta y opción, o {@code null} si no se pueden calcular con los índices
+     * @author Nizam
+     */
+    public int[][] contarFacetas(ConsultaFiltro filtro, int[] seleccion, List<Map<String, String>> lista,
+                                 BooleanSupplier cancelado) {
+        if (filtro.texto() != null) return contarFacetas(filtro.texto(), seleccion, lista);
+        IndicePersonajes indice;
+        IndicePersonajes.ConsultaPreparada preparada;
+        synchronized (this) {
+            Instantanea actual = instantanea;
+            if (actual == null || actual.personajes() != lista) return null;
+            indice = actual.indice();
+            preparada = indice.preparar(filtro, new int[FacetasPersonajes.FACETAS], null);
+            if (preparada == null) {
+                prepararBusqueda();
+                return null;
+            }
+        }
+        long[] documentos = IndicePersonajes.evaluar(preparada, cancelado);
+        return documentos == null ? null : indice.contar(preparada, documentos, seleccion);
+    }
+
+    /**
+     * Pide un aviso para cuando termine de construirse el siguiente índice de búsqueda de la instantánea
+     * vigente (primero los nombres y las categorías, luego los textos), y empieza a construirlos si hace
+     * falta. El aviso se ejecuta desde el hilo que los construye; si la instantánea se descarta antes,
+     * espera a la siguiente construcción.
+     *
+     * @param aviso acción a ejecutar; no debe bloquear
+     * @return {@code false} si el aviso queda pendiente, {@code true} si todos los índices ya estaban listos (y no se avisará)
+     * @author Nizam
+     */
+    public synchronized boolean avisarAlPrepararBusqueda(Runnable aviso) {
+        Instantanea actual = instantanea;
+        if (actual != null && actual.indice().tieneTextos()) return true;
+        esperandoBusqueda.add(aviso);
+        prepararBusqueda();
+        return false;
+    }
+
+    /**
+     * Construye en segundo plano los índices de búsqueda de la instantánea vigente, si aún no los tiene.
+     *
+     * @author Nizam
+     */
+    public synchronized void prepararBusqueda() {
+        Instantanea actual = instantanea;
+        if (construyendoBusqueda || actual == null || actual.indice().tieneTextos()) return;
+        construyendoBusqueda = true;
+        Thread hilo = new Thread(this::construirBusqueda, "indices-busqueda");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Construye los índices de búsqueda que falten: primero los nombres y las categorías, que bastan para
+     * los filtros habituales, y después el índice de textos, que cuesta bastante más porque lee las columnas
+     * que no están en memoria. Tras asignar cada uno se ejecutan los avisos pendientes.
+     *
+     * @author Nizam
+     */
+    private void construirBusqueda() {
+        try {
+            if (construirIndice("de búsqueda", IndicePersonajes::tieneBusqueda,
+                    personajes -> new IndicesBusqueda(new IndiceNombres(personajes), new FacetasPersonajes(personajes)),
+                    (indice, b) -> indice.asignarBusqueda(b.nombres(), b.facetas()))) {
+                ejecutarAvisos();
+            }
+            if (construirIndice("de textos", indice -> indice.tieneTextos() || !indice.tieneBusqueda(), IndiceTextos::new,
+                    IndicePersonajes::asignarTextos)) {
+                ejecutarAvisos();
+            }
+        } catch (RuntimeException e) {
+            logger.error("No se pudieron construir los índices de búsqueda", e);
+        } finally {
+            synchronized (this) {
+                construyendoBusqueda = false;
+            }
+        }
+    }
+
+    /**
+     * Construye un índice sin bloquear a los escritores y lo asigna si la lista no ha cambiado mientras tanto;
+     * si cambia en cada intento, el último se hace con el repositorio bloqueado.
+     *
+     * @param nombre    descripción para el registro
+     * @param construido indica si los índices ya tienen este
+     * @param construir construye el índice sobre una lista
+     * @param asignar   asigna el índice construido
+     * @param <T>       tipo del índice
+     * @return {@code true} si se ha asignado
+     * @author Nizam
+     */
+    private <T> boolean construirIndice(String nombre, Predicate<IndicePersonajes> construido,
+                                        Function<List<Map<String, String>>, T> construir,
+                                        BiConsumer<IndicePersonajes, T> asignar) {
+        for (int intento = 0; intento < INTENTOS_INDICES_BUSQUEDA; intento++) {
+            Instantanea actual = instantanea;
+            if (actual == null || construido.test(actual.indice())) return false;
+            long inicio = System.nanoTime();
+            T indice = construir.apply(actual.personajes());
+            synchronized (this) {
+                Instantanea ahora = instantanea;
+                boolean ultimo = intento == INTENTOS_INDICES_BUSQUEDA - 1;
+                if (ahora == null || ahora.indice() != actual.indice()) return false;
+                if (ahora.personajes() != actual.personajes()) {
+                    if (!ultimo) continue;
+                    indice = construir.apply(ahora.personajes());
+                }
+                asignar.accept(ahora.indice(), indice);
+                logger.info("Índices {} construidos con {} personajes en {} ms.", nombre,
+                        ahora.personajes().size(), (System.nanoTime() - inicio) / 1_000_000);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Ejecuta, fuera del cerrojo, los avisos pendientes de {@link #avisarAlPrepararBusqueda(Runnable)}.
+     *
+     * @author Nizam
+     */
+    private void ejecutarAvisos() {
+        List<Runnable> avisos;
+        synchronized (this) {
+            avisos = new ArrayList<>(esperandoBusqueda);
+            esperandoBusqueda.clear();
+        }
+        avisos.forEach(Runnable::run);
+    }
+
+    /**
+     * Descarta la instantánea actual; la siguiente lectura volverá a leer el CSV.
+     * Si había una, se avisa a los suscriptores de que deben recargar.
+     *
+     * @author Nizam
+     */
+    public void invalidar() {
+        Instantanea anterior = instantanea;
+        instantanea = null;
+        logger.debug("Instantánea de personajes invalidada.");
+        if (anterior != null) notificar(CambiosPersonajes.recarga());
+    }
+
+    /**
+     * Suscribe un receptor a los cambios de la lista de personajes.
+     * Se invoca en el hilo que escribe, con los cerrojos de escritura tomados: debe limitarse a
+     * pasar los cambios a su propio hilo (por ejemplo, con {@code Platform.runLater}).
+     *
+     * @param suscriptor receptor de los cambios
+     * @author Nizam
+     */
+    public void suscribir(Consumer<CambiosPersonajes> suscriptor) {
+        suscriptores.add(suscriptor);
+    }
+
+    /**
+     * Cancela una suscripción hecha con {@link #suscribir(Consumer)}.
+     *
+     * @param suscriptor receptor a quitar
+     * @author Nizam
+     */
+    public void cancelarSuscripcion(Consumer<CambiosPersonajes> suscriptor) {
+        suscriptores.remove(suscriptor);
+    }
+
+    /**
+     * Entrega unos cambios a todos los suscriptores; el fallo de uno no impide avisar a los demás.
+     *
+     * @param cambios cambios publicados
+     * @author Nizam
+     */
+    private void notificar(CambiosPersonajes cambios) {
+        for (Consumer<CambiosPersonajes> suscriptor : suscriptores) {
+            try {
+                suscriptor.accept(cambios);
+            } catch (RuntimeException e) {
+                logger.error("Error al avisar de cambios en los personajes", e);
+            }
+        }
+    }
+
+    /**
+     * Añade una fila a la tabla en memoria. Las filas modificadas se añaden como filas nuevas:
+     * las anteriores quedan sin referencias hasta la siguiente carga completa.
+     *
+     * @param valores columnas del personaje en el orden del CSV
+     * @return vista de solo lectura de la fila
+     * @author Nizam
+     */
+    Map<String, String> crearFila(String[] valores) {
+        return cargar().tabla().anadir(valores);
+    }
+
+    /**
+     * Publica el alta de un personaje ya persistido en el CSV.
+     *
+     * @param lista lista completa resultante (incluye el nuevo registro)
+     * @param nuevo registro añadido
+     * @author Nizam
+     */
+    synchronized void publicarAlta(List<Map<String, String>> lista, Map<String, String> nuevo) {
+        Instantanea actual = cargar();
+        actual.indice().insertar(nuevo);
+        CambiosPersonajes.Acumulador cambios = new CambiosPersonajes.Acumulador();
+        cambios.alta(nuevo);
+        publicar(lista, actual, cambios);
+    }
+
+    /**
+     * Publica la modificación de un personaje ya persistida en el CSV.
+     *
+     * @param lista    lista completa resultante
+     * @param anterior registro sustituido
+     * @param nuevo    registro que lo reemplaza
+     * @author Nizam
+     */
+    synchronized void publicarCambio(List<Map<String, String>> lista, Map<String, String> anterior, Map<String, String> nuevo) {
+        Instantanea actual = cargar();
+        actual.indice().actualizar(anterior, nuevo);
+        CambiosPersonajes.Acumulador cambios = new CambiosPersonajes.Acumulador();
+        cambios.cambio(anterior, nuevo);
+        publicar(lista, actual, cambios);
+    }
+
+    /**
+     * Publica la baja de uno o varios personajes ya persistida en el CSV.
+     *
+     * @param lista      lista completa resultante
+     * @param eliminados registros eliminados
+     * @author Nizam
+     */
+    synchronized void publicarBajas(List<Map<String, String>> lista, Collection<Map<String, String>> eliminados) {
+        Instantanea actual = cargar();
+        CambiosPersonajes.Acumulador cambios = new CambiosPersonajes.Acumulador();
+        for (Map<String, String> p : eliminados) {
+            actual.indice().eliminar(p);
+            cambios.baja(p);
+        }
+        publicar(lista, actual, cambios);
+    }
+
+    /**
+     * Sustituye la instantánea tras una escritura hecha por la propia aplicación,
+     * evitando volver a leer el archivo que se acaba de escribir, y avisa a los suscriptores.
+     *
+     * @param lista   lista completa de personajes ya persistida
+     * @param actual  instantánea cuyos índices (ya actualizados) y tabla se conservan
+     * @param cambios altas, cambios y bajas que llevan de la lista de {@code actual} a {@code lista}
+     * @author Nizam
+     */
+    private void publicar(List<Map<String, String>> lista, Instantanea actual, CambiosPersonajes.Acumulador cambios) {
+        Instantanea nueva = new Instantanea(Collections.unmodifiableList(lista), actual.indice(), actual.tabla());
+        instantanea = nueva;
+        recordarAtributos(Paths.get(PersonajeCSVManager.obtenerRutaCompletaCSV()));
+        notificar(cambios.construir(actual.personajes(), nueva.personajes()));
+    }
+
+    /**
+     * Incorpora los cambios que otros procesos hayan escrito desde la última carga o escritura propia.
+     * Si solo han añadido registros al diario se reproducen sobre la instantánea actual; si han
+     * sustituido el CSV o compactado, la instantánea se descarta y se recargará entera. En ambos casos se
+     * cierra el binario abierto, cuya cabecera en memoria ya no es válida. Lo mismo ocurre si el vigilante
+     * ya había descartado la instantánea: el binario pudo cambiar en disco mientras seguía abierto.
+     * Debe llamarse con {@link CerrojoArchivos} adquirido, antes de escribir.
+     *
+     * @author Nizam
+     */
+    synchronized void ponerseAlDia() {
+        Instantanea actual = instantanea;
+        if (actual == null) {
+            PersonajeBinarioManager.cerrar();
+            return;
+        }
+
+        Path archivo = Paths.get(PersonajeCSVManager.obtenerRutaCompletaCSV());
+        DiarioCambios diario = PersonajeCSVManager.obtenerDiario();
+        long leido = diario.getLeidoHasta();
+        long tamanoDiario = diario.getTamanoBytes();
+        if (cambioExterno(archivo) || diario.getTamanoApartado() != apartadoConocido || tamanoDiario < leido) {
+            logger.info("Otro proceso ha reescrito los datos; se recargarán antes de escribir.");
+            PersonajeBinarioManager.cerrar();
+            invalidar();
+            return;
+        }
+        if (tamanoDiario == leido) return;
+
+        List<String[]> nuevos = diario.leerNuevos();
+        PersonajeBinarioManager.cerrar();
+        if (nuevos.isEmpty()) return;
+        CambiosPersonajes.Acumulador cambios = new CambiosPersonajes.Acumulador();
+        List<Map<String, String>> lista = reproducirDiario(actual.tabla(), new ArrayList<>(actual.personajes()), actual.indice(), nuevos, cambios);
+        publicar(lista, actual, cambios);
+        logger.info("Incorporados {} cambios escritos por otro proceso.", nuevos.size());
+    }
+
+    /**
+     * Obtiene la instantánea vigente o la construye leyendo el CSV.
+     *
+     * @return instantánea válida
+     * @author Nizam
+     */
+    private Instantanea cargar() {
+        Instantanea actual = instantanea;
+        if (actual != null) return actual;
+
+        synchronized (this) {
+            if (instantanea != null) return instantanea;
+
+            Path archivo = Paths.get(PersonajeCSVManager.obtenerRutaCompletaCSV());
+            if (vigilante == null) {
+                // Primera carga: resolver escrituras que un cierre inesperado dejó a medias
+                EscrituraAtomica.recuperarTemporales(archivo.getParent());
+            }
+            iniciarVigilancia(archivo);
+            recordarAtributos(archivo);
+
+            List<String[]> diario = PersonajeCSVManager.obtenerDiario().leerEntradas();
+            BinarioIndexado.Firma firma = PersonajeCSVManager.firmaActual();
+            // La caché y el binario sincronizados ya incluyen el diario y evitan analizar el CSV
+            CacheArranque.Contenido cache = FUERA_DEL_HEAP ? null : CacheArranque.leerSiVigente(firma);
+            if (cache != null) {
+                instantanea = new Instantanea(Collections.unmodifiableList(cache.personajes()), cache.indice(), cache.tabla());
+                return instantanea;
+            }
+
+            TablaPersonajes tabla = null;
+            List<Map<String, String>> personajes = null;
+            if (FUERA_DEL_HEAP) {
+                tabla = new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE, Set.of());
+                personajes = PersonajeBinarioManager.leerFueraDelHeap(tabla, firma);
+            }
+            if (personajes == null) {
+                tabla = new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE, PersonajeCSVManager.COLUMNAS_LISTADO);
+                personajes = PersonajeBinarioManager.leerSiVigente(tabla, firma);
+            }
+            if (personajes != null) {
+                diario = List.of();
+            } else {
+                personajes = PersonajeCSVManager.leerPersonajesCSV(archivo.toString(), tabla);
+                if (Files.exists(archivo)) {
+                    PersonajeCSVManager.programarReconstruccionBinario();
+                }
+            }
+            if (Files.exists(archivo) && !FUERA_DEL_HEAP) {
+                PersonajeCSVManager.programarCacheArranque();
+            }
+            Instantanea nueva = crearInstantanea(tabla, personajes, diario);
+            // Si el archivo aún no existe no se cachea: la importación lo creará más tarde
+            if (Files.exists(archivo)) {
+                instantanea = nueva;
+            }
+            return nueva;
+        }
+    }
+
+    /**
+     * Ejecuta una reescritura del CSV hecha por la propia aplicación sin que el vigilante
+     * la confunda con un cambio externo.
+     *
+     * @param escritura escritura a ejecutar
+     * @return resultado de la escritura
+     * @author Nizam
+     */
+    boolean escrituraPropia(BooleanSupplier escritura) {
+        escribiendo = true;
+        try {
+            return escritura.getAsBoolean();
+        } finally {
+            recordarAtributos(Paths.get(PersonajeCSVManager.obtenerRutaCompletaCSV()));
+            escribiendo = false;
+        }
+    }
+
+    /**
+     * Construye una instantánea inmutable a partir de una lista de personajes recién leída
+     * y de los registros pendientes del diario.
+     *
+     * @param tabla      tabla por columnas donde se leyó el CSV
+     * @param personajes vistas de los personajes del CSV
+     * @param diario     registros del diario en orden de escritura
+     * @return instantánea con lista, índices y tabla
+     * @author Nizam
+     */
+    private static Instantanea crearInstantanea(TablaPersonajes tabla, List<Map<String, String>> personajes, List<String[]> diario) {
+        IndicePersonajes indice = new IndicePersonajes(personajes);
+        List<Map<String, String>> lista = personajes;
+        if (!diario.isEmpty()) {
+            lista = reproducirDiario(tabla, lista, indice, diario, null);
+        }
+        return new Instantanea(Collections.unmodifiableList(lista), indice, tabla);
+    }
+
+    /**
+     * Aplica los registros del diario sobre la lista cargada del CSV.
+     * Las operaciones son idempotentes: reproducir dos veces el mismo registro no duplica datos.
+     *
+     * @param tabla   tabla donde se añaden las filas del diario
+     * @param lista   personajes del CSV
+     * @param indice  índices de la lista, que se actualizan
+     * @param diario  registros a aplicar
+     * @param cambios acumulador de los cambios aplicados, o {@code null} si no hace falta
+     * @return lista resultante
+     * @author Nizam
+     */
+    private static List<Map<String, String>> reproducirDiario(TablaPersonajes tabla, List<Map<String, String>> lista,
+                                                              IndicePersonajes indice, List<String[]> diario,
+                                                              CambiosPersonajes.Acumulador cambios) {
+        Map<Map<String, String>, Integer> posiciones = new IdentityHashMap<>(lista.size() * 2);
+        for (int i = 0; i < lista.size(); i++) {
+            posiciones.put(lista.get(i), i);
+        }
+
+        for (String[] registro : diario) {
+            String clave = registro[1];
+            if (DiarioCambios.OP_BAJA.equals(registro[0])) {
+                Map<String, String> anterior = indice.findBySlug(clave);
+                if (anterior != null) {
+                    lista.set(posiciones.remove(anterior), null);
+                    indice.eliminar(anterior);
+                    if (cambios != null) cambios.baja(anterior);
+                }
+            } else if (DiarioCambios.OP_GUARDAR.equals(registro[0])) {
+                Map<String, String> nuevo = PersonajeCSVManager.crearPersonaje(tabla, registro, 2);
+                Map<String, String> anterior = indice.findBySlug(clave);
+                if (anterior == null) anterior = indice.findBySlug(nuevo.get("slug"));
+                if (anterior == null) anterior = indice.findById(nuevo.get("id"));
+
+                if (anterior != null) {
+                    int posicion = posiciones.remove(anterior);
+                    lista.set(posicion, nuevo);
+                    posiciones.put(nuevo, posicion);
+                    indice.actualizar(anterior, nuevo);
+                    if (cambios != null) cambios.cambio(anterior, nuevo);
+                } else {
+                    posiciones.put(nuevo, lista.size());
+                    lista.add(nuevo);
+                    indice.insertar(nuevo);
+                    if (cambios != null) cambios.alta(nuevo);
+                }
+            }
+        }
+
+        lista.removeIf(Objects::isNull);
+        logger.info("Reproducidos {} cambios pendientes del diario.", diario.size());
+        return lista;
+    }
+
+    /**
+     * Guarda el tamaño y la fecha de modificación actuales del CSV y el tamaño del diario apartado.
+     *
+     * @param archivo ruta del CSV
+     * @author Nizam
+     */
+    private void recordarAtributos(Path archivo) {
+        apartadoConocido = PersonajeCSVManager.obtenerDiario().getTamanoApartado();
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(archivo, BasicFileAttributes.class);
+            tamanoConocido = attrs.size();
+            modificacionConocida = attrs.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            tamanoConocido = -1;
+            modificacionConocida = -1;
+        }
+    }
+
+    /**
+     * Da por propios el CSV y el diario apartado actuales (tras una compactación de este proceso).
+     *
+     * @author Nizam
+     */
+    void recordarEscrituraPropia() {
+        recordarAtributos(Paths.get(PersonajeCSVManager.obtenerRutaCompletaCSV()));
+    }
+
+    /**
+     * Comprueba si el CSV ha cambiado respecto a lo último que cargó o escribió la aplicación.
+     *
+     * @param archivo ruta del CSV
+     * @return {@code true} si el cambio viene de fuera
+     * @author Nizam
+     */
+    private boolean cambioExterno(Path archivo) {
+        if (escribiendo) return false;
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(archivo, BasicFileAttributes.class);
+            return attrs.size() != tamanoConocido || attrs.lastModifiedTime().toMillis() != modificacionConocida;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Arranca (una sola vez) el hilo que vigila la carpeta del CSV.
+     * Si la carpeta aún no existe se reintentará en la siguiente carga.
+     *
+     * @param archivo ruta del CSV a vigilar
+     * @author Nizam
+     */
+    private void iniciarVigilancia(Path archivo) {
+        Path carpeta = archivo.getParent();
+        if (vigilante != null || carpeta == null || !Files.isDirectory(carpeta)) return;
+
+        try {
+            WatchService watchService = carpeta.getFileSystem().newWatchService();
+            carpeta.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+            vigilante = new Thread(() -> vigilar(watchService, archivo), "vigilante-csv");
+            vigilante.setDaemon(true);
+            vigilante.start();
+            logger.info("Vigilando cambios externos en {}", carpeta);
+        } catch (IOException e) {
+            logger.warn("No se pudo vigilar la carpeta del CSV: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Bucle del hilo vigilante: invalida la instantánea cuando el CSV cambia desde fuera.
+     *
+     * @param watchService servicio de vigilancia registrado sobre la carpeta
+     * @param archivo      ruta del CSV
+     * @author Nizam
+     */
+    private void vigilar(WatchService watchService, Path archivo) {
+        Path nombre = archivo.getFileName();
+        try (watchService) {
+            while (true) {
+                WatchKey clave = watchService.take();
+                boolean afectaCSV = false;
+                for (WatchEvent<?> evento : clave.pollEvents()) {
+                    if (evento.kind() == StandardWatchEventKinds.OVERFLOW || nombre.equals(evento.context())) {
+                        afectaCSV = true;
+                    }
+                }
+                if (afectaCSV && cambioExterno(archivo)) {
+                    logger.info("El CSV ha cambiado fuera de la aplicación; se recargará en la próxima lectura.");
+                    invalidar();
+                }
+                if (!clave.reset()) {
+                    logger.warn("La carpeta del CSV ya no es accesible; se deja de vigilar.");
+                    synchronized (this) {
+                        vigilante = null;
+                    }
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.warn("Error cerrando el vigilante del CSV: {}", e.getMessage());
+        }
+    }
+}
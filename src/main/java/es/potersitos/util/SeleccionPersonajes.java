@@ -0,0 +1,119 @@
+package es.potersitos.util;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Resultado de un filtro como vista de solo lectura sobre una lista de personajes: un bit por posición
+ * de la lista indica si el personaje está en el resultado. No se copia ninguna referencia; la paginación
+ * pide solo las posiciones de la página con {@link #get(int)}, que salta bloques de 512 posiciones con
+ * la cuenta acumulada de bits y localiza el bit dentro de la palabra.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class SeleccionPersonajes extends AbstractList<Map<String, String>> implements RandomAccess {
+
+    /** Palabras de 64 bits por bloque de la cuenta acumulada. */
+    private static final int PALABRAS_BLOQUE = 8;
+
+    /** Lista completa a la que se refieren las posiciones. */
+    private final List<Map<String, String>> personajes;
+
+    /** Un bit por posición de {@link #personajes}. */
+    private final long[] bits;
+
+    /** Bits marcados antes de cada bloque. */
+    private final int[] acumulados;
+
+    /** Número de personajes del resultado. */
+    private final int total;
+
+    /**
+     * Crea la vista.
+     *
+     * @param personajes lista inmutable a la que se refieren las posiciones
+     * @param bits       un bit por posición; pasa a ser propiedad de la vista
+     * @author Nizam
+     */
+    SeleccionPersonajes(List<Map<String, String>> personajes, long[] bits) {
+        this.personajes = personajes;
+        this.bits = bits;
+        this.acumulados = new int[(bits.length + PALABRAS_BLOQUE - 1) / PALABRAS_BLOQUE];
+        int cuenta = 0;
+        for (int i = 0; i < bits.length; i++) {
+            if (i % PALABRAS_BLOQUE == 0) acumulados[i / PALABRAS_BLOQUE] = cuenta;
+            cuenta += Long.bitCount(bits[i]);
+        }
+        this.total = cuenta;
+    }
+
+    /**
+     * Devuelve el personaje que ocupa una posición del resultado.
+     *
+     * @param indice posición en el resultado
+     * @return personaje
+     * @author Nizam
+     */
+    @Override
+    public Map<String, String> get(int indice) {
+        if (indice < 0 || indice >= total) throw new IndexOutOfBoundsException(indice);
+        int bajo = 0, alto = acumulados.length - 1;
+        while (bajo < alto) {
+            int medio = (bajo + alto + 1) >>> 1;
+            if (acumulados[medio] <= indice) bajo = medio;
+            else alto = medio - 1;
+        }
+        int restantes = indice - acumulados[bajo];
+        int palabra = bajo * PALABRAS_BLOQUE;
+        while (Long.bitCount(bits[palabra]) <= restantes) {
+            restantes -= Long.bitCount(bits[palabra++]);
+        }
+        long w = bits[palabra];
+        for (int i = 0; i < restantes; i++) w &= w - 1;
+        return personajes.get((palabra << 6) + Long.numberOfTrailingZeros(w));
+    }
+
+    /**
+     * Devuelve el número de personajes del resultado.
+     *
+     * @return tamaño
+     * @author Nizam
+     */
+    @Override
+    public int size() {
+        return total;
+    }
+
+    /**
+     * Recorre el resultado en orden saltando directamente de un bit marcado al siguiente.
+     *
+     * @return iterador de solo lectura
+     * @author Nizam
+     */
+    @Override
+    public Iterator<Map<String, String>> iterator() {
+        return new Iterator<>() {
+            private int palabra;
+            private long pendientes = bits.length > 0 ? bits[0] : 0;
+
+            @Override
+            public boolean hasNext() {
+                while (pendientes == 0 && palabra + 1 < bits.length) pendientes = bits[++palabra];
+                return pendientes != 0;
+            }
+
+            @Override
+            public Map<String, String> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                int posicion = (palabra << 6) + Long.numberOfTrailingZeros(pendientes);
+                pendientes &= pendientes - 1;
+                return personajes.get(posicion);
+            }
+        };
+    }
+}
@@ -0,0 +1,606 @@
+package es.potersitos.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Almacén en memoria de los personajes organizado por columnas.
+ * Las columnas con pocos valores distintos (casa, género, especie...) guardan un código entero por fila
+ * que apunta a un diccionario de la columna; el resto guarda el texto en UTF-8 dentro de un único
+ * array de bytes por columna. Así no hay un {@code HashMap} ni un {@code String} por campo y fila.
+ * <p>
+ * Las filas solo se añaden al final y nunca se modifican, de modo que las vistas
+ * {@link FilaPersonaje} ya publicadas siguen siendo válidas. Los arrays crecen copiándose y se
+ * publican mediante campos {@code volatile}, por lo que los lectores no necesitan bloqueo.
+ * <p>
+ * La tabla puede cargar solo algunas columnas (proyección): las filas leídas de disco guardan entonces
+ * la posición de su registro y el resto de columnas se lee de la {@link Fuente} la primera vez que se
+ * consulta, manteniendo los últimos registros leídos en una caché pequeña. Las filas que se añaden
+ * enteras (altas y cambios) no tienen registro en disco: su vista guarda todas las columnas, de modo
+ * que la tabla no retiene las de las filas sustituidas. De cada fila sustituida solo quedan las columnas
+ * en memoria, que se liberan cuando se vuelve a cargar (la caché de arranque se reescribe al compactar).
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class TablaPersonajes {
+
+    /** Logger para la clase. */
+    private static final Logger logger = LoggerFactory.getLogger(TablaPersonajes.class);
+
+    /** Cierra las fuentes de las tablas que ya no se usan. */
+    private static final Cleaner LIMPIADOR = Cleaner.create();
+
+    /** Registros completos leídos de la fuente que se conservan en memoria. */
+    private static final int MAX_RECIENTES = 256;
+
+    /** Columnas de baja cardinalidad que se codifican con diccionario. */
+    private static final Set<String> COLUMNAS_DICCIONARIO = Set.of(
+            "type", "animagus", "blood_status", "eye_color", "gender", "hair_color", "house",
+            "marital_status", "nationality", "patronus", "skin_color", "species");
+
+    /** Capacidad inicial en filas. */
+    private static final int CAPACIDAD_INICIAL = 1024;
+
+    /** Nombres de las columnas, en el orden del CSV. */
+    private final String[] claves;
+
+    /** Posición de cada columna a partir de su nombre. */
+    private final Map<String, Integer> posiciones;
+
+    /** Almacenamiento de cada columna ({@code null} si la columna no se carga en memoria). */
+    private final Columna[] columnas;
+
+    /** Columnas cargadas en memoria. */
+    private final boolean[] cargadas;
+
+    /** Indica si todas las columnas están en memoria. */
+    private final boolean completa;
+
+    /** Número de filas añadidas. */
+    private int filas;
+
+    /** Posición en la fuente del registro de cada fila cargada parcialmente. */
+    private volatile long[] origenes = new long[0];
+
+    /** Últimos registros leídos de la fuente, por fila. */
+    private final Map<Integer, String[]> recientes = new LinkedHashMap<>(MAX_RECIENTES * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String[]> mayor) {
+            return size() > MAX_RECIENTES;
+        }
+    };
+
+    /** Origen de las columnas no cargadas. */
+    private volatile Fuente fuente;
+
+    /**
+     * Origen de los registros completos de las filas cargadas parcialmente.
+     */
+    interface Fuente extends Closeable {
+        /**
+         * Lee un registro completo.
+         *
+         * @param origen posición del registro indicada en {@link #anadirParcial(String[], long)}
+         * @return valores de todas las columnas en el orden de la tabla, o {@code null} si ya no está disponible
+         * @throws IOException si falla la lectura
+         */
+        String[] leer(long origen) throws IOException;
+
+        /**
+         * Lee una sola columna de un registro (por defecto, leyendo el registro completo).
+         *
+         * @param origen  posición del registro
+         * @param columna posición de la columna
+         * @return valor de la columna, o {@code null} si ya no está disponible
+         * @throws IOException si falla la lectura
+         */
+        default String leerCampo(long origen, int columna) throws IOException {
+            String[] registro = leer(origen);
+            return registro == null ? null : registro[columna];
+        }
+
+        /**
+         * Indica si leer una columna suelta es barato (la fuente está en memoria), de modo que la tabla
+         * no necesita leer ni guardar en caché el registro completo para consultar una columna.
+         *
+         * @return true si conviene usar {@link #leerCampo(long, int)}
+         */
+        default boolean lecturaPorCampo() {
+            return false;
+        }
+    }
+
+    /**
+     * Crea una tabla vacía con todas las columnas del CSV en memoria.
+     *
+     * @param claves nombres de las columnas en orden
+     * @author Nizam
+     */
+    TablaPersonajes(String[] claves) {
+        this(claves, Arrays.asList(claves));
+    }
+
+    /**
+     * Crea una tabla vacía que solo guarda en memoria las columnas indicadas.
+     *
+     * @param claves     nombres de las columnas en orden
+     * @param proyeccion columnas que se cargan en memoria; el resto se lee bajo demanda
+     * @author Nizam
+     */
+    TablaPersonajes(String[] claves, Collection<String> proyeccion) {
+        this.claves = claves;
+        this.posiciones = new HashMap<>(claves.length * 2);
+        this.columnas = new Columna[claves.length];
+        this.cargadas = new boolean[claves.length];
+        boolean todas = true;
+        for (int i = 0; i < claves.length; i++) {
+            posiciones.put(claves[i], i);
+            cargadas[i] = proyeccion.contains(claves[i]);
+            if (cargadas[i]) {
+                columnas[i] = COLUMNAS_DICCIONARIO.contains(claves[i]) ? new ColumnaDiccionario() : new ColumnaTexto();
+            } else {
+                todas = false;
+            }
+        }
+        this.completa = todas;
+    }
+
+    /**
+     * Añade una fila completa al final de la tabla. Si la tabla tiene proyección, la vista devuelta es la
+     * única que conserva las columnas que no están en memoria.
+     *
+     * @param valores valores de las columnas en orden ({@code null} se guarda como vacío)
+     * @return vista de solo lectura de la fila añadida
+     * @author Nizam
+     */
+    synchronized FilaPersonaje anadir(String[] valores) {
+        String[] normalizados = new String[columnas.length];
+        for (int c = 0; c < columnas.length; c++) {
+            normalizados[c] = c < valores.length && valores[c] != null ? valores[c] : "";
+            if (columnas[c] != null) columnas[c].anadir(filas, normalizados[c]);
+        }
+        return new FilaPersonaje(this, filas++, completa ? null : normalizados);
+    }
+
+    /**
+     * Añade una fila de la que solo se conocen las columnas cargadas; el resto se leerá de la fuente.
+     *
+     * @param valores valores de las columnas en orden (las no cargadas se ignoran)
+     * @param origen  posición del registro en la fuente
+     * @return vista de solo lectura de la fila añadida
+     * @author Nizam
+     */
+    synchronized FilaPersonaje anadirParcial(String[] valores, long origen) {
+        for (int c = 0; c < columnas.length; c++) {
+            if (columnas[c] == null) continue;
+            columnas[c].anadir(filas, c < valores.length && valores[c] != null ? valores[c] : "");
+        }
+        long[] o = origenes;
+        if (filas >= o.length) {
+            o = Arrays.copyOf(o, Math.max(CAPACIDAD_INICIAL, o.length * 2));
+        }
+        o[filas] = origen;
+        origenes = o;
+        return new FilaPersonaje(this, filas++);
+    }
+
+    /**
+     * Vuelca las columnas en memoria y la posición de cada fila en un flujo, para {@link CacheArranque}.
+     * Solo es válido si todas las filas se añadieron con {@link #anadirParcial(String[], long)}.
+     *
+     * @param out flujo de salida
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    synchronized void volcar(DataOutputStream out) throws IOException {
+        out.writeInt(filas);
+        ByteBuffer o = ByteBuffer.allocate(filas * Long.BYTES);
+        o.asLongBuffer().put(origenes, 0, filas);
+        out.write(o.array());
+        for (Columna columna : columnas) {
+            if (columna != null) columna.volcar(out, filas);
+        }
+    }
+
+    /**
+     * Reconstruye una tabla volcada con {@link #volcar(DataOutputStream)} copiando los arrays de una vez,
+     * sin decodificar fila a fila.
+     *
+     * @param claves     nombres de las columnas en orden
+     * @param proyeccion columnas en memoria (las mismas que al volcar)
+     * @param b          búfer situado al comienzo del volcado
+     * @return tabla con todas las filas, pendiente de asignarle la fuente
+     * @author Nizam
+     */
+    static TablaPersonajes restaurar(String[] claves, Collection<String> proyeccion, ByteBuffer b) {
+        TablaPersonajes tabla = new TablaPersonajes(claves, proyeccion);
+        int filas = b.getInt();
+        long[] o = new long[filas];
+        b.asLongBuffer().get(o);
+        b.position(b.position() + filas * Long.BYTES);
+        for (Columna columna : tabla.columnas) {
+            if (columna != null) columna.restaurar(b, filas);
+        }
+        synchronized (tabla) {
+            tabla.origenes = o;
+            tabla.filas = filas;
+        }
+        return tabla;
+    }
+
+    /**
+     * Devuelve las vistas de todas las filas en orden. Solo se usa con tablas recién cargadas o
+     * restauradas, cuyas filas tienen todas registro en la fuente o están enteras en memoria.
+     *
+     * @return lista modificable de vistas
+     * @author Nizam
+     */
+    synchronized List<Map<String, String>> vistas() {
+        List<Map<String, String>> vistas = new ArrayList<>(filas);
+        for (int f = 0; f < filas; f++) {
+            vistas.add(new FilaPersonaje(this, f));
+        }
+        return vistas;
+    }
+
+    /**
+     * Indica qué columnas se guardan en memoria, para que los lectores solo decodifiquen esas.
+     *
+     * @return columnas cargadas por posición
+     * @author Nizam
+     */
+    boolean[] columnasCargadas() {
+        return cargadas.clone();
+    }
+
+    /**
+     * Indica si todas las columnas se guardan en memoria (no hace falta fuente).
+     *
+     * @return true si la tabla no tiene proyección
+     * @author Nizam
+     */
+    boolean esCompleta() {
+        return completa;
+    }
+
+    /**
+     * Asigna la fuente de las columnas no cargadas. Se cierra cuando la tabla deja de usarse.
+     *
+     * @param fuente origen de los registros completos
+     * @author Nizam
+     */
+    void asignarFuente(Fuente fuente) {
+        this.fuente = fuente;
+        LIMPIADOR.register(this, () -> cerrar(fuente));
+    }
+
+    /**
+     * Ajusta los arrays al tamaño ocupado para no desperdiciar la holgura del crecimiento
+     * (se llama tras una carga completa).
+     *
+     * @author Nizam
+     */
+    synchronized void ajustar() {
+        for (Columna columna : columnas) {
+            if (columna != null) columna.ajustar(filas);
+        }
+        if (origenes.length > filas) origenes = Arrays.copyOf(origenes, filas);
+    }
+
+    /**
+     * Devuelve el valor de una celda. Si la columna no está en memoria se lee el registro completo.
+     *
+     * @param fila    número de fila
+     * @param columna posición de la columna
+     * @return valor de la celda
+     * @author Nizam
+     */
+    String valor(int fila, int columna) {
+        Columna c = columnas[columna];
+        if (c != null) return c.valor(fila);
+
+        Fuente f = fuente;
+        if (f != null && f.lecturaPorCampo() && fila < origenes.length) {
+            try {
+                String valor = f.leerCampo(origenes[fila], columna);
+                if (valor != null) return valor;
+            } catch (IOException e) {
+                logger.warn("No se pudo leer la columna {} de la fila {}: {}", claves[columna], fila, e.getMessage());
+            }
+        }
+        return registro(fila)[columna];
+    }
+
+    /**
+     * Devuelve todas las columnas de una fila, leyendo de la fuente las que no están en memoria.
+     *
+     * @param fila número de fila
+     * @return valores de las columnas en orden (no debe modificarse)
+     * @author Nizam
+     */
+    String[] registro(int fila) {
+        if (completa) return desdeColumnas(fila, new String[columnas.length]);
+
+        String[] valores;
+        synchronized (recientes) {
+            valores = recientes.get(fila);
+        }
+        if (valores != null) return valores;
+
+        String[] leidos = null;
+        Fuente f = fuente;
+        if (f != null && fila < origenes.length) {
+            try {
+                leidos = f.leer(origenes[fila]);
+            } catch (IOException e) {
+                logger.warn("No se pudo leer el registro completo de la fila {}: {}", fila, e.getMessage());
+            }
+        }
+        valores = new String[columnas.length];
+        for (int c = 0; c < valores.length; c++) {
+            valores[c] = leidos != null && c < leidos.length && leidos[c] != null ? leidos[c] : "";
+        }
+        // Las columnas en memoria mandan sobre lo leído de disco
+        desdeColumnas(fila, valores);
+        if (leidos != null) {
+            synchronized (recientes) {
+                recientes.put(fila, valores);
+            }
+        }
+        return valores;
+    }
+
+    /**
+     * Copia en un array los valores de las columnas que están en memoria.
+     *
+     * @param fila    número de fila
+     * @param valores destino, en el orden de las columnas
+     * @return el mismo array
+     * @author Nizam
+     */
+    private String[] desdeColumnas(int fila, String[] valores) {
+        for (int c = 0; c < columnas.length; c++) {
+            if (columnas[c] != null) valores[c] = columnas[c].valor(fila);
+        }
+        return valores;
+    }
+
+    /**
+     * Cierra una fuente que ya no se usa.
+     *
+     * @param fuente fuente a cerrar
+     * @author Nizam
+     */
+    private static void cerrar(Fuente fuente) {
+        try {
+            fuente.close();
+        } catch (IOException e) {
+            logger.warn("Error al cerrar la fuente de personajes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Devuelve la posición de una columna.
+     *
+     * @param clave nombre de la columna
+     * @return posición, o -1 si no existe
+     * @author Nizam
+     */
+    int columna(Object clave) {
+        Integer posicion = posiciones.get(clave);
+        return posicion == null ? -1 : posicion;
+    }
+
+    /**
+     * Devuelve el nombre de una columna.
+     *
+     * @param columna posición de la columna
+     * @return nombre de la columna
+     * @author Nizam
+     */
+    String clave(int columna) {
+        return claves[columna];
+    }
+
+    /**
+     * Devuelve el número de columnas.
+     *
+     * @return número de columnas
+     * @author Nizam
+     */
+    int numeroColumnas() {
+        return claves.length;
+    }
+
+    /**
+     * Almacenamiento de una columna. Solo se escribe bajo el bloqueo de la tabla.
+     */
+    private interface Columna {
+        void anadir(int fila, String valor);
+
+        String valor(int fila);
+
+        void ajustar(int filas);
+
+        void volcar(DataOutputStream out, int filas) throws IOException;
+
+        void restaurar(ByteBuffer b, int filas);
+    }
+
+    /**
+     * Escribe los primeros elementos de un array de enteros con una sola escritura.
+     *
+     * @param out     flujo de salida
+     * @param enteros array a escribir
+     * @param n       número de elementos
+     * @throws IOException si falla la escritura
+     * @author Nizam
+     */
+    static void escribirEnteros(DataOutputStream out, int[] enteros, int n) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(n * Integer.BYTES);
+        b.asIntBuffer().put(enteros, 0, n);
+        out.write(b.array());
+    }
+
+    /**
+     * Lee un array de enteros escrito con {@link #escribirEnteros} y avanza el búfer.
+     *
+     * @param b búfer de origen
+     * @param n número de elementos
+     * @return array con al menos un hueco
+     * @author Nizam
+     */
+    static int[] leerEnteros(ByteBuffer b, int n) {
+        int[] enteros = new int[Math.max(n, 1)];
+        b.asIntBuffer().get(enteros, 0, n);
+        b.position(b.position() + n * Integer.BYTES);
+        return enteros;
+    }
+
+    /**
+     * Columna codificada con diccionario: un entero por fila y cada valor distinto una sola vez.
+     */
+    private static final class ColumnaDiccionario implements Columna {
+        /** Código de cada fila. */
+        private volatile int[] codigos = new int[CAPACIDAD_INICIAL];
+        /** Valores distintos; el código es la posición. */
+        private volatile String[] diccionario = new String[16];
+        /** Código de cada valor (solo lo usa el escritor). */
+        private final Map<String, Integer> codigoDe = new HashMap<>();
+
+        @Override
+        public void anadir(int fila, String valor) {
+            Integer codigo = codigoDe.get(valor);
+            if (codigo == null) {
+                codigo = codigoDe.size();
+                String[] dic = diccionario;
+                if (codigo == dic.length) {
+                    dic = Arrays.copyOf(dic, dic.length * 2);
+                }
+                dic[codigo] = valor;
+                diccionario = dic;
+                codigoDe.put(valor, codigo);
+            }
+            int[] cods = codigos;
+            if (fila == cods.length) {
+                cods = Arrays.copyOf(cods, cods.length * 2);
+            }
+            cods[fila] = codigo;
+            codigos = cods;
+        }
+
+        @Override
+        public String valor(int fila) {
+            int codigo = codigos[fila];
+            return diccionario[codigo];
+        }
+
+        @Override
+        public void ajustar(int filas) {
+            codigos = Arrays.copyOf(codigos, Math.max(filas, 1));
+        }
+
+        @Override
+        public void volcar(DataOutputStream out, int filas) throws IOException {
+            int distintos = codigoDe.size();
+            out.writeInt(distintos);
+            for (int i = 0; i < distintos; i++) {
+                byte[] bytes = diccionario[i].getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            escribirEnteros(out, codigos, filas);
+        }
+
+        @Override
+        public void restaurar(ByteBuffer b, int filas) {
+            int distintos = b.getInt();
+            String[] dic = new String[Math.max(16, distintos)];
+            for (int i = 0; i < distintos; i++) {
+                byte[] bytes = new byte[b.getInt()];
+                b.get(bytes);
+                dic[i] = new String(bytes, StandardCharsets.UTF_8);
+                codigoDe.put(dic[i], i);
+            }
+            diccionario = dic;
+            codigos = leerEnteros(b, filas);
+        }
+    }
+
+    /**
+     * Columna de texto libre: los valores en UTF-8 uno tras otro y la posición final de cada fila.
+     */
+    private static final class ColumnaTexto implements Columna {
+        /** Bytes UTF-8 de todas las filas, concatenados. */
+        private volatile byte[] datos = new byte[CAPACIDAD_INICIAL * 16];
+        /** Posición (exclusiva) donde termina cada fila en {@link #datos}. */
+        private volatile int[] fin = new int[CAPACIDAD_INICIAL];
+        /** Bytes ocupados (solo lo usa el escritor). */
+        private int usados;
+
+        @Override
+        public void anadir(int fila, String valor) {
+            byte[] bytes = valor.getBytes(StandardCharsets.UTF_8);
+            byte[] d = datos;
+            if (usados + bytes.length > d.length) {
+                d = Arrays.copyOf(d, Math.max(d.length * 2, usados + bytes.length));
+            }
+            System.arraycopy(bytes, 0, d, usados, bytes.length);
+            usados += bytes.length;
+            datos = d;
+
+            int[] f = fin;
+            if (fila == f.length) {
+                f = Arrays.copyOf(f, f.length * 2);
+            }
+            f[fila] = usados;
+            fin = f;
+        }
+
+        @Override
+        public String valor(int fila) {
+            int[] f = fin;
+            int inicio = fila == 0 ? 0 : f[fila - 1];
+            int longitud = f[fila] - inicio;
+            return longitud == 0 ? "" : new String(datos, inicio, longitud, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void ajustar(int filas) {
+            datos = Arrays.copyOf(datos, Math.max(usados, 1));
+            fin = Arrays.copyOf(fin, Math.max(filas, 1));
+        }
+
+        @Override
+        public void volcar(DataOutputStream out, int filas) throws IOException {
+            out.writeInt(usados);
+            out.write(datos, 0, usados);
+            escribirEnteros(out, fin, filas);
+        }
+
+        @Override
+        public void restaurar(ByteBuffer b, int filas) {
+            usados = b.getInt();
+            byte[] d = new byte[Math.max(usados, 1)];
+            b.get(d, 0, usados);
+            datos = d;
+            fin = leerEnteros(b, filas);
+        }
+    }
+}
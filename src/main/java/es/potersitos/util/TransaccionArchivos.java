@@ -0,0 +1,153 @@
+package es.potersitos.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Escritura de un mismo cambio en varios formatos (CSV, XML y binario) como una sola transacción.
+ * Cada formato se prepara en paralelo en su propio hilo; si alguno falla se deshacen los que
+ * terminaron bien, de modo que el cambio queda en todos los archivos o en ninguno.
+ * Una vez preparados todos, el llamante publica el cambio y los confirma.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class TransaccionArchivos {
+
+    /** Logger para la clase. */
+    private static final Logger logger = LoggerFactory.getLogger(TransaccionArchivos.class);
+
+    /** Hilos que escriben los formatos en paralelo (uno por formato). */
+    private static final ExecutorService escritores = Executors.newFixedThreadPool(3, new ThreadFactory() {
+        private final AtomicInteger contador = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread hilo = new Thread(r, "escritor-archivos-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        }
+    });
+
+    /**
+     * Escritura de un formato que deja el cambio en disco y sabe deshacerlo.
+     */
+    @FunctionalInterface
+    interface Escritura {
+        /**
+         * Escribe el cambio en el archivo del formato.
+         *
+         * @return cambio preparado, para confirmarlo o deshacerlo
+         * @throws Exception si falla la escritura; el archivo debe quedar como estaba
+         */
+        Preparada preparar() throws Exception;
+    }
+
+    /**
+     * Cambio ya escrito en un formato, pendiente de confirmar o deshacer.
+     */
+    @FunctionalInterface
+    interface Preparada {
+        /**
+         * Devuelve el archivo al estado anterior al cambio.
+         *
+         * @throws IOException si no se puede deshacer
+         */
+        void deshacer() throws IOException;
+
+        /**
+         * Confirma el cambio cuando todos los formatos se escribieron (por defecto no hace nada).
+         *
+         * @throws IOException si no se puede confirmar
+         */
+        default void confirmar() throws IOException {
+        }
+    }
+
+    /**
+     * Constructor privado (clase de utilidades).
+     */
+    private TransaccionArchivos() {
+    }
+
+    /**
+     * Prepara todas las escrituras en paralelo y espera a que terminen.
+     *
+     * @param escrituras escritura de cada formato, por nombre del formato
+     * @return cambios preparados en el mismo orden, o {@code null} si alguna falló (y se deshicieron las demás)
+     * @author Nizam
+     */
+    static List<Preparada> preparar(Map<String, Escritura> escrituras) {
+        Map<String, CompletableFuture<Preparada>> futuros = new LinkedHashMap<>();
+        escrituras.forEach((formato, escritura) -> futuros.put(formato, CompletableFuture.supplyAsync(() -> {
+            try {
+                return escritura.preparar();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, escritores)));
+
+        // join() no se interrumpe: siempre se espera a todas para no dejar escrituras sin deshacer
+        List<Preparada> preparadas = new ArrayList<>(futuros.size());
+        boolean fallo = false;
+        for (Map.Entry<String, CompletableFuture<Preparada>> futuro : futuros.entrySet()) {
+            try {
+                preparadas.add(futuro.getValue().join());
+            } catch (CompletionException | CancellationException e) {
+                logger.error("Error al escribir el {}; se deshace el cambio en el resto de formatos.",
+                        futuro.getKey(), e.getCause() != null ? e.getCause() : e);
+                fallo = true;
+            }
+        }
+        if (fallo) {
+            deshacer(preparadas);
+            return null;
+        }
+        return preparadas;
+    }
+
+    /**
+     * Confirma los cambios preparados. Un fallo aquí no invalida el cambio, que ya está en todos los formatos.
+     *
+     * @param preparadas cambios devueltos por {@link #preparar(Map)}
+     * @author Nizam
+     */
+    static void confirmar(List<Preparada> preparadas) {
+        for (Preparada preparada : preparadas) {
+            try {
+                preparada.confirmar();
+            } catch (IOException e) {
+                logger.warn("No se pudo confirmar un cambio: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Deshace los cambios preparados en orden inverso.
+     *
+     * @param preparadas cambios a deshacer
+     * @author Nizam
+     */
+    private static void deshacer(List<Preparada> preparadas) {
+        for (int i = preparadas.size() - 1; i >= 0; i--) {
+            try {
+                preparadas.get(i).deshacer();
+            } catch (IOException e) {
+                logger.error("No se pudo deshacer un cambio: {}", e.getMessage(), e);
+            }
+        }
+    }
+}
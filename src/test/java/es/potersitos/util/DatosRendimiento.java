@@ -0,0 +1,234 @@
+package es.potersitos.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Utilidades comunes de las pruebas de rendimiento (etiqueta {@value #ETIQUETA}): generan un anuario sintético
+ * con el formato del CSV real y miden tiempos y memoria.
+ * <p>
+ * Estas pruebas no se ejecutan con {@code mvn test}; se lanzan con {@code mvn test -Prendimiento}. El número de
+ * personajes se elige con {@code -Dpotersitos.filasRendimiento=N} (por defecto {@value #FILAS_POR_DEFECTO}).
+ * Los datos se generan siempre con la misma semilla, así que dos ejecuciones con el mismo N comparan lo mismo.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+final class DatosRendimiento {
+
+    /** Etiqueta JUnit de las pruebas de rendimiento, excluida de la ejecución por defecto. */
+    static final String ETIQUETA = "rendimiento";
+
+    /** Personajes generados si no se indica otro número. */
+    static final int FILAS_POR_DEFECTO = 100_000;
+
+    /** Personajes que genera cada prueba. */
+    static final int FILAS = Integer.getInteger("potersitos.filasRendimiento", FILAS_POR_DEFECTO);
+
+    /** Veces que se repite cada medida; se informa de la mejor. */
+    static final int REPETICIONES = Integer.getInteger("potersitos.repeticionesRendimiento", 5);
+
+    /** Semilla de los datos generados. */
+    private static final long SEMILLA = 21;
+
+    private static final String[] SILABAS = {"ha", "rry", "her", "mi", "o", "ne", "ron", "al", "bus", "dum", "ble",
+            "dore", "se", "ve", "rus", "sna", "pe", "dra", "co", "mal", "foy", "lu", "na", "love", "good", "vil", "le",
+            "long", "bot", "tom", "gin", "ny", "wea", "sley", "ner", "va", "mc", "go", "gall", "ru", "be", "us", "grid",
+            "sir", "ius", "black", "re", "mus", "pin", "bel", "la", "trix", "les", "tran", "ge", "cho", "chang", "ced",
+            "ric", "dig", "ry", "fleur", "de", "cour", "vik", "tor", "krum", "ní", "ño", "él", "ö"};
+    private static final String[] TRABAJOS = {"Auror", "Head of the Auror Office", "Minister for Magic",
+            "Professor of Potions", "Headmaster of Hogwarts", "Seeker", "Keeper", "Chaser", "Healer at St Mungo's",
+            "Shopkeeper", "Wandmaker", "Curse-Breaker", "Dragonologist", "Journalist", "Gamekeeper", "Caretaker",
+            "Death Eater", "Unspeakable", "Hit Wizard", "Obliviator"};
+    private static final String[] TITULOS = {"Order of Merlin, First Class", "Prefect", "Head Boy", "Head Girl",
+            "Quidditch Captain", "Chief Warlock", "Supreme Mugwump", "Triwizard Champion", "Lord", "Madam", "Sir"};
+    private static final String[] PARENTESCOS = {"father", "mother", "brother", "sister", "son", "daughter", "cousin",
+            "uncle", "aunt", "wife", "husband", "grandfather", "grandmother"};
+    private static final String[] MADERAS = {"holly", "yew", "elm", "vine", "willow", "oak", "ash", "cherry", "walnut",
+            "elder", "hawthorn", "larch", "rowan", "cedar", "fir", "hornbeam"};
+    private static final String[] NUCLEOS = {"phoenix feather", "dragon heartstring", "unicorn hair", "veela hair",
+            "thestral tail hair"};
+    private static final String[] CASAS = {"Gryffindor", "Slytherin", "Hufflepuff", "Ravenclaw", ""};
+    private static final String[] NACIONALIDADES = {"British", "English", "Scottish", "Irish", "French", "Bulgarian",
+            "American", ""};
+    private static final String[] ESPECIES = {"Human", "Human", "Human", "Human", "Human", "Human", "Half-giant", "Elf",
+            "Giant", "Half-blood", "House-elf"};
+    private static final String[] GENEROS = {"Male", "Female", ""};
+    private static final String[] SANGRE = {"Pure-blood", "Half-blood", "Muggle-born", ""};
+    private static final String[] BOGGARTS = {"", "Dementor", "Lord Voldemort", "Spider", "Full moon"};
+    private static final String[] FECHAS = {"", "31 July 1980", "1 September 1979", "Unknown", "c. 1881", "1926"};
+    private static final String[] PATRONUS = {"Stag", "Doe", "Otter", "Jack Russell terrier", "Phoenix", "Hare", "Lynx",
+            "Swan", "Horse", "Wolf", ""};
+
+    private DatosRendimiento() {
+    }
+
+    /**
+     * Escribe un CSV de personajes sintéticos con la cabecera de {@link PersonajeCSVManager#CLAVES_PERSONAJE}.
+     * Las columnas de lista llevan JSON entrecomillado con comas y comillas dentro, como el CSV real.
+     *
+     * @param csv   archivo a escribir (se crean las carpetas que falten)
+     * @param filas número de personajes
+     * @return el mismo archivo
+     * @throws IOException si falla la escritura
+     */
+    static Path escribirCSV(Path csv, int filas) throws IOException {
+        if (csv.getParent() != null) Files.createDirectories(csv.getParent());
+        Random r = new Random(SEMILLA);
+        try (BufferedWriter w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            w.write(String.join(",", PersonajeCSVManager.CLAVES_PERSONAJE));
+            w.write('\n');
+            for (int i = 0; i < filas; i++) {
+                w.write(PersonajeCSVManager.formatearLineaCSV(personaje(r, i)));
+            }
+        }
+        return csv;
+    }
+
+    /**
+     * Hace que {@code user.home} apunte a la carpeta indicada y escribe allí el CSV de la aplicación, para las
+     * pruebas que pasan por las rutas fijas de los gestores de archivos. Las pruebas que lo usan se ejecutan cada
+     * una en su propia JVM (perfil {@code rendimiento}).
+     *
+     * @param carpeta carpeta que hará de directorio del usuario
+     * @param filas   número de personajes
+     * @return ruta del CSV escrito
+     * @throws IOException si falla la escritura
+     */
+    static Path prepararCarpetaUsuario(Path carpeta, int filas) throws IOException {
+        System.setProperty("user.home", carpeta.toString());
+        return escribirCSV(Paths.get(PersonajeCSVManager.obtenerRutaCompletaCSV()), filas);
+    }
+
+    /**
+     * Valores de un personaje sintético, en el orden de {@link PersonajeCSVManager#CLAVES_PERSONAJE}.
+     *
+     * @param r generador aleatorio
+     * @param n número del personaje
+     * @return valores de las columnas
+     */
+    static String[] personaje(Random r, int n) {
+        String nombre = nombre(r);
+        String[] v = new String[PersonajeCSVManager.CLAVES_PERSONAJE.length];
+        Arrays.fill(v, "");
+        poner(v, "id", "id-" + n);
+        poner(v, "type", "character");
+        poner(v, "slug", "slug-" + n);
+        poner(v, "name", nombre);
+        poner(v, "alias_names", lista(r, new int[]{0, 0, 1, 1, 2}, () -> nombre(r)));
+        poner(v, "blood_status", elegir(r, SANGRE));
+        poner(v, "boggart", elegir(r, BOGGARTS));
+        poner(v, "born", elegir(r, FECHAS));
+        poner(v, "died", elegir(r, FECHAS));
+        poner(v, "family_members", lista(r, new int[]{0, 1, 2, 3}, () -> nombre(r) + " (" + elegir(r, PARENTESCOS) + ")"));
+        poner(v, "gender", elegir(r, GENEROS));
+        poner(v, "house", elegir(r, CASAS));
+        poner(v, "image", n % 5 == 0 ? "" : "https://x/" + n + ".jpg");
+        poner(v, "jobs", lista(r, new int[]{0, 1, 1, 2}, () -> elegir(r, TRABAJOS)));
+        poner(v, "nationality", elegir(r, NACIONALIDADES));
+        poner(v, "patronus", elegir(r, PATRONUS));
+        poner(v, "romances", lista(r, new int[]{0, 0, 0, 1}, () -> nombre(r)));
+        poner(v, "species", elegir(r, ESPECIES));
+        poner(v, "titles", lista(r, new int[]{0, 0, 1, 2}, () -> elegir(r, TITULOS)));
+        poner(v, "wands", lista(r, new int[]{0, 1, 1, 2},
+                () -> (9 + r.nextInt(7)) + "\", " + elegir(r, MADERAS) + ", " + elegir(r, NUCLEOS)));
+        poner(v, "wiki", "https://x/" + n);
+        poner(v, "version", "1");
+        return v;
+    }
+
+    /**
+     * Nombre sintético de dos o tres palabras formadas por sílabas de nombres de la saga.
+     *
+     * @param r generador aleatorio
+     * @return nombre
+     */
+    static String nombre(Random r) {
+        StringBuilder sb = new StringBuilder();
+        int palabras = 2 + r.nextInt(2);
+        for (int p = 0; p < palabras; p++) {
+            if (p > 0) sb.append(' ');
+            int inicio = sb.length();
+            int silabas = 2 + r.nextInt(3);
+            for (int s = 0; s < silabas; s++) sb.append(elegir(r, SILABAS));
+            sb.setCharAt(inicio, Character.toUpperCase(sb.charAt(inicio)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Mide una operación varias veces y devuelve el mejor tiempo.
+     *
+     * @param repeticiones veces que se ejecuta
+     * @param operacion    operación a medir
+     * @return mejor tiempo en milisegundos
+     * @throws Exception si la operación falla
+     */
+    static double mejorTiempo(int repeticiones, Operacion operacion) throws Exception {
+        long mejor = Long.MAX_VALUE;
+        for (int i = 0; i < repeticiones; i++) {
+            long inicio = System.nanoTime();
+            operacion.ejecutar();
+            mejor = Math.min(mejor, System.nanoTime() - inicio);
+        }
+        return mejor / 1e6;
+    }
+
+    /**
+     * Memoria del heap en uso tras forzar varias recolecciones.
+     *
+     * @return bytes en uso
+     * @throws InterruptedException si se interrumpe la espera entre recolecciones
+     */
+    static long heapUsado() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        long anterior = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(50);
+            long usado = rt.totalMemory() - rt.freeMemory();
+            if (anterior - usado < 1024 * 1024) return usado;
+            anterior = usado;
+        }
+        return anterior;
+    }
+
+    /** Operación medida por {@link #mejorTiempo(int, Operacion)}. */
+    @FunctionalInterface
+    interface Operacion {
+        void ejecutar() throws Exception;
+    }
+
+    private static void poner(String[] v, String clave, String valor) {
+        v[Arrays.asList(PersonajeCSVManager.CLAVES_PERSONAJE).indexOf(clave)] = valor;
+    }
+
+    private static String elegir(Random r, String[] opciones) {
+        return opciones[r.nextInt(opciones.length)];
+    }
+
+    private static String lista(Random r, int[] tamanos, Supplier<String> elemento) {
+        int n = tamanos[r.nextInt(tamanos.length)];
+        if (n == 0) return "";
+        List<String> elementos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String e = elemento.get();
+            if (!elementos.contains(e)) elementos.add(e);
+        }
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < elementos.size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append('"').append(elementos.get(i).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return sb.append(']').toString();
+    }
+}
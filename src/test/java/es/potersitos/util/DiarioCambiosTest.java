@@ -0,0 +1,98 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Comprueba que apartar el diario cuando ya había uno apartado no duplica ni pierde registros, tampoco
+ * si se interrumpe entre sus pasos. Las interrupciones se simulan dejando los archivos como quedarían.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+class DiarioCambiosTest {
+
+    /** Carpeta temporal del CSV y sus diarios. */
+    @TempDir
+    Path carpeta;
+
+    private Path activo, apartado, union;
+    private DiarioCambios diario;
+
+    @BeforeEach
+    void preparar() {
+        Path csv = carpeta.resolve("todosPersonajes.csv");
+        activo = carpeta.resolve("todosPersonajes.csv.diario");
+        apartado = carpeta.resolve("todosPersonajes.csv.diario.compactando");
+        union = carpeta.resolve("todosPersonajes.csv.diario.union");
+        diario = new DiarioCambios(csv);
+    }
+
+    @Test
+    void apartarSobreUnApartadoLosUneSinRepetir() throws IOException {
+        diario.registrar(Collections.singletonList(DiarioCambios.baja("a")));
+        diario.apartar();
+        diario.registrar(Collections.singletonList(DiarioCambios.baja("b")));
+        diario.apartar();
+
+        assertEquals(List.of("a", "b"), claves(diario.leerEntradas()));
+        assertFalse(Files.exists(activo));
+        assertFalse(Files.exists(union));
+    }
+
+    @Test
+    void unionInterrumpidaAntesDeBorrarElActivoSeDescarta() throws IOException {
+        apartadoYActivo();
+        Files.write(union, concatenar(apartado, activo));
+
+        assertEquals(List.of("a", "b"), claves(diario.leerEntradas()));
+        diario.registrar(Collections.singletonList(DiarioCambios.baja("c")));
+        assertFalse(Files.exists(union));
+        assertEquals(List.of("a", "b", "c"), claves(new DiarioCambios(carpeta.resolve("todosPersonajes.csv")).leerEntradas()));
+    }
+
+    @Test
+    void unionInterrumpidaTrasBorrarElActivoSeCompleta() throws IOException {
+        apartadoYActivo();
+        Files.write(union, concatenar(apartado, activo));
+        Files.delete(activo);
+
+        assertEquals(List.of("a", "b"), claves(diario.leerEntradas()));
+        diario.registrar(Collections.singletonList(DiarioCambios.baja("c")));
+        assertFalse(Files.exists(union));
+        assertEquals(List.of("a", "b", "c"), claves(new DiarioCambios(carpeta.resolve("todosPersonajes.csv")).leerEntradas()));
+    }
+
+    /**
+     * Deja un diario apartado con la baja de "a" y uno activo con la de "b".
+     *
+     * @throws IOException si falla la escritura
+     */
+    private void apartadoYActivo() throws IOException {
+        diario.registrar(Collections.singletonList(DiarioCambios.baja("a")));
+        diario.apartar();
+        diario.registrar(Collections.singletonList(DiarioCambios.baja("b")));
+    }
+
+    private static byte[] concatenar(Path primero, Path segundo) throws IOException {
+        byte[] a = Files.readAllBytes(primero), b = Files.readAllBytes(segundo);
+        byte[] union = new byte[a.length + b.length];
+        System.arraycopy(a, 0, union, 0, a.length);
+        System.arraycopy(b, 0, union, a.length, b.length);
+        return union;
+    }
+
+    private static List<String> claves(List<String[]> registros) {
+        return registros.stream().map(r -> r[1]).toList();
+    }
+}
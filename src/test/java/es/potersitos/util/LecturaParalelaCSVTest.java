@@ -0,0 +1,228 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Comprueba la carga en paralelo del CSV: genera archivos sintéticos, los lee con un solo hilo (la lectura
+ * secuencial con {@link LectorCSV}) y por trozos, y verifica que ambas lecturas devuelven los mismos
+ * personajes, en el mismo orden, que los que se escribieron.
+ * <p>
+ * Los archivos se construyen de forma que los límites de los trozos caigan en los casos difíciles:
+ * dentro de un campo entrecomillado cuyas líneas parecen registros, dentro de un campo que se alarga
+ * más allá del desborde permitido a un trozo especulativo y justo al comienzo de un registro. Cada caso
+ * se lee tanto con todas las columnas en memoria como con la proyección del listado (que vuelve a leer
+ * del CSV las demás columnas a partir de la posición de cada registro). Los trozos son pequeños para que
+ * los archivos ocupen unos cientos de KB.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+class LecturaParalelaCSVTest {
+
+    /** Hilos de la lectura por trozos; con dos, todos los trozos miden {@link #TAM_TROZO}. */
+    private static final int PARALELISMO = 2;
+
+    /** Tamaño mínimo de cada trozo en la prueba. */
+    private static final long TAM_TROZO = 64 * 1024;
+
+    /** Bytes que un trozo especulativo puede leer más allá de su límite en la prueba. */
+    private static final long MAX_DESBORDE = 16 * 1024;
+
+    /** Tamaño aproximado de los datos de cada archivo, en trozos. */
+    private static final double TROZOS_POR_ARCHIVO = 3.5;
+
+    /** Bytes antes de un límite a partir de los cuales se escribe el registro preparado para él. */
+    private static final int MARGEN_LIMITE = 1024;
+
+    /** Dónde cae cada límite de trozo, por orden. */
+    private enum Limite {
+        /** Dentro de un campo entrecomillado con líneas que parecen registros. */
+        DENTRO_DE_COMILLAS,
+        /** Dentro de un campo que sigue más allá del desborde permitido a un trozo especulativo. */
+        DESBORDE,
+        /** Justo al comienzo de un registro. */
+        COMIENZO_DE_REGISTRO
+    }
+
+    /** Carpeta temporal de los CSV generados. */
+    @TempDir
+    Path carpeta;
+
+    @Test
+    void conBomSinSaltoFinal() throws IOException {
+        comprobar(true, false, false);
+    }
+
+    @Test
+    void crlfSinSaltoFinal() throws IOException {
+        comprobar(false, true, false);
+    }
+
+    @Test
+    void conBomCrlfYSaltoFinal() throws IOException {
+        comprobar(true, true, true);
+    }
+
+    @Test
+    void lfConSaltoFinal() throws IOException {
+        comprobar(false, false, true);
+    }
+
+    /**
+     * Genera un CSV con el formato indicado y compara sus dos lecturas con lo escrito.
+     *
+     * @param bom        si el archivo empieza con la marca BOM
+     * @param crlf       si los registros terminan en CRLF en lugar de LF
+     * @param saltoFinal si el último registro termina en salto de línea
+     * @throws IOException si falla la escritura del archivo
+     */
+    private void comprobar(boolean bom, boolean crlf, boolean saltoFinal) throws IOException {
+        List<String[]> escritos = new ArrayList<>();
+        Path csv = carpeta.resolve("personajes.csv");
+        Files.write(csv, generar(escritos, bom, crlf ? "\r\n" : "\n", saltoFinal));
+
+        String[] claves = PersonajeCSVManager.CLAVES_PERSONAJE;
+        for (boolean completa : new boolean[]{true, false}) {
+            List<Map<String, String>> secuencial = leer(csv, claves, completa, 1);
+            List<Map<String, String>> paralelo = leer(csv, claves, completa, PARALELISMO);
+            String tabla = completa ? "todas las columnas" : "proyección del listado";
+            assertEquals(escritos.size(), secuencial.size(), tabla + ": registros leídos en secuencia");
+            assertEquals(escritos.size(), paralelo.size(), tabla + ": registros leídos por trozos");
+            for (int i = 0; i < escritos.size(); i++) {
+                Map<String, String> esperado = new HashMap<>();
+                for (int c = 0; c < claves.length; c++) esperado.put(claves[c], escritos.get(i)[c]);
+                assertEquals(esperado, new HashMap<>(secuencial.get(i)), tabla + ": registro " + i + " leído en secuencia");
+                assertEquals(esperado, new HashMap<>(paralelo.get(i)), tabla + ": registro " + i + " leído por trozos");
+            }
+        }
+    }
+
+    /**
+     * Lee el CSV en una tabla nueva.
+     *
+     * @param csv         archivo a leer
+     * @param claves      columnas de la tabla
+     * @param completa    si la tabla guarda todas las columnas o solo las del listado
+     * @param paralelismo hilos de la lectura (1 = secuencial)
+     * @return personajes leídos
+     */
+    private static List<Map<String, String>> leer(Path csv, String[] claves, boolean completa, int paralelismo) {
+        TablaPersonajes tabla = completa ? new TablaPersonajes(claves)
+                : new TablaPersonajes(claves, PersonajeCSVManager.COLUMNAS_LISTADO);
+        return PersonajeCSVManager.leerPersonajesCSV(csv.toString(), tabla, paralelismo, TAM_TROZO, MAX_DESBORDE);
+    }
+
+    /**
+     * Construye el contenido del CSV y anota los valores de cada registro.
+     *
+     * @param escritos   lista donde se añaden los valores de cada registro escrito
+     * @param bom        si se escribe la marca BOM
+     * @param salto      separador de registros
+     * @param saltoFinal si el último registro termina en salto de línea
+     * @return bytes del archivo
+     */
+    private static byte[] generar(List<String[]> escritos, boolean bom, String salto, boolean saltoFinal) {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        if (bom) salida.writeBytes(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+        salida.writeBytes((String.join(",", PersonajeCSVManager.CLAVES_PERSONAJE) + salto).getBytes(StandardCharsets.UTF_8));
+
+        long inicioDatos = salida.size();
+        long fin = inicioDatos + (long) (TROZOS_POR_ARCHIVO * TAM_TROZO);
+        assertTrue((fin - inicioDatos) / (PARALELISMO * 4L) <= TAM_TROZO, "todos los trozos deben medir " + TAM_TROZO);
+
+        Limite[] limites = Limite.values();
+        int siguienteLimite = 0;
+        while (salida.size() < fin) {
+            int n = escritos.size();
+            String[] valores = valores(n);
+            if (siguienteLimite < limites.length && salida.size() + MARGEN_LIMITE >= inicioDatos + (siguienteLimite + 1) * TAM_TROZO) {
+                long limite = inicioDatos + (siguienteLimite + 1) * TAM_TROZO;
+                switch (limites[siguienteLimite++]) {
+                    case DENTRO_DE_COMILLAS -> valores[3] = camposFalsos(n, salto, limite + MARGEN_LIMITE - salida.size());
+                    case DESBORDE -> valores[3] = camposFalsos(n, salto, limite + MAX_DESBORDE + MARGEN_LIMITE - salida.size());
+                    case COMIENZO_DE_REGISTRO -> {
+                        valores[4] = "";
+                        int sobran = (int) (limite - salida.size() - registro(valores, salto).length);
+                        assertTrue(sobran >= 0, "el registro debe caber antes del límite " + limite);
+                        valores[4] = "x".repeat(sobran);
+                    }
+                }
+            }
+            salida.writeBytes(registro(valores, salto));
+            escritos.add(valores);
+        }
+
+        byte[] contenido = salida.toByteArray();
+        return saltoFinal ? contenido : Arrays.copyOf(contenido, contenido.length - salto.length());
+    }
+
+    /**
+     * Valores de un registro corriente: texto con acentos, comas, comillas y saltos de línea en algunas columnas.
+     *
+     * @param n número de registro
+     * @return valor de cada columna de {@link PersonajeCSVManager#CLAVES_PERSONAJE}
+     */
+    private static String[] valores(int n) {
+        String[] valores = new String[PersonajeCSVManager.CLAVES_PERSONAJE.length];
+        for (int c = 0; c < valores.length; c++) valores[c] = "c" + c + "-" + n;
+        valores[0] = String.valueOf(n + 1);
+        valores[2] = "personaje-" + (n + 1);
+        if (n % 3 == 0) valores[5] = "Año " + n + ", \"mestizo\"";
+        if (n % 7 == 0) valores[6] = "Primera línea" + "\n" + "segunda línea";
+        return valores;
+    }
+
+    /**
+     * Campo entrecomillado que ocupa al menos los bytes indicados y cuyas líneas tienen la forma de
+     * registros válidos, para que un trozo que empiece dentro de él los tome por tales.
+     *
+     * @param n     número del registro que lo contiene
+     * @param salto separador de registros
+     * @param bytes longitud mínima en bytes
+     * @return valor del campo
+     */
+    private static String camposFalsos(int n, String salto, long bytes) {
+        StringBuilder campo = new StringBuilder("Notas de " + n);
+        for (int falso = 0; campo.length() < bytes; falso++) {
+            campo.append(salto).append(9_000_000 + falso).append(",falso,personaje-falso-").append(falso)
+                    .append(",alias,,mestizo,Gryffindor");
+        }
+        return campo.toString();
+    }
+
+    /**
+     * Escribe un registro, entrecomillando los campos que lo necesitan.
+     *
+     * @param valores valores de las columnas
+     * @param salto   separador de registros
+     * @return bytes del registro con su salto de línea
+     */
+    private static byte[] registro(String[] valores, String salto) {
+        StringBuilder linea = new StringBuilder();
+        for (int c = 0; c < valores.length; c++) {
+            if (c > 0) linea.append(',');
+            String valor = valores[c];
+            if (valor.contains(",") || valor.contains("\"") || valor.contains("\n") || valor.contains("\r")) {
+                linea.append('"').append(valor.replace("\"", "\"\"")).append('"');
+            } else {
+                linea.append(valor);
+            }
+        }
+        return linea.append(salto).toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
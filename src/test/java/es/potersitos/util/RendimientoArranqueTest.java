@@ -0,0 +1,97 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compara las tres formas de cargar el anuario al arrancar: analizar el CSV, leer el binario indexado y
+ * restaurar la caché de arranque. Cada medida incluye, como en {@link RepositorioPersonajes}, la tabla con
+ * las columnas del listado y el índice por slug e id.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+@Tag(DatosRendimiento.ETIQUETA)
+class RendimientoArranqueTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RendimientoArranqueTest.class);
+
+    /** Carpeta que hace de directorio del usuario. */
+    @TempDir
+    Path carpeta;
+
+    @Test
+    void csvFrenteABinarioYCache() throws Exception {
+        Path csv = DatosRendimiento.prepararCarpetaUsuario(carpeta, DatosRendimiento.FILAS);
+        BinarioIndexado.Firma firma = PersonajeCSVManager.firmaActual();
+
+        List<Map<String, String>> personajes = cargarCSV(csv);
+        double tiempoCsv = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES, () -> cargarCSV(csv));
+
+        List<List<Map<String, String>>> cargados = new ArrayList<>();
+        assertTrue(PersonajeBinarioManager.reconstruir(personajes, firma));
+        double tiempoBinario = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES, () -> {
+            List<Map<String, String>> leidos = PersonajeBinarioManager.leerSiVigente(nuevaTabla(), firma);
+            assertNotNull(leidos);
+            new IndicePersonajes(leidos);
+            cargados.add(leidos);
+        });
+
+        assertTrue(CacheArranque.guardar(personajes, firma));
+        double tiempoCache = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES, () -> {
+            CacheArranque.Contenido cache = CacheArranque.leerSiVigente(firma);
+            assertNotNull(cache);
+            cargados.add(cache.personajes());
+        });
+        for (List<Map<String, String>> leidos : cargados) comprobar(personajes, leidos);
+
+        logger.info("{} personajes ({} MB de CSV), carga con índice: CSV {} ms, binario {} ms, caché {} ms",
+                DatosRendimiento.FILAS, Files.size(csv) >> 20, String.format("%.0f", tiempoCsv),
+                String.format("%.0f", tiempoBinario), String.format("%.0f", tiempoCache));
+        PersonajeBinarioManager.cerrar();
+    }
+
+    /**
+     * Carga el CSV como al arrancar sin binario ni caché.
+     *
+     * @param csv archivo a cargar
+     * @return personajes leídos
+     */
+    private static List<Map<String, String>> cargarCSV(Path csv) {
+        List<Map<String, String>> personajes = PersonajeCSVManager.leerPersonajesCSV(csv.toString(), nuevaTabla());
+        new IndicePersonajes(personajes);
+        assertEquals(DatosRendimiento.FILAS, personajes.size());
+        return personajes;
+    }
+
+    private static TablaPersonajes nuevaTabla() {
+        return new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE, PersonajeCSVManager.COLUMNAS_LISTADO);
+    }
+
+    /**
+     * Comprueba que una carga tiene los mismos personajes que el CSV, mirando todas las columnas de algunos.
+     *
+     * @param esperados personajes leídos del CSV
+     * @param leidos    personajes de la otra carga
+     */
+    private static void comprobar(List<Map<String, String>> esperados, List<Map<String, String>> leidos) {
+        assertEquals(esperados.size(), leidos.size());
+        for (int i = 0; i < esperados.size(); i += 9973) {
+            assertEquals(new HashMap<>(esperados.get(i)), new HashMap<>(leidos.get(i)), "personaje " + i);
+        }
+    }
+}
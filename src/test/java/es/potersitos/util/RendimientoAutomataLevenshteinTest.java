@@ -0,0 +1,105 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Compara la búsqueda aproximada de palabras del nombre con {@link AutomataLevenshtein} sobre el diccionario
+ * ordenado con calcular la distancia a cada palabra del diccionario con {@link AutomataLevenshtein.Patron}
+ * (vectores de bits), y verifica que ambas encuentran las mismas palabras a la misma distancia. También mide
+ * la búsqueda aproximada completa en {@link IndiceTextos}, con puntuación.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+@Tag(DatosRendimiento.ETIQUETA)
+class RendimientoAutomataLevenshteinTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RendimientoAutomataLevenshteinTest.class);
+
+    /** Palabras mal escritas que se buscan. */
+    private static final String[] BUSQUEDAS = {"hermoine", "dumbeldore", "harrry", "granegr", "blak", "malfoi", "lovegod"};
+
+    /** Repeticiones de cada medida: duran milisegundos y con pocas el recorrido del autómata no llega a compilarse. */
+    private static final int REPETICIONES = Math.max(20, DatosRendimiento.REPETICIONES);
+
+    /** Carpeta temporal del CSV generado. */
+    @TempDir
+    Path carpeta;
+
+    @Test
+    void automataFrenteARecorridoDelDiccionario() throws Exception {
+        Path csv = DatosRendimiento.escribirCSV(carpeta.resolve("personajes.csv"), DatosRendimiento.FILAS);
+        List<Map<String, String>> personajes = PersonajeCSVManager.leerPersonajesCSV(csv.toString(),
+                new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE));
+
+        TreeSet<String> palabras = new TreeSet<>();
+        for (Map<String, String> p : personajes) {
+            IndiceTextos.trocear(IndiceTextos.plegar(p.get("name")), palabras::add);
+        }
+        String[] diccionario = palabras.toArray(new String[0]);
+        logger.info("{} personajes, {} palabras distintas en los nombres:", personajes.size(), diccionario.length);
+
+        double totalAutomata = 0, totalRecorrido = 0;
+        for (String busqueda : BUSQUEDAS) {
+            String palabra = IndiceTextos.plegar(busqueda);
+            int tolerancia = AutomataLevenshtein.tolerancia(palabra.length());
+            int[][] resultado = new int[2][];
+            double automata = DatosRendimiento.mejorTiempo(REPETICIONES,
+                    () -> resultado[0] = AutomataLevenshtein.buscar(diccionario, diccionario.length, palabra, tolerancia));
+            double recorrido = DatosRendimiento.mejorTiempo(REPETICIONES,
+                    () -> resultado[1] = recorrer(diccionario, palabra, tolerancia));
+            assertArrayEquals(resultado[1], resultado[0], busqueda);
+            totalAutomata += automata;
+            totalRecorrido += recorrido;
+            logger.info("  \"{}\" (tolerancia {}): {} palabras, autómata {} ms, recorrido {} ms", busqueda, tolerancia,
+                    resultado[0].length / 2, String.format("%.2f", automata), String.format("%.1f", recorrido));
+        }
+        logger.info("  media: autómata {} ms, recorrido {} ms", String.format("%.2f", totalAutomata / BUSQUEDAS.length),
+                String.format("%.1f", totalRecorrido / BUSQUEDAS.length));
+
+        IndiceTextos textos = new IndiceTextos(personajes);
+        for (String busqueda : BUSQUEDAS) {
+            ConsultaTexto consulta = ConsultaTexto.interpretar(busqueda + "~");
+            int[][] encontrados = new int[1][];
+            double completa = DatosRendimiento.mejorTiempo(REPETICIONES,
+                    () -> encontrados[0] = textos.buscar(consulta, personajes.size()));
+            logger.info("  búsqueda completa \"{}~\": {} personajes en {} ms", busqueda, encontrados[0].length,
+                    String.format("%.1f", completa));
+        }
+    }
+
+    /**
+     * Busca comparando la palabra con todas las del diccionario.
+     *
+     * @param diccionario palabras ordenadas
+     * @param palabra     palabra buscada
+     * @param tolerancia  distancia máxima
+     * @return pares (posición, distancia) en el orden del diccionario, como {@link AutomataLevenshtein#buscar}
+     */
+    private static int[] recorrer(String[] diccionario, String palabra, int tolerancia) {
+        AutomataLevenshtein.Patron patron = new AutomataLevenshtein.Patron(palabra);
+        int[] encontradas = new int[16];
+        int n = 0;
+        for (int i = 0; i < diccionario.length; i++) {
+            int distancia = patron.distancia(diccionario[i], tolerancia);
+            if (distancia <= tolerancia) {
+                if (n == encontradas.length) encontradas = Arrays.copyOf(encontradas, n * 2);
+                encontradas[n++] = i;
+                encontradas[n++] = distancia;
+            }
+        }
+        return Arrays.copyOf(encontradas, n);
+    }
+}
@@ -0,0 +1,91 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Compara evaluar un filtro fila a fila con {@link EjecutorFiltros}, que lo reparte entre sus hilos si
+ * compensa, con el bucle en un solo hilo que llenaba un {@link ArrayList}. Ambas formas deben dar los
+ * mismos personajes en el mismo orden. También mide leer una página del centro del resultado.
+ * <p>
+ * La tabla solo guarda en memoria las columnas del listado, como al arrancar la aplicación, así que los
+ * filtros por otras columnas las leen del CSV. El número de hilos se cambia con
+ * {@code -Dpotersitos.hilosFiltro=N}.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+@Tag(DatosRendimiento.ETIQUETA)
+class RendimientoEjecutorFiltrosTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RendimientoEjecutorFiltrosTest.class);
+
+    /** Personajes por página de la vista. */
+    private static final int POR_PAGINA = 20;
+
+    /** Repeticiones de los filtros que leen del disco. */
+    private static final int REPETICIONES_DISCO = Math.min(2, DatosRendimiento.REPETICIONES);
+
+    /** Carpeta temporal del CSV generado. */
+    @TempDir
+    Path carpeta;
+
+    @Test
+    void ejecutorFrenteABucle() throws Exception {
+        Path csv = DatosRendimiento.escribirCSV(carpeta.resolve("personajes.csv"), DatosRendimiento.FILAS);
+        List<Map<String, String>> personajes = PersonajeCSVManager.leerPersonajesCSV(csv.toString(),
+                new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE, PersonajeCSVManager.COLUMNAS_LISTADO));
+        logger.info("{} personajes, {} procesadores:", personajes.size(), Runtime.getRuntime().availableProcessors());
+
+        String harry = IndiceNombres.normalizar("harry");
+        medir("nombre con \"harry\"", personajes, p -> IndiceNombres.normalizar(p.get("name")).contains(harry),
+                DatosRendimiento.REPETICIONES);
+        ConsultaTexto auror = ConsultaTexto.interpretar("job:auror");
+        medir("job:auror", personajes, auror::cumple, REPETICIONES_DISCO);
+    }
+
+    /**
+     * Mide un filtro de las dos formas y comprueba que coinciden.
+     *
+     * @param caso         descripción del filtro
+     * @param personajes   lista completa
+     * @param filtro       condición de cada personaje
+     * @param repeticiones veces que se mide cada forma
+     * @throws Exception si falla la medida
+     */
+    private static void medir(String caso, List<Map<String, String>> personajes, Predicate<Map<String, String>> filtro,
+                              int repeticiones) throws Exception {
+        List<List<Map<String, String>>> resultados = new ArrayList<>(List.of(List.of(), List.of()));
+        double ejecutor = DatosRendimiento.mejorTiempo(repeticiones,
+                () -> resultados.set(0, EjecutorFiltros.filtrar(personajes, filtro, () -> false)));
+        double bucle = DatosRendimiento.mejorTiempo(repeticiones, () -> {
+            List<Map<String, String>> seleccionados = new ArrayList<>();
+            for (Map<String, String> p : personajes) {
+                if (filtro.test(p)) seleccionados.add(p);
+            }
+            resultados.set(1, seleccionados);
+        });
+
+        List<Map<String, String>> esperados = resultados.get(1), obtenidos = resultados.get(0);
+        assertEquals(esperados.size(), obtenidos.size(), caso);
+        for (int i = 0; i < esperados.size(); i++) assertSame(esperados.get(i), obtenidos.get(i), caso);
+        int centro = Math.max(0, obtenidos.size() / 2 - POR_PAGINA / 2);
+        double pagina = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES, () -> {
+            for (int i = centro; i < Math.min(obtenidos.size(), centro + POR_PAGINA); i++) obtenidos.get(i).get("name");
+        });
+        logger.info("  {}: {} resultados, ejecutor {} ms, bucle {} ms, página del centro {} ms", caso, esperados.size(),
+                String.format("%.0f", ejecutor), String.format("%.0f", bucle), String.format("%.3f", pagina));
+    }
+}
@@ -0,0 +1,101 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Compara el filtro por casa, nacionalidad, especie y género con los mapas de bits de
+ * {@link FacetasPersonajes} con recorrer la lista comprobando cada personaje con
+ * {@link FacetasPersonajes#cumple(int[], Map)}. Cada medida incluye pedir la última página del resultado,
+ * y ambas formas deben dar los mismos personajes en el mismo orden.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+@Tag(DatosRendimiento.ETIQUETA)
+class RendimientoFacetasTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RendimientoFacetasTest.class);
+
+    /** Personajes por página de la vista. */
+    private static final int POR_PAGINA = 20;
+
+    /** Carpeta temporal del CSV generado. */
+    @TempDir
+    Path carpeta;
+
+    @Test
+    void mapasDeBitsFrenteARecorrido() throws Exception {
+        Path csv = DatosRendimiento.escribirCSV(carpeta.resolve("personajes.csv"), DatosRendimiento.FILAS);
+        List<Map<String, String>> personajes = PersonajeCSVManager.leerPersonajesCSV(csv.toString(),
+                new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE, PersonajeCSVManager.COLUMNAS_LISTADO));
+        IndiceNombres nombres = new IndiceNombres(personajes);
+        FacetasPersonajes facetas = new FacetasPersonajes(personajes);
+
+        logger.info("{} personajes, filtro y última página:", personajes.size());
+        medir("solo Gryffindor", personajes, nombres, facetas, null, new int[]{1, 0, 0, 0});
+        medir("las 4 facetas, todas marcadas", personajes, nombres, facetas, null, new int[]{15, 15, 15, 3});
+        medir("\"black\" e irlandeses", personajes, nombres, facetas, "black", new int[]{0, 2, 0, 0});
+        medir("\"ha\", humanos y mujeres", personajes, nombres, facetas, "ha", new int[]{0, 0, 1, 2});
+    }
+
+    /**
+     * Mide un filtro de las dos formas y comprueba que coinciden.
+     *
+     * @param caso       descripción del filtro
+     * @param personajes lista completa
+     * @param nombres    índice de nombres de la lista
+     * @param facetas    mapas de las facetas de la lista
+     * @param nombre     texto buscado en el nombre, o {@code null}
+     * @param seleccion  opciones marcadas de cada faceta
+     * @throws Exception si falla la medida
+     */
+    private static void medir(String caso, List<Map<String, String>> personajes, IndiceNombres nombres,
+                              FacetasPersonajes facetas, String nombre, int[] seleccion) throws Exception {
+        String texto = nombre == null ? null : IndiceNombres.normalizar(nombre);
+        List<List<Map<String, String>>> resultados = new ArrayList<>(List.of(List.of(), List.of()));
+
+        double conMapas = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES, () -> {
+            long[] documentos = facetas.filtrar(seleccion);
+            if (texto != null) {
+                long[] porNombre = nombres.buscar(texto);
+                for (int i = 0; i < documentos.length; i++) documentos[i] &= i < porNombre.length ? porNombre[i] : 0;
+            }
+            List<Map<String, String>> seleccionados = new SeleccionPersonajes(personajes, facetas.aPosiciones(documentos));
+            ultimaPagina(seleccionados);
+            resultados.set(0, seleccionados);
+        });
+        double recorrido = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES, () -> {
+            List<Map<String, String>> seleccionados = new ArrayList<>();
+            for (Map<String, String> p : personajes) {
+                if (texto != null && !IndiceNombres.normalizar(p.get("name")).contains(texto)) continue;
+                if (FacetasPersonajes.cumple(seleccion, p)) seleccionados.add(p);
+            }
+            ultimaPagina(seleccionados);
+            resultados.set(1, seleccionados);
+        });
+
+        List<Map<String, String>> esperados = resultados.get(1), obtenidos = resultados.get(0);
+        assertEquals(esperados.size(), obtenidos.size(), caso);
+        for (int i = 0; i < esperados.size(); i++) assertSame(esperados.get(i), obtenidos.get(i), caso);
+        logger.info("  {}: {} resultados, mapas de bits {} ms, recorrido {} ms", caso, esperados.size(),
+                String.format("%.2f", conMapas), String.format("%.1f", recorrido));
+    }
+
+    private static void ultimaPagina(List<Map<String, String>> seleccionados) {
+        for (int i = Math.max(0, seleccionados.size() - POR_PAGINA); i < seleccionados.size(); i++) {
+            seleccionados.get(i).get("name");
+        }
+    }
+}
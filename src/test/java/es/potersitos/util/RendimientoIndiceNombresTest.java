@@ -0,0 +1,82 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compara la búsqueda por subcadena en el nombre con {@link IndiceNombres} con recorrer todos los
+ * personajes comprobando {@code contains} sobre el nombre normalizado, y verifica que ambas encuentran
+ * exactamente los mismos personajes.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+@Tag(DatosRendimiento.ETIQUETA)
+class RendimientoIndiceNombresTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RendimientoIndiceNombresTest.class);
+
+    /** Búsquedas medidas: de una y dos letras (unión por prefijo) y de tres o más (trigramas). */
+    private static final String[] BUSQUEDAS = {"a", "ha", "harry", "black", "us bl", "dumbledore"};
+
+    /** Carpeta temporal del CSV generado. */
+    @TempDir
+    Path carpeta;
+
+    @Test
+    void indiceDeTrigramasFrenteARecorrido() throws Exception {
+        Path csv = DatosRendimiento.escribirCSV(carpeta.resolve("personajes.csv"), DatosRendimiento.FILAS);
+        List<Map<String, String>> personajes = PersonajeCSVManager.leerPersonajesCSV(csv.toString(),
+                new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE, PersonajeCSVManager.COLUMNAS_LISTADO));
+
+        long inicio = System.nanoTime();
+        IndiceNombres indice = new IndiceNombres(personajes);
+        double construccion = (System.nanoTime() - inicio) / 1e6;
+        logger.info("{} personajes: índice de trigramas construido en {} ms", personajes.size(), String.format("%.0f", construccion));
+
+        for (String busqueda : BUSQUEDAS) {
+            String texto = IndiceNombres.normalizar(busqueda);
+            long[][] resultado = new long[2][];
+            double conIndice = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES,
+                    () -> resultado[0] = indice.buscar(texto));
+            double recorrido = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES,
+                    () -> resultado[1] = recorrer(personajes, texto));
+
+            long[] esperado = resultado[1];
+            assertArrayEquals(esperado, Arrays.copyOf(resultado[0], esperado.length), busqueda);
+            int encontrados = 0;
+            for (long palabra : esperado) encontrados += Long.bitCount(palabra);
+            assertEquals(encontrados, Arrays.stream(resultado[0]).mapToInt(Long::bitCount).sum(), busqueda);
+            logger.info("  \"{}\": {} resultados, índice {} ms, recorrido {} ms", busqueda, encontrados,
+                    String.format("%.2f", conIndice), String.format("%.1f", recorrido));
+        }
+    }
+
+    /**
+     * Busca recorriendo todos los personajes, como antes de tener el índice.
+     *
+     * @param personajes lista completa (la posición de cada personaje es su documento en el índice)
+     * @param texto      texto normalizado
+     * @return un bit por personaje encontrado
+     */
+    private static long[] recorrer(List<Map<String, String>> personajes, String texto) {
+        long[] marcas = new long[(personajes.size() + 63) >>> 6];
+        for (int i = 0; i < personajes.size(); i++) {
+            if (IndiceNombres.normalizar(personajes.get(i).get("name")).contains(texto)) {
+                marcas[i >>> 6] |= 1L << i;
+            }
+        }
+        return marcas;
+    }
+}
@@ -0,0 +1,104 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Compara la búsqueda en las columnas de texto con {@link IndiceTextos} (más, en las consultas sin campos,
+ * los nombres que contienen el texto, como hace {@link IndicePersonajes}) con recorrer la lista comprobando
+ * cada personaje con {@link ConsultaTexto#cumple(Map)}. Ambas deben encontrar los mismos personajes.
+ * <p>
+ * La tabla solo guarda en memoria las columnas del listado, como al arrancar la aplicación, así que el
+ * recorrido y la construcción del índice leen del CSV las columnas de lista.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+@Tag(DatosRendimiento.ETIQUETA)
+class RendimientoIndiceTextosTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RendimientoIndiceTextosTest.class);
+
+    /** Consultas medidas: sin campo, con campo y de varias palabras. */
+    private static final String[] CONSULTAS = {"harry", "job:auror", "title:prefect", "wand:rowan dragon", "head", "black"};
+
+    /** Repeticiones del recorrido, que lee las columnas de lista del disco. */
+    private static final int REPETICIONES_RECORRIDO = Math.min(2, DatosRendimiento.REPETICIONES);
+
+    /** Carpeta temporal del CSV generado. */
+    @TempDir
+    Path carpeta;
+
+    @Test
+    void indiceDeTextosFrenteARecorrido() throws Exception {
+        Path csv = DatosRendimiento.escribirCSV(carpeta.resolve("personajes.csv"), DatosRendimiento.FILAS);
+        List<Map<String, String>> personajes = PersonajeCSVManager.leerPersonajesCSV(csv.toString(),
+                new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE, PersonajeCSVManager.COLUMNAS_LISTADO));
+
+        IndiceNombres nombres = new IndiceNombres(personajes);
+        long inicio = System.nanoTime();
+        IndiceTextos textos = new IndiceTextos(personajes);
+        double construccion = (System.nanoTime() - inicio) / 1e6;
+        logger.info("{} personajes: índice de textos construido en {} ms", personajes.size(), String.format("%.0f", construccion));
+
+        for (String texto : CONSULTAS) {
+            ConsultaTexto consulta = ConsultaTexto.interpretar(texto);
+            long[][] resultado = new long[2][];
+            double conIndice = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES,
+                    () -> resultado[0] = buscar(nombres, textos, consulta));
+            double recorrido = DatosRendimiento.mejorTiempo(REPETICIONES_RECORRIDO,
+                    () -> resultado[1] = recorrer(personajes, consulta));
+
+            assertArrayEquals(resultado[1], resultado[0], texto);
+            int encontrados = 0;
+            for (long palabra : resultado[1]) encontrados += Long.bitCount(palabra);
+            logger.info("  \"{}\": {} resultados, índice {} ms, recorrido {} ms", texto, encontrados,
+                    String.format("%.1f", conIndice), String.format("%.0f", recorrido));
+        }
+    }
+
+    /**
+     * Busca con los índices, como {@link IndicePersonajes} al filtrar por texto.
+     *
+     * @param nombres  índice de nombres
+     * @param textos   índice de textos con los mismos documentos
+     * @param consulta consulta interpretada
+     * @return un bit por documento encontrado
+     */
+    private static long[] buscar(IndiceNombres nombres, IndiceTextos textos, ConsultaTexto consulta) {
+        int total = nombres.numeroDocumentos();
+        long[] marcas = new long[(total + 63) >>> 6];
+        if (!consulta.terminos().isEmpty()) {
+            for (int d : textos.buscar(consulta, total)) marcas[d >>> 6] |= 1L << d;
+        }
+        if (!consulta.conCampos() && !consulta.aproximada()) {
+            long[] porNombre = nombres.buscar(consulta.nombre());
+            for (int i = 0; i < porNombre.length && i < marcas.length; i++) marcas[i] |= porNombre[i];
+        }
+        return marcas;
+    }
+
+    /**
+     * Busca recorriendo la lista, como cuando aún no hay índice de textos.
+     *
+     * @param personajes lista completa (la posición de cada personaje es su documento)
+     * @param consulta   consulta interpretada
+     * @return un bit por personaje encontrado
+     */
+    private static long[] recorrer(List<Map<String, String>> personajes, ConsultaTexto consulta) {
+        long[] marcas = new long[(personajes.size() + 63) >>> 6];
+        for (int i = 0; i < personajes.size(); i++) {
+            if (consulta.cumple(personajes.get(i))) marcas[i >>> 6] |= 1L << i;
+        }
+        return marcas;
+    }
+}
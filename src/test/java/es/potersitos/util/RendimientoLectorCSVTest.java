@@ -0,0 +1,73 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compara la lectura del CSV con {@link LectorCSV} con la que había antes: {@code readLine} y un
+ * {@code split} con una expresión regular que busca las comas fuera de comillas.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+@Tag(DatosRendimiento.ETIQUETA)
+class RendimientoLectorCSVTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RendimientoLectorCSVTest.class);
+
+    /** La expresión con la que se partían las líneas antes de {@link LectorCSV}. */
+    private static final Pattern COMAS_FUERA_DE_COMILLAS = Pattern.compile(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)");
+
+    /** Carpeta temporal del CSV generado. */
+    @TempDir
+    Path carpeta;
+
+    @Test
+    void lectorFrenteASplitConExpresionRegular() throws Exception {
+        Path csv = DatosRendimiento.escribirCSV(carpeta.resolve("personajes.csv"), DatosRendimiento.FILAS);
+        int columnas = PersonajeCSVManager.CLAVES_PERSONAJE.length;
+
+        int[] registros = new int[1];
+        double lector = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES, () -> {
+            registros[0] = 0;
+            try (InputStream in = Files.newInputStream(csv); LectorCSV l = new LectorCSV(in)) {
+                l.siguienteRegistro();
+                String[] r;
+                while ((r = l.siguienteRegistro()) != null) {
+                    assertEquals(columnas, r.length);
+                    registros[0]++;
+                }
+            }
+        });
+        assertEquals(DatosRendimiento.FILAS, registros[0]);
+
+        int[] lineas = new int[1];
+        double regex = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES, () -> {
+            lineas[0] = 0;
+            try (BufferedReader br = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+                br.readLine();
+                String linea;
+                while ((linea = br.readLine()) != null) {
+                    COMAS_FUERA_DE_COMILLAS.split(linea, -1);
+                    lineas[0]++;
+                }
+            }
+        });
+        assertEquals(DatosRendimiento.FILAS, lineas[0]);
+
+        logger.info("{} personajes ({} MB): LectorCSV {} ms, split con expresión regular {} ms",
+                DatosRendimiento.FILAS, Files.size(csv) >> 20, String.format("%.0f", lector), String.format("%.0f", regex));
+    }
+}
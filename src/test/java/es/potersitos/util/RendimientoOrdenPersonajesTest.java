@@ -0,0 +1,152 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Compara ordenar la vista con la permutación de {@link OrdenPersonajes} con ordenar con un comparador que
+ * compara los textos con {@link Collator} y las fechas leyéndolas en cada comparación. Mide la primera
+ * ordenación por una columna (construir la permutación), las siguientes sobre todos los personajes en los
+ * dos sentidos y la de un resultado filtrado, y verifica que ambas formas dan el mismo orden.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+@Tag(DatosRendimiento.ETIQUETA)
+class RendimientoOrdenPersonajesTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RendimientoOrdenPersonajesTest.class);
+
+    /** Columnas medidas: de texto con muchos valores, de texto con pocos y de fechas. */
+    private static final String[] COLUMNAS = {"name", "house", "born"};
+
+    /** Idioma de la comparación de textos. */
+    private static final Locale IDIOMA = Locale.forLanguageTag("es");
+
+    /** Repeticiones de lo que tarda segundos: la primera ordenación y el comparador. */
+    private static final int REPETICIONES_LENTAS = Math.min(2, DatosRendimiento.REPETICIONES);
+
+    /** Carpeta temporal del CSV generado. */
+    @TempDir
+    Path carpeta;
+
+    @Test
+    void permutacionFrenteAComparador() throws Exception {
+        Path csv = DatosRendimiento.escribirCSV(carpeta.resolve("personajes.csv"), DatosRendimiento.FILAS);
+        List<Map<String, String>> personajes = PersonajeCSVManager.leerPersonajesCSV(csv.toString(),
+                new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE));
+        int n = personajes.size();
+        long[] todos = new long[(n + 63) >>> 6];
+        long[] gryffindor = new long[todos.length];
+        for (int i = 0; i < n; i++) {
+            todos[i >>> 6] |= 1L << i;
+            if ("Gryffindor".equals(personajes.get(i).get("house"))) gryffindor[i >>> 6] |= 1L << i;
+        }
+        logger.info("{} personajes:", n);
+
+        for (String columna : COLUMNAS) {
+            CriterioOrden criterio = new CriterioOrden(columna, true, IDIOMA);
+            OrdenPersonajes[] orden = new OrdenPersonajes[1];
+            int[][] resultado = new int[3][];
+            double primera = DatosRendimiento.mejorTiempo(REPETICIONES_LENTAS, () -> {
+                orden[0] = new OrdenPersonajes(personajes, criterio);
+                resultado[0] = orden[0].ordenar(todos, true);
+            });
+            double ascendente = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES,
+                    () -> resultado[0] = orden[0].ordenar(todos, true));
+            double descendente = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES,
+                    () -> resultado[1] = orden[0].ordenar(todos, false));
+            double filtrado = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES,
+                    () -> resultado[2] = orden[0].ordenar(gryffindor, true));
+
+            int[][] esperado = new int[3][];
+            double comparador = DatosRendimiento.mejorTiempo(REPETICIONES_LENTAS,
+                    () -> esperado[0] = comparar(personajes, columna, todos));
+            double comparadorFiltrado = DatosRendimiento.mejorTiempo(REPETICIONES_LENTAS,
+                    () -> esperado[2] = comparar(personajes, columna, gryffindor));
+            esperado[1] = invertir(personajes, columna, esperado[0]);
+
+            assertArrayEquals(esperado[0], resultado[0], columna + " ascendente");
+            assertArrayEquals(esperado[1], resultado[1], columna + " descendente");
+            assertArrayEquals(esperado[2], resultado[2], columna + " Gryffindor");
+            logger.info("  {}: primera {} ms; después ascendente {} ms, descendente {} ms, Gryffindor {} ms; "
+                            + "comparador {} ms, Gryffindor {} ms", columna, String.format("%.0f", primera),
+                    String.format("%.1f", ascendente), String.format("%.1f", descendente),
+                    String.format("%.1f", filtrado), String.format("%.0f", comparador),
+                    String.format("%.0f", comparadorFiltrado));
+        }
+    }
+
+    /**
+     * Ordena los documentos marcados con un comparador, como antes de tener las permutaciones: textos con
+     * {@link Collator}, fechas leídas en cada comparación y los personajes sin valor al final. La ordenación
+     * es estable, así que los empates quedan por posición.
+     *
+     * @param personajes lista completa (la posición de cada personaje es su documento)
+     * @param columna    columna ordenada
+     * @param documentos un bit por documento que se ordena
+     * @return documentos en orden ascendente
+     */
+    private static int[] comparar(List<Map<String, String>> personajes, String columna, long[] documentos) {
+        Integer[] marcados = new Integer[personajes.size()];
+        int n = 0;
+        for (int i = 0; i < personajes.size(); i++) {
+            if ((documentos[i >>> 6] & (1L << i)) != 0) marcados[n++] = i;
+        }
+        Comparator<Integer> comparador;
+        if (OrdenPersonajes.esFecha(columna)) {
+            comparador = Comparator.comparingInt(d -> OrdenPersonajes.fecha(valor(personajes, d, columna)));
+        } else {
+            Collator collator = Collator.getInstance(IDIOMA);
+            comparador = (a, b) -> {
+                String va = valor(personajes, a, columna), vb = valor(personajes, b, columna);
+                if (va.isEmpty() || vb.isEmpty()) return Boolean.compare(va.isEmpty(), vb.isEmpty());
+                return collator.compare(va, vb);
+            };
+        }
+        Arrays.sort(marcados, 0, n, comparador);
+        int[] resultado = new int[n];
+        for (int i = 0; i < n; i++) resultado[i] = marcados[i];
+        return resultado;
+    }
+
+    /**
+     * Da el orden descendente de {@link OrdenPersonajes} a partir del ascendente: invierte los personajes con
+     * valor y deja al final, en el mismo orden, los que no tienen.
+     *
+     * @param personajes lista completa
+     * @param columna    columna ordenada
+     * @param ascendente documentos en orden ascendente
+     * @return documentos en orden descendente
+     */
+    private static int[] invertir(List<Map<String, String>> personajes, String columna, int[] ascendente) {
+        int conValor = 0;
+        while (conValor < ascendente.length && tieneValor(personajes, ascendente[conValor], columna)) conValor++;
+        int[] resultado = ascendente.clone();
+        for (int i = 0; i < conValor; i++) resultado[i] = ascendente[conValor - 1 - i];
+        return resultado;
+    }
+
+    private static boolean tieneValor(List<Map<String, String>> personajes, int documento, String columna) {
+        String v = valor(personajes, documento, columna);
+        return OrdenPersonajes.esFecha(columna) ? OrdenPersonajes.fecha(v) != OrdenPersonajes.SIN_VALOR : !v.isEmpty();
+    }
+
+    private static String valor(List<Map<String, String>> personajes, int documento, String columna) {
+        String v = personajes.get(documento).get(columna);
+        return v == null ? "" : v.trim();
+    }
+}
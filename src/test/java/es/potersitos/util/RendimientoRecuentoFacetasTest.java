@@ -0,0 +1,104 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Compara el recuento de resultados de cada casilla de filtro con {@link FacetasPersonajes#contar(int[], long[])},
+ * que lo hace en una sola pasada sobre los mapas de bits, con recorrer la lista una vez por opción aplicando
+ * el filtro que quedaría al marcar solo esa opción en su faceta. Ambas formas deben dar los mismos recuentos.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+@Tag(DatosRendimiento.ETIQUETA)
+class RendimientoRecuentoFacetasTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RendimientoRecuentoFacetasTest.class);
+
+    /** Opciones de cada faceta, como en {@link FacetasPersonajes}. */
+    private static final int[] OPCIONES = {4, 4, 4, 2};
+
+    /** Repeticiones del recuento en una pasada: dura milisegundos y con pocas no llega a compilarse. */
+    private static final int REPETICIONES_RECUENTO = Math.max(50, DatosRendimiento.REPETICIONES);
+
+    /** Carpeta temporal del CSV generado. */
+    @TempDir
+    Path carpeta;
+
+    @Test
+    void recuentoEnUnaPasadaFrenteARecorridoPorOpcion() throws Exception {
+        Path csv = DatosRendimiento.escribirCSV(carpeta.resolve("personajes.csv"), DatosRendimiento.FILAS);
+        List<Map<String, String>> personajes = PersonajeCSVManager.leerPersonajesCSV(csv.toString(),
+                new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE, PersonajeCSVManager.COLUMNAS_LISTADO));
+        IndiceNombres nombres = new IndiceNombres(personajes);
+        FacetasPersonajes facetas = new FacetasPersonajes(personajes);
+
+        logger.info("{} personajes, recuento de las 14 casillas:", personajes.size());
+        medir("sin filtro", personajes, nombres, facetas, null, new int[]{0, 0, 0, 0});
+        medir("Gryffindor y Slytherin", personajes, nombres, facetas, null, new int[]{3, 0, 0, 0});
+        medir("\"black\", británicos y hombres", personajes, nombres, facetas, "black", new int[]{0, 1, 0, 1});
+        medir("\"ha\" y todas marcadas", personajes, nombres, facetas, "ha", new int[]{15, 15, 15, 3});
+    }
+
+    /**
+     * Mide un recuento de las dos formas y comprueba que coinciden.
+     *
+     * @param caso       descripción del filtro
+     * @param personajes lista completa
+     * @param nombres    índice de nombres de la lista
+     * @param facetas    mapas de las facetas de la lista
+     * @param nombre     texto buscado en el nombre, o {@code null}
+     * @param seleccion  opciones marcadas de cada faceta
+     * @throws Exception si falla la medida
+     */
+    private static void medir(String caso, List<Map<String, String>> personajes, IndiceNombres nombres,
+                              FacetasPersonajes facetas, String nombre, int[] seleccion) throws Exception {
+        String texto = nombre == null ? null : IndiceNombres.normalizar(nombre);
+        int[][][] recuentos = new int[2][][];
+
+        // La vista cuenta con la búsqueda por nombre que acaba de hacer el filtro, que IndicePersonajes guarda
+        long[] porNombre = texto == null ? null : nombres.buscar(texto);
+        double unaPasada = DatosRendimiento.mejorTiempo(REPETICIONES_RECUENTO,
+                () -> recuentos[0] = facetas.contar(seleccion, porNombre));
+        double porOpcion = DatosRendimiento.mejorTiempo(Math.min(2, DatosRendimiento.REPETICIONES),
+                () -> recuentos[1] = recorrer(personajes, texto, seleccion));
+
+        for (int f = 0; f < OPCIONES.length; f++) assertArrayEquals(recuentos[1][f], recuentos[0][f], caso + ", faceta " + f);
+        logger.info("  {}: una pasada {} ms, un recorrido por opción {} ms", caso,
+                String.format("%.2f", unaPasada), String.format("%.0f", porOpcion));
+    }
+
+    /**
+     * Cuenta cada opción recorriendo la lista con el filtro que quedaría al marcar solo esa opción.
+     *
+     * @param personajes lista completa
+     * @param texto      texto normalizado buscado en el nombre, o {@code null}
+     * @param seleccion  opciones marcadas de cada faceta
+     * @return recuentos por faceta y opción
+     */
+    private static int[][] recorrer(List<Map<String, String>> personajes, String texto, int[] seleccion) {
+        int[][] recuentos = new int[OPCIONES.length][];
+        for (int f = 0; f < OPCIONES.length; f++) {
+            recuentos[f] = new int[OPCIONES[f]];
+            for (int o = 0; o < OPCIONES[f]; o++) {
+                int[] soloEsta = seleccion.clone();
+                soloEsta[f] = 1 << o;
+                for (Map<String, String> p : personajes) {
+                    if (texto != null && !IndiceNombres.normalizar(p.get("name")).contains(texto)) continue;
+                    if (FacetasPersonajes.cumple(soloEsta, p)) recuentos[f][o]++;
+                }
+            }
+        }
+        return recuentos;
+    }
+}
@@ -0,0 +1,101 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compara la memoria que ocupan los personajes cargados en {@link TablaPersonajes} (con su
+ * {@link IndicePersonajes}) con la de guardar cada fila en un {@link HashMap} e indexar slug e id con
+ * otros dos {@code HashMap}, como se hacía antes.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+@Tag(DatosRendimiento.ETIQUETA)
+class RendimientoTablaPersonajesTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RendimientoTablaPersonajesTest.class);
+
+    /** Carpeta temporal del CSV generado. */
+    @TempDir
+    Path carpeta;
+
+    @Test
+    void tablaPorColumnasFrenteAUnMapaPorFila() throws Exception {
+        Path csv = DatosRendimiento.escribirCSV(carpeta.resolve("personajes.csv"), DatosRendimiento.FILAS);
+        String[] claves = PersonajeCSVManager.CLAVES_PERSONAJE;
+
+        long base = DatosRendimiento.heapUsado();
+        long inicio = System.nanoTime();
+        List<Map<String, String>> mapas = new ArrayList<>();
+        Map<String, Map<String, String>> porSlug = new HashMap<>(), porId = new HashMap<>();
+        try (InputStream in = Files.newInputStream(csv); LectorCSV l = new LectorCSV(in)) {
+            l.siguienteRegistro();
+            String[] r;
+            while ((r = l.siguienteRegistro()) != null) {
+                Map<String, String> p = new HashMap<>();
+                for (int c = 0; c < claves.length; c++) p.put(claves[c], r[c]);
+                mapas.add(p);
+                porSlug.put(p.get("slug"), p);
+                porId.put(p.get("id"), p);
+            }
+        }
+        double cargaMapas = (System.nanoTime() - inicio) / 1e6;
+        long heapMapas = DatosRendimiento.heapUsado() - base;
+        assertEquals(DatosRendimiento.FILAS, mapas.size());
+        Reference.reachabilityFence(porSlug);
+        Reference.reachabilityFence(porId);
+        mapas = null;
+        porSlug = porId = null;
+
+        Medida completa = medir(csv, new TablaPersonajes(claves));
+        Medida listado = medir(csv, new TablaPersonajes(claves, PersonajeCSVManager.COLUMNAS_LISTADO));
+
+        int filas = DatosRendimiento.FILAS;
+        logger.info("{} personajes, heap tras cargar e indexar:", filas);
+        logger.info("  HashMap por fila:          {} MB ({} B/fila), carga {} ms",
+                heapMapas >> 20, heapMapas / filas, String.format("%.0f", cargaMapas));
+        logger.info("  tabla, todas las columnas: {} MB ({} B/fila), carga {} ms",
+                completa.heap >> 20, completa.heap / filas, String.format("%.0f", completa.carga));
+        logger.info("  tabla, columnas del listado: {} MB ({} B/fila), carga {} ms",
+                listado.heap >> 20, listado.heap / filas, String.format("%.0f", listado.carga));
+    }
+
+    /**
+     * Carga el CSV en la tabla, construye su índice y mide el heap que retienen.
+     *
+     * @param csv   archivo a cargar
+     * @param tabla tabla vacía
+     * @return memoria retenida y tiempo de carga
+     * @throws InterruptedException si se interrumpe la medida del heap
+     */
+    private static Medida medir(Path csv, TablaPersonajes tabla) throws InterruptedException {
+        long base = DatosRendimiento.heapUsado();
+        long inicio = System.nanoTime();
+        List<Map<String, String>> personajes = PersonajeCSVManager.leerPersonajesCSV(csv.toString(), tabla);
+        IndicePersonajes indice = new IndicePersonajes(personajes);
+        double carga = (System.nanoTime() - inicio) / 1e6;
+        long heap = DatosRendimiento.heapUsado() - base;
+        assertEquals(DatosRendimiento.FILAS, personajes.size());
+        assertEquals("slug-7", indice.findById("id-7").get("slug"));
+        return new Medida(heap, carga);
+    }
+
+    /** Memoria retenida (bytes) y tiempo de carga (ms) de una forma de guardar los personajes. */
+    private record Medida(long heap, double carga) {
+    }
+}
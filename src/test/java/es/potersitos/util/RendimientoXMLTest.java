@@ -0,0 +1,195 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compara el mantenimiento de {@code todosPersonajes.xml} en streaming con el que había antes, que cargaba
+ * el documento entero con DOM y lo volvía a escribir con un {@link Transformer} en cada cambio.
+ * <p>
+ * Mide la lectura completa, el alta (que solo escribe el final del archivo) y las modificaciones y bajas,
+ * que solo anotan el XML como pendiente y se llevan a él en la compactación. Al final comprueba que,
+ * tras {@link PersonajeCSVManager#cerrar()}, el XML coincide con el CSV.
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+@Tag(DatosRendimiento.ETIQUETA)
+class RendimientoXMLTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RendimientoXMLTest.class);
+
+    /** Modificaciones que se hacen para medir su tiempo medio. */
+    private static final int MODIFICACIONES = 50;
+
+    /** Repeticiones de las operaciones con DOM, que tardan segundos cada una. */
+    private static final int REPETICIONES_DOM = Math.min(3, DatosRendimiento.REPETICIONES);
+
+    /** Carpeta que hace de directorio del usuario. */
+    @TempDir
+    Path carpeta;
+
+    @Test
+    void streamingFrenteADom() throws Exception {
+        DatosRendimiento.prepararCarpetaUsuario(carpeta, DatosRendimiento.FILAS);
+        List<Map<String, String>> personajes = PersonajeCSVManager.leerTodosLosPersonajes();
+        int filas = personajes.size();
+        assertEquals(DatosRendimiento.FILAS, filas);
+
+        double reescritura = DatosRendimiento.mejorTiempo(REPETICIONES_DOM,
+                () -> assertTrue(PersonajeXMLManager.reconstruir(personajes)));
+        Path xml = PersonajeXMLManager.obtenerRutaXML();
+        Path dom = Files.copy(xml, carpeta.resolve("dom.xml"), StandardCopyOption.REPLACE_EXISTING);
+
+        int[] leidos = new int[1];
+        double lecturaStax = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES, () -> {
+            leidos[0] = 0;
+            PersonajeXMLManager.leerPersonajes(v -> leidos[0]++);
+        });
+        assertEquals(filas, leidos[0]);
+        double lecturaDom = DatosRendimiento.mejorTiempo(REPETICIONES_DOM, () -> assertEquals(filas, leerDom(dom)));
+
+        Random r = new Random(9);
+        int[] altas = new int[1];
+        double altaStax = DatosRendimiento.mejorTiempo(DatosRendimiento.REPETICIONES, () -> {
+            String[] valores = DatosRendimiento.personaje(r, filas + altas[0]++);
+            PersonajeXMLManager.prepararAlta(valores, personajes, personajes).confirmar();
+        });
+        double altaDom = DatosRendimiento.mejorTiempo(REPETICIONES_DOM,
+                () -> anadirDom(dom, DatosRendimiento.personaje(r, 2 * filas + altas[0]++)));
+        int[] bajas = new int[1];
+        double bajaDom = DatosRendimiento.mejorTiempo(REPETICIONES_DOM,
+                () -> assertTrue(quitarDom(dom, "slug-" + (filas - 1 - bajas[0]++))));
+
+        // Las altas de la medida solo se escribieron en el XML: se vuelve a partir del CSV
+        assertTrue(PersonajeXMLManager.reconstruir(personajes));
+        double modificacion = 0, peorModificacion = 0;
+        for (int i = 0; i < MODIFICACIONES; i++) {
+            Map<String, String> datos = new HashMap<>(RepositorioPersonajes.getInstancia().findBySlug("slug-" + i * 7).orElseThrow());
+            datos.put("wiki", "https://x/editado/" + i);
+            long inicio = System.nanoTime();
+            assertEquals(PersonajeCSVManager.ResultadoActualizacion.ACTUALIZADO, PersonajeCSVManager.actualizarPersonaje(datos));
+            double ms = (System.nanoTime() - inicio) / 1e6;
+            modificacion += ms / MODIFICACIONES;
+            peorModificacion = Math.max(peorModificacion, ms);
+        }
+        long inicio = System.nanoTime();
+        assertTrue(PersonajeCSVManager.eliminarPersonajePorSlug("slug-3"));
+        double baja = (System.nanoTime() - inicio) / 1e6;
+
+        PersonajeCSVManager.cerrar();
+        assertFalse(PersonajeXMLManager.pendiente());
+        List<String[]> enXml = new ArrayList<>();
+        PersonajeXMLManager.leerPersonajes(enXml::add);
+        List<Map<String, String>> enCsv = PersonajeCSVManager.leerTodosLosPersonajes();
+        assertEquals(enCsv.size(), enXml.size());
+        for (int i = 0; i < enCsv.size(); i++) {
+            assertEquals(List.of(PersonajeCSVManager.aValores(enCsv.get(i))), List.of(enXml.get(i)), "personaje " + i);
+        }
+
+        logger.info("{} personajes ({} MB de XML):", filas, Files.size(xml) >> 20);
+        logger.info("  leer todo:    DOM {} ms, StAX {} ms", f(lecturaDom), f(lecturaStax));
+        logger.info("  alta:         DOM {} ms, StAX {} ms", f(altaDom), f(altaStax));
+        logger.info("  baja:         DOM {} ms, diferida {} ms", f(bajaDom), f(baja));
+        logger.info("  modificación: reescritura completa {} ms, diferida {} ms de media (peor {} ms)",
+                f(reescritura), f(modificacion), f(peorModificacion));
+    }
+
+    /**
+     * Lee todos los personajes con DOM, como se hacía antes.
+     *
+     * @param xml archivo a leer
+     * @return número de personajes
+     * @throws Exception si el XML no se puede leer
+     */
+    private static int leerDom(Path xml) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(xml.toFile());
+        NodeList personajes = doc.getElementsByTagName("character");
+        for (int i = 0; i < personajes.getLength(); i++) {
+            String[] valores = new String[PersonajeCSVManager.CLAVES_PERSONAJE.length];
+            int c = 0;
+            for (Node n = personajes.item(i).getFirstChild(); n != null; n = n.getNextSibling()) {
+                if (n instanceof Element campo && c < valores.length) valores[c++] = campo.getTextContent();
+            }
+        }
+        return personajes.getLength();
+    }
+
+    /**
+     * Añade un personaje con DOM, como hacía el formulario de alta antes.
+     *
+     * @param xml     archivo a modificar
+     * @param valores columnas del personaje
+     * @throws Exception si el XML no se puede leer o escribir
+     */
+    private static void anadirDom(Path xml, String[] valores) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(xml.toFile());
+        doc.getDocumentElement().normalize();
+        Element personaje = doc.createElement("character");
+        for (int i = 0; i < valores.length; i++) {
+            Element campo = doc.createElement("field" + i);
+            campo.setTextContent(valores[i]);
+            personaje.appendChild(campo);
+        }
+        doc.getDocumentElement().appendChild(personaje);
+        escribirDom(doc, xml);
+    }
+
+    /**
+     * Quita un personaje con DOM y vuelve a escribir el documento.
+     *
+     * @param xml  archivo a modificar
+     * @param slug slug del personaje
+     * @return true si estaba
+     * @throws Exception si el XML no se puede leer o escribir
+     */
+    private static boolean quitarDom(Path xml, String slug) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(xml.toFile());
+        NodeList slugs = doc.getElementsByTagName("field2");
+        for (int i = 0; i < slugs.getLength(); i++) {
+            if (slug.equals(slugs.item(i).getTextContent())) {
+                Node personaje = slugs.item(i).getParentNode();
+                personaje.getParentNode().removeChild(personaje);
+                escribirDom(doc, xml);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void escribirDom(Document doc, Path xml) throws Exception {
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.transform(new DOMSource(doc), new StreamResult(xml.toFile()));
+    }
+
+    private static String f(double ms) {
+        return String.format("%.1f", ms);
+    }
+}
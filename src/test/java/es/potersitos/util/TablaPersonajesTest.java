@@ -0,0 +1,83 @@
+package es.potersitos.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Comprueba que las filas añadidas enteras a una tabla con proyección conservan sus columnas mientras
+ * se usa su vista y que la tabla no las retiene cuando ya nadie la usa (por ejemplo, tras sustituirla un cambio).
+ *
+ * @author Nizam
+ * @version 1.0
+ */
+class TablaPersonajesTest {
+
+    @Test
+    void filaAnadidaConservaLasColumnasFueraDeLaProyeccion() {
+        TablaPersonajes tabla = new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE, PersonajeCSVManager.COLUMNAS_LISTADO);
+        FilaPersonaje fila = tabla.anadir(valores("harry-potter", "Expecto"));
+
+        assertEquals("harry-potter", fila.get("slug"));
+        assertEquals("Expecto", fila.get("wiki"));
+        assertEquals("Expecto", fila.valores()[columna("wiki")]);
+    }
+
+    @Test
+    void filaSustituidaNoQuedaRetenidaPorLaTabla() throws InterruptedException {
+        TablaPersonajes tabla = new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE, PersonajeCSVManager.COLUMNAS_LISTADO);
+        WeakReference<String> valor = anadirSinConservar(tabla);
+        FilaPersonaje nueva = tabla.anadir(valores("harry-potter", "segunda versión"));
+
+        for (int intento = 0; intento < 50 && valor.get() != null; intento++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(valor.get(), "la tabla no debe retener las columnas de una fila que ya no se usa");
+        assertEquals("segunda versión", nueva.get("wiki"));
+    }
+
+    @Test
+    void vistasDeFilasDistintasNoSonIgualesAunqueTenganLosMismosValores() {
+        TablaPersonajes tabla = new TablaPersonajes(PersonajeCSVManager.CLAVES_PERSONAJE, PersonajeCSVManager.COLUMNAS_LISTADO);
+        FilaPersonaje primera = tabla.anadir(valores("harry-potter", "Expecto"));
+        FilaPersonaje segunda = tabla.anadir(valores("harry-potter", "Expecto"));
+
+        assertNotEquals(primera, segunda);
+        assertEquals(new FilaPersonaje(tabla, primera.fila()), primera);
+        assertEquals(new HashMap<>(primera), new HashMap<>(segunda));
+    }
+
+    /**
+     * Añade una fila y devuelve solo una referencia débil a su valor fuera de la proyección, como quedaría
+     * tras sustituirla.
+     *
+     * @param tabla tabla donde se añade
+     * @return referencia débil al valor de la columna "wiki" de la fila
+     */
+    private static WeakReference<String> anadirSinConservar(TablaPersonajes tabla) {
+        String wiki = new String("primera versión");
+        Map<String, String> fila = tabla.anadir(valores("harry-potter", wiki));
+        assertEquals("primera versión", fila.get("wiki"));
+        return new WeakReference<>(wiki);
+    }
+
+    private static String[] valores(String slug, String wiki) {
+        String[] valores = new String[PersonajeCSVManager.CLAVES_PERSONAJE.length];
+        valores[columna("slug")] = slug;
+        valores[columna("name")] = "Harry Potter";
+        valores[columna("wiki")] = wiki;
+        return valores;
+    }
+
+    private static int columna(String clave) {
+        return Arrays.asList(PersonajeCSVManager.CLAVES_PERSONAJE).indexOf(clave);
+    }
+}